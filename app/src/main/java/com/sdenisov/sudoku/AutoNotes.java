@@ -0,0 +1,89 @@
+package com.sdenisov.sudoku;
+
+// Keeps the notes of every empty cell equal to its candidates - the values which aren't already in any of its units
+// (its row, column and box, plus any units added by a variant, see SudokuConstraints) - so that the player doesn't have
+// to enter notes by hand.
+// Rather than working out every cell's notes again after each change (like SudokuSolver.updateNotes, which goes
+// through every unit and then every cell of the grid), this keeps the number of times each value appears in each unit.
+// When a single cell changes, only that cell and the cells sharing a unit with it (its peers) can have different
+// candidates, so only these are updated.
+public class AutoNotes {
+    private final SudokuData sudokuData;
+    private final SudokuConstraints constraints;
+    private final int rows;
+    // Number of times each value appears in each unit, at index (unit * rows + value - 1). Counts are used rather than
+    // bit masks, as the player can enter the same value twice in a unit by mistake, and removing one of them must leave
+    // the value in the unit.
+    private final int[] unitCounts;
+    // The total of the values in each unit and the number of its cells which are empty, used for cages with a sum:
+    // once a cage has a single empty cell, its only candidate is the sum minus the total (as in CandidateKernel)
+    private final int[] unitTotals;
+    private final int[] unitEmptyCells;
+
+    // Sets the notes of every empty cell of sudokuData to its candidates
+    public AutoNotes(SudokuData sudokuData) {
+        this.sudokuData = sudokuData;
+        constraints = sudokuData.getConstraints();
+        rows = sudokuData.getRows();
+        unitCounts = new int[constraints.getUnitCount() * rows];
+        unitTotals = new int[constraints.getUnitCount()];
+        unitEmptyCells = new int[constraints.getUnitCount()];
+        for (int unit = 0; unit < constraints.getUnitCount(); unit++) {
+            unitEmptyCells[unit] = constraints.getUnitCells(unit).length;
+        }
+        for (int index = 0; index < rows * rows; index++) {
+            Integer value = sudokuData.getValue(index).getValue();
+            if (value != null) updateCounts(index, value, 1);
+        }
+        for (int index = 0; index < rows * rows; index++) updateCellNotes(index);
+    }
+
+    // Must be called after the value of the cell at the index has been changed (including being set to or from null),
+    // with its previous value. Updates the notes of the cell and its peers, which are redrawn from the changes
+    // sudokuData records (see SudokuData.takeChanges).
+    public void valueChanged(int index, Integer previousValue) {
+        Integer value = sudokuData.getValue(index).getValue();
+        if (previousValue != null) updateCounts(index, previousValue, -1);
+        if (value != null) updateCounts(index, value, 1);
+        updateCellNotes(index);
+        for (int peer : constraints.getPeers(index)) updateCellNotes(peer);
+    }
+
+    // Returns the candidates of the cell as a bit mask, with bit 0 set if 1 is a candidate, bit 1 if 2 is and so on
+    public int getCandidates(int index) {
+        int result = 0;
+        for (int value = 1; value <= rows; value++) {
+            boolean candidate = true;
+            for (int unit : constraints.getCellUnits(index)) {
+                if (unitCounts[unit * rows + value - 1] != 0) {
+                    candidate = false;
+                    break;
+                }
+            }
+            if (candidate) result |= 1 << (value - 1);
+        }
+        for (int unit : constraints.getCellUnits(index)) {
+            int sum = constraints.getUnitSum(unit);
+            // Only the cage's last empty cell is limited by the sum, which must then be this cell if it is empty
+            if (sum == 0 || unitEmptyCells[unit] != 1 || sudokuData.getValue(index).getValue() != null) continue;
+            int remaining = sum - unitTotals[unit];
+            result &= remaining >= 1 && remaining <= rows ? 1 << (remaining - 1) : 0;
+        }
+        return result;
+    }
+
+    // Sets the notes of the cell to its candidates if it is empty, or removes them if it has a value
+    private void updateCellNotes(int index) {
+        SudokuData.SudokuCell cell = sudokuData.getValue(index);
+        int candidates = cell.getValue() == null ? getCandidates(index) : 0;
+        for (int value = 1; value <= rows; value++) cell.setNote(value, (candidates & 1 << (value - 1)) != 0);
+    }
+
+    private void updateCounts(int index, int value, int change) {
+        for (int unit : constraints.getCellUnits(index)) {
+            unitCounts[unit * rows + value - 1] += change;
+            unitTotals[unit] += change * value;
+            unitEmptyCells[unit] -= change;
+        }
+    }
+}
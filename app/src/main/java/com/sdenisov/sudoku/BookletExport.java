@@ -0,0 +1,101 @@
+package com.sdenisov.sudoku;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.DocumentsContract;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+// Writes a booklet (see PdfBookletWriter) to a document chosen by the user, on a background thread.
+// The export isn't tied to an activity: PdfGeneratorActivity keeps it when it is recreated (e.g. because the screen was
+// rotated) and sets the new activity as the listener, which is then told how far the export has got. If the export is
+// cancelled or fails, the partly written document is deleted rather than left behind.
+// All methods must be called on the main thread, and the listener is also called on the main thread.
+public class BookletExport {
+    public interface Listener {
+        void onProgress(int written, int total);
+
+        // message is the string to show the user, R.string.booklet_saved or R.string.booklet_failed
+        void onFinished(int message);
+    }
+
+    private final Context context; // The application context, so that the export doesn't keep an activity alive
+    private final Uri uri;
+    private final BookletPuzzleSource source;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Thread thread;
+    private volatile boolean cancelled = false;
+    private Listener listener = null;
+    private int written = 0;
+    private int finishedMessage = 0; // The message for the listener once the export has finished, or 0 until then
+
+    // Starts writing the sudokus in requests to the document at uri
+    public BookletExport(Context context, Uri uri, List<BookletPuzzleSource.Request> requests) {
+        this.context = context.getApplicationContext();
+        this.uri = uri;
+        // The sudokus are generated on every core, while the export's own thread writes them to the booklet
+        source = new BookletPuzzleSource(requests, Runtime.getRuntime().availableProcessors());
+        thread = new Thread(this::write, "booklet-export");
+        thread.start();
+    }
+
+    public int getTotal() {
+        return source.getTotal();
+    }
+
+    // Sets the listener (null for none), which is told the progress so far straight away, and whether the export has
+    // finished if it finished while there was no listener
+    public void setListener(Listener listener) {
+        this.listener = listener;
+        if (listener == null) return;
+        listener.onProgress(written, source.getTotal());
+        if (finishedMessage != 0) listener.onFinished(finishedMessage);
+    }
+
+    // Stops writing the booklet and deletes the document. The listener isn't called again.
+    public void cancel() {
+        listener = null;
+        cancelled = true;
+        thread.interrupt();
+    }
+
+    private void write() {
+        boolean saved = false;
+        try (OutputStream output = context.getContentResolver().openOutputStream(uri)) {
+            if (output == null) throw new IOException("Couldn't open " + uri);
+            PdfBookletWriter.write(source, source.getTotal(), output, context.getCacheDir(),
+                    (count, total) -> handler.post(() -> {
+                        written = count;
+                        if (listener != null) listener.onProgress(count, total);
+                    }));
+            saved = true;
+        } catch (IOException | RuntimeException e) {
+            // A RuntimeException can only come from a bug in generating the sudokus (see BookletPuzzleSource.next),
+            // but the user is still told that the booklet couldn't be saved rather than being left waiting
+        } catch (InterruptedException e) {
+            // Cancelled
+        } finally {
+            source.close();
+        }
+        if (!saved || cancelled) deleteDocument();
+        if (cancelled) return;
+        int message = saved ? R.string.booklet_saved : R.string.booklet_failed;
+        handler.post(() -> {
+            finishedMessage = message;
+            if (listener != null) listener.onFinished(message);
+        });
+    }
+
+    private void deleteDocument() {
+        try {
+            DocumentsContract.deleteDocument(context.getContentResolver(), uri);
+        } catch (FileNotFoundException | RuntimeException e) {
+            // The document has gone already, or its provider doesn't allow deleting it, so there is nothing more to do
+        }
+    }
+}
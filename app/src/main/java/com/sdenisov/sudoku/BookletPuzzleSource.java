@@ -0,0 +1,145 @@
+package com.sdenisov.sudoku;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Generates the sudokus for a booklet (see PdfGeneratorActivity) on several threads at once, but hands them out one at
+// a time in the order they were requested, so that they can be written to the booklet as soon as they are ready.
+// Only a few sudokus are generated ahead of the one being written (WINDOW_PER_THREAD for each thread), so the memory
+// used doesn't depend on the size of the booklet.
+public class BookletPuzzleSource {
+    // A number of sudokus of the same size and difficulty in the booklet
+    public static class Request {
+        private final int boxRows;
+        private final int boxColumns;
+        private final int difficulty;
+        private final int count;
+
+        public Request(int boxRows, int boxColumns, int difficulty, int count) {
+            this.boxRows = boxRows;
+            this.boxColumns = boxColumns;
+            this.difficulty = difficulty;
+            this.count = count;
+        }
+
+        public int getDifficulty() {
+            return difficulty;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
+    // A generated sudoku and its solution
+    public static class Puzzle {
+        private final SudokuData sudoku;
+        private final int[] solution;
+        private final int difficulty;
+
+        private Puzzle(SudokuData sudoku, int[] solution, int difficulty) {
+            this.sudoku = sudoku;
+            this.solution = solution;
+            this.difficulty = difficulty;
+        }
+
+        public SudokuData getSudoku() {
+            return sudoku;
+        }
+
+        // The values of the solution, going from left to right then top to bottom
+        public int[] getSolution() {
+            return solution;
+        }
+
+        public int getDifficulty() {
+            return difficulty;
+        }
+    }
+
+    private static final int WINDOW_PER_THREAD = 2;
+
+    private final List<Request> requests;
+    private final ExecutorService executor;
+    private final int window;
+    private final int total; // The number of sudokus in all the requests
+    // Each of the executor's threads keeps a workspace for every size it has generated (see SudokuGenerator.Workspace),
+    // like PuzzleBank's tasks do, rather than allocating a new one for every sudoku. They go with the threads in close.
+    private final ThreadLocal<Map<SudokuConstraints, SudokuGenerator.Workspace>> workspaces =
+            new ThreadLocal<Map<SudokuConstraints, SudokuGenerator.Workspace>>() {
+                @Override
+                protected Map<SudokuConstraints, SudokuGenerator.Workspace> initialValue() {
+                    return new HashMap<>();
+                }
+            };
+    // The sudokus being generated, in the order they were requested
+    private final Queue<Future<Puzzle>> pending = new ArrayDeque<>();
+    private int submitted = 0; // Number of sudokus given to the executor
+    // The request the next sudoku given to the executor comes from, and how many of its sudokus have been given already
+    private int requestIndex = 0;
+    private int submittedFromRequest = 0;
+    private int returned = 0; // Number of sudokus returned by next
+
+    public BookletPuzzleSource(List<Request> requests, int threads) {
+        this.requests = requests;
+        executor = Executors.newFixedThreadPool(threads);
+        window = threads * WINDOW_PER_THREAD;
+        int total = 0;
+        for (Request request : requests) total += request.count;
+        this.total = total;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public boolean hasNext() {
+        return returned < total;
+    }
+
+    // Returns the next sudoku, waiting for it to be generated if necessary. Throws InterruptedException if the thread
+    // is interrupted while waiting, e.g. because the booklet has been cancelled.
+    public Puzzle next() throws InterruptedException {
+        while (submitted < total && pending.size() < window) {
+            // Skips the requests whose sudokus have all been given already, including any with a count of 0
+            while (submittedFromRequest == requests.get(requestIndex).count) {
+                requestIndex++;
+                submittedFromRequest = 0;
+            }
+            Request request = requests.get(requestIndex);
+            submittedFromRequest++;
+            submitted++;
+            pending.add(executor.submit(() -> {
+                SudokuConstraints constraints = SudokuConstraints.classic(request.boxRows, request.boxColumns);
+                SudokuGenerator.Workspace workspace = workspaces.get().get(constraints);
+                if (workspace == null) {
+                    workspace = new SudokuGenerator.Workspace(constraints);
+                    workspaces.get().put(constraints, workspace);
+                }
+                SudokuData sudoku = SudokuGenerator.generate(request.difficulty, workspace);
+                SudokuData solved = sudoku.copy();
+                SudokuSolver.solve(solved, 1);
+                return new Puzzle(sudoku, SolutionCache.getValues(solved), request.difficulty);
+            }));
+        }
+        returned++;
+        try {
+            return pending.remove().get();
+        } catch (ExecutionException e) {
+            // Generating a sudoku doesn't throw any checked exceptions, so this can only be a bug
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    // Stops generating sudokus. Must be called once the booklet is finished or cancelled.
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,67 @@
+package com.sdenisov.sudoku;
+
+// The passes over the whole grid which work with candidates as bit masks (with bit 0 for 1): finding the values in
+// every unit, and working out the candidates of every cell from these. SudokuSolver.updateNotes needs both once per
+// call, and so does the solver's search at the start of every run, which the generator makes for every change it
+// considers.
+// Each pass is a loop over flat int arrays with no calls or objects, and with as few branches depending on the values
+// as possible, so that the work for one cell doesn't depend on the cell before it. This lets the JIT unroll the loops
+// and, where the CPU supports it, run them on several cells at once. There is no hand-written SIMD version, as the
+// JDK's Vector API is an incubator module which Android (and Java 8) doesn't have.
+final class CandidateKernel {
+    private CandidateKernel() {
+    }
+
+    // Sets unitMasks[unit] to the bit mask of the values in each unit, from values (with 0 for empty cells). Returns
+    // true if any unit has the same value more than once.
+    static boolean findUnitMasks(int[] values, int[][] unitCells, int[] unitMasks) {
+        int duplicates = 0;
+        for (int unit = 0; unit < unitCells.length; unit++) {
+            int mask = 0;
+            for (int index : unitCells[unit]) {
+                // 1 << value is shifted back down, so an empty cell (with value 0) gives 0 rather than needing a branch
+                int bit = (1 << values[index]) >>> 1;
+                duplicates |= mask & bit;
+                mask |= bit;
+            }
+            unitMasks[unit] = mask;
+        }
+        return duplicates != 0;
+    }
+
+    // Sets candidates[index] to the values (out of allValues) missing from all of the cell's units, for every empty
+    // cell, and to 0 for every cell with a value
+    static void findCandidates(int[] values, int[][] cellUnits, int[] unitMasks, int allValues, int[] candidates) {
+        for (int index = 0; index < values.length; index++) {
+            // As every cell's first three units are its row, column and box (see SudokuConstraints.getCellUnits),
+            // these are looked up directly
+            int[] units = cellUnits[index];
+            int placed = unitMasks[units[0]] | unitMasks[units[1]] | unitMasks[units[2]];
+            for (int i = 3; i < units.length; i++) placed |= unitMasks[units[i]];
+            // All bits set for an empty cell and none for a cell with a value, as values are never negative
+            int empty = (values[index] - 1) >> 31;
+            candidates[index] = allValues & ~placed & empty;
+        }
+    }
+
+    // Removes the candidates which would fill a cage with the wrong sum: if a cage with a sum has a single empty cell,
+    // its only possible value is the sum minus the values already in the cage
+    static void applySums(int[] values, int[][] unitCells, int[] unitSums, int[] candidates) {
+        for (int unit = 0; unit < unitCells.length; unit++) {
+            if (unitSums[unit] == 0) continue;
+            int remaining = unitSums[unit];
+            int emptyIndex = -1;
+            int emptyCount = 0;
+            for (int index : unitCells[unit]) {
+                if (values[index] == 0) {
+                    emptyIndex = index;
+                    emptyCount++;
+                }
+                remaining -= values[index];
+            }
+            if (emptyCount == 1) {
+                candidates[emptyIndex] &= remaining >= 1 && remaining <= Integer.SIZE ? 1 << (remaining - 1) : 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,582 @@
+package com.sdenisov.sudoku;
+
+import java.util.Arrays;
+
+// Solves a sudoku as a boolean satisfiability problem, using conflict-driven clause learning (CDCL) as in modern SAT
+// solvers. There is a variable for each (cell, value) pair, which is true if the cell has that value. The rules become
+// clauses (lists of literals, at least one of which must be true):
+// - every cell has at least one value, and every value appears at least once in every full unit
+// - no cell has two values, and no two cells sharing a unit have the same value. There are far too many of these
+//   (over half a million for a 25x25 grid) to store, but they are all pairs, so they are applied directly from the
+//   peers of each cell whenever a variable becomes true, and only turned into clauses when a conflict needs them
+// - cages with a sum: whenever a cage has only one empty cell left (or none), a clause saying that those values force
+//   the last value (or are impossible) is added, so only the combinations actually reached are ever stored
+// Whenever the values chosen lead to a clause with every literal false, the solver works out which earlier choices
+// caused it and learns a new clause ruling that combination out. It then jumps straight back to the latest choice
+// involved, rather than just undoing the last guess, and the learnt clause stops the same mistake being made anywhere
+// else in the search. Each step costs more than a step of SudokuSolver's search, so on ordinary sudokus the two take
+// about as long, but this can't get stuck for a long time below an early mistake the way a depth-first search can. On
+// hard 25x25 grids it is often tens of times faster.
+// Used through SudokuSolver.CDCL.
+public class CdclSolver {
+    private static final int UNASSIGNED = 0;
+    private static final int TRUE = 1;
+    private static final int FALSE = -1;
+
+    // Reasons for a variable's value, other than the index of the clause which made it true or false
+    private static final int DECISION = -1; // Chosen by the solver (or given as a clue)
+    // Made false because a variable of a peer (with the same value) or of the same cell was made true (see
+    // reasonVariables)
+    private static final int PEER = -2;
+    // Returned by propagate if there is no conflict, or if the conflicting clause isn't stored (see unstoredConflict)
+    private static final int NO_CONFLICT = -1;
+    private static final int UNSTORED_CONFLICT = -2;
+
+    // Number of conflicts between restarts is this times the next number of the Luby sequence
+    private static final int RESTART_CONFLICTS = 100;
+    private static final double ACTIVITY_DECAY = 0.95;
+
+    private final SudokuData sudokuData;
+    private final SolverStatistics statistics;
+    private final int rows;
+    private final int cells;
+    private final int[][] peers;
+    private final int[][] cages; // The units with a sum, and the sum of each
+    private final int[] cageSums;
+    private final int[][] cellCages; // Indexes into cages of the cages of each cell
+
+    // A literal is a variable (cell * rows + value - 1) shifted left by 1, with bit 0 set if it is negated
+    private final int[] variableValues; // TRUE, FALSE or UNASSIGNED
+    private final int[] levels; // The decision level each variable was assigned at
+    private final int[] reasons; // A clause index, DECISION or PEER
+    private final int[] reasonVariables; // For PEER, the variable which was made true
+    private final int[] cellValues; // Value of each cell (0 if it doesn't have one yet)
+    private final int[] cellOptions; // Number of values of each cell whose variable isn't false
+    private final int[] savedValues; // The last value each cell had, which is tried first when it is chosen again
+
+    // Literals made true, in the order they were made true. Those from propagatedCount onwards haven't had their
+    // consequences worked out yet.
+    private final int[] trail;
+    private int trailSize = 0;
+    private int propagatedCount = 0;
+    private final int[] levelStarts; // trailSize when each decision level started
+    private int level = 0;
+
+    // Clauses, with learnt ones after the rest. The first two literals of each clause are watched: a clause can only
+    // make a literal true (or cause a conflict) once all but one of its literals are false, so it only needs to be
+    // looked at when one of its watched literals becomes false.
+    private int[][] clauses = new int[64][];
+    private int[] clauseGlue = new int[64]; // For learnt clauses, the number of decision levels they involved
+    private boolean[] learnt = new boolean[64];
+    private int clauseCount = 0;
+    private int learntCount = 0;
+    private int learntLimit;
+    private final int[][] watches; // The clauses watching each literal
+    private final int[] watchCounts;
+    // The clause which caused an UNSTORED_CONFLICT: either peerConflict (two peers with the same value), or a cage
+    // clause with a single literal, which can't be watched like the others
+    private int[] unstoredConflict;
+    private final int[] peerConflict = new int[2];
+
+    // Variables involved in recent conflicts have higher activities, and the solver chooses cells whose variables have
+    // high activities, so that it works on the part of the grid which is causing problems
+    private final double[] activities;
+    private final double[] cellActivities; // The total activity of each cell's variables
+    private double activityIncrement = 1;
+
+    // Used by learn
+    private final boolean[] seen;
+    private final int[] learntLiterals;
+    private final int[] levelStamps;
+    private int stamp = 0;
+
+    private CdclSolver(SudokuData sudokuData, SolverStatistics statistics) {
+        this.sudokuData = sudokuData;
+        this.statistics = statistics;
+        SudokuConstraints constraints = sudokuData.getConstraints();
+        rows = sudokuData.getRows();
+        cells = rows * rows;
+        int variables = cells * rows;
+        peers = new int[cells][];
+        for (int index = 0; index < cells; index++) peers[index] = constraints.getPeers(index);
+        int cageCount = 0;
+        for (int unit = 0; unit < constraints.getUnitCount(); unit++) {
+            if (constraints.getUnitSum(unit) != 0) cageCount++;
+        }
+        cages = new int[cageCount][];
+        cageSums = new int[cageCount];
+        int[] cellCageCounts = new int[cells];
+        cageCount = 0;
+        for (int unit = 0; unit < constraints.getUnitCount(); unit++) {
+            if (constraints.getUnitSum(unit) == 0) continue;
+            cages[cageCount] = constraints.getUnitCells(unit);
+            cageSums[cageCount++] = constraints.getUnitSum(unit);
+            for (int index : constraints.getUnitCells(unit)) cellCageCounts[index]++;
+        }
+        cellCages = new int[cells][];
+        for (int index = 0; index < cells; index++) cellCages[index] = new int[cellCageCounts[index]];
+        Arrays.fill(cellCageCounts, 0);
+        for (int cage = 0; cage < cages.length; cage++) {
+            for (int index : cages[cage]) cellCages[index][cellCageCounts[index]++] = cage;
+        }
+
+        variableValues = new int[variables];
+        levels = new int[variables];
+        reasons = new int[variables];
+        reasonVariables = new int[variables];
+        cellValues = new int[cells];
+        cellOptions = new int[cells];
+        Arrays.fill(cellOptions, rows);
+        savedValues = new int[cells];
+        trail = new int[variables];
+        // Each decision fills a cell, so there can't be more decision levels than cells
+        levelStarts = new int[cells + 1];
+        watches = new int[variables * 2][];
+        watchCounts = new int[variables * 2];
+        activities = new double[variables];
+        cellActivities = new double[cells];
+        seen = new boolean[variables];
+        learntLiterals = new int[variables];
+        levelStamps = new int[cells + 1];
+        learntLimit = cells * 4;
+
+        // At least one value in each cell
+        for (int index = 0; index < cells; index++) {
+            int[] clause = new int[rows];
+            for (int value = 1; value <= rows; value++) clause[value - 1] = literal(index, value, true);
+            addClause(clause, false, 0);
+        }
+        // Each value at least once in each full unit. These aren't needed for the solution to be correct (the pairs
+        // already rule out every wrong grid), but they let the solver fill in single positions directly.
+        for (int unit = 0; unit < constraints.getUnitCount(); unit++) {
+            if (!constraints.isFullUnit(unit)) continue;
+            for (int value = 1; value <= rows; value++) {
+                int[] clause = new int[rows];
+                int[] unitCells = constraints.getUnitCells(unit);
+                for (int i = 0; i < rows; i++) clause[i] = literal(unitCells[i], value, true);
+                addClause(clause, false, 0);
+            }
+        }
+    }
+
+    // Solves sudokuData as described in SudokuSolver.Backend. Every value in sudokuData (initial or not) is kept.
+    // The number of decisions is added to statistics as nodes, and the number of conflicts as dead ends.
+    public static int solve(SudokuData sudokuData, long timeLimitNanos, SolverStatistics statistics) {
+        CdclSolver solver = new CdclSolver(sudokuData, statistics == null ? new SolverStatistics() : statistics);
+        return solver.solve(timeLimitNanos == Long.MAX_VALUE ? 0 : System.nanoTime() + timeLimitNanos,
+                timeLimitNanos != Long.MAX_VALUE);
+    }
+
+    private int solve(long deadline, boolean hasDeadline) {
+        // A cage with a single cell just gives its value, which is simplest to treat as a clue. This also means that
+        // checkCage never has to deal with a full cage of one cell.
+        for (int cage = 0; cage < cages.length; cage++) {
+            if (cages[cage].length != 1) continue;
+            int literal = literal(cages[cage][0], cageSums[cage], true);
+            if (literalValue(literal) == UNASSIGNED) assign(literal, DECISION);
+        }
+        for (int index = 0; index < cells; index++) {
+            Integer value = sudokuData.getValue(index).getValue();
+            if (value == null) continue;
+            int literal = literal(index, value, true);
+            // Clues which clash with each other (or with a cage) are found by the first propagate, as a conflict at
+            // level 0
+            if (literalValue(literal) == UNASSIGNED) assign(literal, DECISION);
+        }
+        int restarts = 0;
+        long conflictsLeft = RESTART_CONFLICTS * SudokuSolver.luby(1);
+        long steps = 0;
+        while (true) {
+            // The clock is only read every 256 steps, as that costs more than most steps
+            if (hasDeadline && (++steps & 255) == 0 && System.nanoTime() - deadline > 0) {
+                return SudokuSolver.Backend.GAVE_UP;
+            }
+            int conflict = propagate();
+            if (conflict != NO_CONFLICT) {
+                statistics.deadEnds++;
+                if (level == 0) return SudokuSolver.Backend.NO_SOLUTION;
+                learn(conflict);
+                conflictsLeft--;
+                continue;
+            }
+            if (conflictsLeft <= 0) {
+                // Starting again keeps everything learnt, but lets the solver make its early choices again using
+                // what it has learnt since. It is also the only time clauses are deleted, as none of them can be the
+                // reason for a variable's value at level 0 except for ones that will never be analysed.
+                backtrack(0);
+                statistics.restarts++;
+                conflictsLeft = RESTART_CONFLICTS * SudokuSolver.luby(++restarts + 1);
+                if (learntCount > learntLimit) reduceLearnt();
+                continue;
+            }
+            int variable = chooseVariable();
+            if (variable == -1) {
+                // Every cell has a value, and none of them clash
+                for (int index = 0; index < cells; index++) {
+                    SudokuData.SudokuCell cell = sudokuData.getValue(index);
+                    if (cell.getValue() == null) cell.setValue(cellValues[index]);
+                }
+                sudokuData.clearNotes();
+                return SudokuSolver.Backend.SOLVED;
+            }
+            statistics.nodes++;
+            levelStarts[level++] = trailSize;
+            assign(variable << 1, DECISION);
+        }
+    }
+
+    // Returns the literal for the cell having (or not having, if positive is false) the value
+    private int literal(int index, int value, boolean positive) {
+        return (index * rows + value - 1) << 1 | (positive ? 0 : 1);
+    }
+
+    private int literalValue(int literal) {
+        int value = variableValues[literal >> 1];
+        return (literal & 1) == 0 ? value : -value;
+    }
+
+    // Makes the literal true at the current level
+    private void assign(int literal, int reason) {
+        int variable = literal >> 1;
+        int index = variable / rows;
+        if ((literal & 1) == 0) {
+            variableValues[variable] = TRUE;
+            cellValues[index] = variable % rows + 1;
+        } else {
+            variableValues[variable] = FALSE;
+            cellOptions[index]--;
+        }
+        levels[variable] = level;
+        reasons[variable] = reason;
+        trail[trailSize++] = literal;
+    }
+
+    // Undoes every assignment made after the level started
+    private void backtrack(int toLevel) {
+        if (level <= toLevel) return;
+        for (int i = trailSize - 1; i >= levelStarts[toLevel]; i--) {
+            int variable = trail[i] >> 1;
+            int index = variable / rows;
+            if (variableValues[variable] == TRUE) {
+                savedValues[index] = cellValues[index];
+                cellValues[index] = 0;
+            } else {
+                cellOptions[index]++;
+            }
+            variableValues[variable] = UNASSIGNED;
+        }
+        trailSize = levelStarts[toLevel];
+        propagatedCount = trailSize;
+        level = toLevel;
+    }
+
+    // Works out the consequences of every literal on the trail which hasn't been looked at yet. Returns NO_CONFLICT,
+    // UNSTORED_CONFLICT or the index of a clause whose literals are all false.
+    private int propagate() {
+        while (propagatedCount < trailSize) {
+            int literal = trail[propagatedCount++];
+            int variable = literal >> 1;
+            if ((literal & 1) == 0) {
+                int index = variable / rows;
+                int value = variable % rows + 1;
+                // No other value in the same cell, and not the same value in any peer
+                for (int otherValue = 1; otherValue <= rows; otherValue++) {
+                    if (otherValue != value && !makeFalse(index * rows + otherValue - 1, variable)) {
+                        return UNSTORED_CONFLICT;
+                    }
+                }
+                for (int peer : peers[index]) {
+                    if (!makeFalse(peer * rows + value - 1, variable)) return UNSTORED_CONFLICT;
+                }
+                for (int cage : cellCages[index]) {
+                    int conflict = checkCage(cage);
+                    if (conflict != NO_CONFLICT) return conflict;
+                }
+            }
+            int conflict = propagateClauses(literal ^ 1);
+            if (conflict != NO_CONFLICT) return conflict;
+        }
+        return NO_CONFLICT;
+    }
+
+    // Makes the variable false because trueVariable is true. Returns false if it is already true, setting
+    // unstoredConflict to the clause saying that they can't both be true.
+    private boolean makeFalse(int variable, int trueVariable) {
+        if (variableValues[variable] == FALSE) return true;
+        if (variableValues[variable] == TRUE) {
+            peerConflict[0] = variable << 1 | 1;
+            peerConflict[1] = trueVariable << 1 | 1;
+            unstoredConflict = peerConflict;
+            return false;
+        }
+        reasonVariables[variable] = trueVariable;
+        assign(variable << 1 | 1, PEER);
+        return true;
+    }
+
+    // Looks at every clause watching the literal, which has just become false. Each one either has another literal
+    // which isn't false to watch instead, or has a single literal left which isn't false, which is made true.
+    private int propagateClauses(int falseLiteral) {
+        int[] watching = watches[falseLiteral];
+        int count = watchCounts[falseLiteral];
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int clauseIndex = watching[i];
+            int[] clause = clauses[clauseIndex];
+            // The first literal is kept as the other watched literal
+            if (clause[0] == falseLiteral) {
+                clause[0] = clause[1];
+                clause[1] = falseLiteral;
+            }
+            if (literalValue(clause[0]) == TRUE) {
+                watching[kept++] = clauseIndex;
+                continue;
+            }
+            boolean moved = false;
+            for (int k = 2; k < clause.length; k++) {
+                if (literalValue(clause[k]) != FALSE) {
+                    clause[1] = clause[k];
+                    clause[k] = falseLiteral;
+                    watch(clause[1], clauseIndex);
+                    moved = true;
+                    break;
+                }
+            }
+            if (moved) continue;
+            watching[kept++] = clauseIndex;
+            if (literalValue(clause[0]) == FALSE) {
+                // Every literal is false. The remaining watches are kept as they are.
+                while (++i < count) watching[kept++] = watching[i];
+                watchCounts[falseLiteral] = kept;
+                return clauseIndex;
+            }
+            assign(clause[0], clauseIndex);
+        }
+        watchCounts[falseLiteral] = kept;
+        return NO_CONFLICT;
+    }
+
+    // Called when a cell of the cage has been given a value. If every cell of the cage has a value, checks the sum,
+    // and if only one cell is left, gives it the value needed to make the sum. In both cases a clause is added saying
+    // why, so that the reason can be analysed like any other.
+    private int checkCage(int cage) {
+        int[] cageCells = cages[cage];
+        int remaining = cageSums[cage];
+        int emptyIndex = -1;
+        for (int index : cageCells) {
+            if (cellValues[index] != 0) {
+                remaining -= cellValues[index];
+            } else if (emptyIndex == -1) {
+                emptyIndex = index;
+            } else {
+                return NO_CONFLICT; // At least two cells left, so nothing is known yet
+            }
+        }
+        if (emptyIndex == -1 && remaining == 0) return NO_CONFLICT;
+        // The clause is "one of the values is different" (or "the last cell has the remaining value")
+        boolean forcesValue = emptyIndex != -1 && remaining >= 1 && remaining <= rows;
+        int[] clause = new int[forcesValue ? cageCells.length : cageCells.length - (emptyIndex == -1 ? 0 : 1)];
+        int size = 0;
+        if (forcesValue) clause[size++] = literal(emptyIndex, remaining, true);
+        for (int index : cageCells) {
+            if (index != emptyIndex) clause[size++] = literal(index, cellValues[index], false);
+        }
+        if (forcesValue && literalValue(clause[0]) != FALSE) {
+            // The forced literal is first and the latest of the others second, which is what propagateClauses expects
+            moveLatestFalse(clause, 1);
+            int clauseIndex = addClause(clause, true, glue(clause, clause.length));
+            assign(clause[0], clauseIndex);
+            return NO_CONFLICT;
+        }
+        if (clause.length == 1) {
+            unstoredConflict = clause;
+            return UNSTORED_CONFLICT;
+        }
+        moveLatestFalse(clause, 0);
+        moveLatestFalse(clause, 1);
+        return addClause(clause, true, glue(clause, clause.length));
+    }
+
+    // Swaps the false literal with the highest level from position `from` onwards into position `from`
+    private void moveLatestFalse(int[] clause, int from) {
+        int latest = from;
+        for (int k = from + 1; k < clause.length; k++) {
+            if (levels[clause[k] >> 1] > levels[clause[latest] >> 1]) latest = k;
+        }
+        int swap = clause[from];
+        clause[from] = clause[latest];
+        clause[latest] = swap;
+    }
+
+    // Learns a clause from the conflict using the first unique implication point: starting with the conflicting
+    // clause, literals assigned at the current level are replaced by the reasons they were assigned, until only one
+    // is left. The learnt clause is then that literal (negated) along with every literal from earlier levels. The
+    // solver jumps back to the latest of those earlier levels, where the learnt clause makes the literal true.
+    private void learn(int conflict) {
+        int size = 1; // Position 0 is kept for the literal at the current level
+        int pending = 0; // Literals at the current level still to be replaced by their reasons
+        int trailIndex = trailSize - 1;
+        int[] clause = conflict == UNSTORED_CONFLICT ? unstoredConflict : clauses[conflict];
+        int start = 0; // Reason clauses have the literal they made true at position 0, which is skipped
+        int literal;
+        while (true) {
+            for (int k = start; k < clause.length; k++) {
+                int variable = clause[k] >> 1;
+                if (seen[variable] || levels[variable] == 0) continue;
+                seen[variable] = true;
+                bumpActivity(variable);
+                if (levels[variable] == level) {
+                    pending++;
+                } else {
+                    learntLiterals[size++] = clause[k];
+                }
+            }
+            // The latest literal on the trail which is part of the clause so far
+            while (!seen[trail[trailIndex] >> 1]) trailIndex--;
+            literal = trail[trailIndex--];
+            int variable = literal >> 1;
+            seen[variable] = false;
+            if (--pending == 0) break;
+            if (reasons[variable] == PEER) {
+                peerConflict[0] = literal;
+                peerConflict[1] = reasonVariables[variable] << 1 | 1;
+                clause = peerConflict;
+            } else {
+                clause = clauses[reasons[variable]];
+            }
+            start = 1;
+        }
+        learntLiterals[0] = literal ^ 1;
+        for (int k = 1; k < size; k++) seen[learntLiterals[k] >> 1] = false;
+        activityIncrement /= ACTIVITY_DECAY;
+
+        int[] learntClause = Arrays.copyOf(learntLiterals, size);
+        int backtrackLevel = 0;
+        if (size > 1) {
+            moveLatestFalse(learntClause, 1);
+            backtrackLevel = levels[learntClause[1] >> 1];
+        }
+        int glue = glue(learntClause, size);
+        backtrack(backtrackLevel);
+        if (size == 1) {
+            // A single literal is true whatever else happens, so it is simply made true at level 0
+            assign(learntClause[0], DECISION);
+        } else {
+            assign(learntClause[0], addClause(learntClause, true, glue));
+        }
+    }
+
+    // Returns the number of different decision levels of the clause's literals. Clauses with few levels tend to be
+    // the most useful ones, as they link together a few groups of literals which each follow from a single decision.
+    private int glue(int[] clause, int size) {
+        stamp++;
+        int result = 0;
+        for (int k = 0; k < size; k++) {
+            int literalLevel = levels[clause[k] >> 1];
+            if (levelStamps[literalLevel] != stamp) {
+                levelStamps[literalLevel] = stamp;
+                result++;
+            }
+        }
+        return result;
+    }
+
+    private void bumpActivity(int variable) {
+        activities[variable] += activityIncrement;
+        cellActivities[variable / rows] += activityIncrement;
+        if (activities[variable] > 1e100) {
+            // Scales everything down before it overflows, which keeps the order the same
+            for (int i = 0; i < activities.length; i++) activities[i] *= 1e-100;
+            for (int i = 0; i < cellActivities.length; i++) cellActivities[i] *= 1e-100;
+            activityIncrement *= 1e-100;
+        }
+    }
+
+    // Chooses the next variable to make true: in the empty cell with the fewest possible values (breaking ties by
+    // activity), the value the cell last had if it is still possible, otherwise the most active possible value.
+    // Returns -1 if every cell has a value.
+    private int chooseVariable() {
+        int bestIndex = -1;
+        for (int index = 0; index < cells; index++) {
+            if (cellValues[index] != 0) continue;
+            if (bestIndex == -1 || cellOptions[index] < cellOptions[bestIndex] ||
+                    cellOptions[index] == cellOptions[bestIndex] && cellActivities[index] > cellActivities[bestIndex]) {
+                bestIndex = index;
+            }
+        }
+        if (bestIndex == -1) return -1;
+        int saved = savedValues[bestIndex];
+        int savedVariable = bestIndex * rows + saved - 1;
+        if (saved != 0 && variableValues[savedVariable] == UNASSIGNED) return savedVariable;
+        int best = -1;
+        for (int variable = bestIndex * rows; variable < (bestIndex + 1) * rows; variable++) {
+            if (variableValues[variable] == UNASSIGNED && (best == -1 || activities[variable] > activities[best])) {
+                best = variable;
+            }
+        }
+        return best;
+    }
+
+    // Adds a clause (of at least two literals) whose first two literals are to be watched, returning its index
+    private int addClause(int[] clause, boolean isLearnt, int glue) {
+        if (clauseCount == clauses.length) {
+            clauses = Arrays.copyOf(clauses, clauseCount * 2);
+            clauseGlue = Arrays.copyOf(clauseGlue, clauseCount * 2);
+            learnt = Arrays.copyOf(learnt, clauseCount * 2);
+        }
+        int clauseIndex = clauseCount++;
+        clauses[clauseIndex] = clause;
+        clauseGlue[clauseIndex] = glue;
+        learnt[clauseIndex] = isLearnt;
+        if (isLearnt) learntCount++;
+        watch(clause[0], clauseIndex);
+        watch(clause[1], clauseIndex);
+        return clauseIndex;
+    }
+
+    private void watch(int literal, int clauseIndex) {
+        int[] watching = watches[literal];
+        if (watching == null) {
+            watching = new int[4];
+            watches[literal] = watching;
+        } else if (watchCounts[literal] == watching.length) {
+            watching = Arrays.copyOf(watching, watching.length * 2);
+            watches[literal] = watching;
+        }
+        watching[watchCounts[literal]++] = clauseIndex;
+    }
+
+    // Deletes about half of the learnt clauses, keeping those with the lowest glue (and any with a glue of 2 or less,
+    // which are kept forever). Only called at level 0. The remaining clauses are packed together and every watch list
+    // is rebuilt, as this is simpler than finding and removing the deleted clauses' watches.
+    private void reduceLearnt() {
+        int[] glueCounts = new int[cells + 2];
+        for (int i = 0; i < clauseCount; i++) {
+            if (learnt[i]) glueCounts[Math.min(clauseGlue[i], cells + 1)]++;
+        }
+        // The smallest glue such that deleting the clauses with a higher glue deletes at most half of them
+        int maxGlue = cells + 1;
+        int deleted = 0;
+        while (maxGlue > 2 && deleted + glueCounts[maxGlue] <= learntCount / 2) deleted += glueCounts[maxGlue--];
+        int kept = 0;
+        for (int i = 0; i < clauseCount; i++) {
+            if (learnt[i] && clauseGlue[i] > maxGlue) {
+                learntCount--;
+                continue;
+            }
+            clauses[kept] = clauses[i];
+            clauseGlue[kept] = clauseGlue[i];
+            learnt[kept] = learnt[i];
+            kept++;
+        }
+        Arrays.fill(clauses, kept, clauseCount, null);
+        clauseCount = kept;
+        Arrays.fill(watchCounts, 0);
+        for (int i = 0; i < clauseCount; i++) {
+            watch(clauses[i][0], i);
+            watch(clauses[i][1], i);
+        }
+        // Reasons at level 0 are never looked at again, so they don't need to follow the clauses being moved
+        learntLimit += learntLimit / 10;
+    }
+}
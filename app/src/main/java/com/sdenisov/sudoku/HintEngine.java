@@ -0,0 +1,333 @@
+package com.sdenisov.sudoku;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Finds the next step the player could take to make progress with a generated sudoku, along with the technique used to
+// find it and the cells involved, so that the player can be shown why the value must go there.
+// The step is worked out from the player's grid as it is when the hint is requested: the candidates of every empty cell
+// are found from the values in its row, column and box, and the techniques are tried from the easiest one, so the hint
+// is the easiest step the player can take now (as far as these techniques go), wherever the player has got to. This
+// only takes a few passes over the grid. The slow part is solving the sudoku, which is needed for spotting mistakes and
+// for SOLUTION hints, so this is done once when the engine is created (see forPuzzle, which is meant to be called on a
+// background thread as soon as a sudoku is started).
+// The notes the player has entered aren't used, as they may be incomplete or wrong.
+public class HintEngine {
+    // The techniques are in order of difficulty, easiest first, and are tried in this order at each step
+    public enum Technique {
+        // The value is the only one that can go in any cell of a row, column or box
+        HIDDEN_SINGLE("Hidden single"),
+        // The value is the only one that can go in the cell
+        NAKED_SINGLE("Naked single"),
+        // All the cells where a value can go in one row, column or box are also in a single other row, column or box,
+        // so the value can't go anywhere else in that other one
+        LOCKED_CANDIDATES("Locked candidates"),
+        // Two cells in a row, column or box can only contain the same two values, so no other cells there can
+        NAKED_PAIR("Naked pair"),
+        // None of the techniques above lead anywhere, so the value is taken from the solution
+        SOLUTION("Solution"),
+        // The player has entered a value which isn't in the solution. This is not a solving technique, so is only
+        // given when the player's grid has a mistake.
+        MISTAKE("Mistake");
+
+        private final String description;
+
+        Technique(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    public static class Hint {
+        private final Technique technique;
+        private final int index; // The cell the hint is about
+        private final int value; // The value that goes there or, for a mistake, the value that shouldn't be there
+        private final int[] cells; // The cells the technique looks at, so that they can be pointed out to the player
+
+        private Hint(Technique technique, int index, int value, int[] cells) {
+            this.technique = technique;
+            this.index = index;
+            this.value = value;
+            this.cells = cells;
+        }
+
+        public Technique getTechnique() {
+            return technique;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public int getValue() {
+            return value;
+        }
+
+        public int[] getCells() {
+            return cells.clone();
+        }
+    }
+
+    // Number of sudokus whose engines are remembered by forPuzzle
+    private static final int CACHE_CAPACITY = 16;
+    private static final Map<Long, HintEngine> cache =
+            new LinkedHashMap<Long, HintEngine>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, HintEngine> eldest) {
+                    return size() > CACHE_CAPACITY;
+                }
+            };
+
+    private final SudokuSnapshot puzzle; // The initial values, used to check cache lookups
+    // null if the sudoku doesn't have exactly one solution, in which case there are no hints
+    private final int[] solution;
+    private final int rows;
+    // Snapshots only hold classic sudokus, so the units are the rows, columns and boxes
+    private final SudokuConstraints constraints;
+    // The units in the order the techniques look at them: boxes first, as a value missing from a box is usually the
+    // easiest thing to spot, then rows and columns
+    private final int[] unitOrder;
+
+    // Returns the engine for the sudoku made up of the initial values of sudokuData (other values are ignored), solving
+    // the sudoku if it hasn't been solved recently. This may take some time, so shouldn't be called on the main thread.
+    // The cache is shared by all threads.
+    public static HintEngine forPuzzle(SudokuData sudokuData) {
+        return forPuzzle(SudokuSnapshot.of(sudokuData));
+    }
+
+    // The same, but for a snapshot, which can be taken on the main thread and passed to a background thread as it is
+    public static HintEngine forPuzzle(SudokuSnapshot snapshot) {
+        SudokuSnapshot puzzle = snapshot.withoutNonInitialValues();
+        synchronized (cache) {
+            HintEngine engine = cache.get(puzzle.getZobristHash());
+            if (engine != null && engine.puzzle.equals(puzzle)) return engine;
+        }
+        // The sudoku is solved without holding the lock, so other threads can still look up other sudokus
+        HintEngine engine = new HintEngine(puzzle);
+        synchronized (cache) {
+            cache.put(puzzle.getZobristHash(), engine);
+        }
+        return engine;
+    }
+
+    private HintEngine(SudokuSnapshot puzzle) {
+        this.puzzle = puzzle;
+        rows = puzzle.getRows();
+        // grade changes the grid it is given while solving, so it is given a working copy
+        SolutionCache.Entry entry = SudokuSolver.grade(puzzle.toSudokuData());
+        solution = entry.getSolutionCount() == 1 ? entry.getSolution() : null;
+        constraints = SudokuConstraints.classic(puzzle.getBoxRows(), puzzle.getBoxColumns());
+        // Units 0 to 3 * rows - 1 are the rows, then the columns, then the boxes (see SudokuConstraints)
+        unitOrder = new int[3 * rows];
+        for (int i = 0; i < unitOrder.length; i++) unitOrder[i] = (i + 2 * rows) % (3 * rows);
+    }
+
+    // Returns the next step for the player's grid, given as its values (0 for empty cells) going from left to right
+    // then top to bottom, or null if there isn't one (the grid is full, or the sudoku doesn't have a unique solution).
+    // If the player has entered a value that isn't in the solution, a MISTAKE hint about it is returned instead, as no
+    // step can be trusted until it is removed.
+    // Can be called by several threads at once, as each call works out its own candidates.
+    public Hint getHint(int[] playerValues) {
+        if (solution == null || playerValues.length != solution.length) return null;
+        boolean full = true;
+        for (int index = 0; index < solution.length; index++) {
+            if (playerValues[index] != 0 && playerValues[index] != solution[index]) {
+                return new Hint(Technique.MISTAKE, index, playerValues[index], new int[]{index});
+            }
+            if (playerValues[index] == 0) full = false;
+        }
+        if (full) return null;
+        return new StepFinder(playerValues).findStep();
+    }
+
+    // The candidates of the player's grid, and the techniques which work with them
+    private class StepFinder {
+        private final int[] values; // The player's values (0 for empty cells)
+        private final int[] candidates; // Bit mask of the possible values of each empty cell (bit 0 for 1 and so on)
+        // The hardest technique used to rule out candidates so far, and the cells it looked at, as these eliminations
+        // are needed for the step to be found
+        private Technique eliminationTechnique = null;
+        private final List<Integer> eliminationCells = new ArrayList<>();
+
+        private StepFinder(int[] playerValues) {
+            values = playerValues;
+            candidates = new int[values.length];
+            Arrays.fill(candidates, (1 << rows) - 1);
+            for (int index = 0; index < values.length; index++) {
+                if (values[index] == 0) continue;
+                candidates[index] = 0;
+                for (int peer : constraints.getPeers(index)) candidates[peer] &= ~(1 << (values[index] - 1));
+            }
+        }
+
+        private Hint findStep() {
+            while (true) {
+                Hint step = findHiddenSingle();
+                if (step == null) step = findNakedSingle();
+                if (step == null) {
+                    // Ruling out candidates doesn't fill in a cell itself, so the techniques are tried again from the
+                    // easiest one afterwards
+                    if (eliminateLockedCandidates() || eliminateNakedPairs()) continue;
+                    step = revealSolution();
+                }
+                if (eliminationTechnique == null) return step;
+                // The step could only be found after ruling out candidates, so it is as hard as the technique used for
+                // that and involves the cells that technique looked at too
+                List<Integer> cells = new ArrayList<>(eliminationCells);
+                for (int cell : step.cells) {
+                    if (!cells.contains(cell)) cells.add(cell);
+                }
+                Technique technique = eliminationTechnique.compareTo(step.technique) > 0 ?
+                        eliminationTechnique : step.technique;
+                return new Hint(technique, step.index, step.value, toArray(cells));
+            }
+        }
+
+        private Hint findHiddenSingle() {
+            for (int unit : unitOrder) {
+                for (int value = 1; value <= rows; value++) {
+                    int position = -1;
+                    for (int cell : constraints.getUnitCells(unit)) {
+                        if (values[cell] == value) {
+                            position = -1;
+                            break;
+                        }
+                        if ((candidates[cell] & 1 << (value - 1)) != 0) {
+                            if (position != -1) {
+                                // There is more than one position
+                                position = -1;
+                                break;
+                            }
+                            position = cell;
+                        }
+                    }
+                    if (position != -1 && Integer.bitCount(candidates[position]) > 1) {
+                        // Cells with a single candidate are left for findNakedSingle, which is more direct
+                        return new Hint(Technique.HIDDEN_SINGLE, position, value,
+                                constraints.getUnitCells(unit).clone());
+                    }
+                }
+            }
+            return null;
+        }
+
+        private Hint findNakedSingle() {
+            for (int index = 0; index < rows * rows; index++) {
+                if (values[index] == 0 && Integer.bitCount(candidates[index]) == 1) {
+                    return new Hint(Technique.NAKED_SINGLE, index,
+                            Integer.numberOfTrailingZeros(candidates[index]) + 1, new int[]{index});
+                }
+            }
+            return null;
+        }
+
+        // If all the cells where a value can go in one unit are also in another unit, rules out the value in the rest
+        // of the other unit. Returns true if any candidates were ruled out.
+        private boolean eliminateLockedCandidates() {
+            for (int unit : unitOrder) {
+                for (int value = 1; value <= rows; value++) {
+                    int bit = 1 << (value - 1);
+                    List<Integer> positions = new ArrayList<>();
+                    for (int cell : constraints.getUnitCells(unit)) {
+                        if ((candidates[cell] & bit) != 0) positions.add(cell);
+                    }
+                    // A single position is a hidden single, which has already been looked for
+                    if (positions.size() < 2) continue;
+                    for (int other : constraints.getCellUnits(positions.get(0))) {
+                        if (other == unit || !allInUnit(positions, other)) continue;
+                        boolean eliminated = false;
+                        for (int cell : constraints.getUnitCells(other)) {
+                            if ((candidates[cell] & bit) != 0 && !positions.contains(cell)) {
+                                candidates[cell] &= ~bit;
+                                eliminated = true;
+                            }
+                        }
+                        if (eliminated) {
+                            addElimination(Technique.LOCKED_CANDIDATES, positions);
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        // If two cells in a unit have the same two candidates, rules these out in the rest of the unit. Returns true
+        // if any candidates were ruled out.
+        private boolean eliminateNakedPairs() {
+            for (int unitIndex : unitOrder) {
+                int[] unit = constraints.getUnitCells(unitIndex);
+                for (int i = 0; i < unit.length; i++) {
+                    int pair = candidates[unit[i]];
+                    if (values[unit[i]] != 0 || Integer.bitCount(pair) != 2) continue;
+                    for (int j = i + 1; j < unit.length; j++) {
+                        if (values[unit[j]] != 0 || candidates[unit[j]] != pair) continue;
+                        boolean eliminated = false;
+                        for (int cell : unit) {
+                            if (cell != unit[i] && cell != unit[j] && (candidates[cell] & pair) != 0) {
+                                candidates[cell] &= ~pair;
+                                eliminated = true;
+                            }
+                        }
+                        if (eliminated) {
+                            List<Integer> cells = new ArrayList<>();
+                            cells.add(unit[i]);
+                            cells.add(unit[j]);
+                            addElimination(Technique.NAKED_PAIR, cells);
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        // Used when no technique finds a step: takes the value of the empty cell with the fewest candidates from the
+        // solution, as this is the cell the player is most likely to be able to work out themselves
+        private Hint revealSolution() {
+            int best = -1;
+            for (int index = 0; index < rows * rows; index++) {
+                if (values[index] == 0 && (best == -1 ||
+                        Integer.bitCount(candidates[index]) < Integer.bitCount(candidates[best]))) {
+                    best = index;
+                }
+            }
+            return new Hint(Technique.SOLUTION, best, solution[best], new int[]{best});
+        }
+
+        private void addElimination(Technique technique, List<Integer> cells) {
+            if (eliminationTechnique == null || technique.compareTo(eliminationTechnique) > 0) {
+                eliminationTechnique = technique;
+            }
+            for (int cell : cells) {
+                if (!eliminationCells.contains(cell)) eliminationCells.add(cell);
+            }
+        }
+
+        private boolean allInUnit(List<Integer> cells, int unit) {
+            for (int cell : cells) {
+                if (!inUnit(cell, unit)) return false;
+            }
+            return true;
+        }
+
+        private boolean inUnit(int cell, int unit) {
+            for (int cellUnit : constraints.getCellUnits(cell)) {
+                if (cellUnit == unit) return true;
+            }
+            return false;
+        }
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] result = new int[list.size()];
+        for (int i = 0; i < list.size(); i++) result[i] = list.get(i);
+        return result;
+    }
+}
@@ -0,0 +1,105 @@
+package com.sdenisov.sudoku;
+
+import java.util.Arrays;
+
+// Counts recorded values (e.g. latencies in nanoseconds) in buckets whose width grows with the value, in the same way
+// as an HDR histogram: values below SUB_BUCKETS each have their own bucket, and above that every power of 2 is split
+// into SUB_BUCKETS / 2 equal buckets. So every value is known to within 1/64 of itself (about 2 significant digits)
+// whether it is a microsecond or an hour, while the whole range of long fits in under 4000 counts and recording a
+// value is just a few shifts and an increment.
+// The methods are synchronized so that several threads can record into one histogram while another reads it.
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+
+    // The first SUB_BUCKETS counts are for the values 0 to SUB_BUCKETS - 1, then each following group of
+    // HALF_SUB_BUCKETS counts covers the next power of 2
+    private final long[] counts = new long[SUB_BUCKETS + (Long.SIZE - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS];
+    private long count = 0;
+    private long sum = 0;
+    private long max = 0;
+
+    // Negative values (e.g. from a clock that went backwards) are recorded as 0
+    public synchronized void record(long value) {
+        if (value < 0) value = 0;
+        counts[indexFor(value)]++;
+        count++;
+        sum += value;
+        if (value > max) max = value;
+    }
+
+    // Adds all the values recorded in other to this histogram
+    public void add(LatencyHistogram other) {
+        LatencyHistogram copy = other.copy(); // So that both locks are never held at once
+        synchronized (this) {
+            for (int index = 0; index < counts.length; index++) counts[index] += copy.counts[index];
+            count += copy.count;
+            sum += copy.sum;
+            max = Math.max(max, copy.max);
+        }
+    }
+
+    public synchronized LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram();
+        System.arraycopy(counts, 0, copy.counts, 0, counts.length);
+        copy.count = count;
+        copy.sum = sum;
+        copy.max = max;
+        return copy;
+    }
+
+    // Returns a copy of the histogram and empties this one, so that values can be reported one interval at a time
+    // without losing any recorded in between
+    public synchronized LatencyHistogram copyAndReset() {
+        LatencyHistogram copy = copy();
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+        return copy;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    public synchronized double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    // Returns a value that at least the given percentage (0 to 100) of recorded values are less than or equal to.
+    // This is the highest value in the bucket holding that percentile (but no more than the maximum), so it may be
+    // slightly above the actual value but never below it.
+    public synchronized long getValueAtPercentile(double percentile) {
+        if (count == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int index = 0; index < counts.length; index++) {
+            seen += counts[index];
+            if (seen >= target) return Math.min(highestValueAt(index), max);
+        }
+        return max;
+    }
+
+    private static int indexFor(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        // The number of low bits dropped so that SUB_BUCKET_BITS bits are left, the highest of which is always 1
+        int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - HALF_SUB_BUCKETS;
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestValueAt(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        long subBucket = (index - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        long highest = ((subBucket + 1) << shift) - 1;
+        // The very last bucket would otherwise overflow
+        return highest < 0 ? Long.MAX_VALUE : highest;
+    }
+}
@@ -0,0 +1,79 @@
+package com.sdenisov.sudoku;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Checks whether the sudoku being entered in the solver has no solutions, exactly one or several while the user is
+// still typing it, so that they don't have to press Solve to find out.
+// The check runs on a background thread so that the grid stays responsive. It also only starts once the user has
+// stopped typing for DELAY_MILLIS, as otherwise a check would be started (and immediately made out of date) for every
+// digit entered in quick succession. If the sudoku changes while a check is running, that check is cancelled and its
+// result is thrown away.
+// All methods must be called on the main thread, and the listener is also called on the main thread.
+public class LiveSolutionChecker {
+    public interface Listener {
+        // solutions is 0, 1 or 2, where 2 means there are at least 2 solutions
+        void onSolutionsCounted(int solutions);
+    }
+
+    private static final long DELAY_MILLIS = 150;
+
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    // A single thread is enough, as only the latest check is ever needed
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private Runnable pendingCheck = null; // The check waiting for DELAY_MILLIS to pass, if there is one
+    private SolutionCounter runningCounter = null; // The counter used by the check that is running, if there is one
+    // Incremented whenever the sudoku changes, so that results from checks of older versions can be recognised
+    private int version = 0;
+
+    public LiveSolutionChecker(Listener listener) {
+        this.listener = listener;
+    }
+
+    // Called whenever the sudoku changes. Any check of the previous version is cancelled and a new one is started after
+    // the delay.
+    public void sudokuChanged(SudokuData sudokuData) {
+        cancel();
+        // The values are copied into the counter now, as sudokuData may have changed again by the time the check runs
+        SolutionCounter counter = new SolutionCounter(sudokuData);
+        int checkVersion = version;
+        pendingCheck = () -> {
+            pendingCheck = null;
+            runningCounter = counter;
+            executor.execute(() -> {
+                // 2 solutions are enough to know that the sudoku doesn't have a unique solution
+                int solutions = counter.countSolutions(2);
+                handler.post(() -> {
+                    // The result is only used if the sudoku hasn't changed since the check started
+                    if (checkVersion != version || solutions == SolutionCounter.CANCELLED) return;
+                    runningCounter = null;
+                    listener.onSolutionsCounted(solutions);
+                });
+            });
+        };
+        handler.postDelayed(pendingCheck, DELAY_MILLIS);
+    }
+
+    // Cancels the waiting or running check, if there is one, without starting another one
+    public void cancel() {
+        version++;
+        if (pendingCheck != null) {
+            handler.removeCallbacks(pendingCheck);
+            pendingCheck = null;
+        }
+        if (runningCounter != null) {
+            runningCounter.cancel();
+            runningCounter = null;
+        }
+    }
+
+    // Stops the background thread. The checker can't be used after this.
+    public void shutdown() {
+        cancel();
+        executor.shutdown();
+    }
+}
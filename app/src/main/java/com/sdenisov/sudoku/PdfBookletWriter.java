@@ -0,0 +1,192 @@
+package com.sdenisov.sudoku;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.pdf.PdfDocument;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Writes a booklet of sudokus to a PDF, followed by their solutions.
+// Each page is drawn as soon as its sudokus have been generated and is then finished, which turns its drawing into
+// PDF content, so only a single page's Canvas exists at any time. PdfDocument still keeps every finished page's
+// content until writeTo, as it has no way of writing pages out earlier, so the memory used does grow with the size of
+// the booklet: by the text and lines drawn on each page, but never by a bitmap. Nothing else is kept per sudoku. The
+// values needed for the solutions at the end go to a temporary file as each sudoku is drawn, and are read back one
+// at a time once all the sudokus have been drawn.
+public class PdfBookletWriter {
+    public interface ProgressListener {
+        // Called (on the writing thread) after each sudoku is drawn
+        void onProgress(int written, int total);
+    }
+
+    // The values of a sudoku and its solution, stored in the temporary file for drawing the solutions at the end of
+    // the booklet
+    private static class SolutionEntry {
+        private final int[] puzzle;
+        private final int[] solution;
+        private final int boxRows;
+        private final int boxColumns;
+
+        private SolutionEntry(int[] puzzle, int[] solution, int boxRows, int boxColumns) {
+            this.puzzle = puzzle;
+            this.solution = solution;
+            this.boxRows = boxRows;
+            this.boxColumns = boxColumns;
+        }
+
+        // Values are at most 16 (for the largest sudokus), so each fits in a byte
+        private void writeTo(DataOutputStream output) throws IOException {
+            output.writeByte(boxRows);
+            output.writeByte(boxColumns);
+            for (int value : puzzle) output.writeByte(value);
+            for (int value : solution) output.writeByte(value);
+        }
+
+        private static SolutionEntry readFrom(DataInputStream input) throws IOException {
+            int boxRows = input.readUnsignedByte();
+            int boxColumns = input.readUnsignedByte();
+            int cells = boxRows * boxColumns * boxRows * boxColumns;
+            int[] puzzle = new int[cells];
+            int[] solution = new int[cells];
+            for (int index = 0; index < cells; index++) puzzle[index] = input.readUnsignedByte();
+            for (int index = 0; index < cells; index++) solution[index] = input.readUnsignedByte();
+            return new SolutionEntry(puzzle, solution, boxRows, boxColumns);
+        }
+    }
+
+    // A4 page in points (1/72 inch), which is the unit used by PdfDocument
+    private static final int PAGE_WIDTH = 595;
+    private static final int PAGE_HEIGHT = 842;
+    private static final int MARGIN = 36;
+    private static final int TITLE_SIZE = 12; // Size of the text above each grid
+    // Number of grids across and down each page. Solutions are drawn smaller, so more fit on a page.
+    private static final int PUZZLE_COLUMNS = 2;
+    private static final int PUZZLE_ROWS = 3;
+    private static final int SOLUTION_COLUMNS = 3;
+    private static final int SOLUTION_ROWS = 4;
+    private static final String[] DIFFICULTY_NAMES = {"Easy", "Medium", "Hard", "Unlimited"};
+
+    private final PdfDocument document = new PdfDocument();
+    private final Paint linePaint = new Paint();
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private PdfDocument.Page page = null; // The page being drawn, if there is one
+    private int pageNumber = 0;
+    private int slot = 0; // Position of the next grid on the page
+
+    private PdfBookletWriter() {
+        linePaint.setColor(Color.BLACK);
+        textPaint.setColor(Color.BLACK);
+        textPaint.setTextAlign(Paint.Align.CENTER);
+    }
+
+    // Writes total sudokus from source to output, numbering them from 1. The solutions are stored in a temporary file
+    // in temporaryDirectory while the sudokus are being drawn, which is deleted afterwards. Throws
+    // InterruptedException if the thread is interrupted, in which case output is left incomplete.
+    public static void write(BookletPuzzleSource source, int total, OutputStream output, File temporaryDirectory,
+                             ProgressListener listener) throws IOException, InterruptedException {
+        PdfBookletWriter writer = new PdfBookletWriter();
+        File solutionsFile = File.createTempFile("solutions", null, temporaryDirectory);
+        try {
+            int count = 0;
+            try (DataOutputStream solutions =
+                         new DataOutputStream(new BufferedOutputStream(new FileOutputStream(solutionsFile)))) {
+                for (int number = 1; source.hasNext(); number++) {
+                    BookletPuzzleSource.Puzzle puzzle = source.next();
+                    SudokuData sudoku = puzzle.getSudoku();
+                    int[] values = SolutionCache.getValues(sudoku);
+                    String title = number + ". " + sudoku.getRows() + "x" + sudoku.getRows() + " " +
+                            DIFFICULTY_NAMES[puzzle.getDifficulty() - 1];
+                    writer.drawInNextSlot(title, values, null, sudoku.getBoxRows(), sudoku.getBoxColumns(),
+                            PUZZLE_COLUMNS, PUZZLE_ROWS);
+                    new SolutionEntry(values, puzzle.getSolution(), sudoku.getBoxRows(), sudoku.getBoxColumns())
+                            .writeTo(solutions);
+                    count++;
+                    listener.onProgress(number, total);
+                }
+            }
+            writer.finishPage(); // The solutions start on a new page
+            try (DataInputStream solutions =
+                         new DataInputStream(new BufferedInputStream(new FileInputStream(solutionsFile)))) {
+                for (int i = 0; i < count; i++) {
+                    SolutionEntry entry = SolutionEntry.readFrom(solutions);
+                    writer.drawInNextSlot("Solution " + (i + 1), entry.puzzle, entry.solution, entry.boxRows,
+                            entry.boxColumns, SOLUTION_COLUMNS, SOLUTION_ROWS);
+                }
+            }
+            writer.finishPage();
+            writer.document.writeTo(output);
+        } finally {
+            writer.document.close();
+            solutionsFile.delete();
+        }
+    }
+
+    // Draws a grid with a title above it in the next free space on the page, starting a new page if necessary. The
+    // values of puzzle are drawn in black. If solution isn't null, the values it adds are drawn in grey.
+    private void drawInNextSlot(String title, int[] puzzle, int[] solution, int boxRows, int boxColumns,
+                                int columnsPerPage, int rowsPerPage) {
+        if (page == null) {
+            pageNumber++;
+            page = document.startPage(new PdfDocument.PageInfo.Builder(PAGE_WIDTH, PAGE_HEIGHT, pageNumber).create());
+            slot = 0;
+        }
+        float slotWidth = (float) (PAGE_WIDTH - MARGIN * 2) / columnsPerPage;
+        float slotHeight = (float) (PAGE_HEIGHT - MARGIN * 2) / rowsPerPage;
+        // The grid is a square filling the slot below the title, with a gap of one title height around it
+        float gridSize = Math.min(slotWidth, slotHeight - TITLE_SIZE * 2) - TITLE_SIZE;
+        float left = MARGIN + slot % columnsPerPage * slotWidth + (slotWidth - gridSize) / 2;
+        float top = MARGIN + slot / columnsPerPage * slotHeight + TITLE_SIZE * 2;
+
+        Canvas canvas = page.getCanvas();
+        textPaint.setTextSize(TITLE_SIZE);
+        textPaint.setColor(Color.BLACK);
+        canvas.drawText(title, left + gridSize / 2, top - TITLE_SIZE / 2f, textPaint);
+        drawGrid(canvas, puzzle, solution, boxRows, boxColumns, left, top, gridSize);
+
+        slot++;
+        if (slot == columnsPerPage * rowsPerPage) finishPage();
+    }
+
+    private void drawGrid(Canvas canvas, int[] puzzle, int[] solution, int boxRows, int boxColumns, float left,
+                          float top, float size) {
+        int rows = boxRows * boxColumns;
+        float cellSize = size / rows;
+        // Lines between boxes are thicker than lines between cells. Each box is boxRows cells wide and boxColumns cells
+        // tall (see SudokuConstraints.classic).
+        for (int i = 0; i <= rows; i++) {
+            linePaint.setStrokeWidth(i % boxRows == 0 ? 1.5f : 0.5f);
+            canvas.drawLine(left + i * cellSize, top, left + i * cellSize, top + size, linePaint);
+            linePaint.setStrokeWidth(i % boxColumns == 0 ? 1.5f : 0.5f);
+            canvas.drawLine(left, top + i * cellSize, left + size, top + i * cellSize, linePaint);
+        }
+        textPaint.setTextSize(cellSize * 0.6f);
+        Paint.FontMetrics metrics = textPaint.getFontMetrics();
+        float baseline = -(metrics.ascent + metrics.descent) / 2; // Distance from the centre of a cell to the baseline
+        for (int index = 0; index < rows * rows; index++) {
+            int value = puzzle[index];
+            textPaint.setColor(Color.BLACK);
+            if (value == 0 && solution != null) {
+                value = solution[index];
+                textPaint.setColor(Color.GRAY);
+            }
+            if (value == 0) continue;
+            canvas.drawText(String.valueOf(value), left + (index % rows + 0.5f) * cellSize,
+                    top + (index / rows + 0.5f) * cellSize + baseline, textPaint);
+        }
+    }
+
+    private void finishPage() {
+        if (page == null) return;
+        document.finishPage(page);
+        page = null;
+    }
+}
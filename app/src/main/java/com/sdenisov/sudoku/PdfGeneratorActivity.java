@@ -1,12 +1,198 @@
 package com.sdenisov.sudoku;
 
 import android.app.Activity;
+import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
+import android.text.InputFilter;
+import android.text.InputType;
+import android.view.View;
+import android.widget.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Lets the user choose how many sudokus of each size and difficulty to include in a booklet, then generates them and
+// saves them as a PDF (see PdfBookletWriter) to a file chosen by the user
+public class PdfGeneratorActivity extends Activity implements BookletExport.Listener {
+    private static final int CREATE_DOCUMENT_REQUEST = 1;
+    private static final String[] SIZE_NAMES = {"6x6", "9x9", "12x12"};
+    // The boxRows and boxColumns of each size, as in SudokuGridActivity
+    private static final int[][] SIZE_BOXES = {{3, 2}, {3, 3}, {4, 3}};
+    private static final String[] DIFFICULTY_NAMES = {"Easy", "Medium", "Hard", "Unlimited"};
+    // The most sudokus of one size and difficulty in a booklet, so that a mistyped count can't mean hours of
+    // generating. The fields also only take MAX_COUNT_DIGITS digits, so a count always fits in an int.
+    private static final int MAX_COUNT = 200;
+    private static final int MAX_COUNT_DIGITS = 3;
+    // Keys for the instance state
+    private static final String STATE_COUNTS = "counts";
+    private static final String STATE_CHOSEN_COUNTS = "chosen_counts";
+
+    // The number of sudokus of each size (first index) and difficulty (second index, starting from easy)
+    private final EditText[][] counts = new EditText[SIZE_NAMES.length][DIFFICULTY_NAMES.length];
+    // The counts when the user pressed the button, kept while they choose the file. The count for a size and
+    // difficulty is at size * DIFFICULTY_NAMES.length + difficulty.
+    private int[] chosenCounts = null;
+    private BookletExport export = null; // The booklet being written, if there is one
 
-public class PdfGeneratorActivity extends Activity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_pdf_generator);
+        createCountTable();
+        if (savedInstanceState != null) {
+            // The count fields are created here rather than in the layout, so they have no IDs and Android can't
+            // restore their text itself
+            String[] countTexts = savedInstanceState.getStringArray(STATE_COUNTS);
+            if (countTexts != null) {
+                for (int i = 0; i < countTexts.length; i++) {
+                    counts[i / DIFFICULTY_NAMES.length][i % DIFFICULTY_NAMES.length].setText(countTexts[i]);
+                }
+            }
+            chosenCounts = savedInstanceState.getIntArray(STATE_CHOSEN_COUNTS);
+        }
+        // A booklet that was being written when the activity was recreated (e.g. because the screen was rotated)
+        // carries on, and this activity now shows its progress
+        export = (BookletExport) getLastNonConfigurationInstance();
+        if (export != null) {
+            showExporting(export.getTotal());
+            export.setListener(this);
+        }
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        String[] countTexts = new String[SIZE_NAMES.length * DIFFICULTY_NAMES.length];
+        for (int i = 0; i < countTexts.length; i++) {
+            countTexts[i] = counts[i / DIFFICULTY_NAMES.length][i % DIFFICULTY_NAMES.length].getText().toString();
+        }
+        outState.putStringArray(STATE_COUNTS, countTexts);
+        if (chosenCounts != null) outState.putIntArray(STATE_CHOSEN_COUNTS, chosenCounts);
+    }
+
+    // Keeps the booklet being written when the activity is only being recreated, which onCreate gets back
+    @Override
+    public Object onRetainNonConfigurationInstance() {
+        return export;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (export == null) return;
+        if (isChangingConfigurations()) {
+            export.setListener(null); // The new activity becomes the listener in onCreate
+        } else {
+            // The user has left, so there would be no way to tell them when the booklet is finished
+            export.cancel();
+        }
+    }
+
+    // Creates a table with a row for each size and a column for each difficulty, containing the number of sudokus
+    private void createCountTable() {
+        TableLayout table = findViewById(R.id.table_counts);
+        TableRow header = new TableRow(this);
+        header.addView(new TextView(this)); // Above the size names
+        for (String difficultyName : DIFFICULTY_NAMES) {
+            TextView label = new TextView(this);
+            label.setText(difficultyName);
+            header.addView(label);
+        }
+        table.addView(header);
+        for (int size = 0; size < SIZE_NAMES.length; size++) {
+            TableRow row = new TableRow(this);
+            TextView label = new TextView(this);
+            label.setText(SIZE_NAMES[size]);
+            row.addView(label);
+            for (int difficulty = 0; difficulty < DIFFICULTY_NAMES.length; difficulty++) {
+                EditText count = new EditText(this);
+                count.setInputType(InputType.TYPE_CLASS_NUMBER);
+                count.setFilters(new InputFilter[]{new InputFilter.LengthFilter(MAX_COUNT_DIGITS)});
+                count.setHint("0");
+                row.addView(count);
+                counts[size][difficulty] = count;
+            }
+            table.addView(row);
+        }
+    }
+
+    // Called when the button is pressed. Asks the user where to save the booklet, which is then written in
+    // onActivityResult.
+    public void export(View view) {
+        int[] chosen = new int[SIZE_NAMES.length * DIFFICULTY_NAMES.length];
+        int total = 0;
+        for (int size = 0; size < SIZE_NAMES.length; size++) {
+            for (int difficulty = 0; difficulty < DIFFICULTY_NAMES.length; difficulty++) {
+                String text = counts[size][difficulty].getText().toString();
+                // The input type only allows digits, but the text could still be empty
+                int count;
+                try {
+                    count = text.isEmpty() ? 0 : Integer.parseInt(text);
+                } catch (NumberFormatException e) {
+                    count = 0;
+                }
+                if (count > MAX_COUNT) {
+                    Toast.makeText(this, getString(R.string.booklet_too_many, MAX_COUNT), Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                chosen[size * DIFFICULTY_NAMES.length + difficulty] = count;
+                total += count;
+            }
+        }
+        if (total == 0) {
+            Toast.makeText(this, R.string.booklet_empty, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        chosenCounts = chosen;
+        Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("application/pdf");
+        intent.putExtra(Intent.EXTRA_TITLE, "sudoku_booklet.pdf");
+        startActivityForResult(intent, CREATE_DOCUMENT_REQUEST);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode != CREATE_DOCUMENT_REQUEST || resultCode != RESULT_OK || data == null) return;
+        if (chosenCounts == null || export != null) return;
+        Uri uri = data.getData();
+        // One request for each size and difficulty, which BookletPuzzleSource turns into that many sudokus
+        List<BookletPuzzleSource.Request> requests = new ArrayList<>();
+        for (int size = 0; size < SIZE_NAMES.length; size++) {
+            for (int difficulty = 0; difficulty < DIFFICULTY_NAMES.length; difficulty++) {
+                int count = chosenCounts[size * DIFFICULTY_NAMES.length + difficulty];
+                if (count == 0) continue;
+                requests.add(new BookletPuzzleSource.Request(SIZE_BOXES[size][0], SIZE_BOXES[size][1],
+                        difficulty + 1, count));
+            }
+        }
+        chosenCounts = null;
+        export = new BookletExport(this, uri, requests);
+        showExporting(export.getTotal());
+        export.setListener(this);
+    }
+
+    @Override
+    public void onProgress(int written, int total) {
+        ProgressBar progress = findViewById(R.id.export_progress);
+        progress.setProgress(written);
+    }
+
+    @Override
+    public void onFinished(int message) {
+        export = null;
+        findViewById(R.id.button).setEnabled(true);
+        findViewById(R.id.export_progress).setVisibility(View.INVISIBLE);
+        Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
+    }
+
+    private void showExporting(int total) {
+        findViewById(R.id.button).setEnabled(false); // Only one booklet is written at a time
+        ProgressBar progress = findViewById(R.id.export_progress);
+        progress.setMax(total);
+        progress.setProgress(0);
+        progress.setVisibility(View.VISIBLE);
     }
 }
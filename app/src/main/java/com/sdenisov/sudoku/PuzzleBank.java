@@ -0,0 +1,186 @@
+package com.sdenisov.sudoku;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Keeps a number of generated sudokus ready for each size and difficulty, so that handing one out (e.g. to a request
+// to SudokuHttpService) doesn't have to wait for the generator, which can take a second or more for hard 12x12 sudokus.
+// Each kind of sudoku has its own queue, which is filled by background threads when the bank is started and topped up
+// again whenever a sudoku is taken from it. If a queue is empty (because sudokus of that kind are being taken faster
+// than they can be generated), take waits for the refill up to a time limit and then gives up, rather than generating
+// a sudoku on the calling thread, which could take far longer than a caller answering requests can wait.
+public class PuzzleBank {
+    // A generated sudoku and its solution, both going from left to right then top to bottom
+    public static class Puzzle {
+        private final int[] values;
+        private final int[] solution;
+        private final int boxRows;
+        private final int boxColumns;
+        private final int difficulty;
+
+        private Puzzle(int[] values, int[] solution, int boxRows, int boxColumns, int difficulty) {
+            this.values = values;
+            this.solution = solution;
+            this.boxRows = boxRows;
+            this.boxColumns = boxColumns;
+            this.difficulty = difficulty;
+        }
+
+        public int[] getValues() {
+            return values;
+        }
+
+        public int[] getSolution() {
+            return solution;
+        }
+
+        public int getBoxRows() {
+            return boxRows;
+        }
+
+        public int getBoxColumns() {
+            return boxColumns;
+        }
+
+        public int getDifficulty() {
+            return difficulty;
+        }
+    }
+
+    // The boxRows and boxColumns of each size, as in SudokuGridActivity. Only these sizes are kept in the bank.
+    private static final int[][] SIZE_BOXES = {{3, 2}, {3, 3}, {4, 3}};
+    private static final int DIFFICULTIES = 4;
+
+    // The queue for each size (outer list) and difficulty (inner list, starting from easy). These are lists rather than
+    // an array, as Java can't create arrays of a generic type.
+    private final List<List<BlockingQueue<Puzzle>>> queues;
+    // Whether a task to fill each queue has been given to the executor and hasn't finished yet, so that taking many
+    // sudokus at once only starts a single task
+    private final AtomicBoolean[][] refilling;
+    private final ExecutorService executor;
+    private volatile boolean closed = false;
+
+    public PuzzleBank(int capacity, int threads) {
+        queues = new ArrayList<>(SIZE_BOXES.length);
+        refilling = new AtomicBoolean[SIZE_BOXES.length][DIFFICULTIES];
+        for (int size = 0; size < SIZE_BOXES.length; size++) {
+            List<BlockingQueue<Puzzle>> sizeQueues = new ArrayList<>(DIFFICULTIES);
+            for (int difficulty = 0; difficulty < DIFFICULTIES; difficulty++) {
+                sizeQueues.add(new ArrayBlockingQueue<>(capacity));
+                refilling[size][difficulty] = new AtomicBoolean();
+            }
+            queues.add(sizeQueues);
+        }
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "puzzle-bank");
+            thread.setDaemon(true);
+            // Generating is less urgent than answering requests, which may be waiting on the same cores
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    // Starts filling every queue in the background
+    public void start() {
+        for (int size = 0; size < SIZE_BOXES.length; size++) {
+            for (int difficulty = 0; difficulty < DIFFICULTIES; difficulty++) refill(size, difficulty);
+        }
+    }
+
+    // Returns true if sudokus with these box dimensions are kept in the bank
+    public static boolean isSupported(int boxRows, int boxColumns) {
+        return findSize(boxRows, boxColumns) != -1;
+    }
+
+    // Returns a sudoku with the given difficulty (1 to 4) and size, which must be supported. It is removed from the
+    // bank, so no other caller gets the same sudoku. If there are none ready, this waits up to timeoutMillis for one
+    // to be generated, and returns null if there still isn't one (or straight away if the bank is closed).
+    public Puzzle take(int difficulty, int boxRows, int boxColumns, long timeoutMillis) {
+        int size = findSize(boxRows, boxColumns);
+        if (size == -1 || difficulty < 1 || difficulty > DIFFICULTIES) {
+            throw new IllegalArgumentException("Unsupported sudoku " + boxRows + "x" + boxColumns + " difficulty " +
+                    difficulty);
+        }
+        BlockingQueue<Puzzle> queue = queues.get(size).get(difficulty - 1);
+        Puzzle puzzle = queue.poll();
+        refill(size, difficulty - 1);
+        if (puzzle == null && !closed && timeoutMillis > 0) {
+            try {
+                puzzle = queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // The refill may have filled the queue and finished before this took a sudoku from it, so the queue is
+            // topped up again
+            refill(size, difficulty - 1);
+        }
+        return puzzle;
+    }
+
+    // Returns the number of sudokus ready for each size and difficulty combined
+    public int available() {
+        int result = 0;
+        for (List<BlockingQueue<Puzzle>> sizeQueues : queues) {
+            for (BlockingQueue<Puzzle> queue : sizeQueues) result += queue.size();
+        }
+        return result;
+    }
+
+    // Stops generating sudokus. The sudokus already generated can still be taken.
+    public void close() {
+        closed = true;
+        executor.shutdownNow();
+    }
+
+    private void refill(int size, int difficultyIndex) {
+        BlockingQueue<Puzzle> queue = queues.get(size).get(difficultyIndex);
+        AtomicBoolean running = refilling[size][difficultyIndex];
+        if (closed || queue.remainingCapacity() == 0 || !running.compareAndSet(false, true)) return;
+        try {
+            executor.execute(() -> fill(size, difficultyIndex));
+        } catch (RejectedExecutionException e) {
+            running.set(false); // close was called after closed was checked
+        }
+    }
+
+    private void fill(int size, int difficultyIndex) {
+        BlockingQueue<Puzzle> queue = queues.get(size).get(difficultyIndex);
+        AtomicBoolean running = refilling[size][difficultyIndex];
+        // Every sudoku generated by this task has the same size, so they can all use one workspace
+        SudokuGenerator.Workspace workspace = new SudokuGenerator.Workspace(SIZE_BOXES[size][0], SIZE_BOXES[size][1]);
+        try {
+            // offer fails once the queue is full, so the last sudoku generated may be thrown away. This is simpler
+            // than reserving space before generating, and only happens once per refill.
+            while (!closed && queue.remainingCapacity() > 0) {
+                if (!queue.offer(generate(difficultyIndex + 1, workspace))) break;
+            }
+        } finally {
+            running.set(false);
+        }
+        // A take between the last check of the queue and running being cleared would have seen running set, and so
+        // not started a refill of its own. So the queue is checked again now that another refill can start.
+        refill(size, difficultyIndex);
+    }
+
+    private static Puzzle generate(int difficulty, SudokuGenerator.Workspace workspace) {
+        SudokuData sudoku = SudokuGenerator.generate(difficulty, workspace);
+        int[] values = SolutionCache.getValues(sudoku);
+        SudokuSolver.solve(sudoku, 1);
+        return new Puzzle(values, SolutionCache.getValues(sudoku), sudoku.getBoxRows(), sudoku.getBoxColumns(),
+                difficulty);
+    }
+
+    private static int findSize(int boxRows, int boxColumns) {
+        for (int size = 0; size < SIZE_BOXES.length; size++) {
+            if (SIZE_BOXES[size][0] == boxRows && SIZE_BOXES[size][1] == boxColumns) return size;
+        }
+        return -1;
+    }
+}
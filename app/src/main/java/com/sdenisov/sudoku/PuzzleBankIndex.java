@@ -0,0 +1,71 @@
+package com.sdenisov.sudoku;
+
+// A set of sudoku fingerprints (see SudokuCanonicaliser.fingerprint), used to skip sudokus that are transformations of
+// ones already in a bank. Only the 64-bit fingerprints are stored, in a single array, so each sudoku takes up 8-16
+// bytes no matter how large it is - so millions of sudokus can be checked as they are generated without keeping the
+// sudokus themselves.
+// A different sudoku with the same fingerprint would be wrongly treated as a duplicate, but with 64 bits this is
+// extremely unlikely even for very large banks.
+// The methods are synchronized so that several generator threads can share one index.
+public class PuzzleBankIndex {
+    // Fingerprints are stored in an array using open addressing: a fingerprint is placed at the index given by its
+    // value, or the next free index after that. 0 marks a free index, so a fingerprint of 0 is stored as 1 instead.
+    private long[] table;
+    private int size = 0;
+
+    public PuzzleBankIndex(int expectedSize) {
+        // The table is kept at most half full, so that free indexes are found quickly
+        int capacity = 16;
+        while (capacity < expectedSize * 2L) capacity *= 2;
+        table = new long[capacity];
+    }
+
+    public PuzzleBankIndex() {
+        this(16);
+    }
+
+    // Adds the fingerprint, returning true if it is new and false if it was already in the index (i.e. the sudoku is a
+    // duplicate)
+    public synchronized boolean add(long fingerprint) {
+        if (fingerprint == 0) fingerprint = 1;
+        if (!insert(table, fingerprint)) return false;
+        size++;
+        if (size * 2 > table.length) {
+            long[] oldTable = table;
+            table = new long[oldTable.length * 2];
+            for (long oldFingerprint : oldTable) {
+                if (oldFingerprint != 0) insert(table, oldFingerprint);
+            }
+        }
+        return true;
+    }
+
+    public synchronized boolean contains(long fingerprint) {
+        if (fingerprint == 0) fingerprint = 1;
+        for (int index = indexFor(table, fingerprint); table[index] != 0; index = (index + 1) & (table.length - 1)) {
+            if (table[index] == fingerprint) return true;
+        }
+        return false;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Places the fingerprint at the first free index from indexFor, returning false if it was found on the way
+    private static boolean insert(long[] table, long fingerprint) {
+        int index = indexFor(table, fingerprint);
+        while (table[index] != 0) {
+            if (table[index] == fingerprint) return false;
+            // The table's length is a power of 2 so this wraps round to 0 at the end of the table
+            index = (index + 1) & (table.length - 1);
+        }
+        table[index] = fingerprint;
+        return true;
+    }
+
+    // Fingerprints are already well mixed hashes, so their lowest bits can be used directly as the index
+    private static int indexFor(long[] table, long fingerprint) {
+        return (int) fingerprint & (table.length - 1);
+    }
+}
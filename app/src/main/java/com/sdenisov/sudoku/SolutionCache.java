@@ -0,0 +1,106 @@
+package com.sdenisov.sudoku;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Remembers the results of solving recent sudokus, so that solving the same sudoku again (e.g. pressing Solve, Unsolve
+// then Solve in the solver, or the generator reaching a sudoku it has already rated) is just a lookup.
+// Sudokus are looked up using their Zobrist hash (see SudokuData.getZobristHash), which costs nothing to get. As
+// different sudokus could have the same hash, each entry also stores the values it was created from, and these are
+// compared on every lookup.
+// When the cache is full, the entry which was used least recently is removed.
+// The methods are synchronized so that a single cache can be shared by several threads.
+public class SolutionCache {
+    // The result of solving a single sudoku
+    public static class Entry {
+        private final int[] values; // The values of the sudoku (0 for empty cells), used to check lookups
+        private final int[] solution; // Solution found trying notes in increasing order, or null if there's none
+        private final int[] reverseSolution; // Solution found trying notes in decreasing order, or null if there's none
+        private final int difficulty; // As returned by SudokuSolver.solve
+
+        public Entry(int[] values, int[] solution, int[] reverseSolution, int difficulty) {
+            this.values = values;
+            this.solution = solution;
+            this.reverseSolution = reverseSolution;
+            this.difficulty = difficulty;
+        }
+
+        public int[] getSolution() {
+            return solution;
+        }
+
+        public int getDifficulty() {
+            return difficulty;
+        }
+
+        // Returns 0, 1 or 2, where 2 means there are at least 2 solutions. The two solutions are found by solvers that
+        // go through the same search tree but in opposite orders, so they are the same exactly when there is only one
+        // solution.
+        public int getSolutionCount() {
+            if (solution == null) return 0;
+            return findDifferingIndexes().isEmpty() ? 1 : 2;
+        }
+
+        // Returns the indexes of cells where the two solutions differ (a new list each time, so it can be modified).
+        // Adding a clue to one of these cells rules out at least one of the solutions.
+        public List<Integer> findDifferingIndexes() {
+            List<Integer> result = new ArrayList<>();
+            if (solution == null) return result;
+            for (int index = 0; index < solution.length; index++) {
+                if (solution[index] != reverseSolution[index]) result.add(index);
+            }
+            return result;
+        }
+    }
+
+    private final Map<Long, Entry> entries;
+
+    public SolutionCache(int capacity) {
+        // With accessOrder set to true, the LinkedHashMap keeps its entries ordered from least to most recently used,
+        // and removeEldestEntry is called after each insertion to remove the least recently used entry if necessary
+        entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, SolutionCache.Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    // Returns the entry for the sudoku's current values, or null if it isn't in the cache
+    public synchronized Entry get(SudokuData sudokuData) {
+        Entry entry = entries.get(sudokuData.getZobristHash());
+        if (entry == null || !hasValues(sudokuData, entry.values)) return null;
+        return entry;
+    }
+
+    // Adds an entry for the sudoku's current values, replacing any entry with the same hash
+    public synchronized void put(SudokuData sudokuData, int[] solution, int[] reverseSolution, int difficulty) {
+        entries.put(sudokuData.getZobristHash(),
+                new Entry(getValues(sudokuData), solution, reverseSolution, difficulty));
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    // Returns the values of the sudoku, going from left to right then top to bottom with 0 for empty cells
+    public static int[] getValues(SudokuData sudokuData) {
+        int[] result = new int[sudokuData.getRows() * sudokuData.getRows()];
+        for (int index = 0; index < result.length; index++) {
+            Integer value = sudokuData.getValue(index).getValue();
+            result[index] = value == null ? 0 : value;
+        }
+        return result;
+    }
+
+    private static boolean hasValues(SudokuData sudokuData, int[] values) {
+        if (values.length != sudokuData.getRows() * sudokuData.getRows()) return false;
+        for (int index = 0; index < values.length; index++) {
+            Integer value = sudokuData.getValue(index).getValue();
+            if (values[index] != (value == null ? 0 : value)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,387 @@
+package com.sdenisov.sudoku;
+
+import java.util.Random;
+
+// Counts the solutions of a sudoku using bitmasks rather than SudokuCell objects and notes arrays. Unlike SudokuSolver,
+// this doesn't rate the difficulty - it only answers "how many solutions are there?" (up to a limit), which is all that
+// is needed for checking uniqueness.
+// The values are kept between calls, with the mask of each unit (row, column, box or any other unit of the
+// constraints) updated whenever a single value is set or removed. This means that many puzzles differing by a single
+// clue can be checked one after another without loading the grid again each time, which is what SudokuMinimiser
+// relies on.
+public class SolutionCounter {
+    private final int rows;
+    private final SudokuConstraints constraints;
+    // Value of each cell, going from left to right then top to bottom. 0 represents an empty cell.
+    private final int[] values;
+    // Bit (value - 1) is set if the value is present in the unit. E.g. 0b101 means 1 and 3 are present.
+    private final int[] unitMasks;
+    // Number of times each value appears in each unit, at index (unit * rows + value - 1). These are only needed so
+    // that setValue keeps the masks correct when the input contains duplicates (e.g. while the user is still typing a
+    // puzzle), as removing one of two equal values must leave the bit set.
+    private final int[] unitCounts;
+    private int duplicates = 0; // Number of (unit, value) pairs where the value appears more than once in the unit
+    // Copied from the constraints, so that they don't have to be looked up through method calls in the search
+    private final int[][] cellUnits;
+    private final int[][] unitCells;
+    private final int[] unitSums;
+    // The units with a cell for every value, used to look for values with only one possible cell in a unit
+    private final int[] fullUnits;
+    // True if any unit is a cage with a sum, which has to be checked as values are placed
+    private final boolean hasSums;
+    private final int allValuesMask;
+
+    // Results of searchRandomly
+    private static final int FOUND = 1;
+    private static final int NOT_FOUND = 0;
+    private static final int GAVE_UP = -1;
+    private long placementsLeft; // Number of values searchRandomly can place before it gives up
+
+    // Zobrist hash of the values (see SudokuData.getZobristHash), used to look up grids in the transposition table
+    private final long[] zobristKeys;
+    private long zobristHash = 0;
+    private int emptyCells;
+    private TranspositionTable transpositionTable = null;
+    // Set by cancel, which may be called from another thread, so it is volatile so that the search sees the change
+    private volatile boolean cancelled = false;
+
+    // Returned by countSolutions if cancel was called while it was running
+    public static final int CANCELLED = -1;
+
+    public SolutionCounter(int boxRows, int boxColumns) {
+        this(SudokuConstraints.classic(boxRows, boxColumns));
+    }
+
+    public SolutionCounter(SudokuConstraints constraints) {
+        this.constraints = constraints;
+        rows = constraints.getRows();
+        int units = constraints.getUnitCount();
+        values = new int[rows * rows];
+        unitMasks = new int[units];
+        unitCounts = new int[units * rows];
+        cellUnits = new int[rows * rows][];
+        for (int index = 0; index < rows * rows; index++) cellUnits[index] = constraints.getCellUnits(index);
+        unitCells = new int[units][];
+        unitSums = new int[units];
+        int fullUnitCount = 0;
+        boolean sums = false;
+        for (int unit = 0; unit < units; unit++) {
+            unitCells[unit] = constraints.getUnitCells(unit);
+            unitSums[unit] = constraints.getUnitSum(unit);
+            if (constraints.isFullUnit(unit)) fullUnitCount++;
+            if (unitSums[unit] != 0) sums = true;
+        }
+        hasSums = sums;
+        fullUnits = new int[fullUnitCount];
+        fullUnitCount = 0;
+        for (int unit = 0; unit < units; unit++) {
+            if (constraints.isFullUnit(unit)) fullUnits[fullUnitCount++] = unit;
+        }
+        // All bits from 0 to rows - 1 are set
+        allValuesMask = (1 << rows) - 1;
+        zobristKeys = SudokuData.getZobristKeys(rows);
+        emptyCells = rows * rows;
+    }
+
+    // Creates a counter containing every value of sudokuData (whether initial or not), as the solver would also treat
+    // all of these values as fixed.
+    public SolutionCounter(SudokuData sudokuData) {
+        this(sudokuData.getConstraints());
+        for (int index = 0; index < rows * rows; index++) {
+            Integer value = sudokuData.getValue(index).getValue();
+            if (value != null) setValue(index, value);
+        }
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getBoxRows() {
+        return constraints.getBoxRows();
+    }
+
+    public int getBoxColumns() {
+        return constraints.getBoxColumns();
+    }
+
+    public SudokuConstraints getConstraints() {
+        return constraints;
+    }
+
+    // If a transposition table is set (it is null by default), grids found to have no solutions are recorded in it and
+    // skipped if they are reached again. This helps most when counting solutions of sparse grids, where the same grid
+    // is often reached by guessing values in different orders. A table can be shared by several counters of the same
+    // size and constraints, even if they have different initial values, as long as they are used by a single thread.
+    public void setTranspositionTable(TranspositionTable transpositionTable) {
+        this.transpositionTable = transpositionTable;
+    }
+
+    // Returns the value at the index, with 0 meaning the cell is empty
+    public int getValue(int index) {
+        return values[index];
+    }
+
+    // Sets the value at the index, replacing the previous value if there is one. A value of 0 empties the cell.
+    // Duplicates are allowed - if there are any then countSolutions will simply return 0.
+    public void setValue(int index, int value) {
+        if (values[index] != 0) {
+            for (int unit : cellUnits[index]) updateCount(unit, values[index], -1);
+        }
+        zobristHash ^= zobristKey(index, values[index]) ^ zobristKey(index, value);
+        if (values[index] == 0) emptyCells--;
+        if (value == 0) emptyCells++;
+        values[index] = value;
+        if (value != 0) {
+            for (int unit : cellUnits[index]) updateCount(unit, value, 1);
+        }
+    }
+
+    public boolean hasDuplicates() {
+        return duplicates > 0;
+    }
+
+    // Returns the values that can be placed in the cell without clashing with any of its units, as a bitmask
+    public int getCandidates(int index) {
+        // Every cell's first three units are its row, column and box (see SudokuConstraints.getCellUnits), so these
+        // are looked up directly, keeping classic sudokus as fast as when they were the only units
+        int[] units = cellUnits[index];
+        int present = unitMasks[units[0]] | unitMasks[units[1]] | unitMasks[units[2]];
+        for (int i = 3; i < units.length; i++) present |= unitMasks[units[i]];
+        return allValuesMask & ~present;
+    }
+
+    // Returns the number of solutions, stopping as soon as `limit` solutions have been found. So a limit of 2 is
+    // enough to tell apart "no solutions", "exactly one solution" and "multiple solutions".
+    // Returns CANCELLED if cancel is called before it finishes.
+    public int countSolutions(int limit) {
+        if (limit <= 0 || hasDuplicates() || !sumsPossible()) return 0;
+        int found = search(limit);
+        return cancelled ? CANCELLED : found;
+    }
+
+    // Makes a countSolutions call running on another thread stop as soon as possible, and any later calls return
+    // CANCELLED straight away. Used when the result is no longer needed (e.g. the user has changed the sudoku).
+    public void cancel() {
+        cancelled = true;
+    }
+
+    // Returns true if there is a solution where the cell at the index has a value other than `value`. The cell must be
+    // empty. If the puzzle with `value` placed in the cell has exactly one solution, then this returning false means
+    // the puzzle with the cell empty still has exactly one solution - i.e. the clue wasn't needed. This is much
+    // cheaper than counting up to 2 solutions, as the search is restricted to the part of the tree the known solution
+    // isn't in.
+    public boolean hasSolutionWithout(int index, int value) {
+        if (hasDuplicates() || !sumsPossible()) return false;
+        int candidates = getCandidates(index) & ~(1 << (value - 1));
+        while (candidates != 0) {
+            int bit = candidates & -candidates; // Lowest set bit
+            candidates ^= bit;
+            setValue(index, Integer.numberOfTrailingZeros(bit) + 1);
+            boolean found = search(1) > 0;
+            setValue(index, 0);
+            if (found) return true;
+        }
+        return false;
+    }
+
+    // Fills every empty cell so that the grid is a solution, trying candidates in a random order so that a different
+    // solution is usually found each time (e.g. calling this on an empty counter gives a random filled grid).
+    // Returns false, leaving the values unchanged, if there are no solutions.
+    public boolean fillRandomly(Random random) {
+        if (hasDuplicates() || !sumsPossible()) return false;
+        // On larger grids, a random search occasionally makes an early mistake that takes a very long time to undo.
+        // So the search gives up after a limited number of values have been placed and starts again with a different
+        // random order, doubling the limit each time so that it is eventually large enough for any grid.
+        for (long limit = (long) values.length * values.length; ; limit *= 2) {
+            placementsLeft = limit;
+            int result = searchRandomly(random);
+            if (result != GAVE_UP) return result == FOUND;
+        }
+    }
+
+    // Like search, but stops at the first solution, leaves it in place and tries candidates in a random order.
+    // Returns FOUND, NOT_FOUND or GAVE_UP (if placementsLeft has run out).
+    private int searchRandomly(Random random) {
+        int bestIndex = findLeastCandidatesCell();
+        if (bestIndex == -1) return FOUND;
+        int candidates = getCandidates(bestIndex);
+        while (candidates != 0) {
+            if (placementsLeft-- == 0) return GAVE_UP;
+            // Picks one of the remaining candidates at random by clearing a random number of the lowest set bits
+            int remaining = candidates;
+            for (int skip = random.nextInt(Integer.bitCount(candidates)); skip > 0; skip--) {
+                remaining &= remaining - 1;
+            }
+            int bit = remaining & -remaining;
+            candidates ^= bit;
+            int value = Integer.numberOfTrailingZeros(bit) + 1;
+            place(bestIndex, value);
+            int result = sumsPossible(bestIndex) ? searchRandomly(random) : NOT_FOUND;
+            unplace(bestIndex, value);
+            if (result == FOUND) {
+                // The counts are only kept up to date by setValue, so it is used for the value that is staying
+                setValue(bestIndex, value);
+                return FOUND;
+            }
+            if (result == GAVE_UP) return GAVE_UP;
+        }
+        return NOT_FOUND;
+    }
+
+    // Returns the index of the empty cell with the fewest candidates, or -1 if there are no empty cells
+    private int findLeastCandidatesCell() {
+        int bestIndex = -1;
+        int bestCount = Integer.MAX_VALUE;
+        for (int index = 0; index < values.length; index++) {
+            if (values[index] != 0) continue;
+            int count = Integer.bitCount(getCandidates(index));
+            if (count < bestCount) {
+                bestIndex = index;
+                bestCount = count;
+                // A cell with 0 or 1 candidates can't be beaten so there is no need to look further
+                if (count <= 1) break;
+            }
+        }
+        return bestIndex;
+    }
+
+    // Recursive search which always continues from the empty cell with the fewest candidates, unless a value has only
+    // one possible cell in a full unit (e.g. a row, column or box), in which case that cell is filled in first. Each
+    // call removes everything it places before returning, so the values are unchanged afterwards.
+    private int search(int limit) {
+        if (cancelled) return 0;
+        int bestIndex = findLeastCandidatesCell();
+        if (bestIndex == -1) return 1; // No empty cells so this is a solution
+        long hash = zobristHash;
+        if (transpositionTable != null && transpositionTable.isDead(hash, emptyCells)) return 0;
+        int bestCandidates = getCandidates(bestIndex);
+        if (Integer.bitCount(bestCandidates) > 1) {
+            // Checking every unit costs more than finding the cell, but on sparse grids it removes most of the
+            // guesses, as values with a single possible cell are very common there
+            long single = findSinglePosition();
+            if (single == NO_POSITION) {
+                if (transpositionTable != null) transpositionTable.markDead(hash, emptyCells);
+                return 0;
+            }
+            if (single != NO_SINGLE) {
+                bestIndex = (int) (single >>> 32);
+                bestCandidates = (int) single;
+            }
+        }
+        int found = 0;
+        while (bestCandidates != 0 && found < limit) {
+            int bit = bestCandidates & -bestCandidates;
+            bestCandidates ^= bit;
+            int value = Integer.numberOfTrailingZeros(bit) + 1;
+            place(bestIndex, value);
+            if (sumsPossible(bestIndex)) found += search(limit - found);
+            unplace(bestIndex, value);
+        }
+        // A cancelled search may have returned early, so it doesn't show that the grid has no solutions
+        if (found == 0 && transpositionTable != null && !cancelled) transpositionTable.markDead(hash, emptyCells);
+        return found;
+    }
+
+    // Returned by findSinglePosition if there is a value which can't be placed anywhere in a unit
+    private static final long NO_POSITION = -1;
+    // Returned by findSinglePosition if every missing value has several possible cells in every unit. A found position
+    // always has a value bit in the lower 32 bits, so it can never be 0.
+    private static final long NO_SINGLE = 0;
+
+    // Looks for a value which is missing from one of the full units but has only one possible cell in it. If there is
+    // one, returns the cell index in the upper 32 bits and the value's bit in the lower 32 bits. Returns NO_SINGLE if
+    // there are none, or NO_POSITION if a missing value has no possible cells, which means there are no solutions.
+    private long findSinglePosition() {
+        for (int unit : fullUnits) {
+            // Values which are candidates of at least one cell (once) and of at least two cells (twice)
+            int once = 0;
+            int twice = 0;
+            for (int index : unitCells[unit]) {
+                if (values[index] != 0) continue;
+                int candidates = getCandidates(index);
+                twice |= once & candidates;
+                once |= candidates;
+            }
+            if ((allValuesMask & ~unitMasks[unit] & ~once) != 0) return NO_POSITION;
+            int singles = once & ~twice;
+            if (singles == 0) continue;
+            int bit = singles & -singles;
+            for (int index : unitCells[unit]) {
+                if (values[index] == 0 && (getCandidates(index) & bit) != 0) return (long) index << 32 | bit;
+            }
+        }
+        return NO_SINGLE;
+    }
+
+    // Adds change (1 or -1) to the number of times value appears in the unit, keeping the unit's mask and the number
+    // of duplicates up to date
+    private void updateCount(int unit, int value, int change) {
+        int countIndex = unit * rows + value - 1;
+        if (change < 0 && unitCounts[countIndex] > 1) duplicates--;
+        unitCounts[countIndex] += change;
+        if (change > 0 && unitCounts[countIndex] > 1) duplicates++;
+        if (unitCounts[countIndex] > 0) {
+            unitMasks[unit] |= 1 << (value - 1);
+        } else {
+            unitMasks[unit] &= ~(1 << (value - 1));
+        }
+    }
+
+    // The two methods below are only used by the searches, which only ever place candidates - so a value is never
+    // placed twice in the same unit and the counts don't need to be updated.
+    private void place(int index, int value) {
+        values[index] = value;
+        int bit = 1 << (value - 1);
+        for (int unit : cellUnits[index]) unitMasks[unit] |= bit;
+        zobristHash ^= zobristKey(index, value);
+        emptyCells--;
+    }
+
+    private void unplace(int index, int value) {
+        values[index] = 0;
+        int bit = ~(1 << (value - 1));
+        for (int unit : cellUnits[index]) unitMasks[unit] &= bit;
+        zobristHash ^= zobristKey(index, value);
+        emptyCells++;
+    }
+
+    // Returns false if the values of a cage with a sum can no longer add up to it (see SudokuConstraints.canMakeSum).
+    // The first version checks every cage and the second only the cages containing the cell at the index, which are
+    // the only ones that can have been broken by placing a value there.
+    private boolean sumsPossible() {
+        if (!hasSums) return true;
+        for (int unit = 0; unit < unitSums.length; unit++) {
+            if (unitSums[unit] != 0 && !sumPossible(unit)) return false;
+        }
+        return true;
+    }
+
+    private boolean sumsPossible(int index) {
+        if (!hasSums) return true;
+        for (int unit : cellUnits[index]) {
+            if (unitSums[unit] != 0 && !sumPossible(unit)) return false;
+        }
+        return true;
+    }
+
+    private boolean sumPossible(int unit) {
+        int remaining = unitSums[unit];
+        int emptyCount = 0;
+        int possible = 0; // Values which are candidates of at least one empty cell
+        for (int index : unitCells[unit]) {
+            if (values[index] != 0) {
+                remaining -= values[index];
+            } else {
+                emptyCount++;
+                possible |= getCandidates(index);
+            }
+        }
+        return SudokuConstraints.canMakeSum(possible, emptyCount, remaining);
+    }
+
+    // The key of a non-initial value in SudokuData's Zobrist keys (0 for an empty cell)
+    private long zobristKey(int index, int value) {
+        return zobristKeys[(index * (rows + 1) + value) * 2];
+    }
+}
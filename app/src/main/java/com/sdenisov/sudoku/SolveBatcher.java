@@ -0,0 +1,143 @@
+package com.sdenisov.sudoku;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Grades sudokus (see SudokuSolver.grade) on a fixed number of worker threads, taking them in batches.
+// Each worker waits for a sudoku, then also takes every other sudoku that arrived in the meantime (up to maxBatch), so
+// a batch is simply whatever built up while the workers were busy: no sudoku is ever held back waiting for a batch to
+// fill, so a lightly loaded batcher adds no latency. Within a batch, identical sudokus (which are common when many
+// clients ask about the same daily puzzle) are only graded once and the result is given to all of them.
+// The queue of waiting sudokus is bounded, and submit fails straight away when it is full, so that under overload
+// callers are turned away quickly rather than every request waiting longer and longer.
+public class SolveBatcher {
+    // A sudoku waiting to be graded
+    private static class Task {
+        private final int boxRows;
+        private final int boxColumns;
+        private final int[] values;
+        private final CompletableFuture<SolutionCache.Entry> result = new CompletableFuture<>();
+
+        private Task(int boxRows, int boxColumns, int[] values) {
+            this.boxRows = boxRows;
+            this.boxColumns = boxColumns;
+            this.values = values;
+        }
+    }
+
+    // Identifies a sudoku within a batch. The values array includes the size (as its length), but boxRows is needed
+    // too, as e.g. 3x2 and 2x3 boxes give the same number of cells.
+    private static class Key {
+        private final int boxRows;
+        private final int[] values;
+        private final int hash;
+
+        private Key(Task task) {
+            boxRows = task.boxRows;
+            values = task.values;
+            hash = Arrays.hashCode(values) * 31 + boxRows;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) return false;
+            Key otherKey = (Key) other;
+            return boxRows == otherKey.boxRows && Arrays.equals(values, otherKey.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final BlockingQueue<Task> queue;
+    private final int maxBatch;
+    private final Thread[] workers;
+    private final AtomicLong graded = new AtomicLong();
+
+    public SolveBatcher(int threads, int queueCapacity, int maxBatch) {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatch = maxBatch;
+        workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(this::work, "solve-batcher-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    // Queues a sudoku to be graded, given its values going from left to right then top to bottom (0 for empty
+    // cells). Throws RejectedExecutionException if too many sudokus are already waiting.
+    public CompletableFuture<SolutionCache.Entry> submit(int boxRows, int boxColumns, int[] values) {
+        Task task = new Task(boxRows, boxColumns, values);
+        if (!queue.offer(task)) throw new RejectedExecutionException("Too many sudokus waiting to be solved");
+        return task.result;
+    }
+
+    // Returns the number of sudokus graded so far, counting identical sudokus in the same batch once
+    public long getGraded() {
+        return graded.get();
+    }
+
+    // Stops the workers. Sudokus still waiting are completed exceptionally.
+    public void close() {
+        for (Thread worker : workers) worker.interrupt();
+        List<Task> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (Task task : remaining) task.result.completeExceptionally(new RejectedExecutionException("Closed"));
+    }
+
+    private void work() {
+        List<Task> batch = new ArrayList<>(maxBatch);
+        Map<Key, List<Task>> distinct = new HashMap<>();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, maxBatch - 1);
+            for (Task task : batch) {
+                List<Task> sameSudoku = distinct.get(new Key(task));
+                if (sameSudoku == null) {
+                    sameSudoku = new ArrayList<>(1);
+                    distinct.put(new Key(task), sameSudoku);
+                }
+                sameSudoku.add(task);
+            }
+            for (List<Task> sameSudoku : distinct.values()) {
+                Task first = sameSudoku.get(0);
+                graded.incrementAndGet();
+                try {
+                    SolutionCache.Entry entry = SudokuSolver.grade(createSudoku(first));
+                    for (Task task : sameSudoku) task.result.complete(entry);
+                } catch (RuntimeException e) {
+                    for (Task task : sameSudoku) task.result.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+            distinct.clear();
+        }
+    }
+
+    private static SudokuData createSudoku(Task task) {
+        SudokuData sudoku = new SudokuData(task.boxRows, task.boxColumns);
+        for (int index = 0; index < task.values.length; index++) {
+            if (task.values[index] == 0) continue;
+            SudokuData.SudokuCell cell = sudoku.getValue(index);
+            cell.setValue(task.values[index]);
+            // grade requires every value to be initial, as it uses unsolve to remove the solution again
+            cell.setInitialValue(true);
+        }
+        return sudoku;
+    }
+}
@@ -0,0 +1,33 @@
+package com.sdenisov.sudoku;
+
+// Counts what the solver did while solving a sudoku, e.g. to find out why a particular sudoku is slow to solve.
+// The counts are added to, so the same object can be used for several solves to get totals.
+public class SolverStatistics {
+    // These are package-private so that the solver can update them directly
+    long nodes = 0; // Number of grids the search went through
+    long deadEnds = 0; // Number of grids found to have no solutions
+    long restarts = 0; // Number of times the search gave up and started again (see SudokuSolver.solveWithRestarts)
+    long transpositionHits = 0; // Number of grids skipped as the transposition table showed they have no solutions
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getDeadEnds() {
+        return deadEnds;
+    }
+
+    public long getRestarts() {
+        return restarts;
+    }
+
+    public long getTranspositionHits() {
+        return transpositionHits;
+    }
+
+    @Override
+    public String toString() {
+        return "nodes: " + nodes + ", dead ends: " + deadEnds + ", restarts: " + restarts + ", transposition hits: " +
+                transpositionHits;
+    }
+}
@@ -0,0 +1,226 @@
+package com.sdenisov.sudoku;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+import androidx.core.content.ContextCompat;
+
+import java.util.BitSet;
+
+// Draws the whole grid - values, notes, errors and the selected cell - as a single View.
+// Before, each cell was its own TextView, so a 12x12 grid had 144 views to lay out and measure, and each change set
+// their text sizes and text again. Here, the grid is drawn once into a bitmap, and after that only the cells which
+// have changed (as given to cellsChanged) are drawn again into the bitmap before it is copied onto the screen.
+// The text sizes and positions only depend on the size of the view, so are worked out in onSizeChanged rather than
+// for every cell. The selected cell's border is drawn on top of the bitmap, so selecting a cell doesn't redraw any
+// cells at all.
+public class SudokuBoardView extends View {
+    public interface OnCellClickListener {
+        void onCellClick(int index);
+    }
+
+    // Gaps between cells (in pixels) through which the black background shows, acting as borders. A thick border is
+    // used around boxes, while a thin border is used around cells.
+    private static final int THIN_BORDER = 1;
+    private static final int THICK_BORDER = 3;
+    private static final int SELECTION_BORDER = 5;
+    // Text sizes as a proportion of the space available for them
+    private static final float VALUE_TEXT_SIZE = 0.7f;
+    private static final float NOTE_TEXT_SIZE = 0.8f;
+
+    private SudokuData sudokuData = null;
+    private int rows = 0;
+    private int selectedIndex = -1; // -1 if no cell is selected
+    private OnCellClickListener onCellClickListener = null;
+
+    private final Paint backgroundPaint = new Paint();
+    private final Paint cellPaint = new Paint();
+    private final Paint valuePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint notePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint selectionPaint = new Paint();
+    private String[] labels = new String[0]; // The text for each value, so that it isn't converted for every cell
+    // Worked out in onSizeChanged
+    private float cellSize;
+    private float valueBaseline; // Distance from the centre of a cell to the baseline of its value
+    private float noteBaseline; // Distance from the centre of a note's space to its baseline
+
+    // The grid as last drawn. Only the cells marked in dirtyCells are drawn again, unless allDirty is true.
+    private Bitmap boardBitmap = null;
+    private Canvas boardCanvas = null;
+    private boolean[] dirtyCells = new boolean[0];
+    private boolean allDirty = true;
+
+    public SudokuBoardView(Context context) {
+        super(context);
+        setUpPaints(context);
+    }
+
+    // Used when the view is created from a layout file
+    public SudokuBoardView(Context context, AttributeSet attributeSet) {
+        super(context, attributeSet);
+        setUpPaints(context);
+    }
+
+    private void setUpPaints(Context context) {
+        backgroundPaint.setColor(Color.BLACK);
+        cellPaint.setColor(Color.WHITE);
+        valuePaint.setTextAlign(Paint.Align.CENTER);
+        notePaint.setTextAlign(Paint.Align.CENTER);
+        notePaint.setColor(Color.GRAY);
+        selectionPaint.setStyle(Paint.Style.STROKE);
+        selectionPaint.setStrokeWidth(SELECTION_BORDER);
+        // The border color is the app's primary color, so that it fits thematically with the rest of the app
+        selectionPaint.setColor(ContextCompat.getColor(context, R.color.design_default_color_primary));
+    }
+
+    public void setOnCellClickListener(OnCellClickListener onCellClickListener) {
+        this.onCellClickListener = onCellClickListener;
+    }
+
+    // Shows a new sudoku (or the same one after many of its cells have changed), redrawing the whole grid. The
+    // selection is kept if the sudoku has the same size as the previous one.
+    public void setSudoku(SudokuData sudokuData) {
+        this.sudokuData = sudokuData;
+        if (sudokuData.getRows() != rows) {
+            rows = sudokuData.getRows();
+            selectedIndex = -1;
+            dirtyCells = new boolean[rows * rows];
+            labels = new String[rows];
+            for (int value = 1; value <= rows; value++) labels[value - 1] = String.valueOf(value);
+            updateTextSizes();
+        }
+        allDirty = true;
+        invalidate();
+    }
+
+    // Draws the given cells again, e.g. the cells returned by SudokuData.takeChanges
+    public void cellsChanged(BitSet changedCells) {
+        for (int index = changedCells.nextSetBit(0); index >= 0; index = changedCells.nextSetBit(index + 1)) {
+            dirtyCells[index] = true;
+        }
+        if (!changedCells.isEmpty()) invalidate();
+    }
+
+    public int getSelectedIndex() {
+        return selectedIndex;
+    }
+
+    // Draws a border around the cell at the index, or removes the border if the index is -1
+    public void setSelectedIndex(int selectedIndex) {
+        this.selectedIndex = selectedIndex;
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight) {
+        super.onSizeChanged(width, height, oldWidth, oldHeight);
+        if (boardBitmap != null) boardBitmap.recycle();
+        boardBitmap = width > 0 && height > 0 ? Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888) : null;
+        boardCanvas = boardBitmap == null ? null : new Canvas(boardBitmap);
+        updateTextSizes();
+        allDirty = true;
+    }
+
+    // Works out the text sizes and positions from the size of a cell. Notes are placed in a grid of boxRows columns
+    // and boxColumns rows (the same shape as a box), so each note has a fraction of the cell to itself.
+    private void updateTextSizes() {
+        if (rows == 0) return;
+        cellSize = (float) Math.min(getWidth(), getHeight()) / rows;
+        valuePaint.setTextSize(cellSize * VALUE_TEXT_SIZE);
+        Paint.FontMetrics valueMetrics = valuePaint.getFontMetrics();
+        valueBaseline = -(valueMetrics.ascent + valueMetrics.descent) / 2;
+
+        float noteWidth = cellSize / sudokuData.getBoxRows();
+        float noteHeight = cellSize / sudokuData.getBoxColumns();
+        notePaint.setTextSize(Math.min(noteWidth, noteHeight) * NOTE_TEXT_SIZE);
+        // Two digit notes might be too wide for their space, in which case all notes are made smaller so that they
+        // all have the same size
+        float widest = notePaint.measureText(labels[rows - 1]);
+        if (widest > noteWidth * NOTE_TEXT_SIZE) {
+            notePaint.setTextSize(notePaint.getTextSize() * noteWidth * NOTE_TEXT_SIZE / widest);
+        }
+        Paint.FontMetrics noteMetrics = notePaint.getFontMetrics();
+        noteBaseline = -(noteMetrics.ascent + noteMetrics.descent) / 2;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (sudokuData == null || boardCanvas == null) return;
+        for (int index = 0; index < rows * rows; index++) {
+            if (allDirty || dirtyCells[index]) {
+                drawCell(boardCanvas, index);
+                dirtyCells[index] = false;
+            }
+        }
+        allDirty = false;
+        canvas.drawBitmap(boardBitmap, 0, 0, null);
+
+        if (selectedIndex != -1) {
+            int row = selectedIndex / rows;
+            int column = selectedIndex % rows;
+            // The border is drawn inside the cell, so that it isn't hidden by the borders between cells
+            float inset = SELECTION_BORDER / 2f;
+            canvas.drawRect(column * cellSize + inset, row * cellSize + inset,
+                    (column + 1) * cellSize - inset, (row + 1) * cellSize - inset, selectionPaint);
+        }
+    }
+
+    private void drawCell(Canvas canvas, int index) {
+        int row = index / rows;
+        int column = index % rows;
+        int boxRows = sudokuData.getBoxRows();
+        int boxColumns = sudokuData.getBoxColumns();
+        float left = column * cellSize;
+        float top = row * cellSize;
+        canvas.drawRect(left, top, left + cellSize, top + cellSize, backgroundPaint);
+        // Each box is boxRows cells wide and boxColumns cells tall, so there is a box boundary to the left of every
+        // boxRows-th column and above every boxColumns-th row. Half of each border between two cells is taken from
+        // each of them.
+        canvas.drawRect(left + (column % boxRows == 0 ? THICK_BORDER : THIN_BORDER),
+                top + (row % boxColumns == 0 ? THICK_BORDER : THIN_BORDER),
+                left + cellSize - ((column + 1) % boxRows == 0 ? THICK_BORDER : THIN_BORDER),
+                top + cellSize - ((row + 1) % boxColumns == 0 ? THICK_BORDER : THIN_BORDER), cellPaint);
+
+        SudokuData.SudokuCell cellData = sudokuData.getValue(index);
+        float centreX = left + cellSize / 2;
+        if (cellData.getValue() != null) {
+            valuePaint.setColor(sudokuData.hasError(index) ? cellData.getErrorColor() : cellData.getColor());
+            canvas.drawText(labels[cellData.getValue() - 1], centreX, top + cellSize / 2 + valueBaseline, valuePaint);
+        } else {
+            float noteWidth = cellSize / boxRows;
+            float noteHeight = cellSize / boxColumns;
+            for (int note = 0; note < rows; note++) {
+                if (!cellData.notes[note]) continue;
+                canvas.drawText(labels[note], left + (note % boxRows + 0.5f) * noteWidth,
+                        top + (note / boxRows + 0.5f) * noteHeight + noteBaseline, notePaint);
+            }
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (sudokuData == null || cellSize == 0) return false;
+        if (event.getAction() == MotionEvent.ACTION_UP) {
+            int row = (int) (event.getY() / cellSize);
+            int column = (int) (event.getX() / cellSize);
+            if (row < rows && column < rows) {
+                performClick();
+                if (onCellClickListener != null) onCellClickListener.onCellClick(row * rows + column);
+            }
+        }
+        // The touch is handled from ACTION_DOWN onwards, as otherwise ACTION_UP wouldn't be received
+        return true;
+    }
+
+    // Overridden along with onTouchEvent so that clicks are handled by accessibility services
+    @Override
+    public boolean performClick() {
+        return super.performClick();
+    }
+}
@@ -0,0 +1,272 @@
+package com.sdenisov.sudoku;
+
+import java.util.Arrays;
+
+// Finds the canonical form of a sudoku: out of all the sudokus SudokuTransformer could turn it into, the one which is
+// smallest when the cells are read from left to right then top to bottom (with an empty cell counting as 0). Two
+// sudokus have the same canonical form exactly when one can be transformed into the other, so canonical forms can be
+// used to spot disguised duplicates.
+// Only classic sudokus have a canonical form, as SudokuTransformer can't transform variants.
+// Only initial values are used, as the canonical form is meant for comparing puzzles rather than partially solved
+// grids.
+// Every column order is tried, so sizes are limited to those with at most MAX_COLUMN_ORDERS of them: up to 12x12,
+// where 3x4 boxes give 82944 orders and take tens of milliseconds. 16x16 would have about 8 million and 25x25 about
+// 3*10^12, which is far too slow to run inline.
+// Not thread safe - each thread should have its own SudokuCanonicaliser.
+public class SudokuCanonicaliser {
+    private static final long MAX_COLUMN_ORDERS = 100000;
+
+    private final int boxRows;
+    private final int boxColumns;
+    private final int rows;
+    private final int rowsPerBand; // Number of rows in each row of boxes (a "band")
+    private final int columnsPerStack; // Number of columns in each column of boxes (a "stack")
+
+    // Every order of the stacks and every order of the columns within a stack, used to try every column order
+    private final int[][] stackPermutations;
+    private final int[][] columnPermutations;
+
+    // The sudoku being canonicalised (possibly flipped along the diagonal) and the current column order
+    private final int[] grid;
+    private final int[] columnOrder;
+
+    // The smallest sudoku found so far and the sudoku currently being built, one row at a time
+    private final int[] best;
+    private boolean bestFound;
+    private int bestVersion; // Incremented whenever best changes, so that chooseRow can tell if a branch changed it
+    private final int[] current;
+
+    // labels[row][value] is the new label for value before row `row` of the result is added, with 0 meaning the value
+    // hasn't been seen yet. nextLabels is set by relabelRow to the labels after the row it relabelled is added.
+    private final int[][] labels;
+    private final int[] nextLabels;
+    private final int[] image; // The candidate row after relabelling
+    private final int[] minimumImage;
+    private final boolean[] usedRows;
+    private final boolean[] usedBands;
+
+    public SudokuCanonicaliser(int boxRows, int boxColumns) {
+        this.boxRows = boxRows;
+        this.boxColumns = boxColumns;
+        rows = boxRows * boxColumns;
+        if (countColumnOrders(boxRows, boxColumns) > MAX_COLUMN_ORDERS) {
+            throw new IllegalArgumentException("Sudokus larger than 12x12 have too many column orders to canonicalise");
+        }
+        // As in SudokuConstraints.classic, each box has boxColumns rows and boxRows columns
+        rowsPerBand = boxColumns;
+        columnsPerStack = boxRows;
+        stackPermutations = permutations(boxColumns);
+        columnPermutations = permutations(columnsPerStack);
+        grid = new int[rows * rows];
+        columnOrder = new int[rows];
+        best = new int[rows * rows];
+        current = new int[rows * rows];
+        labels = new int[rows + 1][rows + 1];
+        nextLabels = new int[rows + 1];
+        image = new int[rows];
+        minimumImage = new int[rows];
+        usedRows = new boolean[rows];
+        usedBands = new boolean[boxRows];
+    }
+
+    // Returns the canonical form of sudoku, with values going from left to right then top to bottom and 0 for empty
+    // cells
+    public int[] canonicalise(SudokuData sudoku) {
+        if (sudoku.getBoxRows() != boxRows || sudoku.getBoxColumns() != boxColumns) {
+            throw new IllegalArgumentException("The sudoku has a different size to the canonicaliser");
+        }
+        if (!sudoku.getConstraints().isClassic()) {
+            throw new IllegalArgumentException("Only classic sudokus have a canonical form");
+        }
+        bestFound = false;
+        // Flipping along the diagonal is only allowed for square boxes, so only then is the flipped grid also tried
+        for (int flipped = 0; flipped < (boxRows == boxColumns ? 2 : 1); flipped++) {
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < rows; column++) {
+                    SudokuData.SudokuCell cell = flipped == 1 ? sudoku.getValue(column, row)
+                            : sudoku.getValue(row, column);
+                    grid[row * rows + column] = cell.isInitialValue() && cell.getValue() != null ? cell.getValue() : 0;
+                }
+            }
+            tryAllColumnOrders();
+        }
+        return best.clone();
+    }
+
+    // Returns a 64-bit hash of the canonical form, which is the same for any two sudokus that can be transformed into
+    // each other. Different canonical forms are very unlikely to give the same hash, so this can be stored instead of
+    // the whole canonical form (e.g. by PuzzleBankIndex).
+    public long fingerprint(SudokuData sudoku) {
+        int[] canonical = canonicalise(sudoku);
+        // FNV-1a, followed by a final mixing step so that similar grids give very different hashes
+        long hash = 0xcbf29ce484222325L;
+        for (int value : canonical) {
+            hash ^= value;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    // Tries every column order, with the rows then chosen by chooseRow. Columns have to be tried exhaustively, as the
+    // best column order can't be seen from a single row, while rows can be chosen one at a time (see chooseRow).
+    private void tryAllColumnOrders() {
+        // withinStack[stack] is the index in columnPermutations used for the stack, so these act as the digits of a
+        // counter which goes through every combination
+        int[] withinStack = new int[boxColumns];
+        for (int[] stackOrder : stackPermutations) {
+            while (true) {
+                for (int stack = 0; stack < boxColumns; stack++) {
+                    int[] permutation = columnPermutations[withinStack[stack]];
+                    for (int column = 0; column < columnsPerStack; column++) {
+                        columnOrder[stack * columnsPerStack + column] =
+                                stackOrder[stack] * columnsPerStack + permutation[column];
+                    }
+                }
+                chooseRow(0, bestFound, -1);
+                // Moves the counter onto the next combination, stopping once it has gone through all of them
+                int stack = 0;
+                while (stack < boxColumns && ++withinStack[stack] == columnPermutations.length) {
+                    withinStack[stack] = 0;
+                    stack++;
+                }
+                if (stack == boxColumns) break;
+            }
+        }
+    }
+
+    // Chooses the grid row to use for row `row` of the result, then the rows after it (by calling itself). Reading
+    // from left to right then top to bottom means the smallest result must have the smallest possible first row, then
+    // the smallest possible second row given the first one, and so on. So only the rows that give the smallest next
+    // row are tried, which is usually just one. Rows are relabelled so that values are numbered in the order they
+    // first appear, which gives the smallest result for any fixed order of rows and columns.
+    // equalToBest is true if the rows chosen so far are the same as the first rows of best, in which case a row
+    // larger than the corresponding row of best means this can't give a smaller result so the branch is abandoned.
+    // band is the band the previous row was taken from.
+    private void chooseRow(int row, boolean equalToBest, int band) {
+        if (row == rows) {
+            if (!equalToBest) {
+                System.arraycopy(current, 0, best, 0, current.length);
+                bestFound = true;
+                bestVersion++;
+            }
+            return;
+        }
+        if (row == 0) Arrays.fill(labels[0], 0);
+        boolean newBand = row % rowsPerBand == 0;
+        // Finds the smallest possible next row. If the rows so far are the same as best's, then rows larger than best's
+        // next row are skipped straight away, as they can't give a smaller result.
+        int[] limit = equalToBest ? best : null;
+        int limitStart = row * rows;
+        boolean anyCandidate = false;
+        for (int gridRow = 0; gridRow < rows; gridRow++) {
+            if (!isCandidate(gridRow, newBand, band) || !relabelRow(gridRow, labels[row], limit, limitStart)) continue;
+            System.arraycopy(image, 0, minimumImage, 0, rows);
+            limit = minimumImage;
+            limitStart = 0;
+            anyCandidate = true;
+        }
+        if (!anyCandidate) return; // Every row is larger than best's, so this branch can't beat best
+        if (equalToBest) equalToBest = compare(minimumImage, 0, best, row * rows) == 0;
+        System.arraycopy(minimumImage, 0, current, row * rows, rows);
+        // Tries every row which gives the smallest next row (so usually only one)
+        for (int gridRow = 0; gridRow < rows; gridRow++) {
+            if (!isCandidate(gridRow, newBand, band)) continue;
+            relabelRow(gridRow, labels[row], null, 0);
+            if (compare(image, 0, current, row * rows) != 0) continue;
+            // Works out the labels after this row is added, so that the next rows are relabelled consistently
+            System.arraycopy(nextLabels, 0, labels[row + 1], 0, rows + 1);
+            int gridBand = gridRow / rowsPerBand;
+            usedRows[gridRow] = true;
+            usedBands[gridBand] = true;
+            int versionBefore = bestVersion;
+            chooseRow(row + 1, equalToBest, gridBand);
+            usedRows[gridRow] = false;
+            if (newBand) usedBands[gridBand] = false;
+            // If best was changed by this branch, then best now starts with the same rows as the current result, so
+            // the other rows tried here are compared against it
+            if (bestVersion != versionBefore) equalToBest = true;
+        }
+    }
+
+    // Returns true if gridRow can be the next row of the result - any row from an unused band if this row starts a
+    // new band, otherwise an unused row from the same band as the previous row
+    private boolean isCandidate(int gridRow, boolean newBand, int band) {
+        if (usedRows[gridRow]) return false;
+        int gridBand = gridRow / rowsPerBand;
+        return newBand ? !usedBands[gridBand] : gridBand == band;
+    }
+
+    // Writes the grid row (in the current column order) into image, relabelled using rowLabels, with values that
+    // haven't been seen yet getting the next unused label. The labels after this row are left in nextLabels.
+    // If limit isn't null, then this stops and returns false as soon as the row is known to be larger than the `rows`
+    // values of limit from limitStart. Otherwise it returns true.
+    private boolean relabelRow(int gridRow, int[] rowLabels, int[] limit, int limitStart) {
+        System.arraycopy(rowLabels, 0, nextLabels, 0, rows + 1);
+        // The next unused label is one more than the number of labels already used
+        int nextLabel = 1;
+        for (int value = 1; value <= rows; value++) {
+            if (nextLabels[value] != 0) nextLabel++;
+        }
+        boolean equalToLimit = limit != null;
+        for (int column = 0; column < rows; column++) {
+            int value = grid[gridRow * rows + columnOrder[column]];
+            if (value != 0 && nextLabels[value] == 0) nextLabels[value] = nextLabel++;
+            image[column] = nextLabels[value];
+            if (equalToLimit && image[column] != limit[limitStart + column]) {
+                if (image[column] > limit[limitStart + column]) return false;
+                equalToLimit = false; // Smaller than limit, so there's no need to compare the rest of the row
+            }
+        }
+        return true;
+    }
+
+    // Compares `rows` values of a from aStart with b from bStart, returning a negative number if a's values are
+    // smaller, 0 if they are equal and a positive number if they are larger (like Comparator.compare)
+    private int compare(int[] a, int aStart, int[] b, int bStart) {
+        for (int i = 0; i < rows; i++) {
+            if (a[aStart + i] != b[bStart + i]) return a[aStart + i] - b[bStart + i];
+        }
+        return 0;
+    }
+
+    // Returns the number of column orders tryAllColumnOrders goes through: every order of the stacks times every order
+    // of the columns within each stack. This stops as soon as it is over MAX_COLUMN_ORDERS, so it can't overflow.
+    private static long countColumnOrders(int boxRows, int boxColumns) {
+        long result = 1;
+        for (int i = 2; i <= boxColumns && result <= MAX_COLUMN_ORDERS; i++) result *= i;
+        long withinStack = 1;
+        for (int i = 2; i <= boxRows; i++) withinStack *= i;
+        for (int stack = 0; stack < boxColumns && result <= MAX_COLUMN_ORDERS; stack++) result *= withinStack;
+        return result;
+    }
+
+    // Returns every ordering of 0 to n - 1
+    private static int[][] permutations(int n) {
+        int count = 1;
+        for (int i = 2; i <= n; i++) count *= i;
+        int[][] result = new int[count][];
+        int[] permutation = new int[n];
+        for (int i = 0; i < n; i++) permutation[i] = i;
+        for (int index = 0; index < count; index++) {
+            result[index] = permutation.clone();
+            // Finds the next permutation in lexicographic order
+            int i = n - 2;
+            while (i >= 0 && permutation[i] > permutation[i + 1]) i--;
+            if (i < 0) break;
+            int j = n - 1;
+            while (permutation[j] < permutation[i]) j--;
+            swap(permutation, i, j);
+            for (int left = i + 1, right = n - 1; left < right; left++, right--) swap(permutation, left, right);
+        }
+        return result;
+    }
+
+    private static void swap(int[] array, int i, int j) {
+        int temp = array[i];
+        array[i] = array[j];
+        array[j] = temp;
+    }
+}
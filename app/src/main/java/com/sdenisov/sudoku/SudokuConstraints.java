@@ -0,0 +1,275 @@
+package com.sdenisov.sudoku;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// The rules a grid has to follow, as a list of units: sets of cells which must all have different values. A classic
+// sudoku has a unit for each row, column and box, and variants just add (or replace) units:
+// - withDiagonals adds the two long diagonals (X-sudoku)
+// - withWindows adds box-shaped regions between the boxes (windoku)
+// - withRegions replaces the boxes with irregular regions (jigsaw sudoku)
+// - withCage adds a cage, whose cells must also add up to a given sum (killer sudoku)
+// - withAntiKnight adds a unit for every pair of cells a chess knight's move apart
+// Everything is compiled into the same tables the solver, SolutionCounter and SudokuData already work with (the cells
+// of each unit, the units of each cell and the peers of each cell), so a variant is solved by exactly the same code as
+// a classic sudoku, and only pays for the units it actually adds.
+// Constraints can't be changed once created: the "with" methods return new constraints instead, so one object can be
+// shared by any number of grids and threads.
+public final class SudokuConstraints {
+    private final int boxRows;
+    private final int boxColumns;
+    private final int rows;
+    // Units 0 to rows - 1 are the rows, the next `rows` units are the columns and the next `rows` units are the boxes
+    // (or the regions replacing them). Any units added by the other "with" methods come after these.
+    private final int[][] unitCells; // The indexes of the cells in each unit
+    private final int[] unitSums; // The sum of the values in each unit, or 0 if it doesn't have to add up to anything
+    private final int[][] cellUnits; // The units of each cell
+    private final int[][] peers; // The indexes of the cells sharing a unit with each cell, excluding the cell itself
+    // True if these are just the rows, columns and boxes, so that grids can be transformed (e.g. by swapping rows of
+    // boxes, see SudokuTransformer) without breaking any rules
+    private final boolean classic;
+
+    // Classic constraints for each grid size, keyed by boxRows * 64 + boxColumns, as working out the peers of every
+    // cell takes longer than solving many sudokus
+    private static final Map<Integer, SudokuConstraints> classicConstraints = new HashMap<>();
+
+    private SudokuConstraints(int boxRows, int boxColumns, int[][] unitCells, int[] unitSums, boolean classic) {
+        this.boxRows = boxRows;
+        this.boxColumns = boxColumns;
+        this.rows = boxRows * boxColumns;
+        this.unitCells = unitCells;
+        this.unitSums = unitSums;
+        this.classic = classic;
+        int cells = rows * rows;
+        int[] unitCounts = new int[cells];
+        for (int[] unit : unitCells) {
+            for (int index : unit) unitCounts[index]++;
+        }
+        cellUnits = new int[cells][];
+        for (int index = 0; index < cells; index++) cellUnits[index] = new int[unitCounts[index]];
+        Arrays.fill(unitCounts, 0);
+        for (int unit = 0; unit < unitCells.length; unit++) {
+            for (int index : unitCells[unit]) cellUnits[index][unitCounts[index]++] = unit;
+        }
+        peers = new int[cells][];
+        boolean[] isPeer = new boolean[cells];
+        for (int index = 0; index < cells; index++) {
+            // Cells can share more than one unit with a cell (e.g. a row and a box), so isPeer stops them being added
+            // twice
+            int peerCount = 0;
+            for (int unit : cellUnits[index]) {
+                for (int peer : unitCells[unit]) {
+                    if (peer != index && !isPeer[peer]) {
+                        isPeer[peer] = true;
+                        peerCount++;
+                    }
+                }
+            }
+            peers[index] = new int[peerCount];
+            peerCount = 0;
+            for (int peer = 0; peer < cells; peer++) {
+                if (isPeer[peer]) {
+                    peers[index][peerCount++] = peer;
+                    isPeer[peer] = false;
+                }
+            }
+        }
+    }
+
+    // Returns the rows, columns and boxes of a grid with the given box sizes. Each box has boxColumns rows and boxRows
+    // columns, so there are boxColumns boxes in each row of boxes, and boxes are numbered from left to right then top
+    // to bottom.
+    public static SudokuConstraints classic(int boxRows, int boxColumns) {
+        synchronized (classicConstraints) {
+            SudokuConstraints constraints = classicConstraints.get(boxRows * 64 + boxColumns);
+            if (constraints == null) {
+                int rows = boxRows * boxColumns;
+                int[][] unitCells = new int[3 * rows][rows];
+                int[] unitSizes = new int[3 * rows];
+                for (int index = 0; index < rows * rows; index++) {
+                    int row = index / rows;
+                    int column = index % rows;
+                    int box = row / boxColumns * boxColumns + column / boxRows;
+                    unitCells[row][unitSizes[row]++] = index;
+                    unitCells[rows + column][unitSizes[rows + column]++] = index;
+                    unitCells[2 * rows + box][unitSizes[2 * rows + box]++] = index;
+                }
+                constraints = new SudokuConstraints(boxRows, boxColumns, unitCells, new int[3 * rows], true);
+                classicConstraints.put(boxRows * 64 + boxColumns, constraints);
+            }
+            return constraints;
+        }
+    }
+
+    // Adds the two diagonals from corner to corner
+    public SudokuConstraints withDiagonals() {
+        int[] leading = new int[rows];
+        int[] trailing = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            leading[i] = i * rows + i;
+            trailing[i] = i * rows + rows - 1 - i;
+        }
+        return withUnits(new int[][]{leading, trailing}, new int[2]);
+    }
+
+    // Adds box-shaped regions which are separated from each other and from the edges of the grid by a single row or
+    // column of cells, e.g. the four shaded 3x3 regions of a 9x9 windoku. As many windows are added as will fit.
+    public SudokuConstraints withWindows() {
+        // Each window has the same shape as a box: boxColumns rows and boxRows columns
+        int windowRows = (rows - 1) / (boxColumns + 1);
+        int windowColumns = (rows - 1) / (boxRows + 1);
+        int[][] windows = new int[windowRows * windowColumns][rows];
+        for (int window = 0; window < windows.length; window++) {
+            int top = 1 + window / windowColumns * (boxColumns + 1);
+            int left = 1 + window % windowColumns * (boxRows + 1);
+            for (int i = 0; i < rows; i++) windows[window][i] = (top + i / boxRows) * rows + left + i % boxRows;
+        }
+        return withUnits(windows, new int[windows.length]);
+    }
+
+    // Replaces the boxes with irregular regions (as in jigsaw sudoku). regions gives the region (from 0 to rows - 1) of
+    // each cell, going from left to right then top to bottom, and every region must have exactly `rows` cells.
+    public SudokuConstraints withRegions(int[] regions) {
+        if (regions.length != rows * rows) throw new IllegalArgumentException("Expected a region for every cell");
+        int[][] newUnitCells = unitCells.clone();
+        int[] regionSizes = new int[rows];
+        for (int region = 0; region < rows; region++) newUnitCells[2 * rows + region] = new int[rows];
+        for (int index = 0; index < regions.length; index++) {
+            int region = regions[index];
+            if (region < 0 || region >= rows || regionSizes[region] == rows) {
+                throw new IllegalArgumentException("Every region must have exactly " + rows + " cells");
+            }
+            newUnitCells[2 * rows + region][regionSizes[region]++] = index;
+        }
+        return new SudokuConstraints(boxRows, boxColumns, newUnitCells, unitSums, false);
+    }
+
+    // Adds a cage (as in killer sudoku): the cells must all have different values which add up to sum. A sum of 0
+    // means that the cage has no sum, so its values only have to be different.
+    public SudokuConstraints withCage(int[] cells, int sum) {
+        if (cells.length == 0 || cells.length > rows) {
+            throw new IllegalArgumentException("A cage must have from 1 to " + rows + " cells");
+        }
+        boolean[] inCage = new boolean[rows * rows];
+        for (int index : cells) {
+            if (index < 0 || index >= inCage.length || inCage[index]) {
+                throw new IllegalArgumentException("Invalid or repeated cell " + index + " in cage");
+            }
+            inCage[index] = true;
+        }
+        if (sum != 0 && !canMakeSum((1 << rows) - 1, cells.length, sum)) {
+            throw new IllegalArgumentException("No " + cells.length + " different values add up to " + sum);
+        }
+        return withUnits(new int[][]{cells.clone()}, new int[]{sum});
+    }
+
+    // Adds a unit for every pair of cells a knight's move apart, so that these cells can't have the same value
+    public SudokuConstraints withAntiKnight() {
+        int[][] moves = {{1, 2}, {2, 1}, {2, -1}, {1, -2}};
+        int[][] pairs = new int[rows * rows * moves.length][];
+        int pairCount = 0;
+        // Only the moves going downwards are used, so that each pair is only added once
+        for (int index = 0; index < rows * rows; index++) {
+            for (int[] move : moves) {
+                int row = index / rows + move[0];
+                int column = index % rows + move[1];
+                if (row < rows && column >= 0 && column < rows) {
+                    pairs[pairCount++] = new int[]{index, row * rows + column};
+                }
+            }
+        }
+        return withUnits(Arrays.copyOf(pairs, pairCount), new int[pairCount]);
+    }
+
+    private SudokuConstraints withUnits(int[][] units, int[] sums) {
+        int[][] newUnitCells = Arrays.copyOf(unitCells, unitCells.length + units.length);
+        System.arraycopy(units, 0, newUnitCells, unitCells.length, units.length);
+        int[] newUnitSums = Arrays.copyOf(unitSums, unitSums.length + sums.length);
+        System.arraycopy(sums, 0, newUnitSums, unitSums.length, sums.length);
+        return new SudokuConstraints(boxRows, boxColumns, newUnitCells, newUnitSums, false);
+    }
+
+    public int getBoxRows() {
+        return boxRows;
+    }
+
+    public int getBoxColumns() {
+        return boxColumns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public boolean isClassic() {
+        return classic;
+    }
+
+    public int getUnitCount() {
+        return unitCells.length;
+    }
+
+    // The arrays returned by the methods below are shared, so they must not be changed
+
+    int[] getUnitCells(int unit) {
+        return unitCells[unit];
+    }
+
+    // The units are in increasing order, so the first three are always the cell's row, column and box (or region)
+    int[] getCellUnits(int index) {
+        return cellUnits[index];
+    }
+
+    int[] getPeers(int index) {
+        return peers[index];
+    }
+
+    // Returns the sum the unit's values must add up to, or 0 if there isn't one
+    int getUnitSum(int unit) {
+        return unitSums[unit];
+    }
+
+    // True if the unit has a cell for every value, so every value must appear in it exactly once. Only these units can
+    // have a value with a single possible cell (a single position), as the value may be missing from any other unit.
+    boolean isFullUnit(int unit) {
+        return unitCells[unit].length == rows;
+    }
+
+    // Returns false if there is no way of choosing `count` different values from the bit mask `values` (with bit 0 for
+    // 1) that add up to sum. This only compares sum with the smallest and largest possible totals, so it can return
+    // true when there is no way of making the sum, but it is exact once count is 0 (i.e. the cage is full).
+    static boolean canMakeSum(int values, int count, int sum) {
+        if (Integer.bitCount(values) < count) return false;
+        int smallest = 0;
+        int largest = 0;
+        int low = values;
+        int high = values;
+        for (int i = 0; i < count; i++) {
+            int lowBit = low & -low;
+            low ^= lowBit;
+            smallest += Integer.numberOfTrailingZeros(lowBit) + 1;
+            int highBit = Integer.highestOneBit(high);
+            high ^= highBit;
+            largest += Integer.numberOfTrailingZeros(highBit) + 1;
+        }
+        return smallest <= sum && sum <= largest;
+    }
+
+    // Two sets of constraints are equal if they have the same size and the same units in the same order (including
+    // sums). Classic constraints are shared, so these are usually the same object.
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof SudokuConstraints)) return false;
+        SudokuConstraints otherConstraints = (SudokuConstraints) other;
+        return boxRows == otherConstraints.boxRows && boxColumns == otherConstraints.boxColumns &&
+                Arrays.equals(unitSums, otherConstraints.unitSums) &&
+                Arrays.deepEquals(unitCells, otherConstraints.unitCells);
+    }
+
+    @Override
+    public int hashCode() {
+        return (boxRows * 64 + boxColumns) * 31 + unitCells.length;
+    }
+}
@@ -3,13 +3,37 @@ package com.sdenisov.sudoku;
 import android.graphics.Color;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class SudokuData {
     // 2D array containing information about each cell. Each inner array represents a row
     private final SudokuCell[][] values;
     private final int boxRows; // Number of rows of boxes in the grid
     private final int boxColumns; // Number of columns of boxes in the grid
+    // The rules the values must follow. These are the rows, columns and boxes unless the grid is a variant (see
+    // SudokuConstraints).
+    private final SudokuConstraints constraints;
+    // Zobrist hash of the grid: the XOR of a random 64-bit key for each cell's (value, initialValue) combination. As
+    // XOR undoes itself, changing a cell only requires XOR-ing out its old key and XOR-ing in its new one, so the hash
+    // is kept up to date by SudokuCell's setters without ever scanning the grid.
+    private long zobristHash = 0;
+    private final long[] zobristKeys;
+    // Zobrist keys are shared by all grids with the same number of rows, so that equal grids have equal hashes.
+    // The key for cell `index` with value `value` (0 if empty) is at index ((index * (rows + 1) + value) * 2 + 1) if it
+    // is an initial value and one less if it isn't.
+    private static final Map<Integer, long[]> zobristKeysByRows = new HashMap<>();
+    // Changes are recorded as they are made, so that the grid shown to the player can update only the cells that
+    // changed (see takeChanges). changedCells holds the indexes of cells whose value, initial value or notes have
+    // changed.
+    private final BitSet changedCells = new BitSet();
+    // Number of cells with each value in each unit of constraints, at index (unit * rows + value - 1). A cell has an
+    // error if its value appears more than once in one of its units, or if it is in a full cage whose values don't
+    // add up to the cage's sum.
+    private final int[] unitValueCounts;
+    // The indexes of cells with errors. This is only brought up to date when needed (see updateErrors), so that setting
+    // values stays cheap for the solver, which sets a value at every step of its search.
+    private final BitSet errors = new BitSet();
+    // Units containing a cell whose value has changed since errors was last brought up to date
+    private final BitSet uncheckedUnits = new BitSet();
 
     public class SudokuCell {
         public int row;
@@ -20,7 +44,8 @@ public class SudokuData {
         // while non-initial values are values added later (as part of the solution)
         private boolean initialValue = false;
         // true means present, false means not present. Notes are in order so index 0 corresponds to note 1.
-        // It is impossible to set this to an invalid state, so this is public.
+        // It is impossible to set this to an invalid state, so this is public. However, changes should be made using
+        // setNote or clearNotes, so that they are included in takeChanges.
         // It is final to make sure the length isn't changed (by reassigning a new array to the variable)
         public final boolean[] notes = new boolean[getRows()];
 
@@ -31,7 +56,29 @@ public class SudokuData {
         // Sets a value if input is valid. If the input is invalid then it is ignored.
         public void setValue(Integer value) {
             if (value == null || 1 <= value && value <= getRows()) {
+                zobristHash ^= zobristKey();
+                if (!Objects.equals(this.value, value)) {
+                    if (this.value != null) updateUnitValueCounts(this.value, -1);
+                    if (value != null) updateUnitValueCounts(value, 1);
+                    changedCells.set(getIndex());
+                }
                 this.value = value;
+                zobristHash ^= zobristKey();
+            }
+        }
+
+        // Sets the note for value (from 1 to the number of rows) to present or not present
+        public void setNote(int value, boolean present) {
+            if (notes[value - 1] != present) {
+                notes[value - 1] = present;
+                changedCells.set(getIndex());
+            }
+        }
+
+        public void clearNotes() {
+            if (hasNotes()) {
+                Arrays.fill(notes, false);
+                changedCells.set(getIndex());
             }
         }
 
@@ -47,7 +94,30 @@ public class SudokuData {
         }
 
         public void setInitialValue(boolean initialValue) {
+            zobristHash ^= zobristKey();
+            // The initial value changes the cell's color, so the cell has to be drawn again
+            if (this.initialValue != initialValue) changedCells.set(getIndex());
             this.initialValue = initialValue;
+            zobristHash ^= zobristKey();
+        }
+
+        private int getIndex() {
+            return row * getRows() + column;
+        }
+
+        // Adds change to the number of times value appears in each of this cell's units, and marks these units as
+        // needing their errors to be checked
+        private void updateUnitValueCounts(int value, int change) {
+            for (int unit : constraints.getCellUnits(getIndex())) {
+                unitValueCounts[unit * getRows() + value - 1] += change;
+                uncheckedUnits.set(unit);
+            }
+        }
+
+        // The Zobrist key for this cell's current value and initialValue
+        private long zobristKey() {
+            return zobristKeys[((row * getRows() + column) * (getRows() + 1) + (value == null ? 0 : value)) * 2 +
+                    (initialValue ? 1 : 0)];
         }
 
         // Finds color based on initialValue. Using a function here allows color to be modified easily.
@@ -68,22 +138,31 @@ public class SudokuData {
             return false; // ... otherwise returns false
         }
 
-        // Creates a copy of this SudokuCell object, so that the copy can be modified without modifying this object.
-        // This method is used within the copy() method of the SudokuData class
-        public SudokuCell copy() {
-            SudokuCell result = new SudokuCell(value);
-            // Copies each of the attributes
-            result.row = row;
-            result.column = column;
-            result.initialValue = initialValue;
+        // Copies the value, initialValue and notes of another cell into this cell. This method is used within the
+        // copy() method of the SudokuData class. The cells of the copy have to be created by the copy itself (rather
+        // than by copying this cell), as a cell updates the Zobrist hash of the SudokuData object that created it.
+        private void copyFrom(SudokuCell other) {
+            setValue(other.value);
+            setInitialValue(other.initialValue);
             // Notes are copied using System.arraycopy
-            System.arraycopy(notes, 0, result.notes, 0, notes.length);
-            return result;
+            System.arraycopy(other.notes, 0, notes, 0, notes.length);
+            changedCells.set(getIndex());
         }
     }
 
     public SudokuData(int boxRows, int boxColumns) {
+        this(SudokuConstraints.classic(boxRows, boxColumns));
+    }
+
+    // Creates an empty grid following the given rules, e.g. an X-sudoku or a killer sudoku
+    public SudokuData(SudokuConstraints constraints) {
+        int boxRows = constraints.getBoxRows();
+        int boxColumns = constraints.getBoxColumns();
         int rows = boxRows * boxColumns; // This is the same as the number of columns
+        this.constraints = constraints;
+        // The keys and counts must be set up before any cells are created, as cells use them
+        zobristKeys = getZobristKeys(rows);
+        unitValueCounts = new int[constraints.getUnitCount() * rows];
         // values is set to a new 2D array and is populated by empty cells.
         values = new SudokuCell[rows][rows];
         for (int row = 0; row < rows; row++) {
@@ -124,165 +203,130 @@ public class SudokuData {
         return boxColumns;
     }
 
-    // Returns a list of indexes - if there are duplicates, then it contains the indexes of all the duplicates.
-    // If there are no duplicates then it is an empty list.
-    private List<Integer> checkDuplicates(SudokuCell[] items) {
-        List<Integer> result = new ArrayList<>();
-        // The two for loops iterate through all possible pairs of indexes
-        for (int i = 0; i < items.length - 1; i++) {
-            SudokuCell item = items[i];
-            // j starts from i + 1 rather than 0 because combinations containing indexes less than i + 1 have
-            // already been checked
-            for (int j = i + 1; j < items.length; j++) {
-                // Need to check that item.value is not null because two empty cells are not considered duplicates
-                if (item.getValue() != null && item.getValue().equals(items[j].getValue())) {
-                    result.add(i);
-                    result.add(j);
-                }
+    public SudokuConstraints getConstraints() {
+        return constraints;
+    }
+
+    // Returns the Zobrist hash of the grid's values and initial values (notes are not included). Equal grids always
+    // have equal hashes, and different grids are very unlikely to, so this can be used as a key for caches and sets of
+    // grids. It is kept up to date as cells are changed, so this takes no time.
+    public long getZobristHash() {
+        return zobristHash;
+    }
+
+    // Returns the Zobrist keys for grids with the given number of rows, creating them the first time. A fixed seed is
+    // used so that the hash of a grid is the same every time the app runs. This is also used by SolutionCounter, so
+    // that its hashes match those of a SudokuData object with the same (non-initial) values.
+    static long[] getZobristKeys(int rows) {
+        synchronized (zobristKeysByRows) {
+            long[] keys = zobristKeysByRows.get(rows);
+            if (keys == null) {
+                keys = new long[rows * rows * (rows + 1) * 2];
+                SplittableRandom random = new SplittableRandom(rows);
+                for (int i = 0; i < keys.length; i++) keys[i] = random.nextLong();
+                // An empty non-initial cell has a key of 0, so that the hash of an empty grid is 0 and the constructor
+                // doesn't have to calculate it
+                for (int index = 0; index < rows * rows; index++) keys[index * (rows + 1) * 2] = 0;
+                zobristKeysByRows.put(rows, keys);
             }
+            return keys;
         }
-        return result;
     }
 
     // Returns a list of coordinates with errors, with coordinates being a tuple in the form (row, column).
     public List<Tuple2<Integer, Integer>> findErrors() {
-        // The list of all the errors. It is returned at the end.
         List<Tuple2<Integer, Integer>> result = new ArrayList<>();
-
-        for (int row = 0; row < getRows(); row++) {
-            List<Integer> duplicates = checkDuplicates(values[row]);
-
-            // Detects row duplicates
-            if (duplicates.size() != 0) {
-                // Creating another variable that is equal to the current value of row but doesn't change, as values
-                // used in lambda expressions are not allowed to change.
-                int finalRow = row;
-                // The map method applies the inputted function to each item in the duplicates list, creating a new list
-                // out of the result (note that .collect is used to specify the output should be a list).
-                result.addAll(duplicates.stream().map(column ->
-                        new Tuple2<>(finalRow, column)).collect(Collectors.toList()));
-                // The row is the same for each item but the column is equal to the index in the array for the
-                // current row, which is equal to one of the values in the list result of checkDuplicates
-            }
+        BitSet errorIndexes = findErrorIndexes();
+        for (int index = errorIndexes.nextSetBit(0); index >= 0; index = errorIndexes.nextSetBit(index + 1)) {
+            result.add(new Tuple2<>(index / getRows(), index % getRows()));
         }
+        return result;
+    }
 
-        // Detects column duplicates
-        for (int column = 0; column < getRows(); column++) {
-            SudokuCell[] currentColumn = new SudokuCell[getRows()];
-            // The currentColumn is created by iterating through each row and adding the item from the correct column
-            for (int row = 0; row < getRows(); row++) {
-                currentColumn[row] = values[row][column];
-            }
-            // After the currentColumn array is created, this works like the code that checks for row duplicates
-            List<Integer> duplicates = checkDuplicates(currentColumn);
-            if (duplicates.size() != 0) {
-                int finalColumn = column;
-                result.addAll(duplicates.stream().map(row ->
-                                new Tuple2<>(row, finalColumn)).collect(Collectors.toList()));
-            }
-        }
+    // Returns the indexes of the cells with errors (a new BitSet each time, so it can be modified). A cell has an error
+    // if another cell in the same row, column, box or other unit of the constraints has the same value, or if it is in
+    // a full cage with the wrong sum.
+    public BitSet findErrorIndexes() {
+        updateErrors();
+        return (BitSet) errors.clone();
+    }
+
+    public boolean hasError(int index) {
+        updateErrors();
+        return errors.get(index);
+    }
 
-        // Detects box duplicates
-        // boxLocationRow is the row of the box within the grid
-        for (int boxLocationRow = 0; boxLocationRow < boxRows; boxLocationRow++) {
-            for (int boxLocationColumn = 0; boxLocationColumn < boxColumns; boxLocationColumn++) {
-                // currentBox contains all cells within the box
-                SudokuCell[] currentBox = new SudokuCell[getRows()];
-                // The number of columns of boxes is the number of rows within a box and vice versa
-                for (int row = 0; row < boxColumns; row++) { // This is the row within the box
-                    for (int column = 0; column < boxRows; column++) {
-                        // row * boxRows + column is the index - adding a column means index increases by one, while
-                        // adding a row means index increases by boxRows (as index increases by the number of columns
-                        // within the box).
-                        currentBox[row * boxRows + column] =
-                                values[boxLocationRow * boxColumns + row][boxLocationColumn * boxRows + column];
-                        // boxLocationRow * boxColumn is the number of rows in the boxes above this box.
-                        // So the total row of the cell is boxLocationRow * boxColumn + row
-                        // The corresponding logic works for columns
+    // Returns the indexes of the cells whose value, initial value, notes or error status have changed since this was
+    // last called (or since this object was created), so that only these cells have to be shown again
+    public BitSet takeChanges() {
+        updateErrors();
+        BitSet result = (BitSet) changedCells.clone();
+        changedCells.clear();
+        return result;
+    }
+
+    // Brings errors up to date. Only the cells in units where a value has changed can have gained or lost an error, so
+    // only these cells are checked, each by looking up the number of times its value appears in each of its units.
+    private void updateErrors() {
+        int rows = getRows();
+        for (int unit = uncheckedUnits.nextSetBit(0); unit >= 0; unit = uncheckedUnits.nextSetBit(unit + 1)) {
+            for (int index : constraints.getUnitCells(unit)) {
+                Integer value = getValue(index).getValue();
+                boolean error = false;
+                if (value != null) {
+                    for (int cellUnit : constraints.getCellUnits(index)) {
+                        if (unitValueCounts[cellUnit * rows + value - 1] > 1 || hasWrongSum(cellUnit)) {
+                            error = true;
+                            break;
+                        }
                     }
                 }
-                List<Integer> duplicates = checkDuplicates(currentBox);
-                if (duplicates.size() != 0) {
-                    int finalBoxLocationRow = boxLocationRow;
-                    int finalBoxLocationColumn = boxLocationColumn;
-                    result.addAll(duplicates.stream().map(x ->
-                                    // To find the row, we add the number of previous rows from other boxes to the
-                                    // row in this
-                                    // box, which is found using x DIV boxRows as the index goes from left to right,
-                                    // top to bottom. As x and boxRows are both integers, / carries out integer
-                                    // division.
-                                    // The same logic works for boxColumn, with x MOD boxRows used instead of x DIV
-                                    // boxRows.
-                                    new Tuple2<>(finalBoxLocationRow * boxColumns + x / boxRows,
-                                            finalBoxLocationColumn * boxRows + x % boxRows))
-                            .collect(Collectors.toList()));
+                if (errors.get(index) != error) {
+                    errors.set(index, error);
+                    changedCells.set(index);
                 }
             }
         }
-        return result;
+        uncheckedUnits.clear();
     }
 
-    // A group is a row, column or box - this function doesn't distinguish them. This function takes a row or column and
-    // finds all cells which share a group with the cell at that row or column, excluding that cell itself.
+    // Returns true if the unit is a cage with a sum (see SudokuConstraints.withCage) whose cells are all filled but
+    // don't add up to the sum. A cage which isn't full yet isn't counted as an error, as the player may still be
+    // filling it in.
+    private boolean hasWrongSum(int unit) {
+        int sum = constraints.getUnitSum(unit);
+        if (sum == 0) return false;
+        for (int index : constraints.getUnitCells(unit)) {
+            Integer value = getValue(index).getValue();
+            if (value == null) return false;
+            sum -= value;
+        }
+        return sum != 0;
+    }
+
+    // A group is a row, column, box or any other unit of the constraints - this function doesn't distinguish them.
+    // This function takes a row or column and finds all cells which share a group with the cell at that row or column,
+    // excluding that cell itself.
     // A set is used because we do not care about the order of the result.
     public Set<SudokuCell> findGroups(int cellRow, int cellColumn) {
         Set<SudokuCell> result = new HashSet<>(); // A HashSet is an implementation of the Set interface
-        for (int row = 0; row < getRows(); row++) {
-            for (int column = 0; column < getRows(); column++) {
-                // To make sure this isn't the same cell as the input cell
-                if (row != cellRow || column != cellColumn) {
-                    // First condition - same row, second - same column, third - same box. If any of these conditions
-                    // are true, the cell is added to the result.
-                    // The row of the box is found by dividing row by boxColumns (i.e. the number of rows in a box) and
-                    // ignoring the remainder. The column of the box is found by dividing column by boxRows (i.e. the
-                    // number of columns in a box). If the row and column of the box are equal then the cells are in
-                    // the same box.
-                    if (row == cellRow || column == cellColumn ||
-                            (row / boxColumns == cellRow / boxColumns && column / boxRows == cellColumn / boxRows)) {
-                        result.add(getValue(row, column));
-                    }
-                }
-            }
-        }
+        // The constraints already know the peers of every cell (the cells sharing a unit with it)
+        for (int peer : constraints.getPeers(cellRow * getRows() + cellColumn)) result.add(getValue(peer));
         return result;
     }
 
-    // This returns a set of groups, with each group being a set of cells
+    // This returns a set of groups, with each group being a set of cells.
+    // A LinkedHashSet is used so that the groups are always in the same order (rows, then columns, then boxes, then any
+    // other units). With a HashSet the order would depend on the cells' identity hash codes, so the solver could do
+    // different things on different runs, which would make seeded solves (see SudokuSolver.solveWithRestarts)
+    // impossible to repeat.
+    // Units with the same cells (e.g. a cage covering a whole box) are only included once, as they are equal sets.
     public Set<Set<SudokuCell>> findAllGroups() {
-        Set<Set<SudokuCell>> result = new HashSet<>();
-        // Iterates through each row and adds the row as a group
-        for (int row = 0; row < getRows(); row++) {
-            Set<SudokuCell> currentRow = new HashSet<>();
-            // The row is populated by iterating through each column and adding the appropriate cell from `values`
-            for (int column = 0; column < getRows(); column++) {
-                currentRow.add(values[row][column]);
-            }
-            result.add(currentRow);
-        }
-        // Iterates through each column and adds the column as a group
-        for (int column = 0; column < getRows(); column++) {
-            Set<SudokuCell> currentColumn = new HashSet<>();
-            // The column is populated by iterating through each column and adding the appropriate cell from `values`
-            for (int row = 0; row < getRows(); row++) {
-                currentColumn.add(values[row][column]);
-            }
-            result.add(currentColumn);
-        }
-        // Iterates through each box and adds the box as a group. This is done by iterating through each boxRow and  boxColumn
-        for (int boxLocationRow = 0; boxLocationRow < boxRows; boxLocationRow++) {
-            for (int boxLocationColumn = 0; boxLocationColumn < boxColumns; boxLocationColumn++) {
-                // currentBox contains all cells within the box
-                Set<SudokuCell> currentBox = new HashSet<>();
-                // The number of columns of boxes is the number of rows within a box and vice versa
-                for (int row = 0; row < boxColumns; row++) { // This is the row within the box
-                    for (int column = 0; column < boxRows; column++) {
-                        // boxLocationRow * boxColumn is the number of rows in the boxes above this box.
-                        // So the total row of the cell is boxLocationRow * boxColumn + row. The corresponding logic works for columns
-                        currentBox.add(values[boxLocationRow * boxColumns + row][boxLocationColumn * boxRows + column]);
-                    }
-                }
-                result.add(currentBox);
-            }
+        Set<Set<SudokuCell>> result = new LinkedHashSet<>();
+        for (int unit = 0; unit < constraints.getUnitCount(); unit++) {
+            Set<SudokuCell> group = new HashSet<>();
+            for (int index : constraints.getUnitCells(unit)) group.add(getValue(index));
+            result.add(group);
         }
         return result;
     }
@@ -322,8 +366,7 @@ public class SudokuData {
     public void clearNotes() {
         for (int row = 0; row < getRows(); row++) {
             for (int column = 0; column < getRows(); column++) {
-                // Sets all values of the notes array for this cell to false.
-                Arrays.fill(values[row][column].notes, false);
+                values[row][column].clearNotes();
             }
         }
     }
@@ -343,14 +386,41 @@ public class SudokuData {
 
     // Creates a copy of this SudokuData object, so that the copy can be modified without modifying this object
     public SudokuData copy() {
-        // boxRows and boxColumns are copied by passing them to the constructor
-        SudokuData result = new SudokuData(boxRows, boxColumns);
-        // Cells are copied by iterating through each row and column then copying the cell
+        // The constraints (including boxRows and boxColumns) are copied by passing them to the constructor
+        SudokuData result = new SudokuData(constraints);
+        // Cells are copied by iterating through each row and column then copying the cell. This also updates the
+        // Zobrist hash of result, so that it ends up equal to this object's hash.
         for (int row = 0; row < getRows(); row++) {
             for (int column = 0; column < getRows(); column++) {
-                result.values[row][column] = values[row][column].copy();
+                result.values[row][column].copyFrom(values[row][column]);
             }
         }
         return result;
     }
+
+    // Two SudokuData objects are equal if they have the same constraints (and so the same box sizes) and every cell has
+    // the same value and initialValue. Notes are ignored, as they are only there to help the player. Comparing the
+    // Zobrist hashes first means that different grids are almost always told apart without comparing any cells.
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof SudokuData)) return false;
+        SudokuData otherSudoku = (SudokuData) other;
+        if (zobristHash != otherSudoku.zobristHash || !constraints.equals(otherSudoku.constraints)) return false;
+        for (int row = 0; row < getRows(); row++) {
+            for (int column = 0; column < getRows(); column++) {
+                SudokuCell cell = values[row][column];
+                SudokuCell otherCell = otherSudoku.values[row][column];
+                if (!Objects.equals(cell.value, otherCell.value) || cell.initialValue != otherCell.initialValue) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(zobristHash);
+    }
 }
@@ -1,137 +1,254 @@
 package com.sdenisov.sudoku;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Random;
 
 public class SudokuGenerator {
+    // Everything generate works with, kept between calls so that generating many sudokus of one size on the same
+    // thread (e.g. in PuzzleBank) only allocates the sudokus it returns. Within a call, the search doesn't allocate
+    // anything once it has started: the grid is reused when the search starts again from a new filled grid, the clues
+    // and holes are kept in arrays rather than lists of Integers, and the solver uses solverWorkspace.
+    // Not thread safe - each thread should have its own.
+    public static class Workspace {
+        private final SudokuConstraints constraints;
+        private final SudokuGridFiller gridFiller;
+        private final SolutionCounter counter;
+        private final SudokuSolver.Workspace solverWorkspace;
+        private final Random random = new Random();
+        private final int[] solution;
+        // The indexes of cells with and without values. Only the first clueCount and holeCount are used, and their
+        // order doesn't matter, so an index is removed by moving the last one into its place.
+        private final int[] clues;
+        private final int[] holes;
+        private int clueCount = 0;
+        private int holeCount = 0;
+        // The scores of sudokus the search has already solved, by Zobrist hash (see score). Each hash can only be
+        // stored at one index, so a new score replaces whichever one was there.
+        private final long[] scoreHashes = new long[SCORE_CACHE_SIZE]; // 0 marks an unused index
+        private final double[] scores = new double[SCORE_CACHE_SIZE];
+        // The grid being searched. Once it has been returned it belongs to the caller, so a new one is created for
+        // the next call.
+        private SudokuData sudoku = null;
+
+        public Workspace(int boxRows, int boxColumns) {
+            this(SudokuConstraints.classic(boxRows, boxColumns));
+        }
+
+        // A workspace for generating variants following the constraints (see SudokuConstraints)
+        public Workspace(SudokuConstraints constraints) {
+            this.constraints = constraints;
+            int cells = constraints.getRows() * constraints.getRows();
+            gridFiller = new SudokuGridFiller(constraints);
+            counter = new SolutionCounter(constraints);
+            solverWorkspace = new SudokuSolver.Workspace(constraints);
+            solution = new int[cells];
+            clues = new int[cells];
+            holes = new int[cells];
+        }
+    }
+
+    // Sudokus of this difficulty (the hardest) are minimised before being returned, so that every clue is needed
+    private static final int MINIMAL_DIFFICULTY = 4;
+    // Number of variants generateVariant tries before generating a new sudoku instead
+    private static final int VARIANT_ATTEMPTS = 20;
+    // Number of changes generate makes to the sudoku from a single filled grid before starting again with a new one.
+    // Searches which haven't got there within this many changes rarely do later, and a new grid is quicker.
+    private static final int SEARCH_MOVES = 100;
+    // How willing generate is to keep changes that move the score away from the required difficulty: a change which
+    // makes the distance worse by START_TEMPERATURE is kept with probability 1/e at the start. This falls by COOLING
+    // after each change, so that the search settles down over time.
+    private static final double START_TEMPERATURE = 0.3;
+    private static final double COOLING = 0.98;
+    // Number of scores each workspace remembers (a power of 2, so that the index can be found with a bit mask). This
+    // is several times the number of sudokus a search from one filled grid can look at.
+    private static final int SCORE_CACHE_SIZE = 1024;
+
+    // Generates a sudoku with exactly one solution and the required difficulty using a local search. Starting from a
+    // random filled grid, clues are removed until at most half the cells are filled. Then the search repeatedly makes
+    // a small change (removing a clue, adding one back, or moving one to another cell), keeping the change if it moves
+    // the sudoku's score (see SudokuSolver.solveForScore) towards the middle of the required difficulty. Changes which
+    // make it worse are sometimes kept as well (simulated annealing), less often the worse they are and the longer the
+    // search has gone on, so that the search doesn't get stuck at a sudoku where every small change makes it worse.
+    // Changes that would give several solutions are never made. They are ruled out using a single SolutionCounter,
+    // which is kept for the whole search and only has the changed cells updated, so the sudoku only needs to be
+    // solved once for each change that is kept or considered.
     public static SudokuData generate(int requiredDifficulty, int boxRows, int boxColumns) {
-        outerLoop:
+        return generate(requiredDifficulty, new Workspace(boxRows, boxColumns));
+    }
+
+    // Works like generate(requiredDifficulty, boxRows, boxColumns) for the workspace's constraints, reusing its memory.
+    // Nothing here depends on the constraints directly: the filler, counter and solver all work from them.
+    public static SudokuData generate(int requiredDifficulty, Workspace workspace) {
+        // The filler is kept for all restarts of the outer loop, so that only the first filled grid needs a search
+        SudokuGridFiller gridFiller = workspace.gridFiller;
+        SolutionCounter counter = workspace.counter;
+        Random random = workspace.random;
+        int[] solution = workspace.solution;
+        int[] clues = workspace.clues;
+        int[] holes = workspace.holes;
+        if (workspace.sudoku == null) workspace.sudoku = new SudokuData(workspace.constraints);
+        SudokuData sudoku = workspace.sudoku;
+        // The score is aimed at the middle of the required difficulty, e.g. 2.5 for medium
+        double targetScore = requiredDifficulty + 0.5;
         while (true) {
-            int iterations = 0;
-            SudokuData sudoku = new SudokuData(boxRows, boxColumns);
-            for (int row = 0; row < sudoku.getRows(); row++) {
-                for (int column = 0; column < sudoku.getRows(); column++) {
-                    // initialValue is set to true for filled cells, so that they are not modified by the solver
-                    // (used later to make sure there is exactly one solution, and it is at the right difficulty level)
-                    // At the start, all cells are filled, so initialValue is set to true for all of them.
-                    sudoku.getValue(row, column).setInitialValue(true);
+            // Creates a random filled grid representing the solution. initialValue is set to true for all the cells,
+            // so that they are not modified by the solver
+            gridFiller.nextSudoku(sudoku, solution);
+            for (int index = 0; index < solution.length; index++) counter.setValue(index, solution[index]);
+            // At most half the cells are filled, so that sudokus are never too easy. This is particularly important
+            // for an "Easy" requested difficulty (as otherwise the sudoku could have only one empty cell, which is
+            // ridiculously easy).
+            int maximumClues = solution.length / 2;
+
+            // Every cell starts as a clue, in a random order
+            int clueCount = solution.length;
+            int holeCount = 0;
+            for (int index = 0; index < clueCount; index++) clues[index] = index;
+            for (int i = clueCount - 1; i > 0; i--) {
+                int other = random.nextInt(i + 1);
+                int swap = clues[i];
+                clues[i] = clues[other];
+                clues[other] = swap;
+            }
+            // Removes clues in a random order until there are few enough, skipping any that are needed for there to
+            // be only one solution. For the hardest difficulty, every clue that can be removed is, as the sudokus with
+            // the fewest clues are usually the hardest. The clues after i have all been looked at already, so moving
+            // the last one into a removed clue's place doesn't skip any.
+            int startingClues = requiredDifficulty == MINIMAL_DIFFICULTY ? 0 : maximumClues;
+            for (int i = clueCount - 1; i >= 0 && clueCount > startingClues; i--) {
+                int index = clues[i];
+                if (removeClue(sudoku, counter, index, solution[index])) {
+                    clues[i] = clues[--clueCount];
+                    holes[holeCount++] = index;
                 }
             }
-            // Creates a filled grid representing the solution by running the solver on an empty grid.
-            // Random note selection is used (represented by passing 0 as the second argument)
-            // to make sure a different grid is generated each time.
-            SudokuSolver.solve(sudoku, 0);
-            SudokuData filled = sudoku.copy(); // So that the filled grid is saved, even if sudoku is modified
-            boolean removeValue = true; // If true, cells are removed, if false then cells are added
+            if (clueCount > maximumClues) continue; // Rare, but then this grid can't be used
 
-            // cellsWithValues and cellsWithoutValues contain indexes of cells
-            List<Integer> cellsWithValues = new ArrayList<>();
-            for (int i = 0; i < sudoku.getRows() * sudoku.getRows(); i++) {
-                // Initially, all cells have values so all indexes are added to cellsWithValues
-                cellsWithValues.add(i);
-            }
-            // Initially there are no cells without values, so this list is initially empty
-            List<Integer> cellsWithoutValues = new ArrayList<>();
-            // If there are multiple solutions, then differingIndexes keeps track of the indexes where the solutions
-            // differ, so that a value is added back randomly to one of these indexes. If there is only one solution
-            // then it is set to null. It is also set to null initially, as there are not multiple solutions.
-            List<Integer> differingIndexes = null;
-            
-            while (true) {
-                iterations++;
-                // If there's a large number of iterations then this sudoku has been worked on for a while so the
-                // algorithm is likely "stuck" and is therefore likely to benefit from a restart.
-                if (iterations > 1000) continue outerLoop; // Goes back to the start of the outer while loop
-                // This while loop is used to add or remove a random cell, based on the value of removeValue
-                if (removeValue) {
-                    // Randomly chooses the index of what item to select from cellsWithValues
-                    int indexOfCellIndex = randomInt(0, cellsWithValues.size() - 1);
-                    int cellIndex = cellsWithValues.get(indexOfCellIndex);
-                    // The value is removed from this cell, so it is now without a value, so it is removed from the
-                    // cellsWithValues list but added to cellsWithoutValues
-                    cellsWithValues.remove(indexOfCellIndex); // removes item whose index is indexOfCellIndex (its value is
-                    // cellIndex)
-                    cellsWithoutValues.add(cellIndex);
-                    // Gets the cell with that index from `sudoku`, where the indexes start at 0 and go from left to right
-                    // then top to bottom
-                    SudokuData.SudokuCell cell = sudoku.getValue(cellIndex / sudoku.getRows(),
-                            cellIndex % sudoku.getRows());
-                    // The value is removed by setting it to null
-                    cell.setValue(null);
-                    // initialValue is set to false for empty cells so that they can be modified by the solver
-                    cell.setInitialValue(false);
-                } else {
-                    // If differingIndexes are not null then a value will be added to a random differing index.
-                    // Otherwise, a value will be added to a random index from cellsWithoutValues.
-                    List<Integer> cellsToAddNext = differingIndexes == null ? cellsWithoutValues : differingIndexes;
-                    // Randomly chooses the index of what item to select from cellsWithoutValues
-                    int indexOfCellIndex = randomInt(0, cellsToAddNext.size() - 1);
-                    int cellIndex = cellsToAddNext.get(indexOfCellIndex);
-                    // The cell is filled with its value from the filled grid, so it is now with a value,
-                    // so it is removed from the cellsToAddNext list and added to the cellsWithValues list.
-                    cellsToAddNext.remove(indexOfCellIndex);
-                    cellsWithValues.add(cellIndex);
-                    // Gets the cell with that index from `sudoku`, where the indexes start at 0 and go from left to right
-                    // then top to bottom
-                    SudokuData.SudokuCell cell = sudoku.getValue(cellIndex / sudoku.getRows(),
-                            cellIndex % sudoku.getRows());
-                    // The cell is set to the value in the corresponding cell from the filled grid
-                    cell.setValue(filled.getValue(cellIndex / sudoku.getRows(),
-                            cellIndex % sudoku.getRows()).getValue());
-                    // initialValue is set to true for filled cells so that they cannot be modified by the solver
-                    cell.setInitialValue(true);
-                    // This means a value will be added to only one of the differing indexes. If there are still
-                    // multiple solutions then differingIndexes would be set to non-null again in the code below.
-                    differingIndexes = null;
+            double score = score(sudoku, workspace);
+            double temperature = START_TEMPERATURE;
+            for (int move = 0; move < SEARCH_MOVES; move++) {
+                if ((int) score == requiredDifficulty) {
+                    SudokuData result = requiredDifficulty == MINIMAL_DIFFICULTY ?
+                            minimiseKeepingDifficulty(sudoku) : sudoku;
+                    // If the grid itself is returned, the next call needs a new one
+                    if (result == sudoku) workspace.sudoku = null;
+                    return result;
+                }
+                // Having fewer clues usually makes a sudoku more difficult, so if the sudoku is too easy then clues are
+                // removed, and if it is too hard then they are added (unless there are too many already). Moving a clue
+                // keeps the number of clues the same, which helps when every clue that can be removed has been.
+                // The positions in clues and holes are kept so that the move can be recorded there if it is kept.
+                int cluePosition = -1;
+                int holePosition = -1;
+                boolean moveClue = random.nextBoolean();
+                if (moveClue || score < targetScore) cluePosition = random.nextInt(clueCount);
+                if ((moveClue || score > targetScore) && holeCount > 0 && (moveClue || clueCount < maximumClues)) {
+                    holePosition = random.nextInt(holeCount);
                 }
-                // At first, there is a large number of iterations when only the previous code is ran, and as
-                // removeValue is true and is not changed, this means that values keep getting removed until 65% are
-                // removed, so in a 9x9 sudoku there are 28 left.
-                if (iterations > sudoku.getRows() * sudoku.getRows() * 0.65) {
-                    int difficulty = SudokuSolver.solve(sudoku, 1);
-                    SudokuData solution = sudoku.copy();
-                    SudokuSolver.unsolve(sudoku);
-                    // Notes are selected in the opposite order from the previous solver, so that if there are two different
-                    // solutions then both are discovered
-                    SudokuSolver.solve(sudoku, -1);
-                    // Values are removed initially, but this ensures the number of values does not get too high again
-                    // due to values being added again - that at most half the cells are filled. This prevents sudokus
-                    // from becoming too easy, which is particularly important for an "Easy" requested difficulty (as
-                    // then the sudoku could theoretically have only one empty cell, which is ridiculously easy).
-                    if (cellsWithValues.size() > sudoku.getRows() * sudoku.getRows() / 2 || difficulty == -1) {
-                        // To prevent sudokus from becoming too easy, the number of clues must be at most half the number
-                        // of cells - if it is higher, then clues need to be removed so removeValue is set to true.
-                        // If there are no solutions then it suggests that there are too many initial cells, as there are too few
-                        // options for filling the grid, so removeValue is set to true
-                        removeValue = true;
-                    } else if (solution.findDifferingIndexes(sudoku).size() != 0) {
-                        // If any of the cells are different in the two solutions, then the two solutions are different so
-                        // the sudoku is invalid. It suggests that there are too few initial cells, as there are too many
-                        // options for filling the grid, so removeValue is set to false
-                        removeValue = false;
-                        // Keeps track of differing indexes, as a value will be added to one of them in the next iteration
-                        differingIndexes = solution.findDifferingIndexes(sudoku);
-                    } else if (difficulty == requiredDifficulty) {
-                        // If the else clause is reached then there is exactly one solution, so this is a valid sudoku
-                        // so if the difficulty is correct then it is returned
-                        // Removes all non-initial values, so that the player will have to fill them in themselves
-                        SudokuSolver.unsolve(sudoku);
-                        return sudoku;
-                    } else {
-                        // Having fewer clues usually makes a sudoku more difficult so removeValue is set to true if the
-                        // difficulty is too low and false if it is too high
-                        removeValue = difficulty < requiredDifficulty;
+                if (moveClue && holePosition == -1) continue;
+                int clueToRemove = cluePosition == -1 ? -1 : clues[cluePosition];
+                int holeToFill = holePosition == -1 ? -1 : holes[holePosition];
+                // The hole is filled first, so that the clue might be removable thanks to the new clue
+                if (holeToFill != -1) addClue(sudoku, counter, holeToFill, solution[holeToFill]);
+                if (clueToRemove != -1 && !removeClue(sudoku, counter, clueToRemove, solution[clueToRemove])) {
+                    // Removing the clue would give several solutions, so the move isn't possible
+                    if (holeToFill != -1) removeClue(sudoku, counter, holeToFill, solution[holeToFill]);
+                    continue;
+                }
+                if (clueToRemove == -1 && holeToFill == -1) continue;
+
+                double newScore = score(sudoku, workspace);
+                double change = Math.abs(newScore - targetScore) - Math.abs(score - targetScore);
+                if (change <= 0 || random.nextDouble() < Math.exp(-change / temperature)) {
+                    // The move is kept. If a clue was moved, the removed clue is added to the end of holes and then
+                    // moved straight into the filled hole's place, and the other way round for clues.
+                    score = newScore;
+                    if (clueToRemove != -1) {
+                        clues[cluePosition] = clues[--clueCount];
+                        holes[holeCount++] = clueToRemove;
                     }
-                    // Removes all non-initial values, so that the next iteration of the while loop starts with a partially
-                    // empty sudoku, just like this iteration started
-                    SudokuSolver.unsolve(sudoku);
+                    if (holeToFill != -1) {
+                        holes[holePosition] = holes[--holeCount];
+                        clues[clueCount++] = holeToFill;
+                    }
+                } else {
+                    // The move is undone. Removing the added clue can't give several solutions, as the sudoku had only
+                    // one solution before it was added.
+                    if (clueToRemove != -1) addClue(sudoku, counter, clueToRemove, solution[clueToRemove]);
+                    if (holeToFill != -1) removeClue(sudoku, counter, holeToFill, solution[holeToFill]);
                 }
+                temperature *= COOLING;
             }
+            // The search hasn't found a sudoku of the required difficulty from this grid, so it is likely stuck and
+            // starts again from a new grid
+        }
+    }
+
+    // Returns the score of the sudoku (see SudokuSolver.solveForScore), leaving it unsolved. The search keeps coming
+    // back to sudokus it has already scored, e.g. when a move is undone and then tried again later, so the scores are
+    // remembered in the workspace, which avoids solving these again (like SudokuSolver.grade does with its cache, but
+    // without allocating anything or sharing a cache between threads). The score only depends on the values, which
+    // the Zobrist hash identifies.
+    private static double score(SudokuData sudoku, Workspace workspace) {
+        long hash = sudoku.getZobristHash();
+        if (hash == 0) hash = 1;
+        int index = (int) hash & (SCORE_CACHE_SIZE - 1);
+        if (workspace.scoreHashes[index] == hash) return workspace.scores[index];
+        double score = SudokuSolver.solveForScore(sudoku, workspace.solverWorkspace);
+        SudokuSolver.unsolve(sudoku);
+        workspace.scoreHashes[index] = hash;
+        workspace.scores[index] = score;
+        return score;
+    }
+
+    // Removes the clue from both the sudoku and the counter, unless this would give a sudoku with several solutions
+    // (given that it has exactly one solution with the clue). Returns true if the clue was removed.
+    private static boolean removeClue(SudokuData sudoku, SolutionCounter counter, int index, int value) {
+        counter.setValue(index, 0);
+        if (counter.hasSolutionWithout(index, value)) {
+            counter.setValue(index, value);
+            return false;
+        }
+        SudokuData.SudokuCell cell = sudoku.getValue(index);
+        // initialValue is set to false for empty cells so that they can be modified by the solver
+        cell.setValue(null);
+        cell.setInitialValue(false);
+        return true;
+    }
+
+    private static void addClue(SudokuData sudoku, SolutionCounter counter, int index, int value) {
+        counter.setValue(index, value);
+        SudokuData.SudokuCell cell = sudoku.getValue(index);
+        // initialValue is set to true for filled cells so that they cannot be modified by the solver
+        cell.setValue(value);
+        cell.setInitialValue(true);
+    }
+
+    // Returns a sudoku of the required difficulty by transforming seed (a sudoku with exactly one solution, usually
+    // one returned by generate) with SudokuTransformer, which is far cheaper than generating a new sudoku. Transforming
+    // doesn't change the logic needed to solve the sudoku, but the solver's rating depends on the order it guesses
+    // values in, which does change when digits are relabelled - so each variant is rated again and only returned if it
+    // has the required difficulty. If none of the attempts have the required difficulty, a new sudoku is generated
+    // with the seed's constraints. Variants (see SudokuConstraints) can't be transformed, so for these a new sudoku is
+    // always generated.
+    public static SudokuData generateVariant(SudokuData seed, int requiredDifficulty, SudokuTransformer transformer) {
+        SudokuConstraints constraints = seed.getConstraints();
+        for (int attempt = 0; constraints.isClassic() && attempt < VARIANT_ATTEMPTS; attempt++) {
+            SudokuData variant = transformer.randomVariant(seed);
+            int difficulty = SudokuSolver.solve(variant, 1);
+            SudokuSolver.unsolve(variant);
+            if (difficulty == requiredDifficulty) return variant;
         }
+        return generate(requiredDifficulty, new Workspace(constraints));
     }
 
-    // Helper function to generate a random integer from min to max inclusive
-    private static int randomInt(int min, int max) { // Inclusive
-        return (int) ((Math.random() * (max - min)) + min);
+    // Minimises a copy of the sudoku and returns it if it still has the same difficulty. Removing clues almost always
+    // keeps or increases the difficulty, but the rating is based on the guesses the solver makes, so this is checked.
+    // If the difficulty has changed then the original sudoku is returned instead.
+    private static SudokuData minimiseKeepingDifficulty(SudokuData sudoku) {
+        SudokuData minimised = sudoku.copy();
+        SudokuMinimiser.minimise(minimised);
+        int difficulty = SudokuSolver.solve(minimised, 1);
+        SudokuSolver.unsolve(minimised);
+        return difficulty == MINIMAL_DIFFICULTY ? minimised : sudoku;
     }
 }
@@ -5,25 +5,18 @@ import android.app.Dialog;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.graphics.Color;
-import android.graphics.Typeface;
-import android.graphics.drawable.GradientDrawable;
 import android.os.Bundle;
 import android.util.Log;
-import android.util.TypedValue;
-import android.view.Gravity;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.*;
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.core.content.ContextCompat;
-import androidx.core.widget.TextViewCompat;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class SudokuGridActivity extends AppCompatActivity {
 
@@ -43,20 +36,35 @@ public class SudokuGridActivity extends AppCompatActivity {
     private static final String DIFFICULTY_KEY = "com.sdenisov.sudoku.SudokuGridActivity.dialogue.difficulty";
     private static final String GENERATOR_GRID_SIZE_KEY =
             "com.sdenisov.sudoku.SudokuGridActivity.dialogue.gridSize.generator";
+    private static final String AUTO_NOTES_KEY = "com.sdenisov.sudoku.SudokuGridActivity.autoNotes";
 
-    private SudokuCellView selectedCell;
     private SudokuData sudokuData;
-    private final List<SudokuCellView> cells = new ArrayList<>();
+    private SudokuBoardView board; // Draws the grid and keeps track of the selected cell
     private SudokuSaver sudokuSaver;
     private SharedPreferences sharedPref;
+    // Shows the number of solutions of the sudoku being entered in the solver (not used in the generator)
+    private LiveSolutionChecker solutionChecker;
+    // Keeps the notes up to date if the player has turned on auto notes in the generator, otherwise null
+    private AutoNotes autoNotes = null;
+    // Solves the sudoku for hints and works out hints in the background (see HintEngine). A single thread is used so
+    // that a hint requested straight after a sudoku is started waits for it to be solved rather than solving it again.
+    private final ExecutorService hintExecutor = Executors.newSingleThreadExecutor();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_sudoku_grid);
+        solutionChecker = new LiveSolutionChecker(this::showSolutionCount);
         newGame(true);
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        solutionChecker.shutdown(); // Stops the checker's background thread
+        hintExecutor.shutdown();
+    }
+
     // Called whenever the activity is resumed - in particular when returning from another activity when clicking the
     // back button. This loads the saved sudoku, thus handling the case where the user starts with the generator,
     // goes to the solver, start the generator again, starts a new game and pressing the back button twice - before, the
@@ -71,7 +79,10 @@ public class SudokuGridActivity extends AppCompatActivity {
                 // If the loaded grid has the same size as this one then the current grid can be directly updated using the
                 // new sudokuData
                 sudokuData = newSudokuData;
-                updateGridIncludingNotes();
+                setUpAutoNotes();
+                prepareHints();
+                updateGrid();
+                checkSolutions();
             } else {
                 // Otherwise, a new grid has to be created, which can be done by calling newGame - this is because we know
                 // a grid is saved so the if (firstGame && sudokuSaver.loadSudoku() != null) statement will be run,
@@ -119,7 +130,6 @@ public class SudokuGridActivity extends AppCompatActivity {
         // A sudoku can only be loaded when the app is opened (i.e. firstGame is true) as at other times, the user has
         // requested a new sudoku so wouldn't want for their current one to be loaded
         if (firstGame && sudokuSaver.loadSudoku() != null) { // If a sudoku can be loaded ...
-            cells.clear(); // Clears the cells list, as it will be repopulated by createGrid()
             // Needed for redrawing a sudoku in onResume - sudoku size might change so layout needs to be reset.
             // Not needed when first loading the app but isn't harmful either
             setContentView(R.layout.activity_sudoku_grid);
@@ -134,7 +144,10 @@ public class SudokuGridActivity extends AppCompatActivity {
             rows = boxRows * boxColumns;
             createGrid(); // Creates a grid of the correct size
             createDigitButtons(); // Creates the digit buttons at the bottom of the grid, including the "X" button
-            updateGridIncludingNotes();
+            setUpAutoNotes();
+            prepareHints();
+            updateGrid();
+            checkSolutions();
 
             ProgressBar generatorProgress = findViewById(R.id.generator_progress);
             generatorProgress.setVisibility(View.GONE); // The sudoku has now been loaded so the progress bar is removed
@@ -158,9 +171,7 @@ public class SudokuGridActivity extends AppCompatActivity {
 
     private void newGameDialogOnSubmit(Dialog dialog, View options) {
             // Resets all the variables to make sure the game is truly restarted
-            selectedCell = null;
             sudokuData = null;
-            cells.clear();
 
             // Resets the layout so that a new grid can be created
             setContentView(R.layout.activity_sudoku_grid);
@@ -216,6 +227,7 @@ public class SudokuGridActivity extends AppCompatActivity {
             createGrid();
             createDigitButtons();
             updateGrid();
+            checkSolutions();
 
             // If this is a generator, then the lines below are run so that a sudoku is generated as soon
             // as the user opens the activity
@@ -224,13 +236,15 @@ public class SudokuGridActivity extends AppCompatActivity {
                 // didn't just freeze
                 generatorProgress.setVisibility(View.VISIBLE);
                 dialog.dismiss(); // Closes the dialog so that the progress bar is shown
-                findViewById(R.id.table_grid).post(() -> { // Makes sure the lines below are executed only
+                board.post(() -> { // Makes sure the lines below are executed only
                          // after all the other lines here (i.e. in the lambda in setPositiveButton).
                          // This means that the user will be shown an empty grid with a loading sign while
                          // the sudoku is being generated, allowing them to see that their request is being
                          // processed
                     // Generates the sudoku
                     sudokuData = SudokuGenerator.generate(difficulty, boxRows, boxColumns);
+                    setUpAutoNotes();
+                    prepareHints();
                     updateGrid(); // Fills the grid with the generated sudoku
                     generatorProgress.setVisibility(View.GONE); // Makes the progress bar invisible
                     // Saves the sudoku so that it is loaded again if the app is restarted
@@ -282,63 +296,11 @@ public class SudokuGridActivity extends AppCompatActivity {
         }
     }
 
+    // Sets up the board from the layout. The board itself works out the size of the grid from sudokuData when the grid
+    // is updated.
     private void createGrid() {
-        TableLayout grid = findViewById(R.id.table_grid);
-        // The black color shows through gaps in the children of grid, thus acting as a border.
-        grid.setBackgroundColor(Color.BLACK);
-        for (int row = 0; row < rows; row++) {
-            TableRow tableRow = new TableRow(this);
-            List<SudokuCellView> rowCells = new ArrayList<>(); // the current row's cells
-            for (int column = 0; column < rows; column++) {
-                SudokuCellView cell = new SudokuCellView(this, row, column);
-                cell.setOnClickListener(this::selectCell); // When the cell is clicked, it is selected
-                cell.setBackgroundColor(Color.WHITE);
-                cell.setGravity(Gravity.CENTER); // Centers text horizontally and vertically
-                // Text is in monospace so that each character has the same width so that notes have the same
-                // position, regardless of whether other notes are present (i.e. regardless whether a digit or space
-                // is used for them). I have decided that it is simpler to use monospace for final values as well.
-                cell.setTypeface(Typeface.MONOSPACE, Typeface.NORMAL);
-                // Makes the text automatically resize to fill the TextView, working for grids of any size.
-                // Maximum size is so large that it is effectively unlimited.
-                TextViewCompat.setAutoSizeTextTypeUniformWithConfiguration(cell, 1, 400,
-                        1, TypedValue.COMPLEX_UNIT_DIP); // from https://stackoverflow.com/a/52772600
-                tableRow.addView(cell);
-                rowCells.add(cell);
-            }
-            grid.addView(tableRow);
-            // tableRow has width and height equal to MATCH_PARENT which means that the width and height are made as
-            // large as possible. Weight is set to 1 to make sure all rows have the same width and height.
-            tableRow.setLayoutParams(new TableRow.LayoutParams(TableRow.LayoutParams.MATCH_PARENT,
-                    TableRow.LayoutParams.MATCH_PARENT, 1));
-            for (int column = 0; column < rowCells.size(); column++) {
-                // The same params are set for each cell as for each row.
-                TableRow.LayoutParams params = new TableRow.LayoutParams(TableRow.LayoutParams.MATCH_PARENT,
-                        TableRow.LayoutParams.MATCH_PARENT, 1);
-                // A thickness of 3px is used for a thick margin, while 1px is used for a thin margin. A thin margin
-                // is used around cells, while a thick margin is used around boxes.
-                params.setMargins(
-                        // For cells every boxRows starting from column 0, there is a box boundary to the left of them
-                        column % boxRows == 0 ? 3 : 1,
-                        // For cells every boxColumns starting from row 0, there is a box boundary on top of them
-                        row % boxColumns == 0 ? 3 : 1,
-                        // For cells every boxRows starting from column boxRows - 1, (the last column in the first box)
-                        // there is a box boundary to the right
-                        (column + 1) % boxRows == 0 ? 3 : 1,
-                        // For cells every boxColumns starting from row boxColumns - 1, (the last row in the first box)
-                        // there is a box boundary beneath them
-                        (row + 1) % boxColumns == 0 ? 3 : 1
-                );
-                TextView cell = rowCells.get(column);
-                cell.setLayoutParams(params);
-                // This is the reason the parameters are only set after all cells for the row have been added - so that
-                // the cell is fully placed with the width and height equal to its final width and height. As a result,
-                // the max width and height are set to the current width and height, to prevent resizing, which was
-                // found to be a problem during testing.
-                cell.setMaxWidth(cell.getWidth());
-                cell.setMaxHeight(cell.getHeight());
-            }
-            cells.addAll(rowCells);
-        }
+        board = findViewById(R.id.board);
+        board.setOnCellClickListener(this::selectCell); // When a cell is clicked, it is selected
     }
 
     private void createDigitButtons() {
@@ -368,8 +330,9 @@ public class SudokuGridActivity extends AppCompatActivity {
     }
 
     private void setCellValue(View view) {
-        if (selectedCell != null) {
-            SudokuData.SudokuCell cellData = sudokuData.getValue(selectedCell.row, selectedCell.column);
+        int selectedIndex = board.getSelectedIndex();
+        if (selectedIndex != -1) {
+            SudokuData.SudokuCell cellData = sudokuData.getValue(selectedIndex);
             if (((Button) findViewById(R.id.button_submit)).getText().equals("Unsolve") ||
                     difficulty > 0 && cellData.isInitialValue()) {
                 // Stops execution here to prevent the value in the selected cell from being modified.
@@ -380,11 +343,11 @@ public class SudokuGridActivity extends AppCompatActivity {
             }
             Button digit = (Button) view;
             ToggleButton noteMode = findViewById(R.id.toggle_notes);
+            Integer previousValue = cellData.getValue(); // Used to update auto notes if the value changes
             // Checks if the digit is the backspace digit by checking its text
             if (digit.getText() == BACKSPACE_BUTTON_TEXT) {
-                selectedCell.setText(""); // Removes the text
                 cellData.setValue(null); // Removes the value form sudokuData
-                Arrays.fill(cellData.notes, false); // Removes all notes
+                cellData.clearNotes(); // Removes all notes
                 // This cell is empty so is now allowed to be modified so is no longer initial
                 cellData.setInitialValue(false);
             } else if (noteMode.isChecked()) { // If note mode is on
@@ -392,162 +355,126 @@ public class SudokuGridActivity extends AppCompatActivity {
                 int valueChosen = Integer.parseInt(String.valueOf(digit.getText()));
                 // Toggles the value of the corresponding note by flipping its boolean value.
                 // Note that the index is valueChosen - 1 as an index of 0 corresponds to note number 1.
-                cellData.notes[valueChosen - 1] = !cellData.notes[valueChosen - 1];
+                cellData.setNote(valueChosen, !cellData.notes[valueChosen - 1]);
                 cellData.setValue(null); // Removes the value as notes cannot coexist with a value
-                updateCellNotes(selectedCell, cellData.notes, false); // Displays the changes to the user
             } else {
-                // Sets text autoscaling - if autoscaling has been removed by updateCellNotes then this undoes that
-                // change
-                TextViewCompat.setAutoSizeTextTypeUniformWithConfiguration(selectedCell, 1, 400,
-                        1, TypedValue.COMPLEX_UNIT_DIP);
-
                 // Note that the value of the button's text can be converted to an integer, as the only button
                 // where this is not allowed is the backspace button, and we know that this isn't the backspace
                 // button.
-                selectedCell.setText(digit.getText());
                 cellData.setValue(Integer.parseInt(String.valueOf(digit.getText())));
                 // This is a value entered by the player, so is initial for the solver and not initial for the
                 // generator
                 cellData.setInitialValue(difficulty <= 0);
 
                 // Removes all notes as notes cannot coexist with a value
-                Arrays.fill(cellData.notes, false);
+                cellData.clearNotes();
+            }
+            if (autoNotes != null && !Objects.equals(previousValue, cellData.getValue())) {
+                autoNotes.valueChanged(selectedIndex, previousValue);
             }
         }
 
-        updateErrorColoring();
+        showChanges(); // Displays the changes to the user
+        checkSolutions();
 
         // Saves the sudoku so that any changes made by the user are automatically saved
         sudokuSaver.saveSudoku(sudokuData);
     }
 
-    private void selectCell(View cell) {
-        // Removes border around old selected cell
-        SudokuCellView sudokuCellView = (SudokuCellView) cell;
-        if (selectedCell != null) selectedCell.setBackgroundColor(Color.WHITE);
-        if (cell == selectedCell) {
-            // Clicking a cell already selected unselects it (note that the previous line also runs in this case,
-            // so the border is removed).
-            selectedCell = null;
-            return;
+    // In the solver, starts checking (in the background) how many solutions the sudoku has, so that the user can see
+    // whether it has exactly one while they are still entering it. The result is shown by showSolutionCount.
+    private void checkSolutions() {
+        if (difficulty <= 0) {
+            solutionChecker.sudokuChanged(sudokuData);
+        } else {
+            // Generated sudokus always have exactly one solution, so there is nothing to show
+            solutionChecker.cancel();
+            if (getSupportActionBar() != null) getSupportActionBar().setSubtitle(null);
         }
-        // https://stackoverflow.com/a/29414975
-        // Draws a border around the selected cell
-        GradientDrawable border = new GradientDrawable();
-        border.setColor(Color.WHITE); // white background
-        // The border color is the app's primary color, so that it fits thematically with the rest of the app
-        border.setStroke(5, ContextCompat.getColor(this, R.color.design_default_color_primary)); // border
-        cell.setBackground(border);
-        selectedCell = sudokuCellView;
     }
 
-    // Colours any cells with errors in red and any cells without errors in black or grey
-    private void updateErrorColoring() {
-        List<Tuple2<Integer, Integer>> errorCoordinates = sudokuData.findErrors();
-        for (SudokuCellView cell : cells) {
-            // Checks if the list of error coordinates contains the coordinates of this cell ...
-            if (errorCoordinates.contains(new Tuple2<>(cell.row, cell.column))) {
-                // ... then the cell has an error so its color is set to the error color (red)
-                cell.setTextColor(sudokuData.getValue(cell.row, cell.column).getErrorColor());
-            } else {
-                // If the cell doesn't have an error then its color is set to its old color
-                cell.setTextColor(sudokuData.getValue(cell.row, cell.column).getColor());
-            }
+    // Turns auto notes on or off for the current sudoku, depending on the player's choice. Auto notes are only used in
+    // the generator, as the notes would get in the way of entering a sudoku in the solver.
+    private void setUpAutoNotes() {
+        if (difficulty > 0 && sharedPref.getBoolean(AUTO_NOTES_KEY, false)) {
+            // Sets the notes of every empty cell, so the grid should be updated including notes after this
+            autoNotes = new AutoNotes(sudokuData);
+        } else {
+            autoNotes = null;
         }
     }
 
-    // Updates the grid, so that it displays all up-to-date information from SudokuData
-    private void updateGrid() {
-        for (int row = 0; row < rows; row++) {
-            columnLoop:
-            for (int column = 0; column < rows; column++) {
-                SudokuData.SudokuCell cellData = sudokuData.getValue(row, column);
-                // row * rows + column is used for index - e.g. if row = 0 and column = 1 then index is rows,
-                // which is correct, as the for loop has just iterated through all columns in the first row,
-                // so the number of cells it has iterated through equals the number of columns which equals rows.
-                SudokuCellView cell = cells.get(row * rows + column);
-                if (cellData.getValue() != null) {
-                    // Same line as in setCellValue - makes sure cell value is displayed correctly by autoscaling the
-                    // text to fill the cell
-                    TextViewCompat.setAutoSizeTextTypeUniformWithConfiguration(cell, 1, 400,
-                            1, TypedValue.COMPLEX_UNIT_DIP);
-
-                    // Updates the text and the text color
-                    cell.setText(String.valueOf(cellData.getValue()));
-                    cell.setTextColor(cellData.getColor());
-
-
-                    // I will consider updating the notes as well, but it isn't necessarily for now, as currently
-                    // whenever any notes are changed, updateCellNotes is called (manually)
-                } else {
-                    for (boolean note : cellData.notes) { // Checks if there are any notes
-                        // If there are notes then moves onto next cell, leaving this cell unchanged
-                        if (note) {
-                            continue columnLoop;
-                        }
-                    }
-                    cell.setText(""); // If a cell's value is null, its text is removed
+    // In the generator, starts solving the sudoku for hints in the background, so that hints can be shown straight
+    // away when the player asks for one
+    private void prepareHints() {
+        if (difficulty <= 0) return;
+        // A snapshot is taken as sudokuData may change while the sudoku is solved
+        SudokuSnapshot puzzle = SudokuSnapshot.of(sudokuData);
+        hintExecutor.execute(() -> HintEngine.forPuzzle(puzzle));
+    }
+
+    // Selects the cell of the next step the player could take and shows how to find its value
+    private void showHint() {
+        SudokuData hintSudokuData = sudokuData;
+        // The snapshot holds both the initial values (for the engine) and the player's values
+        SudokuSnapshot snapshot = SudokuSnapshot.of(sudokuData);
+        hintExecutor.execute(() -> {
+            HintEngine.Hint hint = HintEngine.forPuzzle(snapshot).getHint(snapshot.getValues());
+            runOnUiThread(() -> {
+                // The hint is thrown away if a new game has been started since it was requested
+                if (isDestroyed() || sudokuData != hintSudokuData) return;
+                if (hint == null) {
+                    Toast.makeText(this, R.string.hint_unavailable, Toast.LENGTH_SHORT).show();
+                    return;
                 }
-            }
-        }
-        updateErrorColoring(); // Part of updating the grid is also highlighting any errors
+                board.setSelectedIndex(hint.getIndex());
+                // Rows and columns are shown starting from 1
+                int row = hint.getIndex() / rows + 1;
+                int column = hint.getIndex() % rows + 1;
+                String message = hint.getTechnique() == HintEngine.Technique.MISTAKE ?
+                        getString(R.string.hint_mistake, hint.getValue(), row, column) :
+                        getString(R.string.hint_step, hint.getTechnique().getDescription(), hint.getValue(),
+                                row, column);
+                Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+            });
+        });
     }
 
-    private void updateGridIncludingNotes() {
-        for (int i = 0; i < cells.size(); i++) { // Iterates through each SudokuCellView in order
-            // If statement means only calls updateCellNotes if the cell has notes, to make the code more efficient
-            if (sudokuData.getValue(i).hasNotes()) {
-                // Shows the notes to the user
-                updateCellNotes(cells.get(i), sudokuData.getValue(i).notes, true);
-            }
+    // Shows the number of solutions (0, 1 or 2, where 2 means at least 2) found by solutionChecker under the title
+    private void showSolutionCount(int solutions) {
+        if (getSupportActionBar() == null) return;
+        if (solutions == 0) {
+            getSupportActionBar().setSubtitle(R.string.solutions_none);
+        } else if (solutions == 1) {
+            getSupportActionBar().setSubtitle(R.string.solutions_unique);
+        } else {
+            getSupportActionBar().setSubtitle(R.string.solutions_multiple);
         }
-        updateGrid(); // Updates cells in the grid to show values from sudokuData (rather than just notes)
     }
 
-    private void updateCellNotes(SudokuCellView cell, boolean[] notes, boolean loadingSudoku) {
-        // While experimenting, I have found that when entering values, both the autosizing and the text size line
-        // need to be run (with the autosizing line first), but when loading a sudoku, only one of these lines needs
-        // to be run - the autosizing line for the 6x6 sudoku and the text size line for other sudokus. I can't run
-        // both lines when loading the sudoku as this results in the notes not being displayed
-        if (rows < 9) {
-            TextViewCompat.setAutoSizeTextTypeWithDefaults(cell, TextViewCompat.AUTO_SIZE_TEXT_TYPE_NONE);
-
-            if (!loadingSudoku) {
-                // Through trial and error, I found that dividing by boxRows + 1.6 gives the best results for the
-                // 6x6 grid
-                cell.setTextSize(TypedValue.COMPLEX_UNIT_PX, (float) cell.getWidth() / (float) (boxRows + 1.6));
-            }
-        } else {
-            if (!loadingSudoku) {
-                TextViewCompat.setAutoSizeTextTypeWithDefaults(cell, TextViewCompat.AUTO_SIZE_TEXT_TYPE_NONE);
-            }
+    private void selectCell(int index) {
+        // Clicking a cell already selected unselects it
+        board.setSelectedIndex(index == board.getSelectedIndex() ? -1 : index);
+    }
 
-            // Through trial and error, I found that dividing by boxRows + 1 gives the best results for the
-            // 9x9 and 12x12 grids
-            cell.setTextSize(TypedValue.COMPLEX_UNIT_PX, (float) cell.getWidth() / (boxRows + 1));
-        }
+    // Draws the cells whose values, notes or errors have changed since the grid was last updated. Errors are shown by
+    // colouring cells in red, while other cells are black or grey.
+    private void showChanges() {
+        board.cellsChanged(sudokuData.takeChanges());
+    }
 
-        // Uses a StringBuilder instead of just concatenating to a string, as the StringBuilder has better performance
-        StringBuilder result = new StringBuilder("");
-        for (int i = 1; i <= notes.length; i++) {
-            result.append(notes[i - 1] ? i : " ") // If a note is present, the corresponding number is appended,
-                    // otherwise a note is appended which, due to using monospace, has the same width.
-                    .append(i == notes.length ? "" : // No space or newline is added after the last character
-                            // A newline is usually added every boxRows, so that the grid of notes has the same width
-                            // as the box. However, for 2 digit notes, a newline is added every boxRows / 2, as the
-                            // notes are twice longer so the newlines are twice more frequent. If a newline is not
-                            // added then a space is added instead.
-                            i % (i < 10 ? boxRows : boxRows / 2) == 0 ? "\n" : " ");
-        }
-        cell.setText(result);
-        cell.setTextColor(Color.GRAY);
+    // Updates the whole grid, so that it displays all up-to-date information from SudokuData, including notes. Used
+    // when sudokuData is replaced, as then there are no recorded changes to go by.
+    private void updateGrid() {
+        sudokuData.takeChanges(); // The changes are thrown away, as every cell is drawn anyway
+        board.setSudoku(sudokuData);
     }
 
     public void solveSudoku(View view) {
         Button button = (Button) view;
         // A string resource is used for "Solve" and "Unsolve" text, so that the text can be modified easily
         if (button.getText().equals(getText(R.string.submit))) {
-            if (sudokuData.findErrors().size() != 0) {
+            if (!sudokuData.findErrorIndexes().isEmpty()) {
                 new AlertDialog.Builder(this).setTitle("Invalid")
                         .setMessage("Your sudoku contains an error").show();
             } else if (sudokuData.containsEmptyCells()) {
@@ -562,7 +489,9 @@ public class SudokuGridActivity extends AppCompatActivity {
             }
         } else if (button.getText().equals(getText(R.string.solve))) {
             long before = System.nanoTime();
-            int difficulty = SudokuSolver.solve(sudokuData, 1); // Modifies sudokuData object to solve sudoku
+            // Modifies sudokuData object to solve sudoku. The cached version is used as users often press Solve and
+            // Unsolve repeatedly on the same sudoku.
+            int difficulty = SudokuSolver.solveCached(sudokuData);
             // The time taken by the solver is found by recording the system time before and after and finding the
             // difference. It is also divided by a billion to convert from nanoseconds to seconds.
             Log.d("project", String.valueOf((double) (System.nanoTime() - before) / 1_000_000_000));
@@ -581,7 +510,7 @@ public class SudokuGridActivity extends AppCompatActivity {
             SudokuSolver.unsolve(sudokuData); // Removes all values from solving - i.e. values where playerInput is false
             button.setText(R.string.solve);
         }
-        updateGrid(); // Updates grid based on new sudokuData object
+        showChanges(); // Shows the values filled in or removed by the solver
     }
 
     // Clears all cells. Can only run in the solver (not in the generator)
@@ -594,12 +523,13 @@ public class SudokuGridActivity extends AppCompatActivity {
                 // This cell is empty so is now allowed to be modified so is no longer initial
                 cell.setInitialValue(false);
                 // Removes all notes from the cell (as notes are added by the solver to aid finding the solution)
-                Arrays.fill(cell.notes, false);
+                cell.clearNotes();
             }
         }
-        updateGrid();
+        showChanges();
         // Sets the submit button's text to "solve", as "unsolve" is only used for a filled grid.
         ((Button) findViewById(R.id.button_submit)).setText(getText(R.string.solve));
+        checkSolutions();
 
         // Saves the cleared sudoku so that the user can start fresh if they close the app now then open it again.
         sudokuSaver.saveSudoku(sudokuData);
@@ -608,15 +538,29 @@ public class SudokuGridActivity extends AppCompatActivity {
     @Override
     public boolean onCreateOptionsMenu(Menu menu) { // Is called automatically when the activity is started
         getMenuInflater().inflate(R.menu.menu, menu); // Loads the res/menu/menu.xml file
+        MenuItem autoNotesItem = menu.findItem(R.id.auto_notes);
+        autoNotesItem.setChecked(sharedPref.getBoolean(AUTO_NOTES_KEY, false));
+        autoNotesItem.setVisible(difficulty > 0); // Auto notes are only used in the generator
+        menu.findItem(R.id.hint).setVisible(difficulty > 0); // Hints only make sense for generated sudokus
         return super.onCreateOptionsMenu(menu);
     }
 
     // Automatically called when one of the items from the menu is selected
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
-        // Currently the only item but adding code to check id in case I choose to add more items in the future
         if (item.getItemId() == R.id.new_sudoku) {
             newGame(false); // Starts a new game, showing a dialogue to the user
+        } else if (item.getItemId() == R.id.export_booklet) {
+            startActivity(new Intent(this, PdfGeneratorActivity.class));
+        } else if (item.getItemId() == R.id.hint) {
+            showHint();
+        } else if (item.getItemId() == R.id.auto_notes) {
+            item.setChecked(!item.isChecked());
+            // The choice is saved so that it is kept for future games
+            sharedPref.edit().putBoolean(AUTO_NOTES_KEY, item.isChecked()).apply();
+            setUpAutoNotes();
+            showChanges();
+            sudokuSaver.saveSudoku(sudokuData);
         }
         return true;
     }
@@ -685,6 +629,6 @@ public class SudokuGridActivity extends AppCompatActivity {
         cell = sudokuData.getValue(8, 6);
         cell.setValue(4);
         cell.setInitialValue(true);
-        updateGrid();
+        showChanges();
     }
 }
\ No newline at end of file
@@ -0,0 +1,88 @@
+package com.sdenisov.sudoku;
+
+import java.util.Random;
+
+// Generates random filled (solved) grids of a single size. A filled grid found by a search can be changed into many
+// other filled grids without searching again using SudokuTransformer. So only every SEARCH_INTERVAL-th grid is found
+// by a search and the ones in between are random transformations of it, which makes each grid very cheap.
+// Transformations can break the extra rules of a variant (e.g. swapping two rows moves the cells on a diagonal), so for
+// anything other than classic constraints every grid is found by a search.
+// Not thread safe - each thread should have its own SudokuGridFiller.
+public class SudokuGridFiller {
+    // Number of grids produced from each searched grid. Each grid produced by transforming the searched grid can be
+    // any of the (very many) grids that can be reached by transforming it, so this can be large.
+    private static final int SEARCH_INTERVAL = 1000;
+
+    private final SudokuConstraints constraints;
+    private final int rows;
+    private final Random random;
+    private final SolutionCounter counter;
+    private final SudokuTransformer transformer; // Null unless the constraints are classic
+    private final int[] searchedGrid;
+    private int gridsUntilSearch = 0; // When this reaches 0, a new grid is searched for
+
+    public SudokuGridFiller(SudokuConstraints constraints, Random random) {
+        this.constraints = constraints;
+        this.random = random;
+        rows = constraints.getRows();
+        counter = new SolutionCounter(constraints);
+        searchedGrid = new int[rows * rows];
+        transformer = constraints.isClassic() ?
+                new SudokuTransformer(constraints.getBoxRows(), constraints.getBoxColumns(), random) : null;
+    }
+
+    public SudokuGridFiller(int boxRows, int boxColumns, Random random) {
+        this(SudokuConstraints.classic(boxRows, boxColumns), random);
+    }
+
+    public SudokuGridFiller(int boxRows, int boxColumns) {
+        this(boxRows, boxColumns, new Random());
+    }
+
+    public SudokuGridFiller(SudokuConstraints constraints) {
+        this(constraints, new Random());
+    }
+
+    // Writes a random filled grid into result, with values going from left to right then top to bottom.
+    // Throws IllegalStateException if the constraints can't be met by any grid (e.g. a cage with an impossible sum).
+    public void nextGrid(int[] result) {
+        if (transformer == null) {
+            search(result);
+            return;
+        }
+        if (gridsUntilSearch == 0) {
+            search(searchedGrid);
+            gridsUntilSearch = SEARCH_INTERVAL;
+        }
+        gridsUntilSearch--;
+        transformer.randomise();
+        transformer.transform(searchedGrid, result);
+    }
+
+    private void search(int[] result) {
+        for (int index = 0; index < result.length; index++) counter.setValue(index, 0);
+        // An empty classic grid always has a solution, but a variant's might not
+        if (!counter.fillRandomly(random)) throw new IllegalStateException("No grid meets the constraints");
+        for (int index = 0; index < result.length; index++) result[index] = counter.getValue(index);
+    }
+
+    // Returns a random filled grid as a SudokuData object, with every value set as an initial value
+    public SudokuData nextSudoku() {
+        int[] grid = new int[rows * rows];
+        SudokuData sudoku = new SudokuData(constraints);
+        nextSudoku(sudoku, grid);
+        return sudoku;
+    }
+
+    // Works like nextSudoku, but overwrites every cell of sudoku (which must have the filler's constraints) rather than
+    // creating a new grid, and also writes the values into grid, so that nothing is allocated
+    public void nextSudoku(SudokuData sudoku, int[] grid) {
+        nextGrid(grid);
+        for (int index = 0; index < grid.length; index++) {
+            SudokuData.SudokuCell cell = sudoku.getValue(index);
+            cell.setValue(grid[index]);
+            cell.setInitialValue(true);
+            cell.clearNotes();
+        }
+    }
+}
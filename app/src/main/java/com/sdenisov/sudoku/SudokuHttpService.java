@@ -0,0 +1,422 @@
+package com.sdenisov.sudoku;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// A small HTTP/1.1 server giving other programs access to the generator and solver. It only uses plain sockets and
+// threads, so it runs both inside the app (which then needs the INTERNET permission) and on a normal JVM using main.
+// Endpoints, all accepting GET with a query string or POST with a form body, and all answering with JSON:
+//   /generate?difficulty=1-4&boxRows=3&boxColumns=3   a sudoku and its solution, taken from a PuzzleBank, or 503 if
+//                                                     none is ready in time
+//   /solve?values=...&boxRows=3&boxColumns=3          the solution and difficulty, or 422 if there's no solution
+//   /grade?values=...                                 the difficulty and number of solutions (0, 1 or 2)
+//   /count?values=...&limit=2                         the number of solutions, stopping at limit
+// values lists the cells from left to right then top to bottom, either separated by commas or (for sizes up to 35x35)
+// as one character per cell, with 1-9 then A-Z for values and 0 or . for empty cells. boxRows and boxColumns default
+// to 3, giving a 9x9 sudoku.
+// Each connection is handled by a thread from a fixed pool, and is kept open between requests so that clients don't
+// have to connect again for every request. When every thread is busy, new connections are answered with 503 straight
+// away rather than queued, and /solve and /grade are turned away in the same way by SolveBatcher when too many are
+// waiting, so that an overloaded server stays responsive instead of every request getting slower.
+public class SudokuHttpService {
+    // A response's status code and JSON body
+    private static class Response {
+        private final int status;
+        private final String body;
+
+        private Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private static final int IDLE_TIMEOUT_MILLIS = 10000; // Connections with no requests for this long are closed
+    private static final int MAX_LINE_LENGTH = 8192; // For the request line and each header
+    private static final int MAX_BODY_LENGTH = 65536;
+    private static final long SOLVE_TIMEOUT_MILLIS = 5000;
+    // How long /generate waits for the bank to generate a sudoku when none of that kind are ready
+    private static final long GENERATE_TIMEOUT_MILLIS = 2000;
+    private static final long COUNT_TIMEOUT_MILLIS = 2000;
+    private static final int MAX_COUNT_LIMIT = 1000;
+    private static final int MAX_ROWS = 16; // Larger sudokus can take far too long to solve
+    // SolveBatcher settings: sudokus that can be waiting at once, and the most a worker takes in one go
+    private static final int SOLVE_QUEUE_CAPACITY = 4096;
+    private static final int MAX_SOLVE_BATCH = 64;
+    private static final String DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    private final ServerSocket serverSocket;
+    private final ThreadPoolExecutor connectionExecutor;
+    private final ScheduledExecutorService countTimer;
+    private final SolveBatcher solveBatcher;
+    private final PuzzleBank puzzleBank;
+    private Thread acceptThread = null;
+
+    // Opens the port straight away (0 chooses any free port, see getPort), but only starts answering requests once
+    // start is called. connectionThreads is the number of connections that can be open at once.
+    public SudokuHttpService(int port, int connectionThreads, int solverThreads, int bankThreads, int bankCapacity)
+            throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port), connectionThreads);
+        // With a SynchronousQueue, execute throws RejectedExecutionException rather than queueing a connection when
+        // every thread is busy
+        connectionExecutor = new ThreadPoolExecutor(connectionThreads, connectionThreads, 0, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "http-connection");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        connectionExecutor.prestartAllCoreThreads();
+        countTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "count-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        solveBatcher = new SolveBatcher(solverThreads, SOLVE_QUEUE_CAPACITY, MAX_SOLVE_BATCH);
+        puzzleBank = new PuzzleBank(bankCapacity, bankThreads);
+    }
+
+    // Runs the service until the process is stopped. The arguments are the port (8080 by default) and the number of
+    // sudokus of each kind to keep ready (16 by default).
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int bankCapacity = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int cores = Runtime.getRuntime().availableProcessors();
+        SudokuHttpService service =
+                new SudokuHttpService(port, 256, cores, Math.max(1, cores / 2), bankCapacity);
+        service.start();
+        System.out.println("Serving sudokus on port " + service.getPort());
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public synchronized void start() {
+        if (acceptThread != null) return;
+        puzzleBank.start();
+        acceptThread = new Thread(this::acceptConnections, "http-accept");
+        acceptThread.start();
+    }
+
+    // Closes the port and stops generating sudokus. Connections that are already open are closed once they have been
+    // idle for IDLE_TIMEOUT_MILLIS.
+    public synchronized void stop() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // The port is being closed anyway
+        }
+        connectionExecutor.shutdownNow();
+        countTimer.shutdownNow();
+        solveBatcher.close();
+        puzzleBank.close();
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                return; // The port has been closed by stop
+            }
+            try {
+                connectionExecutor.execute(() -> serve(socket));
+            } catch (RejectedExecutionException e) {
+                // Every thread is busy. The response is short enough to fit in the socket's buffer, so writing it here
+                // doesn't hold up accepting other connections.
+                try (Socket rejected = socket) {
+                    writeResponse(rejected.getOutputStream(), error(503, "Too many connections"), false);
+                } catch (IOException ignored) {
+                    // The client has gone already
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket connection = socket) {
+            connection.setSoTimeout(IDLE_TIMEOUT_MILLIS);
+            // Responses are written in one go, so there's no point in waiting to fill a packet before sending them
+            connection.setTcpNoDelay(true);
+            InputStream input = new BufferedInputStream(connection.getInputStream());
+            OutputStream output = new BufferedOutputStream(connection.getOutputStream());
+            while (true) {
+                String requestLine = readLine(input);
+                if (requestLine == null) return;
+                if (requestLine.isEmpty()) continue; // Some clients send an extra line break after a body
+                String[] parts = requestLine.split(" ");
+                // HTTP/1.1 connections are kept open unless the client asks otherwise, while HTTP/1.0 ones are closed
+                boolean keepAlive = parts.length == 3 && parts[2].equals("HTTP/1.1");
+                int contentLength = 0;
+                String header;
+                while ((header = readLine(input)) != null && !header.isEmpty()) {
+                    int colon = header.indexOf(':');
+                    if (colon == -1) continue;
+                    String name = header.substring(0, colon).trim();
+                    String value = header.substring(colon + 1).trim();
+                    if (name.equalsIgnoreCase("Content-Length")) {
+                        try {
+                            contentLength = Integer.parseInt(value);
+                        } catch (NumberFormatException e) {
+                            contentLength = -1;
+                        }
+                    } else if (name.equalsIgnoreCase("Connection")) {
+                        if (value.equalsIgnoreCase("close")) keepAlive = false;
+                        if (value.equalsIgnoreCase("keep-alive")) keepAlive = true;
+                    }
+                }
+                if (header == null) return;
+
+                Response response;
+                if (parts.length != 3 || contentLength < 0 || contentLength > MAX_BODY_LENGTH) {
+                    // The rest of the request can't be read reliably, so the connection is closed afterwards
+                    response = error(400, "Malformed request");
+                    keepAlive = false;
+                } else {
+                    byte[] body = new byte[contentLength];
+                    for (int read = 0; read < contentLength; ) {
+                        int count = input.read(body, read, contentLength - read);
+                        if (count == -1) return;
+                        read += count;
+                    }
+                    response = handle(parts[0], parts[1], body);
+                }
+                writeResponse(output, response, keepAlive);
+                if (!keepAlive) return;
+            }
+        } catch (IOException e) {
+            // The client closed the connection, stop closed it, or it was idle for too long (SocketTimeoutException)
+        }
+    }
+
+    private Response handle(String method, String target, byte[] body) {
+        if (!method.equals("GET") && !method.equals("POST")) return error(405, "Only GET and POST are supported");
+        int question = target.indexOf('?');
+        String path = question == -1 ? target : target.substring(0, question);
+        Map<String, String> params = new HashMap<>();
+        try {
+            if (question != -1) parseParams(target.substring(question + 1), params);
+            if (body.length > 0) parseParams(new String(body, StandardCharsets.UTF_8), params);
+            switch (path) {
+                case "/generate":
+                    return generate(params);
+                case "/solve":
+                    return solve(params, true);
+                case "/grade":
+                    return solve(params, false);
+                case "/count":
+                    return count(params);
+                default:
+                    return error(404, "Unknown path");
+            }
+        } catch (IllegalArgumentException e) {
+            // Includes NumberFormatException from parameters that aren't numbers
+            return error(400, e.getMessage());
+        } catch (RuntimeException e) {
+            return error(500, "Internal error");
+        }
+    }
+
+    private Response generate(Map<String, String> params) {
+        int difficulty = intParam(params, "difficulty", 2);
+        int boxRows = intParam(params, "boxRows", 3);
+        int boxColumns = intParam(params, "boxColumns", 3);
+        if (!PuzzleBank.isSupported(boxRows, boxColumns)) {
+            throw new IllegalArgumentException("Only 3x2, 3x3 and 4x3 boxes can be generated");
+        }
+        if (difficulty < 1 || difficulty > 4) throw new IllegalArgumentException("difficulty must be from 1 to 4");
+        PuzzleBank.Puzzle puzzle = puzzleBank.take(difficulty, boxRows, boxColumns, GENERATE_TIMEOUT_MILLIS);
+        if (puzzle == null) return error(503, "No sudokus of this kind are ready");
+        StringBuilder json = new StringBuilder();
+        json.append("{\"boxRows\":").append(boxRows).append(",\"boxColumns\":").append(boxColumns)
+                .append(",\"difficulty\":").append(difficulty).append(",\"values\":");
+        appendArray(json, puzzle.getValues());
+        json.append(",\"solution\":");
+        appendArray(json, puzzle.getSolution());
+        return new Response(200, json.append('}').toString());
+    }
+
+    // Handles /solve if includeSolution is true, or /grade otherwise
+    private Response solve(Map<String, String> params, boolean includeSolution) {
+        int boxRows = intParam(params, "boxRows", 3);
+        int boxColumns = intParam(params, "boxColumns", 3);
+        int[] values = parseValues(params.get("values"), boxRows, boxColumns);
+        SolutionCache.Entry entry;
+        try {
+            entry = solveBatcher.submit(boxRows, boxColumns, values)
+                    .get(SOLVE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException | TimeoutException e) {
+            return error(503, "Too many sudokus waiting to be solved");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return error(503, "Shutting down");
+        } catch (ExecutionException e) {
+            return error(500, "Internal error");
+        }
+
+        int solutionCount = entry.getSolutionCount();
+        if (includeSolution && solutionCount == 0) return error(422, "The sudoku has no solution");
+        StringBuilder json = new StringBuilder();
+        json.append("{\"solutions\":").append(solutionCount);
+        if (solutionCount > 0) json.append(",\"difficulty\":").append(entry.getDifficulty());
+        if (includeSolution) {
+            json.append(",\"solution\":");
+            appendArray(json, entry.getSolution());
+        }
+        return new Response(200, json.append('}').toString());
+    }
+
+    private Response count(Map<String, String> params) {
+        int boxRows = intParam(params, "boxRows", 3);
+        int boxColumns = intParam(params, "boxColumns", 3);
+        int limit = intParam(params, "limit", 2);
+        if (limit < 1 || limit > MAX_COUNT_LIMIT) {
+            throw new IllegalArgumentException("limit must be from 1 to " + MAX_COUNT_LIMIT);
+        }
+        int[] values = parseValues(params.get("values"), boxRows, boxColumns);
+        SolutionCounter counter = new SolutionCounter(boxRows, boxColumns);
+        for (int index = 0; index < values.length; index++) {
+            if (values[index] != 0) counter.setValue(index, values[index]);
+        }
+        // Counting is done on this thread, as it is fast for all but nearly empty grids with a high limit, which are
+        // stopped after COUNT_TIMEOUT_MILLIS so they can't tie up the thread
+        ScheduledFuture<?> timeout = countTimer.schedule(counter::cancel, COUNT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        int found = counter.countSolutions(limit);
+        timeout.cancel(false);
+        if (found == SolutionCounter.CANCELLED) return error(503, "Counting the solutions took too long");
+        return new Response(200, "{\"solutions\":" + found + "}");
+    }
+
+    private static int intParam(Map<String, String> params, String name, int defaultValue) {
+        String value = params.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    // Returns the values of a sudoku in either of the formats described at the top of the class, throwing
+    // IllegalArgumentException if they don't fit a sudoku with these box dimensions
+    private static int[] parseValues(String text, int boxRows, int boxColumns) {
+        if (boxRows < 1 || boxColumns < 1 || boxRows * boxColumns > MAX_ROWS) {
+            throw new IllegalArgumentException("Sudokus can have at most " + MAX_ROWS + " rows");
+        }
+        if (text == null) throw new IllegalArgumentException("values is missing");
+        int rows = boxRows * boxColumns;
+        int[] values = new int[rows * rows];
+        String[] cells = text.indexOf(',') != -1 ? text.split(",", -1) : null;
+        int length = cells != null ? cells.length : text.length();
+        if (length != values.length) {
+            throw new IllegalArgumentException("values must have " + values.length + " cells, not " + length);
+        }
+        for (int index = 0; index < values.length; index++) {
+            int value;
+            if (cells != null) {
+                String cell = cells[index].trim();
+                value = cell.isEmpty() || cell.equals(".") ? 0 : Integer.parseInt(cell);
+            } else {
+                char character = Character.toUpperCase(text.charAt(index));
+                value = character == '.' ? 0 : DIGITS.indexOf(character);
+            }
+            if (value < 0 || value > rows) throw new IllegalArgumentException("Invalid value in cell " + index);
+            values[index] = value;
+        }
+        return values;
+    }
+
+    private static void parseParams(String text, Map<String, String> params) {
+        for (String pair : text.split("&")) {
+            if (pair.isEmpty()) continue;
+            int equals = pair.indexOf('=');
+            try {
+                String name = URLDecoder.decode(equals == -1 ? pair : pair.substring(0, equals), "UTF-8");
+                String value = equals == -1 ? "" : URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+                params.put(name, value);
+            } catch (UnsupportedEncodingException e) {
+                throw new AssertionError(e); // Every JVM supports UTF-8
+            }
+        }
+    }
+
+    private static void appendArray(StringBuilder json, int[] values) {
+        json.append('[');
+        for (int index = 0; index < values.length; index++) {
+            if (index > 0) json.append(',');
+            json.append(values[index]);
+        }
+        json.append(']');
+    }
+
+    // Messages can include text from the request (e.g. from a NumberFormatException), so quotes and backslashes are
+    // escaped. Control characters can't appear, as the request line and headers are split at line breaks and the
+    // messages don't include anything from a body.
+    private static Response error(int status, String message) {
+        String escaped = String.valueOf(message).replace("\\", "\\\\").replace("\"", "\\\"");
+        return new Response(status, "{\"error\":\"" + escaped + "\"}");
+    }
+
+    // Reads a line ending in CRLF (or just LF), returning null at the end of the stream
+    private static String readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            int next = input.read();
+            if (next == -1) return line.size() == 0 ? null : line.toString("ISO-8859-1");
+            if (next == '\n') break;
+            if (line.size() == MAX_LINE_LENGTH) throw new IOException("Line too long");
+            line.write(next);
+        }
+        String result = line.toString("ISO-8859-1");
+        return result.endsWith("\r") ? result.substring(0, result.length() - 1) : result;
+    }
+
+    private static void writeResponse(OutputStream output, Response response, boolean keepAlive) throws IOException {
+        byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+        String head = "HTTP/1.1 " + response.status + " " + reasonPhrase(response.status) + "\r\n" +
+                "Content-Type: application/json\r\n" +
+                "Content-Length: " + body.length + "\r\n" +
+                (keepAlive ? "" : "Connection: close\r\n") +
+                "\r\n";
+        output.write(head.getBytes(StandardCharsets.ISO_8859_1));
+        output.write(body);
+        output.flush();
+    }
+
+    private static String reasonPhrase(int status) {
+        switch (status) {
+            case 200:
+                return "OK";
+            case 400:
+                return "Bad Request";
+            case 404:
+                return "Not Found";
+            case 405:
+                return "Method Not Allowed";
+            case 422:
+                return "Unprocessable Entity";
+            case 503:
+                return "Service Unavailable";
+            default:
+                return "Internal Server Error";
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.sdenisov.sudoku;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// Draws sudokus as SVG or PNG images without any Android classes, so that images for printing or the web can be made
+// outside the app. Values are drawn in black if they are initial values and grey otherwise, and notes can be included.
+// Android has no java.awt, so PNGs are drawn into a greyscale byte array using a small built-in font for the digits,
+// and then encoded here. Everything that doesn't depend on the values is cached and shared by all images drawn by the
+// same renderer: the empty grid for each box shape (copied for every PNG, or reused as text for every SVG) and each
+// digit scaled to each size. So drawing an image mostly consists of copying the empty grid and the digits.
+// A renderer can be used by several threads at once.
+public class SudokuImageRenderer {
+    public enum Format {
+        SVG("svg"),
+        PNG("png");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    // Widths of the lines between cells and between boxes, in pixels
+    private static final int THIN_LINE = 1;
+    private static final int THICK_LINE = 3;
+    // Greyscale colours used in PNGs
+    private static final byte WHITE = (byte) 255;
+    private static final byte BLACK = 0;
+    private static final byte GREY = (byte) 128;
+    // Heights of values and notes as a proportion of the space they have
+    private static final double VALUE_HEIGHT = 0.6;
+    private static final double NOTE_HEIGHT = 0.7;
+    // The digits 0 to 9 as 5x7 pixel bitmaps, with # for a filled pixel
+    private static final String[][] FONT = {
+            {" ### ", "#   #", "#  ##", "# # #", "##  #", "#   #", " ### "},
+            {"  #  ", " ##  ", "  #  ", "  #  ", "  #  ", "  #  ", " ### "},
+            {" ### ", "#   #", "    #", "   # ", "  #  ", " #   ", "#####"},
+            {"#####", "   # ", "  #  ", "   # ", "    #", "#   #", " ### "},
+            {"   # ", "  ## ", " # # ", "#  # ", "#####", "   # ", "   # "},
+            {"#####", "#    ", "#### ", "    #", "    #", "#   #", " ### "},
+            {"  ## ", " #   ", "#    ", "#### ", "#   #", "#   #", " ### "},
+            {"#####", "    #", "   # ", "  #  ", " #   ", " #   ", " #   "},
+            {" ### ", "#   #", "#   #", " ### ", "#   #", "#   #", " ### "},
+            {" ### ", "#   #", "#   #", " ####", "    #", "   # ", " ##  "},
+    };
+    private static final int FONT_WIDTH = 5;
+    private static final int FONT_HEIGHT = 7;
+
+    // A number drawn at a given scale: a mask of its pixels, row by row
+    private static class Glyph {
+        private final int width;
+        private final int height;
+        private final boolean[] pixels;
+
+        private Glyph(int width, int height, boolean[] pixels) {
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+        }
+    }
+
+    private final int cellSize; // Width and height of each cell in pixels, not including the lines around it
+    // The empty grid for each box shape, as PNG pixels and as the start of an SVG, keyed by boxRows * 256 + boxColumns
+    private final Map<Integer, byte[]> emptyGrids = new ConcurrentHashMap<>();
+    private final Map<Integer, String> svgGrids = new ConcurrentHashMap<>();
+    // Numbers scaled to each size, keyed by the number in the upper 32 bits and the scale in the lower 32 bits (as
+    // very large cells can have scales of 256 or more)
+    private final Map<Long, Glyph> glyphs = new ConcurrentHashMap<>();
+
+    public SudokuImageRenderer(int cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    // The width (and height) of an image of a grid with the given number of rows
+    public int getImageSize(int rows) {
+        return rows * (cellSize + THICK_LINE) + THICK_LINE;
+    }
+
+    public void render(SudokuData sudoku, boolean includeNotes, Format format, OutputStream output)
+            throws IOException {
+        if (format == Format.SVG) {
+            Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+            renderSvg(sudoku, includeNotes, writer);
+            writer.flush();
+        } else {
+            renderPng(sudoku, includeNotes, output);
+        }
+    }
+
+    // Renders each sudoku into its own file in directory, named sudoku_1, sudoku_2 and so on. The sudokus are
+    // rendered on the given number of threads while this thread takes sudokus from the iterator, which can produce
+    // them as they are needed (e.g. reading them from a file), as at most two sudokus per thread are waiting to be
+    // rendered at any time. The sudokus mustn't be changed once they have been returned by the iterator.
+    // Throws the first IOException from writing a file, after waiting for the other files to be finished.
+    public void renderAll(Iterator<SudokuData> sudokus, boolean includeNotes, Format format, File directory,
+                          int threads) throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Semaphore waiting = new Semaphore(threads * 2);
+        // Only the first exception is kept, as the others are likely to have the same cause
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        try {
+            for (int number = 1; sudokus.hasNext() && failure.get() == null; number++) {
+                SudokuData sudoku = sudokus.next();
+                File file = new File(directory, "sudoku_" + number + "." + format.extension);
+                waiting.acquire();
+                executor.execute(() -> {
+                    try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file))) {
+                        render(sudoku, includeNotes, format, output);
+                    } catch (IOException e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        waiting.release();
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        }
+        if (failure.get() != null) throw failure.get();
+    }
+
+    public void renderSvg(SudokuData sudoku, boolean includeNotes, Writer writer) throws IOException {
+        int rows = sudoku.getRows();
+        writer.write(svgGrids.computeIfAbsent(sudoku.getBoxRows() * 256 + sudoku.getBoxColumns(),
+                key -> createSvgGrid(sudoku.getBoxRows(), sudoku.getBoxColumns())));
+        writer.write("<g font-family=\"sans-serif\" text-anchor=\"middle\" dominant-baseline=\"central\">\n");
+        for (int index = 0; index < rows * rows; index++) {
+            SudokuData.SudokuCell cell = sudoku.getValue(index);
+            int left = getCellStart(index % rows);
+            int top = getCellStart(index / rows);
+            if (cell.getValue() != null) {
+                writer.write("<text x=\"" + (left + cellSize / 2.0) + "\" y=\"" + (top + cellSize / 2.0) +
+                        "\" font-size=\"" + cellSize * VALUE_HEIGHT + "\" fill=\"" +
+                        (cell.isInitialValue() ? "black" : "grey") + "\">" + cell.getValue() + "</text>\n");
+            } else if (includeNotes) {
+                double noteWidth = (double) cellSize / sudoku.getBoxRows();
+                double noteHeight = (double) cellSize / sudoku.getBoxColumns();
+                for (int note = 0; note < rows; note++) {
+                    if (!cell.notes[note]) continue;
+                    // Notes are placed in a grid with the same shape as a box, as in SudokuBoardView
+                    writer.write("<text x=\"" + (left + (note % sudoku.getBoxRows() + 0.5) * noteWidth) +
+                            "\" y=\"" + (top + (note / sudoku.getBoxRows() + 0.5) * noteHeight) +
+                            "\" font-size=\"" + Math.min(noteWidth, noteHeight) * NOTE_HEIGHT +
+                            "\" fill=\"grey\">" + (note + 1) + "</text>\n");
+                }
+            }
+        }
+        writer.write("</g>\n</svg>\n");
+    }
+
+    // The start of an SVG for an empty grid, including the lines but not the closing tag
+    private String createSvgGrid(int boxRows, int boxColumns) {
+        int rows = boxRows * boxColumns;
+        int size = getImageSize(rows);
+        StringBuilder result = new StringBuilder();
+        result.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(size).append("\" height=\"")
+                .append(size).append("\" viewBox=\"0 0 ").append(size).append(' ').append(size).append("\">\n");
+        result.append("<rect width=\"").append(size).append("\" height=\"").append(size)
+                .append("\" fill=\"white\"/>\n");
+        for (int i = 0; i <= rows; i++) {
+            // Each box is boxRows cells wide and boxColumns cells tall (see SudokuConstraints.classic)
+            appendSvgLine(result, i, i % boxRows == 0, true, size);
+            appendSvgLine(result, i, i % boxColumns == 0, false, size);
+        }
+        return result.toString();
+    }
+
+    private void appendSvgLine(StringBuilder result, int i, boolean thick, boolean vertical, int size) {
+        int width = thick ? THICK_LINE : THIN_LINE;
+        // Lines are drawn as rectangles so that they cover exactly the same pixels as in a PNG
+        int start = getLineStart(i) + (THICK_LINE - width) / 2;
+        result.append("<rect x=\"").append(vertical ? start : 0).append("\" y=\"").append(vertical ? 0 : start)
+                .append("\" width=\"").append(vertical ? width : size).append("\" height=\"")
+                .append(vertical ? size : width).append("\"/>\n");
+    }
+
+    public void renderPng(SudokuData sudoku, boolean includeNotes, OutputStream output) throws IOException {
+        int rows = sudoku.getRows();
+        int size = getImageSize(rows);
+        byte[] emptyGrid = emptyGrids.computeIfAbsent(sudoku.getBoxRows() * 256 + sudoku.getBoxColumns(),
+                key -> createEmptyGrid(sudoku.getBoxRows(), sudoku.getBoxColumns()));
+        byte[] pixels = emptyGrid.clone();
+        int noteWidth = cellSize / sudoku.getBoxRows();
+        int noteHeight = cellSize / sudoku.getBoxColumns();
+        int valueScale = getScale(cellSize, cellSize * VALUE_HEIGHT, rows);
+        int noteScale = getScale(noteWidth, noteHeight * NOTE_HEIGHT, rows);
+        for (int index = 0; index < rows * rows; index++) {
+            SudokuData.SudokuCell cell = sudoku.getValue(index);
+            int left = getCellStart(index % rows);
+            int top = getCellStart(index / rows);
+            if (cell.getValue() != null) {
+                drawGlyph(pixels, size, getGlyph(cell.getValue(), valueScale), left + cellSize / 2,
+                        top + cellSize / 2, cell.isInitialValue() ? BLACK : GREY);
+            } else if (includeNotes) {
+                for (int note = 0; note < rows; note++) {
+                    if (!cell.notes[note]) continue;
+                    drawGlyph(pixels, size, getGlyph(note + 1, noteScale),
+                            left + note % sudoku.getBoxRows() * noteWidth + noteWidth / 2,
+                            top + note / sudoku.getBoxRows() * noteHeight + noteHeight / 2, GREY);
+                }
+            }
+        }
+        writePng(pixels, size, output);
+    }
+
+    // Returns the largest scale at which the digits fit in the given height, and the widest number (which has two
+    // digits if there are at least 10 rows) fits in the given width with a small gap on each side
+    private static int getScale(int width, double height, int rows) {
+        int widestNumber = rows >= 10 ? FONT_WIDTH * 2 + 1 : FONT_WIDTH;
+        return Math.max(1, (int) Math.min(height / FONT_HEIGHT, width * 0.9 / widestNumber));
+    }
+
+    // The pixels of an empty grid: white cells separated by black lines
+    private byte[] createEmptyGrid(int boxRows, int boxColumns) {
+        int rows = boxRows * boxColumns;
+        int size = getImageSize(rows);
+        byte[] pixels = new byte[size * size];
+        Arrays.fill(pixels, WHITE);
+        for (int i = 0; i <= rows; i++) {
+            int verticalWidth = i % boxRows == 0 ? THICK_LINE : THIN_LINE;
+            int verticalStart = getLineStart(i) + (THICK_LINE - verticalWidth) / 2;
+            int horizontalWidth = i % boxColumns == 0 ? THICK_LINE : THIN_LINE;
+            int horizontalStart = getLineStart(i) + (THICK_LINE - horizontalWidth) / 2;
+            for (int along = 0; along < size; along++) {
+                for (int across = 0; across < verticalWidth; across++) {
+                    pixels[along * size + verticalStart + across] = BLACK;
+                }
+                for (int across = 0; across < horizontalWidth; across++) {
+                    pixels[(horizontalStart + across) * size + along] = BLACK;
+                }
+            }
+        }
+        return pixels;
+    }
+
+    // Position of the line before the i-th row or column. Every line takes up THICK_LINE pixels, so that cells are
+    // at the same positions whichever lines are thick, with thin lines centred in that space.
+    private int getLineStart(int i) {
+        return i * (cellSize + THICK_LINE);
+    }
+
+    private int getCellStart(int i) {
+        return getLineStart(i) + THICK_LINE;
+    }
+
+    private Glyph getGlyph(int number, int scale) {
+        return glyphs.computeIfAbsent((long) number << 32 | scale, key -> createGlyph(String.valueOf(number), scale));
+    }
+
+    // Draws the digits of text next to each other with a gap of one font pixel, with each font pixel becoming a
+    // scale x scale square
+    private static Glyph createGlyph(String text, int scale) {
+        int width = (text.length() * (FONT_WIDTH + 1) - 1) * scale;
+        int height = FONT_HEIGHT * scale;
+        boolean[] pixels = new boolean[width * height];
+        for (int i = 0; i < text.length(); i++) {
+            String[] digit = FONT[text.charAt(i) - '0'];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < FONT_WIDTH * scale; x++) {
+                    pixels[y * width + i * (FONT_WIDTH + 1) * scale + x] = digit[y / scale].charAt(x / scale) == '#';
+                }
+            }
+        }
+        return new Glyph(width, height, pixels);
+    }
+
+    private static void drawGlyph(byte[] pixels, int size, Glyph glyph, int centreX, int centreY, byte colour) {
+        int left = centreX - glyph.width / 2;
+        int top = centreY - glyph.height / 2;
+        for (int y = Math.max(0, -top); y < glyph.height && top + y < size; y++) {
+            // Pixels outside the image are skipped, which can only happen for very small cells
+            for (int x = Math.max(0, -left); x < glyph.width && left + x < size; x++) {
+                if (glyph.pixels[y * glyph.width + x]) pixels[(top + y) * size + left + x] = colour;
+            }
+        }
+    }
+
+    // Writes an 8-bit greyscale PNG. Each row of pixels is preceded by a filter type of 0 (no filter), and the rows
+    // are compressed together into a single IDAT chunk.
+    private static void writePng(byte[] pixels, int size, OutputStream output) throws IOException {
+        DataOutputStream data = new DataOutputStream(output);
+        data.write(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'});
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream headerData = new DataOutputStream(header);
+        headerData.writeInt(size); // Width
+        headerData.writeInt(size); // Height
+        headerData.write(new byte[]{8, 0, 0, 0, 0}); // Bit depth, greyscale, compression, filter and interlace methods
+        writeChunk(data, "IHDR", header.toByteArray());
+
+        byte[] rows = new byte[(size + 1) * size];
+        for (int y = 0; y < size; y++) System.arraycopy(pixels, y * size, rows, y * (size + 1) + 1, size);
+        // Images of grids are mostly large areas of a single colour, so the fastest compression level already makes
+        // them small
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(rows);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) compressed.write(buffer, 0, deflater.deflate(buffer));
+        deflater.end();
+        writeChunk(data, "IDAT", compressed.toByteArray());
+
+        writeChunk(data, "IEND", new byte[0]);
+        data.flush();
+    }
+
+    private static void writeChunk(DataOutputStream data, String type, byte[] content) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        data.writeInt(content.length);
+        data.write(typeBytes);
+        data.write(content);
+        // The CRC covers the type and the content, but not the length
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(content);
+        data.writeInt((int) crc.getValue());
+    }
+}
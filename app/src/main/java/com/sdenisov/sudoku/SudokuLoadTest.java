@@ -0,0 +1,336 @@
+package com.sdenisov.sudoku;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Sends generate and solve requests at a fixed rate, either straight to SudokuGenerator and SudokuSolver or to a
+// SudokuHttpService, and reports latency percentiles and throughput. Used to work out how many requests a machine can
+// handle and to catch slow outliers in the generator, which can take far longer for some sudokus than others.
+// Requests are sent on a fixed schedule (request i is due at i / rate seconds after the start) no matter how long the
+// earlier ones took, and latency is measured from when each request was due rather than when it was actually sent.
+// If requests were only sent once earlier ones had finished, a single slow request would delay all the requests
+// behind it without any of them being measured as slow ("coordinated omission"), so the percentiles would look far
+// better than what a client actually sees. The time from actually sending a request is also recorded (as the service
+// time), so the two can be compared: if they differ a lot then requests are queueing up.
+// Usage: SudokuLoadTest [--rate requests/s] [--duration s] [--warmup s] [--threads n] [--url http://host:port]
+//        [--mix operation:size:difficulty=weight,...]
+// where operation is generate or solve, size is 6x6, 9x9 or 12x12 and difficulty is 1 to 4, e.g.
+// --mix generate:9x9:2=3,solve:12x12:4=1 sends three 9x9 medium generate requests for every 12x12 unlimited solve.
+public class SudokuLoadTest {
+    // One kind of request in the mix, and the latencies measured for it
+    private static class Operation {
+        private final boolean generate; // Otherwise solve
+        private final int boxRows;
+        private final int boxColumns;
+        private final int difficulty;
+        private final int weight;
+        private final String name;
+        // Sudokus for solve requests, generated before the test starts
+        private final List<int[]> puzzles = new ArrayList<>();
+        private final LatencyHistogram latency = new LatencyHistogram(); // From when each request was due
+        private final LatencyHistogram serviceTime = new LatencyHistogram(); // From when each request was sent
+        private final AtomicLong errors = new AtomicLong();
+
+        private Operation(String text) {
+            // e.g. solve:9x9:3=2, where the weight is optional
+            String[] weightParts = text.trim().split("=");
+            String[] parts = weightParts[0].split(":");
+            if (parts.length != 3 || !parts[0].equals("generate") && !parts[0].equals("solve")) {
+                throw new IllegalArgumentException("Invalid operation " + text);
+            }
+            generate = parts[0].equals("generate");
+            int size = findSize(parts[1]);
+            boxRows = SIZE_BOXES[size][0];
+            boxColumns = SIZE_BOXES[size][1];
+            difficulty = Integer.parseInt(parts[2]);
+            if (difficulty < 1 || difficulty > 4) throw new IllegalArgumentException("Invalid difficulty " + text);
+            weight = weightParts.length > 1 ? Integer.parseInt(weightParts[1]) : 1;
+            name = parts[0] + " " + parts[1] + " " + DIFFICULTY_NAMES[difficulty - 1];
+        }
+    }
+
+    private static final String[] SIZE_NAMES = {"6x6", "9x9", "12x12"};
+    // The boxRows and boxColumns of each size, as in SudokuGridActivity
+    private static final int[][] SIZE_BOXES = {{3, 2}, {3, 3}, {4, 3}};
+    private static final String[] DIFFICULTY_NAMES = {"easy", "medium", "hard", "unlimited"};
+    // Each solve request uses one of this many sudokus, with its values randomly swapped around so that no two
+    // requests are the same (which would let SudokuHttpService answer from its cache)
+    private static final int PUZZLES_PER_OPERATION = 8;
+    private static final long REPORT_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final List<Operation> operations = new ArrayList<>();
+    private int totalWeight = 0;
+    private double rate = 10;
+    private int durationSeconds = 30;
+    private int warmupSeconds = 5;
+    private int threads = Runtime.getRuntime().availableProcessors() * 4;
+    private String url = null; // If null, requests are made in this process
+    // All requests in the current interval, for the report printed every second
+    private final LatencyHistogram intervalLatency = new LatencyHistogram();
+
+    public static void main(String[] args) throws Exception {
+        SudokuLoadTest test = new SudokuLoadTest();
+        String mix = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--rate":
+                    test.rate = Double.parseDouble(args[i + 1]);
+                    break;
+                case "--duration":
+                    test.durationSeconds = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--warmup":
+                    test.warmupSeconds = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--threads":
+                    test.threads = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--url":
+                    test.url = args[i + 1].endsWith("/") ? args[i + 1].substring(0, args[i + 1].length() - 1) :
+                            args[i + 1];
+                    break;
+                case "--mix":
+                    mix = args[i + 1];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (mix == null) {
+            // By default, every size and difficulty is solved equally often, and generated half as often
+            StringBuilder defaultMix = new StringBuilder();
+            for (String size : SIZE_NAMES) {
+                for (int difficulty = 1; difficulty <= 4; difficulty++) {
+                    defaultMix.append("generate:").append(size).append(':').append(difficulty).append("=1,");
+                    defaultMix.append("solve:").append(size).append(':').append(difficulty).append("=2,");
+                }
+            }
+            mix = defaultMix.toString();
+        }
+        for (String operation : mix.split(",")) {
+            if (operation.trim().isEmpty()) continue;
+            test.operations.add(new Operation(operation));
+        }
+        for (Operation operation : test.operations) test.totalWeight += operation.weight;
+        test.run();
+    }
+
+    private void run() throws Exception {
+        System.out.println("Generating sudokus to solve...");
+        preparePuzzles();
+        System.out.printf(Locale.US, "Sending %.1f requests/s for %d s (after %d s of warm-up) on %d threads to %s%n",
+                rate, durationSeconds, warmupSeconds, threads, url == null ? "this process" : url);
+
+        long intervalNanos = (long) (1e9 / rate);
+        long start = System.nanoTime() + 100_000_000L; // So that every thread has started before the first request
+        long measureStart = start + warmupSeconds * 1_000_000_000L;
+        long end = measureStart + durationSeconds * 1_000_000_000L;
+        AtomicLong nextRequest = new AtomicLong();
+        // When the last request due after the warm-up finished, so that throughput covers the time taken to answer the
+        // measured requests, but not the warm-up or the time spent waiting for warm-up requests
+        AtomicLong lastMeasuredFinish = new AtomicLong(end);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(executor.submit(() -> {
+                while (true) {
+                    long due = start + nextRequest.getAndIncrement() * intervalNanos;
+                    if (due >= end) return null;
+                    Operation operation = chooseOperation();
+                    int[] puzzle = operation.generate ? null : relabel(
+                            operation.puzzles.get(ThreadLocalRandom.current().nextInt(operation.puzzles.size())),
+                            operation.boxRows * operation.boxColumns);
+                    // If this thread is behind schedule then the request is sent straight away, and the time it
+                    // should have been sent is still counted in its latency
+                    for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    long sent = System.nanoTime();
+                    boolean succeeded = send(operation, puzzle);
+                    long finished = System.nanoTime();
+                    // Only requests due after the warm-up are counted, errors included, so that the summary's
+                    // columns all describe the same requests
+                    if (due >= measureStart) {
+                        if (succeeded) {
+                            operation.latency.record(finished - due);
+                            operation.serviceTime.record(finished - sent);
+                        } else {
+                            operation.errors.incrementAndGet();
+                        }
+                        lastMeasuredFinish.accumulateAndGet(finished, Math::max);
+                    }
+                    intervalLatency.record(finished - due);
+                }
+            }));
+        }
+
+        long nextReport = start + REPORT_INTERVAL_NANOS;
+        for (Future<?> worker : workers) {
+            // Reports are printed while waiting for the workers to finish
+            while (!worker.isDone()) {
+                LockSupport.parkNanos(Math.max(1, nextReport - System.nanoTime()));
+                if (System.nanoTime() >= nextReport) {
+                    printInterval((nextReport - start) / REPORT_INTERVAL_NANOS, nextReport <= measureStart);
+                    nextReport += REPORT_INTERVAL_NANOS;
+                }
+            }
+            worker.get(); // Throws if the worker failed
+        }
+        executor.shutdown();
+        double measuredSeconds = (lastMeasuredFinish.get() - measureStart) / 1e9;
+        printSummary(measuredSeconds);
+    }
+
+    // Generates the sudokus used by solve requests, using every core
+    private void preparePuzzles() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        List<Future<int[]>> results = new ArrayList<>();
+        for (Operation operation : operations) {
+            if (operation.generate) continue;
+            for (int i = 0; i < PUZZLES_PER_OPERATION; i++) {
+                results.add(executor.submit(() -> SolutionCache.getValues(
+                        SudokuGenerator.generate(operation.difficulty, operation.boxRows, operation.boxColumns))));
+            }
+        }
+        int result = 0;
+        for (Operation operation : operations) {
+            if (operation.generate) continue;
+            for (int i = 0; i < PUZZLES_PER_OPERATION; i++) operation.puzzles.add(results.get(result++).get());
+        }
+        executor.shutdown();
+    }
+
+    private Operation chooseOperation() {
+        int choice = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Operation operation : operations) {
+            choice -= operation.weight;
+            if (choice < 0) return operation;
+        }
+        throw new AssertionError(); // choice is less than totalWeight, so an operation is always chosen
+    }
+
+    // Returns the sudoku with its values randomly swapped around, which gives a different sudoku of the same
+    // difficulty
+    private static int[] relabel(int[] values, int rows) {
+        Random random = ThreadLocalRandom.current();
+        int[] labels = new int[rows + 1]; // labels[0] stays 0, for empty cells
+        for (int value = 1; value <= rows; value++) labels[value] = value;
+        for (int value = rows; value > 1; value--) {
+            int other = 1 + random.nextInt(value);
+            int swap = labels[value];
+            labels[value] = labels[other];
+            labels[other] = swap;
+        }
+        int[] result = new int[values.length];
+        for (int index = 0; index < values.length; index++) result[index] = labels[values[index]];
+        return result;
+    }
+
+    // Makes a single request, returning false if it failed
+    private boolean send(Operation operation, int[] puzzle) {
+        if (url == null) {
+            if (operation.generate) {
+                SudokuGenerator.generate(operation.difficulty, operation.boxRows, operation.boxColumns);
+                return true;
+            }
+            SudokuData sudoku = new SudokuData(operation.boxRows, operation.boxColumns);
+            for (int index = 0; index < puzzle.length; index++) {
+                if (puzzle[index] != 0) sudoku.getValue(index).setValue(puzzle[index]);
+            }
+            return SudokuSolver.solve(sudoku, 1) != -1;
+        }
+
+        StringBuilder request = new StringBuilder(url);
+        request.append(operation.generate ? "/generate" : "/solve").append("?boxRows=").append(operation.boxRows)
+                .append("&boxColumns=").append(operation.boxColumns);
+        if (operation.generate) {
+            request.append("&difficulty=").append(operation.difficulty);
+        } else {
+            request.append("&values=");
+            for (int index = 0; index < puzzle.length; index++) {
+                if (index > 0) request.append(',');
+                request.append(puzzle[index]);
+            }
+        }
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(request.toString()).openConnection();
+            int status = connection.getResponseCode();
+            // The body is always read to the end, so that the connection can be used again for the next request
+            InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if (body != null) {
+                try (InputStream input = body) {
+                    ByteArrayOutputStream ignored = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[4096];
+                    for (int read; (read = input.read(buffer)) != -1; ) ignored.write(buffer, 0, read);
+                }
+            }
+            return status == 200;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void printInterval(long second, boolean warmup) {
+        LatencyHistogram interval = intervalLatency.copyAndReset();
+        System.out.printf(Locale.US, "%4d s%s %7d requests  p50 %9s  p99 %9s  max %9s%n", second,
+                warmup ? " (warm-up)" : "          ", interval.getCount(),
+                formatNanos(interval.getValueAtPercentile(50)), formatNanos(interval.getValueAtPercentile(99)),
+                formatNanos(interval.getMax()));
+    }
+
+    private void printSummary(double measuredSeconds) {
+        System.out.println();
+        System.out.printf(Locale.US, "%-24s %8s %8s %9s %9s %9s %9s %9s %9s %7s%n", "Operation", "Requests",
+                "Req/s", "Mean", "p50", "p90", "p99", "p99.9", "Max", "Errors");
+        LatencyHistogram total = new LatencyHistogram();
+        LatencyHistogram totalServiceTime = new LatencyHistogram();
+        long totalErrors = 0;
+        for (Operation operation : operations) {
+            printRow(operation.name, operation.latency, operation.errors.get(), measuredSeconds);
+            total.add(operation.latency);
+            totalServiceTime.add(operation.serviceTime);
+            totalErrors += operation.errors.get();
+        }
+        printRow("all", total, totalErrors, measuredSeconds);
+        System.out.println();
+        System.out.printf(Locale.US, "Target rate %.1f requests/s, achieved %.1f requests/s%n", rate,
+                total.getCount() / measuredSeconds);
+        System.out.printf(Locale.US, "Service time (from sending rather than from being due): p50 %s, p99 %s, max %s%n",
+                formatNanos(totalServiceTime.getValueAtPercentile(50)),
+                formatNanos(totalServiceTime.getValueAtPercentile(99)), formatNanos(totalServiceTime.getMax()));
+    }
+
+    private static void printRow(String name, LatencyHistogram latency, long errors, double measuredSeconds) {
+        System.out.printf(Locale.US, "%-24s %8d %8.1f %9s %9s %9s %9s %9s %9s %7d%n", name, latency.getCount(),
+                latency.getCount() / measuredSeconds, formatNanos((long) latency.getMean()),
+                formatNanos(latency.getValueAtPercentile(50)), formatNanos(latency.getValueAtPercentile(90)),
+                formatNanos(latency.getValueAtPercentile(99)), formatNanos(latency.getValueAtPercentile(99.9)),
+                formatNanos(latency.getMax()), errors);
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < 1_000_000) return String.format(Locale.US, "%.1f us", nanos / 1e3);
+        if (nanos < 1_000_000_000) return String.format(Locale.US, "%.1f ms", nanos / 1e6);
+        return String.format(Locale.US, "%.2f s", nanos / 1e9);
+    }
+
+    private static int findSize(String name) {
+        for (int size = 0; size < SIZE_NAMES.length; size++) {
+            if (SIZE_NAMES[size].equals(name)) return size;
+        }
+        throw new IllegalArgumentException("Invalid size " + name);
+    }
+}
@@ -0,0 +1,40 @@
+package com.sdenisov.sudoku;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class SudokuMinimiser {
+    // Removes initial values from a sudoku with exactly one solution until every remaining initial value is needed -
+    // i.e. removing any one of them would give a sudoku with multiple solutions. The sudoku is modified directly.
+    // Clues are tried in a random order, so minimising the same sudoku twice can give different results.
+    // Rather than solving the whole sudoku again after each removal, a single SolutionCounter is kept for the whole
+    // process and only the removed clue is changed in it. It also only has to look for a solution where the removed
+    // cell has a different value, as the sudoku is already known to have exactly one solution with the current value.
+    public static void minimise(SudokuData sudoku) {
+        SolutionCounter counter = new SolutionCounter(sudoku.getConstraints());
+        List<Integer> clueIndexes = new ArrayList<>();
+        for (int index = 0; index < sudoku.getRows() * sudoku.getRows(); index++) {
+            SudokuData.SudokuCell cell = sudoku.getValue(index);
+            if (cell.isInitialValue() && cell.getValue() != null) {
+                counter.setValue(index, cell.getValue());
+                clueIndexes.add(index);
+            }
+        }
+        Collections.shuffle(clueIndexes);
+
+        for (int index : clueIndexes) {
+            int value = counter.getValue(index);
+            counter.setValue(index, 0);
+            if (counter.hasSolutionWithout(index, value)) {
+                // Removing the clue gives another solution, so the clue is needed and is put back
+                counter.setValue(index, value);
+            } else {
+                // The clue isn't needed so it is also removed from the sudoku itself
+                SudokuData.SudokuCell cell = sudoku.getValue(index);
+                cell.setValue(null);
+                cell.setInitialValue(false);
+            }
+        }
+    }
+}
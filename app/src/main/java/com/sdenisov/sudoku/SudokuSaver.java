@@ -103,7 +103,7 @@ public class SudokuSaver {
                 if (currentChar == NOTE_PRESENT || currentChar == NOTE_ABSENT) {
                     // If the note present sign is used then the note at the current index is set to true, otherwise
                     // it is set to false
-                    currentCell.notes[notesIndex] = currentChar == NOTE_PRESENT;
+                    currentCell.setNote(notesIndex + 1, currentChar == NOTE_PRESENT);
                     notesIndex++; // So that the next iteration moves onto the next note
                 } else if (currentCell.getValue() == null) {
                     // The cell has no value so its value is set to the current character.
@@ -0,0 +1,227 @@
+package com.sdenisov.sudoku;
+
+import java.util.Arrays;
+
+// An unchangeable copy of a grid's values, initial values and notes, which can be shared between threads (e.g. handed
+// from the UI to a background thread, or kept in a cache) without any locking or copying, unlike SudokuData.
+// Changes give a new snapshot instead (see withValue and the other "with" methods), which shares everything except the
+// changed row with the snapshot it was made from: only that row and the array of rows are copied, so changing a cell
+// of a 12x12 grid copies 24 ints and references rather than 144 cells. To solve or otherwise work on a snapshot,
+// toSudokuData gives a SudokuData that can be changed freely.
+// Each cell is packed into a single int: the value (0 if empty) in the lowest VALUE_BITS bits, then the initial value
+// flag, then a bit for each note. This limits snapshots to MAX_ROWS rows, which is far more than the app uses.
+public final class SudokuSnapshot {
+    private static final int VALUE_BITS = 5;
+    private static final int VALUE_MASK = (1 << VALUE_BITS) - 1;
+    private static final int INITIAL_BIT = 1 << VALUE_BITS;
+    private static final int NOTES_SHIFT = VALUE_BITS + 1;
+    public static final int MAX_ROWS = Integer.SIZE - NOTES_SHIFT;
+
+    private final int boxRows;
+    private final int boxColumns;
+    private final int rows;
+    // The packed cells of each row. Rows are shared between snapshots, so must never be changed after a snapshot
+    // using them has been created.
+    private final int[][] cells;
+    // The same as the Zobrist hash of a SudokuData object with the same values and initial values (see
+    // SudokuData.getZobristHash), updated as each snapshot is made from the last
+    private final long zobristHash;
+    private final long[] zobristKeys; // Shared with SudokuData (see SudokuData.getZobristKeys)
+
+    private SudokuSnapshot(int boxRows, int boxColumns, int[][] cells, long zobristHash) {
+        this.boxRows = boxRows;
+        this.boxColumns = boxColumns;
+        this.rows = boxRows * boxColumns;
+        this.cells = cells;
+        this.zobristHash = zobristHash;
+        zobristKeys = SudokuData.getZobristKeys(rows);
+    }
+
+    // Used for snapshots made from another, so that the keys don't have to be looked up again
+    private SudokuSnapshot(SudokuSnapshot previous, int[][] cells, long zobristHash) {
+        boxRows = previous.boxRows;
+        boxColumns = previous.boxColumns;
+        rows = previous.rows;
+        this.cells = cells;
+        this.zobristHash = zobristHash;
+        zobristKeys = previous.zobristKeys;
+    }
+
+    public static SudokuSnapshot empty(int boxRows, int boxColumns) {
+        int rows = boxRows * boxColumns;
+        if (rows > MAX_ROWS) throw new IllegalArgumentException("Snapshots can have at most " + MAX_ROWS + " rows");
+        // Every row of an empty grid is the same, so they can all share one array
+        int[] emptyRow = new int[rows];
+        int[][] cells = new int[rows][];
+        Arrays.fill(cells, emptyRow);
+        return new SudokuSnapshot(boxRows, boxColumns, cells, 0);
+    }
+
+    // Copies the values, initial values and notes of sudokuData
+    public static SudokuSnapshot of(SudokuData sudokuData) {
+        int rows = sudokuData.getRows();
+        if (rows > MAX_ROWS) throw new IllegalArgumentException("Snapshots can have at most " + MAX_ROWS + " rows");
+        int[][] cells = new int[rows][rows];
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < rows; column++) {
+                SudokuData.SudokuCell cell = sudokuData.getValue(row, column);
+                int packed = cell.getValue() == null ? 0 : cell.getValue();
+                if (cell.isInitialValue()) packed |= INITIAL_BIT;
+                for (int note = 0; note < rows; note++) {
+                    if (cell.notes[note]) packed |= 1 << (NOTES_SHIFT + note);
+                }
+                cells[row][column] = packed;
+            }
+        }
+        return new SudokuSnapshot(sudokuData.getBoxRows(), sudokuData.getBoxColumns(), cells,
+                sudokuData.getZobristHash());
+    }
+
+    // Returns a new SudokuData object with the same values, initial values and notes, which can be changed (e.g. by
+    // the solver) without affecting this snapshot
+    public SudokuData toSudokuData() {
+        SudokuData result = new SudokuData(boxRows, boxColumns);
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < rows; column++) {
+                int packed = cells[row][column];
+                if (packed == 0) continue;
+                SudokuData.SudokuCell cell = result.getValue(row, column);
+                if ((packed & VALUE_MASK) != 0) cell.setValue(packed & VALUE_MASK);
+                cell.setInitialValue((packed & INITIAL_BIT) != 0);
+                for (int note = 0; note < rows; note++) {
+                    if ((packed & 1 << (NOTES_SHIFT + note)) != 0) cell.setNote(note + 1, true);
+                }
+            }
+        }
+        // The new grid is shown or worked on as a whole, so there's no point in it starting with every cell changed
+        result.takeChanges();
+        return result;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getBoxRows() {
+        return boxRows;
+    }
+
+    public int getBoxColumns() {
+        return boxColumns;
+    }
+
+    public long getZobristHash() {
+        return zobristHash;
+    }
+
+    // Returns the value of the cell at the index (going from left to right then top to bottom), or 0 if it is empty
+    public int getValue(int index) {
+        return cells[index / rows][index % rows] & VALUE_MASK;
+    }
+
+    public boolean isInitialValue(int index) {
+        return (cells[index / rows][index % rows] & INITIAL_BIT) != 0;
+    }
+
+    // value goes from 1 to the number of rows
+    public boolean hasNote(int index, int value) {
+        return (cells[index / rows][index % rows] & 1 << (NOTES_SHIFT + value - 1)) != 0;
+    }
+
+    // Returns the values of every cell (0 for empty cells), in the same form as SolutionCache.getValues
+    public int[] getValues() {
+        int[] values = new int[rows * rows];
+        for (int index = 0; index < values.length; index++) values[index] = getValue(index);
+        return values;
+    }
+
+    // Returns a snapshot with the cell's value changed to value (0 to empty it), keeping its initial value flag and
+    // notes. Returns this snapshot if the value is already the same.
+    public SudokuSnapshot withValue(int index, int value) {
+        if (value < 0 || value > rows) throw new IllegalArgumentException("Invalid value " + value);
+        int packed = cells[index / rows][index % rows];
+        return withCell(index, packed & ~VALUE_MASK | value);
+    }
+
+    public SudokuSnapshot withInitialValue(int index, boolean initialValue) {
+        int packed = cells[index / rows][index % rows];
+        return withCell(index, initialValue ? packed | INITIAL_BIT : packed & ~INITIAL_BIT);
+    }
+
+    public SudokuSnapshot withNote(int index, int value, boolean present) {
+        if (value < 1 || value > rows) throw new IllegalArgumentException("Invalid note " + value);
+        int bit = 1 << (NOTES_SHIFT + value - 1);
+        int packed = cells[index / rows][index % rows];
+        return withCell(index, present ? packed | bit : packed & ~bit);
+    }
+
+    // Returns a snapshot containing only the initial values (with no notes), which is the sudoku as it was given.
+    // Rows that don't change are shared.
+    public SudokuSnapshot withoutNonInitialValues() {
+        int[][] newCells = null;
+        long newHash = zobristHash;
+        for (int row = 0; row < rows; row++) {
+            int[] newRow = null;
+            for (int column = 0; column < rows; column++) {
+                int packed = cells[row][column];
+                int kept = (packed & INITIAL_BIT) != 0 ? packed & (VALUE_MASK | INITIAL_BIT) : 0;
+                if (kept == packed) continue;
+                if (newRow == null) newRow = cells[row].clone();
+                newRow[column] = kept;
+                int index = row * rows + column;
+                newHash ^= zobristKey(index, packed) ^ zobristKey(index, kept);
+            }
+            if (newRow == null) continue;
+            if (newCells == null) newCells = cells.clone();
+            newCells[row] = newRow;
+        }
+        return newCells == null ? this : new SudokuSnapshot(this, newCells, newHash);
+    }
+
+    private SudokuSnapshot withCell(int index, int packed) {
+        int row = index / rows;
+        int column = index % rows;
+        int oldPacked = cells[row][column];
+        if (packed == oldPacked) return this;
+        int[] newRow = cells[row].clone();
+        newRow[column] = packed;
+        int[][] newCells = cells.clone();
+        newCells[row] = newRow;
+        long newHash = zobristHash ^ zobristKey(index, oldPacked) ^ zobristKey(index, packed);
+        return new SudokuSnapshot(this, newCells, newHash);
+    }
+
+    // The key for the cell's value and initial value, laid out as described in SudokuData
+    private long zobristKey(int index, int packed) {
+        int key = (index * (rows + 1) + (packed & VALUE_MASK)) * 2 + ((packed & INITIAL_BIT) != 0 ? 1 : 0);
+        return zobristKeys[key];
+    }
+
+    // Two snapshots are equal if they have the same box sizes and every cell has the same value and initial value.
+    // As with SudokuData, notes are ignored. Rows shared between the two snapshots aren't compared at all.
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof SudokuSnapshot)) return false;
+        SudokuSnapshot otherSnapshot = (SudokuSnapshot) other;
+        if (zobristHash != otherSnapshot.zobristHash || boxRows != otherSnapshot.boxRows ||
+                boxColumns != otherSnapshot.boxColumns) {
+            return false;
+        }
+        for (int row = 0; row < rows; row++) {
+            if (cells[row] == otherSnapshot.cells[row]) continue;
+            for (int column = 0; column < rows; column++) {
+                if ((cells[row][column] & (VALUE_MASK | INITIAL_BIT)) !=
+                        (otherSnapshot.cells[row][column] & (VALUE_MASK | INITIAL_BIT))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(zobristHash);
+    }
+}
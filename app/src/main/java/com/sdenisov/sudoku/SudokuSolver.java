@@ -1,20 +1,164 @@
 package com.sdenisov.sudoku;
 
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class SudokuSolver {
+    // Number of sudokus whose results are remembered by solveCached and grade
+    private static final int CACHE_CAPACITY = 1024;
+    private static final SolutionCache cache = new SolutionCache(CACHE_CAPACITY);
+
     // Works by modifying sudokuData object so doesn't need to return a new SudokuData object.
-    // Need to use separate procedures for solve and solveWithRecursion as the former updates all notes while the
-    // latter doesn't. This is because solve is called only once so updating all notes takes an acceptable amount of
-    // time, while solveWithRecursion is called multiple times, so it doesn't take an acceptable amount of time.
+    // The notes of sudokuData aren't used or updated while solving, as the search keeps its own notes (see Search).
     // Returns the difficulty: 1 (easy), 2 (medium), 3 (hard) or 4 (unlimited), with -1 if no solutions
     public static int solve(SudokuData sudokuData, int noteSelectionMethod) {
+        return solve(sudokuData, noteSelectionMethod, null);
+    }
+
+    // Works like solve(sudokuData, noteSelectionMethod), but grids found to have no solutions are recorded in
+    // transpositionTable and skipped if the search reaches them again. transpositionTable may be null, in which case
+    // no grids are recorded. The same table can be reused for several solves, as long as only one thread uses it.
+    public static int solve(SudokuData sudokuData, int noteSelectionMethod, TranspositionTable transpositionTable) {
         // If noteSelectionMethod is positive, notes are selected in increasing order.
         // If negative then in decreasing order.
         // If zero then in random order.
-        updateNotes(sudokuData, -1);
-        int[] guesses = solveWithRecursion(sudokuData, noteSelectionMethod);
-        sudokuData.clearNotes(); // Removes any notes that were added to help work out the solution
+        Search search = new Search(sudokuData.getConstraints());
+        search.start(sudokuData, noteSelectionMethod, transpositionTable, null, new SolverStatistics());
+        int[] guesses = solveWithStack(sudokuData, search);
+        sudokuData.clearNotes(); // Removes any notes left in the cells that have been filled in
+        return rateDifficulty(guesses);
+    }
+
+    // Works like solve(sudokuData, 1), but when there are several cells with the fewest notes, one of them is chosen at
+    // random rather than always the first. Usually the time taken by the solver is similar for any order, but a few
+    // sudokus take far longer for some orders than others. So the search gives up after a limited number of steps and
+    // starts again in a different random order, with the limits following the Luby sequence (1, 1, 2, 1, 1, 2, 4, 1,
+    // ...) multiplied by the number of cells. This sequence is known to keep the expected time within a small factor
+    // of the time for the best possible limit, without having to know what that limit is.
+    // Grids found to have no solutions are recorded in transpositionTable (which may be null), so that later attempts
+    // skip them. Using the same seed always gives the same result. The number of restarts and other statistics are
+    // added to statistics (which may be null).
+    // The difficulty is rated using the guesses made by the attempt which found the solution.
+    public static int solveWithRestarts(SudokuData sudokuData, long seed, TranspositionTable transpositionTable,
+                                        SolverStatistics statistics) {
+        if (statistics == null) statistics = new SolverStatistics();
+        Search search = new Search(sudokuData.getConstraints());
+        search.start(sudokuData, 1, transpositionTable, new Random(seed), statistics);
+        int[] guesses;
+        for (int attempt = 1; ; attempt++) {
+            search.stepsLeft = luby(attempt) * sudokuData.getRows() * sudokuData.getRows();
+            guesses = solveWithStack(sudokuData, search);
+            if (guesses != GAVE_UP) break;
+            // solveWithStack undoes all of its changes when giving up, so the next attempt starts from the same
+            // grid
+            statistics.restarts++;
+        }
+        sudokuData.clearNotes();
+        return rateDifficulty(guesses);
+    }
+
+    // A way of solving sudokus, so that callers can choose between solvers or chain them (see withFallback), e.g. a
+    // server grading very large grids. An implementation either fills in every empty cell of sudokuData with a solution
+    // (as non-initial values) and returns SOLVED, or leaves sudokuData unchanged and returns NO_SOLUTION, or GAVE_UP if
+    // timeLimitNanos ran out first. A time limit of Long.MAX_VALUE means no limit. The counts of what the solver did
+    // are added to statistics, which may be null.
+    public interface Backend {
+        int SOLVED = 1;
+        int NO_SOLUTION = 0;
+        int GAVE_UP = -1;
+
+        int solve(SudokuData sudokuData, long timeLimitNanos, SolverStatistics statistics);
+    }
+
+    // The search used by solve, with restarts as in solveWithRestarts. As it only ever undoes its last guess, a mistake
+    // made early on can take a very long time to find on very large or heavily constrained grids.
+    public static final Backend HEURISTIC = SudokuSolver::solveHeuristic;
+    // Clause learning (see CdclSolver), which doesn't get stuck in the same way
+    public static final Backend CDCL = CdclSolver::solve;
+
+    // Returns a backend which tries first for up to firstTimeLimitNanos, and then fallback for whatever is left of the
+    // time limit it is given, e.g. withFallback(HEURISTIC, 100_000_000, CDCL)
+    public static Backend withFallback(Backend first, long firstTimeLimitNanos, Backend fallback) {
+        return (sudokuData, timeLimitNanos, statistics) -> {
+            long start = System.nanoTime();
+            int result = first.solve(sudokuData, Math.min(firstTimeLimitNanos, timeLimitNanos), statistics);
+            if (result != Backend.GAVE_UP) return result;
+            if (timeLimitNanos == Long.MAX_VALUE) return fallback.solve(sudokuData, Long.MAX_VALUE, statistics);
+            long timeLeft = timeLimitNanos - (System.nanoTime() - start);
+            if (timeLeft <= 0) return Backend.GAVE_UP;
+            return fallback.solve(sudokuData, timeLeft, statistics);
+        };
+    }
+
+    private static int solveHeuristic(SudokuData sudokuData, long timeLimitNanos, SolverStatistics statistics) {
+        if (statistics == null) statistics = new SolverStatistics();
+        Search search = new Search(sudokuData.getConstraints());
+        search.start(sudokuData, 1, null, new Random(), statistics);
+        if (timeLimitNanos != Long.MAX_VALUE) {
+            search.hasDeadline = true;
+            search.deadline = System.nanoTime() + timeLimitNanos;
+        }
+        for (int attempt = 1; ; attempt++) {
+            search.stepsLeft = luby(attempt) * sudokuData.getRows() * sudokuData.getRows();
+            int[] guesses = solveWithStack(sudokuData, search);
+            if (guesses == null) return Backend.NO_SOLUTION;
+            if (guesses != GAVE_UP) {
+                sudokuData.clearNotes();
+                return Backend.SOLVED;
+            }
+            if (search.hasDeadline && System.nanoTime() - search.deadline > 0) return Backend.GAVE_UP;
+            statistics.restarts++;
+        }
+    }
+
+    // Returns the i-th number (starting from 1) of the Luby sequence: 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, 1, 1, 2, 4, 8, ...
+    // If i is 2^k - 1 then the number is 2^(k - 1). Otherwise, the sequence repeats itself from the start after each
+    // such number, so the number is the same as the number (i - (2^(k - 1) - 1)) where 2^(k - 1) - 1 < i < 2^k - 1.
+    static long luby(int i) {
+        int k = 1;
+        while ((1 << k) - 1 < i) k++;
+        if ((1 << k) - 1 == i) return 1L << (k - 1);
+        return luby(i - (1 << (k - 1)) + 1);
+    }
+
+    // Works like solve(sudokuData, 1), but returns a more detailed rating: a number from difficulty to just under
+    // difficulty + 1, where difficulty is the one returned by solve (so rounding it down gives the same difficulty).
+    // The fractional part shows how close the sudoku is to the next difficulty, e.g. a medium sudoku needing many
+    // single candidates gets a higher score than one needing just two. This lets a search (see SudokuGenerator) tell
+    // whether a change moved the sudoku closer to the required difficulty even if the difficulty stayed the same.
+    // Returns -1 if there are no solutions.
+    public static double solveForScore(SudokuData sudokuData) {
+        return solveForScore(sudokuData, new Workspace(sudokuData.getConstraints()));
+    }
+
+    // Works like solveForScore(sudokuData), but uses the workspace's memory rather than allocating its own, so that a
+    // search calling this for every change it considers (see SudokuGenerator) doesn't allocate anything
+    public static double solveForScore(SudokuData sudokuData, Workspace workspace) {
+        Search search = workspace.search;
+        search.start(sudokuData, 1, null, null, workspace.statistics);
+        int[] guesses = solveWithStack(sudokuData, search);
+        sudokuData.clearNotes();
+        int difficulty = rateDifficulty(guesses);
+        if (difficulty == -1) return -1;
+        // progress is 0 for the lowest sudokus of the difficulty and increases towards the next difficulty (see
+        // rateDifficulty for what separates the difficulties)
+        double progress;
+        if (difficulty == 1) {
+            progress = guesses[0];
+        } else if (difficulty == 2) {
+            progress = guesses[0] - 2;
+        } else if (difficulty == 3) {
+            // Hard sudokus have a single guess from 2 notes, so the number of single candidates is what varies
+            progress = (double) guesses[0] / sudokuData.getRows();
+        } else {
+            progress = Math.max(0, guesses[1] + 2 * (guesses[2] + guesses[3]) - 2);
+        }
+        // Maps progress from 0 to infinity onto 0 to 1
+        return difficulty + progress / (progress + 1);
+    }
+
+    // Converts the guesses returned by solveWithStack into the difficulty returned by solve
+    private static int rateDifficulty(int[] guesses) {
         if (guesses == null) return -1; // No solutions
         if (Math.min(guesses[2], guesses[3]) > 0) {
             // Looking at very many sudokus, all of them had guesses[2] = guesses[3] = 0, even the world's hardest
@@ -42,155 +186,590 @@ public class SudokuSolver {
         return 4;
     }
 
-    // Returns an array showing the number of times that the solver guessed from a certain number of notes:
-    // [1, 2, 3, 4 or more]. Null is returned if the sudoku has no solutions. This is used later to rate the difficulty
-    // of the sudoku - sudokus where guesses are needed from a large number of notes are likely harder.
-    private static int[] solveWithRecursion(SudokuData sudokuData, int noteSelectionMethod) {
-        Tuple2<Set<SudokuData.SudokuCell>, Boolean> simplificationResult = simplifySinglePosition(sudokuData);
-        Set<SudokuData.SudokuCell> cellsChanged = simplificationResult.getFirst();
-        // If filling in all cells is impossible then the method fails by removing all values from changed cells then
-        // returning null.
-        if (!simplificationResult.getSecond()) {
-            removeAllCellValues(sudokuData, cellsChanged);
-            return null;
+    // Works like solve(sudokuData, 1), but if the same sudoku has been solved recently (by this or grade) the solution
+    // is filled in from the cache rather than solving the sudoku again.
+    public static int solveCached(SudokuData sudokuData) {
+        SolutionCache.Entry entry = grade(sudokuData);
+        if (entry.getSolution() != null) {
+            for (int index = 0; index < sudokuData.getRows() * sudokuData.getRows(); index++) {
+                SudokuData.SudokuCell cell = sudokuData.getValue(index);
+                // Only empty cells are filled in, so that they are removed again by unsolve
+                if (cell.getValue() == null) cell.setValue(entry.getSolution()[index]);
+            }
         }
+        return entry.getDifficulty();
+    }
 
-        // The cell with the least notes. Starting from this cell is likely to result in better performance - e.g. if it
-        // has one note, it can be filled immediately, if it has two then there are only two options to consider.
-        SudokuData.SudokuCell leastNotesCell = null;
-        for (int row = 0; row < sudokuData.getRows(); row++) {
-            for (int column = 0; column < sudokuData.getRows(); column++) {
-                // Finds the cell at the corresponding row and column
-                SudokuData.SudokuCell cell = sudokuData.getValue(row, column);
-                // Cells which already have a value cannot be considered to have the least notes
-                if (cell.getValue() == null) {
-                    if (leastNotesCell == null || notesToInt(cell).size() < notesToInt(leastNotesCell).size()) {
-                        // If leastNotesCell is null or cell has fewer notes than leastNotesCell then cell is set
-                        // as the new leastNotesCell
-                        leastNotesCell = cell;
-                    }
-                }
+    // Returns the difficulty, solution and number of solutions (up to 2) of the sudoku, leaving the sudoku unchanged.
+    // The sudoku must not contain any non-initial values (as unsolve is used to remove the solutions).
+    // This requires solving the sudoku twice, trying notes in opposite orders, so the results are cached. The cache
+    // only compares values, so variants (see SudokuConstraints) are graded without it, as the same values can have
+    // different solutions under different constraints.
+    public static SolutionCache.Entry grade(SudokuData sudokuData) {
+        boolean cached = sudokuData.getConstraints().isClassic();
+        SolutionCache.Entry entry = cached ? cache.get(sudokuData) : null;
+        if (entry == null) {
+            int difficulty = solve(sudokuData, 1);
+            int[] solution = difficulty == -1 ? null : SolutionCache.getValues(sudokuData);
+            unsolve(sudokuData);
+            // If there's no solution then there's no need to solve the sudoku again
+            int[] reverseSolution = null;
+            if (difficulty != -1) {
+                solve(sudokuData, -1);
+                reverseSolution = SolutionCache.getValues(sudokuData);
+                unsolve(sudokuData);
             }
+            if (!cached) {
+                return new SolutionCache.Entry(SolutionCache.getValues(sudokuData), solution, reverseSolution,
+                        difficulty);
+            }
+            cache.put(sudokuData, solution, reverseSolution, difficulty);
+            entry = cache.get(sudokuData);
         }
-        if (leastNotesCell == null) {
-            // Then there are no empty cells. If there were errors then the algorithm would've stopped before reaching
-            // this point - so there are no errors so the solver has been successful.
-            // An array filled with 0s is returned because no guesses were made at this step. This array will be modified
-            // by the previous recursive callers, adding to the array so that the array eventually shows the number of
-            // guesses for the whole solver.
-            return new int[]{0, 0, 0, 0};
+        return entry;
+    }
+
+    // Memory for solving sudokus of one size and set of constraints, which can be reused for any number of solves (see
+    // solveForScore(SudokuData, Workspace)). Not thread safe - each thread should have its own.
+    public static class Workspace {
+        private final Search search;
+        private final SolverStatistics statistics = new SolverStatistics();
+
+        public Workspace(int boxRows, int boxColumns) {
+            this(SudokuConstraints.classic(boxRows, boxColumns));
         }
-        if (notesToInt((leastNotesCell)).size() == 0) {
-            removeAllCellValues(sudokuData, cellsChanged);
-            // Then there is at least one cell with no value and no notes. So it has no possible values so there is
-            // no possible solution with the inputted values so null is returned.
-            return null;
+
+        public Workspace(SudokuConstraints constraints) {
+            search = new Search(constraints);
         }
-        List<Integer> intNotes = notesToInt(leastNotesCell);
-        // The algorithm will go through intNotes in order. intNotes are currently ascending, so if noteSelectionMethod
-        // is positive then they don't need to be modified.
-        // If noteSelectionMethod is zero then intNotes are shuffled.
-        // If noteSelectionMethod is negative then intNotes are reversed so that they are in descending order
-        if (noteSelectionMethod == 0) {
-            Collections.shuffle(intNotes);
-        } else if (noteSelectionMethod < 0) {
-            Collections.reverse(intNotes);
+    }
+
+    // Settings, counters and working memory for a run of the solver, so that they don't all have to be passed
+    // around separately. The arrays only depend on the constraints, so a Search can be used for several runs one after
+    // the other, each one set up by start.
+    // While searching, the grid is kept in primitive arrays here, which are much faster to work with than the cells of
+    // sudokuData. sudokuData's values are still set as the search goes along, as its Zobrist hash identifies grids in
+    // the transposition table, but its notes aren't updated.
+    private static class Search {
+        private int noteSelectionMethod;
+        private TranspositionTable transpositionTable; // May be null
+        // If not null, then ties between cells with the fewest notes are broken at random using this
+        private Random random;
+        private SolverStatistics statistics;
+        // Number of grids solveWithStack can look at before it gives up, or -1 for no limit
+        private long stepsLeft = -1;
+        // If hasDeadline is true, solveWithStack also gives up once System.nanoTime() passes deadline
+        private boolean hasDeadline = false;
+        private long deadline;
+
+        private final SudokuConstraints constraints;
+        private final int allNotes; // Bit mask with a bit for every value
+        private final int[] values; // The value of each cell, with 0 for empty cells
+        private final int[] notes; // Bit mask of the notes of each empty cell, with bit 0 for note 1
+        private int emptyCells = 0;
+        // The empty cells with each number of notes, so that the cell with the fewest can be found without looking at
+        // the whole grid (see findLeastNotes). The cells with n notes are a bit set of cell indexes, stored as
+        // cellWords longs from n * cellWords onwards, and noteCountSizes[n] is how many there are. placeValue and
+        // removeTrailValues move cells between them as their notes change.
+        private final int cellWords;
+        private final long[] noteCountCells;
+        private final int[] noteCountSizes;
+
+        // Copied from the constraints, which share them with every other search using the same constraints
+        private final int[][] unitCells;
+        private final int[][] cellUnits;
+        private final int[][] peers;
+        private final int[] unitSums; // 0 for units without a sum
+        private final boolean[] fullUnits; // True for units with a cell for every value (see isFullUnit)
+        // The units propagate checks (full units and cages with a sum) as a bit set of unit indexes. Any other unit
+        // (e.g. a pair of cells a knight's move apart) only affects its cells' notes, which placeValue takes care of
+        // through the peers, so queueing it would be wasted work.
+        private final long[] checkedUnits;
+        private final int[] unitValues; // Bit mask of the values placed in each unit
+
+        // The queue of units whose notes have changed since they were last checked by propagate. Only these can
+        // contain new single positions, so there is no need to look at the rest of the grid. It is a bit set of unit
+        // indexes, like checkedUnits, as propagate takes the units in order of their index rather than the order they
+        // were queued in, and finds the next one by skipping straight to the next set bit.
+        private final long[] unitQueue;
+
+        // Indexes of the cells filled in by the search, in the order they were filled in, so that they can be emptied
+        // again in reverse order. Every filled cell is either a guess or follows from the cells before it, so there
+        // can't be more of them than cells.
+        private final int[] trail;
+        private final boolean[] trailNakedSingles; // True for cells filled in as single candidates (see solveWithStack)
+        private int trailSize = 0;
+
+        // The stack of guesses, with one frame for each guessed cell. Each frame is stored at the same index of these
+        // arrays, which avoids creating an object for each frame. Each guess fills in at least one cell, so there
+        // can't be more frames than cells.
+        private final int[] frameCells; // Index of the guessed cell
+        private final int[] frameNotesLeft; // Bit mask of the notes yet to be tried
+        private final int[] frameNoteCounts; // Number of notes the cell had when it was chosen, used for rating
+        private final int[] frameTrailMarks; // Trail size before the grid was simplified, so it can be undone
+        private final long[] frameHashes; // Hash of the grid before it was simplified, for the transposition table
+        // The units left queued once the grid was simplified, unitQueue.length longs for each frame. They are queued
+        // again whenever the search comes back to the frame, as the units queued since then were queued by grids which
+        // have been undone.
+        private final long[] frameUnitQueues;
+
+        // Returned by solveWithStack when a solution is found. It is only read before the next run starts.
+        private final int[] guesses = new int[4];
+
+        private Search(SudokuConstraints constraints) {
+            this.constraints = constraints;
+            int rows = constraints.getRows();
+            int cells = rows * rows;
+            int units = constraints.getUnitCount();
+            allNotes = (1 << rows) - 1;
+            values = new int[cells];
+            notes = new int[cells];
+            unitCells = new int[units][];
+            unitSums = new int[units];
+            fullUnits = new boolean[units];
+            checkedUnits = new long[(units + 63) / 64];
+            for (int unit = 0; unit < units; unit++) {
+                unitCells[unit] = constraints.getUnitCells(unit);
+                unitSums[unit] = constraints.getUnitSum(unit);
+                fullUnits[unit] = constraints.isFullUnit(unit);
+                if (fullUnits[unit] || unitSums[unit] != 0) checkedUnits[unit >>> 6] |= 1L << unit;
+            }
+            cellUnits = new int[cells][];
+            peers = new int[cells][];
+            for (int index = 0; index < cells; index++) {
+                cellUnits[index] = constraints.getCellUnits(index);
+                peers[index] = constraints.getPeers(index);
+            }
+            unitValues = new int[units];
+            unitQueue = new long[checkedUnits.length];
+            cellWords = (cells + 63) / 64;
+            noteCountCells = new long[(rows + 1) * cellWords];
+            noteCountSizes = new int[rows + 1];
+            trail = new int[cells];
+            trailNakedSingles = new boolean[cells];
+            frameCells = new int[cells];
+            frameNotesLeft = new int[cells];
+            frameNoteCounts = new int[cells];
+            frameTrailMarks = new int[cells];
+            frameHashes = new long[cells];
+            frameUnitQueues = new long[cells * unitQueue.length];
         }
-        // Iterates through the value of each note in leastNotesCell
-        for (int i = 0; i < intNotes.size(); i++) {
-            leastNotesCell.setValue(intNotes.get(i));
-            // Notes are updated for both the previous and the new value of leastNotesCell. The previous value would
-            // be added back to appropriate cells while the new value will be removed from appropriate cells.
-            if (i > 0) updateCellNotesForRemovingCellValue(sudokuData, intNotes.get(i - 1), leastNotesCell.row,
-                    leastNotesCell.column);
-            updateCellNotesForAddingCellValue(sudokuData, intNotes.get(i), leastNotesCell.row, leastNotesCell.column);
-
-            // Calls itself recursively. If the call has been successful then it returns a non-null array, so the previous
-            // recursive caller also returns non-null until non-null is returned by solve() to the original caller.
-            int[] difficultyOfOtherCells = solveWithRecursion(sudokuData, noteSelectionMethod);
-            if (difficultyOfOtherCells != null) {
-                difficultyOfOtherCells[Math.min(3, intNotes.size() - 1)]++;
-                // Incremented so that difficultyOfOtherCells includes the current guess - e.g. if the current guess
-                // was from 2 notes then index 1 is incremented. If the current guess is from more than 3 notes then
-                // index 2 is still incremented, as if the guess was from 3 notes.
-                return difficultyOfOtherCells;
+
+        // Sets up the search for a run on sudokuData, which must have the constraints given to the constructor
+        private void start(SudokuData sudokuData, int noteSelectionMethod, TranspositionTable transpositionTable,
+                           Random random, SolverStatistics statistics) {
+            if (!sudokuData.getConstraints().equals(constraints)) {
+                throw new IllegalArgumentException("The sudoku's constraints don't match the workspace");
+            }
+            this.noteSelectionMethod = noteSelectionMethod;
+            this.transpositionTable = transpositionTable;
+            this.random = random;
+            this.statistics = statistics;
+            stepsLeft = -1;
+            hasDeadline = false;
+            trailSize = 0;
+            // Units can be left queued by the last run, e.g. if it found a solution part of the way through a pass
+            clearQueues(this);
+            Arrays.fill(notes, 0);
+            Arrays.fill(noteCountCells, 0);
+            Arrays.fill(noteCountSizes, 0);
+            emptyCells = 0;
+
+            for (int index = 0; index < values.length; index++) {
+                Integer value = sudokuData.getValue(index).getValue();
+                values[index] = value == null ? 0 : value;
+                if (value == null) emptyCells++;
+            }
+            // The notes of each empty cell are the values not present in any of its units. If there are duplicate
+            // values then no value can be added without an error, so no cell has any notes (like with updateNotes).
+            if (!CandidateKernel.findUnitMasks(values, unitCells, unitValues)) {
+                CandidateKernel.findCandidates(values, cellUnits, unitValues, allNotes, notes);
+            }
+            for (int index = 0; index < values.length; index++) {
+                if (values[index] == 0) addNoteCount(this, index, Integer.bitCount(notes[index]));
             }
         }
-        cellsChanged.add(leastNotesCell); // This is done so that the value is removed from both
-        removeAllCellValues(sudokuData, cellsChanged);
-        return null; // All values have been tried for the cell and none are successful so null is returned
     }
 
-    // updateNotes updates notes in all cells.
-    // noteToUpdate is the value of the note that should be updated - for example, if it is 1 then only the notes for 1
-    // will be updated in cells. This allows improving performance, as notes wouldn't be updated needlessly.
-    // If noteToUpdate is 0 or less (I will be passing -1) then all notes will be updated.
-    public static void updateNotes(SudokuData sudokuData, int noteToUpdate) {
-        for (int row = 0; row < sudokuData.getRows(); row++) {
-            for (int column = 0; column < sudokuData.getRows(); column++) {
-                // Gets the cell at the correct row and column
-                SudokuData.SudokuCell cell = sudokuData.getValue(row, column);
-                if (cell.getValue() == null) {
-                    // This is a new array for notes, which will be copied onto cell.notes
-                    if (noteToUpdate <= 0) {
-                        // Iterates through each possible note value
-                        for (int value = 1; value <= sudokuData.getRows(); value++) {
-                            // cell.value is temporarily set to value in order for findErrors() to work properly
-                            cell.setValue(value);
-                            // If there are no errors then cell.notes is set to true at the corresponding index - this
-                            // is a valid value, so it is recorded in a note. Otherwise, cell.notes is set to false.
-                            cell.notes[value - 1] = sudokuData.findErrors().size() == 0;
+    // Returned by solveWithStack if it runs out of steps. It is compared by reference, so it can't be confused with
+    // a real result.
+    private static final int[] GAVE_UP = new int[4];
+
+    // Returns an array showing the number of times that the solver used a single candidate or guessed from a certain
+    // number of notes: [single candidates, 2, 3, 4 or more]. A single candidate (a cell with only one note) is like a
+    // guess from 1 note, which is how the solver used to handle them. Null is returned if the sudoku has no solutions.
+    // This is used later to rate the difficulty of the sudoku - sudokus where guesses are needed from a large number of
+    // notes are likely harder.
+    // GAVE_UP is returned if search.stepsLeft runs out or search's deadline passes, in which case all changes are
+    // undone, like when null is returned.
+    // This is a depth-first search, which used to call itself recursively for each guess. With large grids this could
+    // go deep enough to overflow the (small) thread stacks used on Android, so the guesses are now kept on the stack of
+    // frames in search instead, and the method loops rather than calling itself.
+    private static int[] solveWithStack(SudokuData sudokuData, Search search) {
+        // The starting grid hasn't been checked for singles yet, so every unit is checked
+        queueAllUnits(search);
+        int depth = 0; // Number of frames on the stack
+        // True if the grid has just been found to have no solutions (or to be dead in the transposition table), so the
+        // search has to go back to an earlier grid
+        boolean backtracking;
+        while (true) {
+            // Looks at the grid reached by the last guess (or the starting grid), adding a frame if it needs a guess
+            // The clock is only read every 256 grids, as that costs more than looking at a grid of a small sudoku
+            if (search.stepsLeft == 0 || search.hasDeadline && (search.statistics.nodes & 255) == 0 &&
+                    System.nanoTime() - search.deadline > 0) {
+                removeTrailValues(sudokuData, search, 0);
+                clearQueues(search);
+                return GAVE_UP;
+            }
+            if (search.stepsLeft > 0) search.stepsLeft--;
+            search.statistics.nodes++;
+            // The notes always follow from the values, so the values (and therefore the hash) are enough to identify
+            // the state of the search
+            long hash = sudokuData.getZobristHash();
+            if (search.transpositionTable != null && search.transpositionTable.isDead(hash, search.emptyCells)) {
+                search.statistics.transpositionHits++;
+                backtracking = true;
+            } else {
+                int trailMark = search.trailSize;
+                // Fills in singles until a guess is needed. Each pass over the units filling in single positions (see
+                // propagate) is followed by at most one single candidate: if the cell with the least notes has only
+                // one, it is set to that note, and the units are checked again before looking for another. This is
+                // how the search used to treat single candidates (as guesses from 1 note, each followed by a pass over
+                // every unit), and the number of them is what separates easy and medium sudokus (see rateDifficulty),
+                // so finding them in any other order would change the ratings.
+                int leastNotesIndex = -1;
+                int leastNotes;
+                while (true) {
+                    if (!propagate(sudokuData, search)) {
+                        leastNotes = 0;
+                        break;
+                    }
+                    leastNotesIndex = findLeastNotes(search);
+                    leastNotes = leastNotesIndex == -1 ? -1 : Integer.bitCount(search.notes[leastNotesIndex]);
+                    if (leastNotes != 1) break;
+                    placeValue(sudokuData, search, leastNotesIndex, Integer.numberOfTrailingZeros(
+                            search.notes[leastNotesIndex]) + 1, true);
+                }
+                backtracking = leastNotes == 0;
+                // If filling in all cells is impossible (including when a cell has no notes left) then all cells
+                // changed are emptied again and the search moves on to the next guess
+                if (backtracking) {
+                    removeTrailValues(sudokuData, search, trailMark);
+                    markDead(search, hash);
+                } else {
+                    if (leastNotes == -1) {
+                        // Then there are no empty cells. If there were errors then the search would have moved on
+                        // before reaching this point - so there are no errors so the solver has been successful.
+                        // The single candidates on the trail and the frames left on the stack led to the solution, so
+                        // these are counted.
+                        int[] guesses = search.guesses;
+                        Arrays.fill(guesses, 0);
+                        for (int i = 0; i < search.trailSize; i++) {
+                            if (search.trailNakedSingles[i]) guesses[0]++;
                         }
-                    } else {
-                        // Works like before but using `noteToUpdate` instead of `value` from the for loop.
-                        cell.setValue(noteToUpdate);
-                        cell.notes[noteToUpdate - 1] = sudokuData.findErrors().size() == 0;
+                        for (int frame = 0; frame < depth; frame++) {
+                            // If the guess was from 2 notes then index 1 is incremented. If it was from more than 4
+                            // notes then index 3 is still incremented, as if the guess was from 4 notes.
+                            guesses[Math.min(3, search.frameNoteCounts[frame] - 1)]++;
+                        }
+                        return guesses;
                     }
-                    // In either of the above cases, the procedure finishes by setting the cell value to null
-                    cell.setValue(null);
+                    search.frameCells[depth] = leastNotesIndex;
+                    search.frameNotesLeft[depth] = search.notes[leastNotesIndex];
+                    search.frameNoteCounts[depth] = leastNotes;
+                    search.frameTrailMarks[depth] = trailMark;
+                    search.frameHashes[depth] = hash;
+                    System.arraycopy(search.unitQueue, 0, search.frameUnitQueues, depth * search.unitQueue.length,
+                            search.unitQueue.length);
+                    depth++;
                 }
             }
+
+            // Makes the next guess for the frame at the top of the stack. Frames which have no notes left to try have
+            // been fully searched without finding a solution, so they are undone and removed until a frame with notes
+            // left is found. If the stack becomes empty then every possibility has been tried.
+            while (true) {
+                if (depth == 0) return null;
+                int frame = depth - 1;
+                int index = search.frameCells[frame];
+                if (search.frameNotesLeft[frame] == 0) {
+                    // The guessed cell is the last cell on the trail, so it is emptied along with the cells filled in
+                    // when the grid was simplified
+                    removeTrailValues(sudokuData, search, search.frameTrailMarks[frame]);
+                    markDead(search, search.frameHashes[frame]);
+                    depth--;
+                    continue;
+                }
+                // Removes the previous guess, which is the last cell on the trail as everything after it has been
+                // undone already
+                if (search.values[index] != 0) removeTrailValues(sudokuData, search, search.trailSize - 1);
+                // The grid is back to the one the frame was added for, so the units queued then are queued again
+                System.arraycopy(search.frameUnitQueues, frame * search.unitQueue.length, search.unitQueue, 0,
+                        search.unitQueue.length);
+                int value = chooseNote(search, search.frameNotesLeft[frame]);
+                search.frameNotesLeft[frame] &= ~(1 << (value - 1));
+                placeValue(sudokuData, search, index, value, false);
+                break;
+            }
         }
     }
 
-    // Converts the notes array to a list of integers corresponding to the notes' values
-    private static List<Integer> notesToInt(SudokuData.SudokuCell cell) {
-        List<Integer> result = new ArrayList<>();
-        for (int i = 0; i < cell.notes.length; i++) {
-            // The value is one more than the index as values start from 1 but indexes start from 0
-            if (cell.notes[i]) result.add(i + 1);
+    // Makes a single pass over the queued units, filling in single positions: whenever a value has only one possible
+    // cell within a unit, the cell is set to that value. The units are checked in order of their index, and the values
+    // of each unit in increasing order, with each single position filled in as soon as it is found. A unit queued again
+    // during the pass is checked later in the same pass if it comes after the unit being checked, and otherwise on the
+    // next pass. This finds exactly the single positions the search used to find when it checked every unit at every
+    // step (units which haven't changed since they were last checked can't have any new ones), which keeps the single
+    // candidates found between passes, and so the ratings, the same (see solveWithStack).
+    // The cells filled in are added to search's trail, so that the changes can be undone.
+    // Returns true if no error was detected, and false if an error has been detected.
+    private static boolean propagate(SudokuData sudokuData, Search search) {
+        long[] queue = search.unitQueue;
+        for (int word = 0; word < queue.length; word++) {
+            // Bits for the unit being checked and the ones before it in this word, which are left for the next pass
+            // if they are queued again
+            long passed = 0;
+            while ((queue[word] & ~passed) != 0) {
+                long bit = Long.lowestOneBit(queue[word] & ~passed);
+                queue[word] &= ~bit;
+                passed |= bit | (bit - 1);
+                int unit = word * 64 + Long.numberOfTrailingZeros(bit);
+                if (!checkUnit(sudokuData, search, unit)) return false;
+            }
         }
-        return result;
+        return true;
     }
 
-    // Updates notes as they would need to be updated if the cell at the given row and column was set to the given value.
-    // This is done by iterating through each cell in the groups and setting the appropriate note to false - this is
-    // because other cells in the groups cannot have the same value as this cell.
-    private static void updateCellNotesForAddingCellValue(SudokuData sudokuData, int value, int row, int column) {
-        for (SudokuData.SudokuCell cell : sudokuData.findGroups(row, column)) {
-            if (cell.getValue() == null) cell.notes[value - 1] = false;
+    // Checks a unit for propagate, filling in its single positions. Returns false if an error has been detected.
+    private static boolean checkUnit(SudokuData sudokuData, Search search, int unit) {
+        if (search.unitSums[unit] != 0 && !checkSum(sudokuData, search, unit)) return false;
+        // Only a unit with a cell for every value must contain every value, so the checks below don't apply to
+        // smaller units such as cages
+        if (search.fullUnits[unit]) {
+            int unchecked = search.allNotes; // The values which haven't been checked in this unit yet
+            while (true) {
+                // Finds the values which are notes of at least one cell (once) and of at least two cells (twice)
+                int once = 0;
+                int twice = 0;
+                for (int index : search.unitCells[unit]) {
+                    if (search.values[index] != 0) continue;
+                    twice |= once & search.notes[index];
+                    once |= search.notes[index];
+                }
+                // If a value isn't present as a note or value in the unit then the unit and thus the grid cannot be
+                // filled
+                if ((search.allNotes & ~search.unitValues[unit] & ~once) != 0) return false;
+                int singlePositions = once & ~twice & unchecked;
+                if (singlePositions == 0) break;
+                int note = Integer.lowestOneBit(singlePositions);
+                // Filling in the cell can leave a value with a single possible cell, so the notes are looked at
+                // again, but only larger values are filled in on this pass (as smaller ones have been checked)
+                unchecked &= -(note << 1);
+                for (int index : search.unitCells[unit]) {
+                    if (search.values[index] == 0 && (search.notes[index] & note) != 0) {
+                        placeValue(sudokuData, search, index, Integer.numberOfTrailingZeros(note) + 1, false);
+                        break;
+                    }
+                }
+            }
         }
+        return true;
     }
 
-    // Updates notes as they would need to be updated if the cell at the given value was removed from the given row
-    // and column
-    private static void updateCellNotesForRemovingCellValue(SudokuData sudokuData, int value, int row, int column) {
-        outerLoop:
-        for (SudokuData.SudokuCell cell : sudokuData.findGroups(row, column)) {
-            if (cell.getValue() == null) {
-                // Checks each cell in the same group as the cell from the outer for loop. If any cell has
-                // the same values as the value requested then this isn't a valid value for the cell from the outer for
-                // loop so the corresponding note isn't added.
-                for (SudokuData.SudokuCell cell2 : sudokuData.findGroups(cell.row, cell.column)) {
-                    if (Objects.equals(value, cell2.getValue())) {
-                        // Moves onto the next cell in the outerLoop, thus skipping the last line that adds the note
-                        // (also improves performance by avoiding unnecessary iterations of the for loop
-                        continue outerLoop;
-                    }
+    // Returns the index of the empty cell with the least notes, or -1 if there are no empty cells. Ties go to the first
+    // of the cells, unless they are broken at random.
+    private static int findLeastNotes(Search search) {
+        if (search.emptyCells == 0) return -1;
+        int leastNotes = 0;
+        while (search.noteCountSizes[leastNotes] == 0) leastNotes++;
+        // Choosing the nth of the tied cells, with n at random, gives each of them the same chance
+        int n = search.random == null ? 0 : search.random.nextInt(search.noteCountSizes[leastNotes]);
+        for (int word = leastNotes * search.cellWords; ; word++) {
+            long cells = search.noteCountCells[word];
+            int count = Long.bitCount(cells);
+            if (n < count) {
+                for (; n > 0; n--) cells &= cells - 1;
+                return (word - leastNotes * search.cellWords) * 64 + Long.numberOfTrailingZeros(cells);
+            }
+            n -= count;
+        }
+    }
+
+    // Checks that the values of a cage with a sum can still add up to it. If only one cell of the cage is empty then
+    // its value is known, so it is filled in (like a single position).
+    // Returns false if the sum can't be made.
+    private static boolean checkSum(SudokuData sudokuData, Search search, int unit) {
+        int remaining = search.unitSums[unit];
+        int emptyCount = 0;
+        int emptyIndex = -1;
+        int possible = 0; // Values which are notes of at least one empty cell
+        for (int index : search.unitCells[unit]) {
+            if (search.values[index] != 0) {
+                remaining -= search.values[index];
+            } else {
+                emptyCount++;
+                emptyIndex = index;
+                possible |= search.notes[index];
+            }
+        }
+        if (!SudokuConstraints.canMakeSum(possible, emptyCount, remaining)) return false;
+        if (emptyCount == 1) {
+            // canMakeSum has checked that remaining is between the cell's smallest and largest notes, but not that it
+            // is one of them
+            if ((search.notes[emptyIndex] & 1 << (remaining - 1)) == 0) return false;
+            placeValue(sudokuData, search, emptyIndex, remaining, false);
+        }
+        return true;
+    }
+
+    // Sets the cell to value, adding it to the trail, and removes the note from its peers. Any units whose notes change
+    // are queued to be checked by propagate.
+    private static void placeValue(SudokuData sudokuData, Search search, int index, int value, boolean nakedSingle) {
+        int note = 1 << (value - 1);
+        removeNoteCount(search, index, Integer.bitCount(search.notes[index]));
+        search.values[index] = value;
+        sudokuData.getValue(index).setValue(value);
+        search.emptyCells--;
+        search.trailNakedSingles[search.trailSize] = nakedSingle;
+        search.trail[search.trailSize++] = index;
+        // The cell's own units are queued too, as the cell may have been the only possible cell for another value
+        for (int unit : search.cellUnits[index]) {
+            search.unitValues[unit] |= note;
+            queueUnit(search, unit);
+        }
+        for (int peer : search.peers[index]) {
+            if (search.values[peer] == 0 && (search.notes[peer] & note) != 0) {
+                int noteCount = Integer.bitCount(search.notes[peer]);
+                removeNoteCount(search, peer, noteCount);
+                addNoteCount(search, peer, noteCount - 1);
+                search.notes[peer] &= ~note;
+                for (int unit : search.cellUnits[peer]) queueUnit(search, unit);
+            }
+        }
+    }
+
+    // Empties the cells on search's trail from trailMark onwards, in the reverse order to the order they were filled
+    // in, and adds their values back as notes of their peers where possible. Undoing the changes in reverse order means
+    // that the grid goes back through exactly the same states as it went through when the cells were filled.
+    private static void removeTrailValues(SudokuData sudokuData, Search search, int trailMark) {
+        while (search.trailSize > trailMark) {
+            int index = search.trail[--search.trailSize];
+            int note = 1 << (search.values[index] - 1);
+            search.values[index] = 0;
+            sudokuData.getValue(index).setValue(null);
+            search.emptyCells++;
+            // The cell's own notes weren't changed while it had a value, so they don't need to be restored
+            addNoteCount(search, index, Integer.bitCount(search.notes[index]));
+            for (int unit : search.cellUnits[index]) search.unitValues[unit] &= ~note;
+            for (int peer : search.peers[index]) {
+                if (search.values[peer] != 0) continue;
+                // The note is added back unless the value is still present in one of the peer's units
+                if ((placedInUnits(search, peer) & note) == 0) {
+                    int noteCount = Integer.bitCount(search.notes[peer]);
+                    removeNoteCount(search, peer, noteCount);
+                    addNoteCount(search, peer, noteCount + 1);
+                    search.notes[peer] |= note;
+                }
+            }
+        }
+    }
+
+    // Returns a bit mask of the values placed in any of the cell's units
+    private static int placedInUnits(Search search, int index) {
+        // As every cell's first three units are its row, column and box (see SudokuConstraints.getCellUnits), these are
+        // looked up directly
+        int[] units = search.cellUnits[index];
+        int placed = search.unitValues[units[0]] | search.unitValues[units[1]] | search.unitValues[units[2]];
+        for (int i = 3; i < units.length; i++) placed |= search.unitValues[units[i]];
+        return placed;
+    }
+
+    // Adds the empty cell to the cells with noteCount notes (see Search.noteCountCells)
+    private static void addNoteCount(Search search, int index, int noteCount) {
+        search.noteCountCells[noteCount * search.cellWords + (index >>> 6)] |= 1L << index;
+        search.noteCountSizes[noteCount]++;
+    }
+
+    private static void removeNoteCount(Search search, int index, int noteCount) {
+        search.noteCountCells[noteCount * search.cellWords + (index >>> 6)] &= ~(1L << index);
+        search.noteCountSizes[noteCount]--;
+    }
+
+    // Queues the unit if it is one propagate checks. Queueing a unit which is already queued does nothing.
+    private static void queueUnit(Search search, int unit) {
+        search.unitQueue[unit >>> 6] |= search.checkedUnits[unit >>> 6] & 1L << unit;
+    }
+
+    private static void queueAllUnits(Search search) {
+        System.arraycopy(search.checkedUnits, 0, search.unitQueue, 0, search.unitQueue.length);
+    }
+
+    // Used when a search stops part of the way through, so that the next one starts with nothing queued
+    private static void clearQueues(Search search) {
+        Arrays.fill(search.unitQueue, 0);
+    }
+
+    // Chooses which of the notes in the bit mask to try next. If noteSelectionMethod is positive then the smallest
+    // note is chosen, if negative then the largest, and if zero then a random one.
+    private static int chooseNote(Search search, int notes) {
+        if (search.noteSelectionMethod > 0) return Integer.numberOfTrailingZeros(notes) + 1;
+        if (search.noteSelectionMethod < 0) return 32 - Integer.numberOfLeadingZeros(notes);
+        Random random = search.random != null ? search.random : ThreadLocalRandom.current();
+        // Clears a random number of the lowest set bits, then takes the lowest bit left
+        for (int skip = random.nextInt(Integer.bitCount(notes)); skip > 0; skip--) notes &= notes - 1;
+        return Integer.numberOfTrailingZeros(notes) + 1;
+    }
+
+    // Records in the transposition table (if there is one) that the grid with the hash has no solutions. This is called
+    // after the grid has been returned to the state it had when the hash was found.
+    private static void markDead(Search search, long hash) {
+        search.statistics.deadEnds++;
+        if (search.transpositionTable != null) search.transpositionTable.markDead(hash, search.emptyCells);
+    }
+
+    // updateNotes updates notes in all cells.
+    // noteToUpdate is the value of the note that should be updated - for example, if it is 1 then only the notes for 1
+    // will be updated in cells. This allows improving performance, as notes wouldn't be updated needlessly.
+    // If noteToUpdate is 0 or less (I will be passing -1) then all notes will be updated.
+    // A note is set if the value could be added to the cell without causing an error. This used to be found by adding
+    // each value to each cell in turn and checking the whole grid for errors, but it is the same as the value being
+    // missing from all of the cell's units (and not filling a cage with the wrong sum), provided the grid doesn't
+    // already have errors - if it does, then every value would leave an error, so there are no notes at all. The
+    // candidates of every cell are therefore worked out in one go from the values in each unit (see CandidateKernel).
+    public static void updateNotes(SudokuData sudokuData, int noteToUpdate) {
+        SudokuConstraints constraints = sudokuData.getConstraints();
+        int rows = sudokuData.getRows();
+        int[] values = new int[rows * rows];
+        for (int index = 0; index < values.length; index++) {
+            Integer value = sudokuData.getValue(index).getValue();
+            values[index] = value == null ? 0 : value;
+        }
+        int[] candidates = new int[values.length];
+        if (sudokuData.findErrorIndexes().isEmpty()) {
+            int[][] unitCells = new int[constraints.getUnitCount()][];
+            int[] unitSums = new int[unitCells.length];
+            boolean hasSums = false;
+            for (int unit = 0; unit < unitCells.length; unit++) {
+                unitCells[unit] = constraints.getUnitCells(unit);
+                unitSums[unit] = constraints.getUnitSum(unit);
+                if (unitSums[unit] != 0) hasSums = true;
+            }
+            int[][] cellUnits = new int[values.length][];
+            for (int index = 0; index < values.length; index++) cellUnits[index] = constraints.getCellUnits(index);
+            int[] unitMasks = new int[unitCells.length];
+            CandidateKernel.findUnitMasks(values, unitCells, unitMasks);
+            CandidateKernel.findCandidates(values, cellUnits, unitMasks, (1 << rows) - 1, candidates);
+            if (hasSums) CandidateKernel.applySums(values, unitCells, unitSums, candidates);
+        }
+        for (int index = 0; index < values.length; index++) {
+            if (values[index] != 0) continue;
+            SudokuData.SudokuCell cell = sudokuData.getValue(index);
+            if (noteToUpdate <= 0) {
+                for (int value = 1; value <= rows; value++) {
+                    cell.setNote(value, (candidates[index] & 1 << (value - 1)) != 0);
                 }
-                // If the continue statement hasn't been reached then the values is valid so the corresponding
-                // note is added.
-                cell.notes[value - 1] = true;
+            } else {
+                cell.setNote(noteToUpdate, (candidates[index] & 1 << (noteToUpdate - 1)) != 0);
             }
         }
     }
@@ -203,86 +782,9 @@ public class SudokuSolver {
                 SudokuData.SudokuCell cell = sudokuData.getValue(row, column);
                 if (!cell.isInitialValue()) { // Only values added as part of the solution are removed
                     cell.setValue(null); // Removes the value by setting it to null
-                    Arrays.fill(cell.notes, false); // Removes all notes
-                }
-            }
-        }
-    }
-
-    // Whenever a number has only one possible cell within a group, this sets the cell's value to that number
-    // This returns a set of cells affected, so that the changes can be easily undone (it also leaves each cell's notes
-    // array unmodified, so changes can be undone simple by setting cell.value to null)
-    // It also returns (using a tuple) a boolean, which is true if no error was detected, and
-    // false if an error has been detected.
-    private static Tuple2<Set<SudokuData.SudokuCell>, Boolean> simplifySinglePosition(SudokuData sudokuData) {
-        Set<SudokuData.SudokuCell> modified = new HashSet<>();
-        for (Set<SudokuData.SudokuCell> group : sudokuData.findAllGroups()) {
-            noteLoop:
-            for (int note = 1; note <= sudokuData.getRows(); note++) {
-                // This exists solely to check if there's been an error due to this value not being possible in any
-                // cell in the group. We get such an error if it is not present in any cell as a note or value - we
-                // use singleCellWithNote to check if it is present as a note and existsCellWithValue to check if it
-                // is present as a value.
-                boolean existsCellWithValue = false;
-                SudokuData.SudokuCell singleCellWithNote = null;
-                for (SudokuData.SudokuCell cell : group) {
-                    // Only runs if corresponding note is present. Checks that the cell value is null, as cells without
-                    // a value are not considered to have any notes.
-                    if (cell.getValue() == null && cell.notes[note - 1]) {
-                        if (singleCellWithNote == null) {
-                            // No other cell has been found so far so this is set as the single cell with note
-                            singleCellWithNote = cell;
-                        } else  {
-                            // Then there are at least two cells that have this value as a note. Thus, this procedure
-                            // can't do anything for this combination of note and group, so it moves onto the next
-                            // combination by moving onto the next note.
-                            continue noteLoop;
-                        }
-                    } else if (cell.getValue() != null && cell.getValue() == note) {
-                        // If the cell's value equals the note then the cell with value exists in this group for this
-                        // note so there will be no error
-                        existsCellWithValue = true;
-                    }
-                }
-                if (singleCellWithNote == null && !existsCellWithValue) {
-                    // Then the current value is not present as a note or cell value in this group so the group and
-                    // thus the grid cannot be filled so an error is returned. The set of modified cells is still
-                    // returned so that any changes can be undone.
-                    return new Tuple2<>(modified, false);
-                }
-                // This checks if there is at least one such cell. If there is more than one then this wouldn't be
-                // reached as `continue noteLoop` would be called beforehand.
-                if (singleCellWithNote != null) {
-                    singleCellWithNote.setValue(note); // Sets the value to note
-                    modified.add(singleCellWithNote); // Adds to set of modified notes
-                    updateCellNotesForAddingCellValue(sudokuData, note, singleCellWithNote.row,
-                            singleCellWithNote.column); // Updates notes in the grid
-                    // Note that the notes of singleCellWithNote are not emptied so that singleCellWithNote can be
-                    // easily reverted to its previous state by setting its value to null, without having to recover
-                    // the notes.
+                    cell.clearNotes(); // Removes all notes
                 }
             }
         }
-        // If this point has been reached then no errors have been detected so the modified set is returned, along with
-        // true
-        return new Tuple2<>(modified, true);
-    }
-
-    // This empties all cells and updates the notes. It is important that all cells are emptied before notes are
-    // updated as otherwise, the cells yet to be emptied might influence the new notes.
-    private static void removeAllCellValues(SudokuData sudokuData, Set<SudokuData.SudokuCell> cells) {
-        // cellsData contains the value, row and column for each cell, which is just enough information to update
-        // the notes for the grid
-        List<Tuple2<Integer, Tuple2<Integer, Integer>>> cellsData = new ArrayList<>();
-        for (SudokuData.SudokuCell cell : cells) {
-            int value = cell.getValue();
-            cell.setValue(null);
-            cellsData.add(new Tuple2<>(value, new Tuple2<>(cell.row, cell.column)));
-        }
-        // Updates the notes to the grid based on changes for each cell
-        for (Tuple2<Integer, Tuple2<Integer, Integer>> cellData : cellsData) {
-            updateCellNotesForRemovingCellValue(sudokuData, cellData.getFirst(),
-                    cellData.getSecond().getFirst(), cellData.getSecond().getSecond());
-        }
     }
 }
@@ -0,0 +1,128 @@
+package com.sdenisov.sudoku;
+
+import java.util.Random;
+
+// Turns a sudoku into a different-looking sudoku which is solved in exactly the same way. The transformations used
+// are: relabelling the digits (e.g. swapping every 1 with every 7), putting the rows within a row of boxes in a
+// different order, putting the rows of boxes in a different order, the same two for columns and, if the boxes are
+// square, flipping the grid along its diagonal (so rows become columns). None of these can create a duplicate in a
+// row, column or box, so the number of solutions stays the same, and the logic needed to solve the sudoku is also the
+// same - so a sudoku of a known difficulty can be used to get many other sudokus of that difficulty without running
+// the generator again.
+// Only classic sudokus can be transformed: moving rows and columns would move the cells of extra units such as
+// diagonals and cages, and relabelling the digits would change the sums of cages (see SudokuConstraints).
+// A transformer holds a single transformation, which is changed by randomise(). Not thread safe - each thread should
+// have its own SudokuTransformer.
+public class SudokuTransformer {
+    private final int boxRows;
+    private final int boxColumns;
+    private final int rows;
+    private final Random random;
+
+    // The current transformation: row `row` of the result is row rowOrder[row] of the input (before flipping) and the
+    // same for columns. A value of `value` in the input becomes digits[value] in the result (index 0 is unused).
+    private final int[] rowOrder;
+    private final int[] columnOrder;
+    private final int[] digits;
+    private boolean transpose = false;
+    private final int[] groupOrder; // Reused by shuffleWithinBoxes to avoid allocating a new array each time
+
+    public SudokuTransformer(int boxRows, int boxColumns, Random random) {
+        this.boxRows = boxRows;
+        this.boxColumns = boxColumns;
+        this.random = random;
+        rows = boxRows * boxColumns;
+        rowOrder = new int[rows];
+        columnOrder = new int[rows];
+        digits = new int[rows + 1];
+        groupOrder = new int[Math.max(boxRows, boxColumns)];
+        // Starts with the transformation which doesn't change anything
+        for (int i = 0; i < rows; i++) {
+            rowOrder[i] = i;
+            columnOrder[i] = i;
+            digits[i + 1] = i + 1;
+        }
+    }
+
+    public SudokuTransformer(int boxRows, int boxColumns) {
+        this(boxRows, boxColumns, new Random());
+    }
+
+    // Replaces the current transformation with a random one
+    public void randomise() {
+        // Each row of boxes contains boxColumns rows and there are boxRows rows of boxes. Columns are the other way
+        // round.
+        shuffleWithinBoxes(rowOrder, boxRows, boxColumns);
+        shuffleWithinBoxes(columnOrder, boxColumns, boxRows);
+        for (int value = 1; value <= rows; value++) digits[value] = value;
+        for (int value = rows; value > 1; value--) swap(digits, value, 1 + random.nextInt(value));
+        // Flipping along the diagonal swaps the shape of the boxes, so is only possible if they are square
+        transpose = boxRows == boxColumns && random.nextBoolean();
+    }
+
+    // Writes the current transformation of grid into result. Both contain values going from left to right then top to
+    // bottom, with 0 for an empty cell. grid and result must be different arrays.
+    public void transform(int[] grid, int[] result) {
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < rows; column++) {
+                int value = grid[rowOrder[row] * rows + columnOrder[column]];
+                result[transpose ? column * rows + row : row * rows + column] = value == 0 ? 0 : digits[value];
+            }
+        }
+    }
+
+    // Returns a new SudokuData object containing the current transformation of sudoku. Values, initial values and
+    // notes are all moved (and relabelled) together, so this works for sudokus which are partially filled in too.
+    public SudokuData transform(SudokuData sudoku) {
+        if (sudoku.getBoxRows() != boxRows || sudoku.getBoxColumns() != boxColumns) {
+            throw new IllegalArgumentException("The sudoku has a different size to the transformer");
+        }
+        if (!sudoku.getConstraints().isClassic()) {
+            throw new IllegalArgumentException("Only classic sudokus can be transformed");
+        }
+        SudokuData result = new SudokuData(boxRows, boxColumns);
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < rows; column++) {
+                SudokuData.SudokuCell cell = sudoku.getValue(rowOrder[row], columnOrder[column]);
+                SudokuData.SudokuCell resultCell = transpose ? result.getValue(column, row)
+                        : result.getValue(row, column);
+                resultCell.setValue(cell.getValue() == null ? null : digits[cell.getValue()]);
+                resultCell.setInitialValue(cell.isInitialValue());
+                for (int value = 1; value <= rows; value++) {
+                    resultCell.setNote(digits[value], cell.notes[value - 1]);
+                }
+            }
+        }
+        return result;
+    }
+
+    // Returns a random transformation of sudoku, leaving sudoku unchanged
+    public SudokuData randomVariant(SudokuData sudoku) {
+        randomise();
+        return transform(sudoku);
+    }
+
+    // Fills order with a random ordering of lines (rows or columns) which keeps lines from the same box together:
+    // the groups of lines are put in a random order, then the lines within each group are put in a random order.
+    private void shuffleWithinBoxes(int[] order, int groups, int linesPerGroup) {
+        for (int group = 0; group < groups; group++) groupOrder[group] = group;
+        shuffle(groupOrder, 0, groups);
+        for (int group = 0; group < groups; group++) {
+            for (int line = 0; line < linesPerGroup; line++) {
+                order[group * linesPerGroup + line] = groupOrder[group] * linesPerGroup + line;
+            }
+            shuffle(order, group * linesPerGroup, linesPerGroup);
+        }
+    }
+
+    // Fisher-Yates shuffle of the `length` items starting from `start`
+    private void shuffle(int[] array, int start, int length) {
+        for (int i = length - 1; i > 0; i--) swap(array, start + i, start + random.nextInt(i + 1));
+    }
+
+    private static void swap(int[] array, int i, int j) {
+        int temp = array[i];
+        array[i] = array[j];
+        array[j] = temp;
+    }
+}
@@ -0,0 +1,83 @@
+package com.sdenisov.sudoku;
+
+import java.util.Arrays;
+
+// Remembers grids which are known to have no solutions, so that a search which reaches the same grid again (e.g.
+// after guessing the same values in a different order) can give up immediately rather than searching it again.
+// Grids are identified by their Zobrist hash. Whether a grid has a solution only depends on its values, so a grid
+// found to have no solutions stays that way even if it is reached in a completely different search.
+// The table has a fixed size set by the memory limit. Each grid can only be stored at a single index, so when two grids
+// need the same index, the replacement policy decides which one is kept.
+// Different grids could have the same hash, in which case a grid with solutions would be wrongly skipped, but with
+// 64-bit hashes this is extremely unlikely.
+public class TranspositionTable {
+    public enum ReplacementPolicy {
+        // The new grid always replaces the old one, which favours grids from the part of the search happening now
+        ALWAYS_REPLACE,
+        // The grid with more empty cells is kept, as skipping it saves a larger search
+        KEEP_MORE_EMPTY_CELLS
+    }
+
+    // Memory used by each entry: an 8 byte hash and a 4 byte number of empty cells
+    private static final int BYTES_PER_ENTRY = 12;
+    private static final int DEFAULT_MINIMUM_EMPTY_CELLS = 30;
+
+    private final long[] hashes; // 0 marks an unused index, so a hash of 0 is stored as 1 instead
+    private final int[] emptyCells;
+    private final ReplacementPolicy policy;
+    // Grids with fewer empty cells than this are neither looked up nor stored. Most grids in a search are close to
+    // being full and are quick to search, so looking them up would cost more time (and push out more useful entries)
+    // than it saves.
+    private final int minimumEmptyCells;
+    private long hits = 0; // Number of times isDead has returned true
+
+    public TranspositionTable(long maxBytes, ReplacementPolicy policy, int minimumEmptyCells) {
+        // The number of entries is a power of 2, so that the index can be found from the hash using a bit mask
+        int entries = 1;
+        while (entries * 2L * BYTES_PER_ENTRY <= maxBytes && entries < (1 << 30)) entries *= 2;
+        hashes = new long[entries];
+        emptyCells = new int[entries];
+        this.policy = policy;
+        this.minimumEmptyCells = minimumEmptyCells;
+    }
+
+    public TranspositionTable(long maxBytes) {
+        this(maxBytes, ReplacementPolicy.KEEP_MORE_EMPTY_CELLS, DEFAULT_MINIMUM_EMPTY_CELLS);
+    }
+
+    // Returns true if the grid with this hash, which has the given number of empty cells, is known to have no solutions
+    public boolean isDead(long hash, int emptyCellCount) {
+        if (emptyCellCount < minimumEmptyCells) return false;
+        if (hash == 0) hash = 1;
+        if (hashes[indexFor(hash)] == hash) {
+            hits++;
+            return true;
+        }
+        return false;
+    }
+
+    // Records that the grid with this hash, which has the given number of empty cells, has no solutions
+    public void markDead(long hash, int emptyCellCount) {
+        if (emptyCellCount < minimumEmptyCells) return;
+        if (hash == 0) hash = 1;
+        int index = indexFor(hash);
+        if (hashes[index] == 0 || policy == ReplacementPolicy.ALWAYS_REPLACE || emptyCellCount >= emptyCells[index]) {
+            hashes[index] = hash;
+            emptyCells[index] = emptyCellCount;
+        }
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public void clear() {
+        Arrays.fill(hashes, 0);
+        hits = 0;
+    }
+
+    // Zobrist hashes are already random, so their lowest bits can be used directly as the index
+    private int indexFor(long hash) {
+        return (int) hash & (hashes.length - 1);
+    }
+}
@@ -0,0 +1,76 @@
+package com.sdenisov.sudoku;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AutoNotesTest {
+    @Test
+    public void valueChanged_matchesUpdateNotes() {
+        checkAgainstUpdateNotes(SudokuConstraints.classic(3, 3));
+        checkAgainstUpdateNotes(SudokuConstraints.classic(3, 2));
+        checkAgainstUpdateNotes(SudokuConstraints.classic(4, 3));
+    }
+
+    @Test
+    public void valueChanged_followsVariantUnits() {
+        checkAgainstUpdateNotes(SudokuConstraints.classic(3, 3).withDiagonals());
+        checkAgainstUpdateNotes(SudokuConstraints.classic(3, 3).withWindows().withAntiKnight());
+        checkAgainstUpdateNotes(SudokuConstraints.classic(3, 3).withCage(new int[]{0, 1, 9}, 6)
+                .withCage(new int[]{40, 41}, 17));
+    }
+
+    @Test
+    public void valueChanged_keepsValuesEnteredTwice() {
+        SudokuData sudokuData = new SudokuData(3, 3);
+        AutoNotes autoNotes = new AutoNotes(sudokuData);
+        // Two 5s in the first row, then one of them is removed
+        setValue(sudokuData, autoNotes, 0, 5);
+        setValue(sudokuData, autoNotes, 8, 5);
+        setValue(sudokuData, autoNotes, 8, null);
+        assertFalse(sudokuData.getValue(4).notes[4]);
+        assertTrue(sudokuData.getValue(8).notes[3]);
+        assertFalse(sudokuData.getValue(8).notes[4]);
+        setValue(sudokuData, autoNotes, 0, null);
+        assertTrue(sudokuData.getValue(4).notes[4]);
+    }
+
+    // Fills in a sudoku with these constraints one random cell at a time, from its solution, emptying some cells again
+    // on the way. After every change, the notes from AutoNotes must be the same as the ones updateNotes works out for
+    // the whole grid.
+    private static void checkAgainstUpdateNotes(SudokuConstraints constraints) {
+        Random random = new Random(constraints.getUnitCount());
+        SudokuData solution = new SudokuData(constraints);
+        assertNotEquals(-1, SudokuSolver.solve(solution, 0));
+        SudokuData sudokuData = new SudokuData(constraints);
+        AutoNotes autoNotes = new AutoNotes(sudokuData);
+        int cells = constraints.getRows() * constraints.getRows();
+        for (int step = 0; step < 2 * cells; step++) {
+            int index = random.nextInt(cells);
+            setValue(sudokuData, autoNotes, index,
+                    random.nextInt(4) == 0 ? null : solution.getValue(index).getValue());
+            SudokuData expected = sudokuData.copy();
+            SudokuSolver.updateNotes(expected, 0);
+            for (int other = 0; other < cells; other++) {
+                assertArrayEquals(constraints + " cell " + other + " after step " + step,
+                        toInts(expected.getValue(other).notes), toInts(sudokuData.getValue(other).notes));
+            }
+        }
+    }
+
+    private static void setValue(SudokuData sudokuData, AutoNotes autoNotes, int index, Integer value) {
+        SudokuData.SudokuCell cell = sudokuData.getValue(index);
+        Integer previousValue = cell.getValue();
+        cell.setValue(value);
+        cell.clearNotes();
+        autoNotes.valueChanged(index, previousValue);
+    }
+
+    private static int[] toInts(boolean[] notes) {
+        int[] result = new int[notes.length];
+        for (int i = 0; i < notes.length; i++) result[i] = notes[i] ? 1 : 0;
+        return result;
+    }
+}
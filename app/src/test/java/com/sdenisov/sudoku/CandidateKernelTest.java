@@ -0,0 +1,98 @@
+package com.sdenisov.sudoku;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CandidateKernelTest {
+    @Test
+    public void findCandidates_agreesWithCheckingEveryValue() {
+        checkCandidates(SudokuConstraints.classic(3, 2));
+        checkCandidates(SudokuConstraints.classic(3, 3));
+        checkCandidates(SudokuConstraints.classic(3, 3).withDiagonals().withWindows());
+        checkCandidates(SudokuConstraints.classic(3, 3).withCage(new int[]{0, 1, 9}, 6)
+                .withCage(new int[]{40}, 5).withCage(new int[]{79, 80}, 17));
+        checkCandidates(SudokuConstraints.classic(4, 4));
+        checkCandidates(SudokuConstraints.classic(5, 5));
+    }
+
+    // Checks the kernel's passes against working out the same from each cell's units one value at a time, on random
+    // partial grids with these constraints, some of which repeat a value in a unit
+    private static void checkCandidates(SudokuConstraints constraints) {
+        Random random = new Random(constraints.getUnitCount());
+        int rows = constraints.getRows();
+        int cells = rows * rows;
+        int[][] unitCells = new int[constraints.getUnitCount()][];
+        int[] unitSums = new int[unitCells.length];
+        for (int unit = 0; unit < unitCells.length; unit++) {
+            unitCells[unit] = constraints.getUnitCells(unit);
+            unitSums[unit] = constraints.getUnitSum(unit);
+        }
+        int[][] cellUnits = new int[cells][];
+        for (int index = 0; index < cells; index++) cellUnits[index] = constraints.getCellUnits(index);
+        for (int i = 0; i < 200; i++) {
+            int[] values = new int[cells];
+            int filled = random.nextInt(cells / 4 + 1);
+            for (int j = 0; j < filled; j++) values[random.nextInt(cells)] = 1 + random.nextInt(rows);
+
+            int[] unitMasks = new int[unitCells.length];
+            boolean duplicates = CandidateKernel.findUnitMasks(values, unitCells, unitMasks);
+            boolean expectedDuplicates = false;
+            for (int unit = 0; unit < unitCells.length; unit++) {
+                int expectedMask = 0;
+                for (int value = 1; value <= rows; value++) {
+                    int count = 0;
+                    for (int index : unitCells[unit]) {
+                        if (values[index] == value) count++;
+                    }
+                    if (count > 0) expectedMask |= 1 << (value - 1);
+                    if (count > 1) expectedDuplicates = true;
+                }
+                assertEquals(expectedMask, unitMasks[unit]);
+            }
+            assertEquals(expectedDuplicates, duplicates);
+
+            int[] candidates = new int[cells];
+            CandidateKernel.findCandidates(values, cellUnits, unitMasks, (1 << rows) - 1, candidates);
+            int[] expected = new int[cells];
+            for (int index = 0; index < cells; index++) {
+                if (values[index] != 0) continue;
+                for (int value = 1; value <= rows; value++) {
+                    if (!inAnyUnit(values, unitCells, cellUnits[index], value)) expected[index] |= 1 << (value - 1);
+                }
+            }
+            assertArrayEquals(expected, candidates);
+
+            CandidateKernel.applySums(values, unitCells, unitSums, candidates);
+            for (int unit = 0; unit < unitCells.length; unit++) {
+                if (unitSums[unit] == 0) continue;
+                int remaining = unitSums[unit];
+                int emptyIndex = -1;
+                int emptyCount = 0;
+                for (int index : unitCells[unit]) {
+                    remaining -= values[index];
+                    if (values[index] == 0) {
+                        emptyIndex = index;
+                        emptyCount++;
+                    }
+                }
+                if (emptyCount != 1) continue;
+                for (int value = 1; value <= rows; value++) {
+                    if (value != remaining) expected[emptyIndex] &= ~(1 << (value - 1));
+                }
+            }
+            assertArrayEquals(expected, candidates);
+        }
+    }
+
+    private static boolean inAnyUnit(int[] values, int[][] unitCells, int[] units, int value) {
+        for (int unit : units) {
+            for (int index : unitCells[unit]) {
+                if (values[index] == value) return true;
+            }
+        }
+        return false;
+    }
+}
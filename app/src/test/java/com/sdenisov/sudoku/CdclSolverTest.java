@@ -0,0 +1,93 @@
+package com.sdenisov.sudoku;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CdclSolverTest {
+    // Two of the best known hard sudokus (AI Escargot and Arto Inkala's "world's hardest sudoku")
+    private static final String[] HARDEST = {
+            "1....7.9..3..2...8..96..5....53..9...1..8...26....4...3......1..4......7..7...3..",
+            "8..........36......7..9.2...5...7.......457.....1...3...1....68..85...1..9....4..",
+    };
+
+    @Test
+    public void solve_agreesWithTheHeuristicSearch() {
+        checkAgainstHeuristic(SudokuConstraints.classic(3, 2));
+        checkAgainstHeuristic(SudokuConstraints.classic(3, 3));
+        checkAgainstHeuristic(SudokuConstraints.classic(3, 3).withDiagonals().withAntiKnight());
+        checkAgainstHeuristic(SudokuConstraints.classic(3, 3).withCage(new int[]{0, 1, 9}, 6)
+                .withCage(new int[]{40}, 5).withCage(new int[]{79, 80}, 17));
+    }
+
+    @Test
+    public void solve_findsTheSolutionOfHardSudokus() {
+        for (String sudoku : HARDEST) {
+            SudokuData heuristic = TestSudokus.parse(sudoku, 3, 3);
+            SudokuData cdcl = TestSudokus.parse(sudoku, 3, 3);
+            SolverStatistics statistics = new SolverStatistics();
+            assertEquals(SudokuSolver.Backend.SOLVED, SudokuSolver.HEURISTIC.solve(heuristic, Long.MAX_VALUE, null));
+            assertEquals(SudokuSolver.Backend.SOLVED, SudokuSolver.CDCL.solve(cdcl, Long.MAX_VALUE, statistics));
+            assertEquals(TestSudokus.format(heuristic), TestSudokus.format(cdcl));
+            assertTrue(statistics.getDeadEnds() > 0);
+        }
+    }
+
+    @Test
+    public void solve_fillsLargeGrids() {
+        SudokuData sudokuData = new SudokuData(5, 5);
+        assertEquals(SudokuSolver.Backend.SOLVED, SudokuSolver.CDCL.solve(sudokuData, Long.MAX_VALUE, null));
+        assertFalse(sudokuData.containsEmptyCells());
+        assertTrue(sudokuData.findErrors().isEmpty());
+    }
+
+    @Test
+    public void withFallback_usesTheFallbackAfterGivingUp() {
+        // With no time at all, the heuristic search gives up before looking at the grid
+        SudokuSolver.Backend backend = SudokuSolver.withFallback(SudokuSolver.HEURISTIC, 0, SudokuSolver.CDCL);
+        SudokuData sudokuData = TestSudokus.parse(HARDEST[1], 3, 3);
+        assertEquals(SudokuSolver.Backend.SOLVED, backend.solve(sudokuData, Long.MAX_VALUE, null));
+        assertFalse(sudokuData.containsEmptyCells());
+        assertTrue(sudokuData.findErrors().isEmpty());
+    }
+
+    // Solves random partial grids with these constraints, some of which have no solutions, with both backends. They
+    // must agree on whether there is a solution, leave the grid unchanged if there isn't, keep every value given, and
+    // find the same solution when there is only one. The grids are taken from one filled grid, as filling an empty
+    // grid takes far longer than solving a partial one for some variants.
+    private static void checkAgainstHeuristic(SudokuConstraints constraints) {
+        Random random = new Random(constraints.getUnitCount());
+        int cells = constraints.getRows() * constraints.getRows();
+        SudokuData filled = new SudokuGridFiller(constraints, random).nextSudoku();
+        for (int i = 0; i < 50; i++) {
+            SudokuData heuristic = new SudokuData(constraints);
+            for (int index = 0; index < cells; index++) {
+                if (random.nextInt(5) >= 2) continue;
+                int value = random.nextInt(50) == 0 ? 1 + random.nextInt(constraints.getRows())
+                        : filled.getValue(index).getValue();
+                heuristic.getValue(index).setValue(value);
+                heuristic.getValue(index).setInitialValue(true);
+            }
+            String sudoku = TestSudokus.format(heuristic);
+            SudokuData cdcl = TestSudokus.parse(sudoku, new SudokuData(constraints));
+            int solutions = new SolutionCounter(heuristic).countSolutions(2);
+            int heuristicResult = SudokuSolver.HEURISTIC.solve(heuristic, Long.MAX_VALUE, null);
+            int cdclResult = SudokuSolver.CDCL.solve(cdcl, Long.MAX_VALUE, null);
+            assertEquals(sudoku, heuristicResult, cdclResult);
+            assertEquals(sudoku, solutions == 0, cdclResult == SudokuSolver.Backend.NO_SOLUTION);
+            if (solutions == 0) {
+                assertEquals(sudoku, TestSudokus.format(cdcl));
+                continue;
+            }
+            assertFalse(cdcl.containsEmptyCells());
+            assertTrue(sudoku, cdcl.findErrors().isEmpty());
+            String solution = TestSudokus.format(cdcl);
+            for (int index = 0; index < cells; index++) {
+                if (sudoku.charAt(index) != '.') assertEquals(sudoku.charAt(index), solution.charAt(index));
+            }
+            if (solutions == 1) assertEquals(sudoku, TestSudokus.format(heuristic), solution);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.sdenisov.sudoku;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HintEngineTest {
+    // A sudoku which the hints can't solve without taking values from the solution twice
+    private static final String NEEDS_SOLUTION =
+            "...7.........46.392.4....1...2.9.1.5........2.9.45.7..1..2..5..9.8..4...5......8.";
+
+    @Test
+    public void getHint_givesTheSolutionsValue() {
+        SudokuData sudokuData = TestSudokus.parse(TestSudokus.EASY_9, 3, 3);
+        HintEngine engine = HintEngine.forPuzzle(sudokuData);
+        int[] solution = solve(sudokuData);
+        int[] values = SolutionCache.getValues(sudokuData);
+        // Following the hints fills in the whole grid, using only singles for an easy sudoku
+        for (HintEngine.Hint hint = engine.getHint(values); hint != null; hint = engine.getHint(values)) {
+            assertEquals(solution[hint.getIndex()], hint.getValue());
+            assertTrue(hint.getTechnique().compareTo(HintEngine.Technique.NAKED_SINGLE) <= 0);
+            values[hint.getIndex()] = hint.getValue();
+        }
+        assertArrayEquals(solution, values);
+    }
+
+    @Test
+    public void getHint_pointsOutMistakes() {
+        SudokuData sudokuData = TestSudokus.parse(TestSudokus.MEDIUM_9, 3, 3);
+        int[] solution = solve(sudokuData);
+        int[] values = SolutionCache.getValues(sudokuData);
+        values[0] = solution[0] % 9 + 1;
+        HintEngine.Hint hint = HintEngine.forPuzzle(sudokuData).getHint(values);
+        assertEquals(HintEngine.Technique.MISTAKE, hint.getTechnique());
+        assertEquals(0, hint.getIndex());
+    }
+
+    @Test
+    public void getHint_usesThePlayersGrid() {
+        // The player fills in cells in any order, so the hint has to be the easiest step from where they have got to.
+        // Following the hints until one has to come from the solution, filling in a different cell instead often
+        // gives a single, which must then be the hint.
+        SudokuData sudokuData = TestSudokus.parse(NEEDS_SOLUTION, 3, 3);
+        HintEngine engine = HintEngine.forPuzzle(sudokuData);
+        int[] solution = solve(sudokuData);
+        int[] values = SolutionCache.getValues(sudokuData);
+        int singlesChecked = 0;
+        for (HintEngine.Hint hint = engine.getHint(values); hint != null; hint = engine.getHint(values)) {
+            assertEquals(solution[hint.getIndex()], hint.getValue());
+            if (hint.getTechnique() == HintEngine.Technique.SOLUTION) {
+                assertEquals(-1, findNakedSingle(values));
+                for (int other = 0; other < values.length; other++) {
+                    if (values[other] != 0 || other == hint.getIndex()) continue;
+                    values[other] = solution[other];
+                    int nakedSingle = findNakedSingle(values);
+                    if (nakedSingle != -1) {
+                        HintEngine.Hint otherHint = engine.getHint(values);
+                        assertTrue(otherHint.getTechnique().compareTo(HintEngine.Technique.NAKED_SINGLE) <= 0);
+                        assertEquals(solution[otherHint.getIndex()], otherHint.getValue());
+                        singlesChecked++;
+                    }
+                    values[other] = 0;
+                }
+            } else if (hint.getTechnique() == HintEngine.Technique.NAKED_SINGLE) {
+                assertEquals(1, Integer.bitCount(findCandidates(values)[hint.getIndex()]));
+            }
+            values[hint.getIndex()] = hint.getValue();
+        }
+        assertTrue(singlesChecked > 0);
+    }
+
+    @Test
+    public void getHint_returnsNullWithoutUniqueSolution() {
+        SudokuData sudokuData = new SudokuData(3, 3);
+        assertNull(HintEngine.forPuzzle(sudokuData).getHint(new int[81]));
+    }
+
+    private static int[] solve(SudokuData sudokuData) {
+        SudokuData solved = sudokuData.copy();
+        SudokuSolver.solve(solved, 1);
+        return SolutionCache.getValues(solved);
+    }
+
+    // Returns the first empty cell with a single candidate, or -1 if there isn't one
+    private static int findNakedSingle(int[] values) {
+        int[] candidates = findCandidates(values);
+        for (int index = 0; index < values.length; index++) {
+            if (values[index] == 0 && Integer.bitCount(candidates[index]) == 1) return index;
+        }
+        return -1;
+    }
+
+    // The values which aren't in each empty cell's row, column or box, worked out directly
+    private static int[] findCandidates(int[] values) {
+        int[] result = new int[values.length];
+        for (int index = 0; index < values.length; index++) {
+            if (values[index] != 0) continue;
+            result[index] = (1 << 9) - 1;
+            for (int other = 0; other < values.length; other++) {
+                boolean peer = other / 9 == index / 9 || other % 9 == index % 9 ||
+                        other / 27 == index / 27 && other % 9 / 3 == index % 9 / 3;
+                if (peer && values[other] != 0) result[index] &= ~(1 << (values[other] - 1));
+            }
+        }
+        return result;
+    }
+}
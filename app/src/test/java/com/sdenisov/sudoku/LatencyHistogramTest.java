@@ -0,0 +1,99 @@
+package com.sdenisov.sudoku;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+    private static final double[] PERCENTILES = {0, 1, 10, 50, 90, 99, 99.9, 100};
+
+    @Test
+    public void getValueAtPercentile_isWithinABucketOfTheSortedValues() {
+        Random random = new Random(1);
+        long[] small = new long[1000];
+        long[] spread = new long[10000];
+        for (int i = 0; i < small.length; i++) small[i] = random.nextInt(200);
+        // Evenly spread over the powers of 2 up to 2^50, like latencies from a microsecond to several days
+        for (int i = 0; i < spread.length; i++) spread[i] = (long) Math.pow(2, random.nextDouble() * 50);
+        checkAgainstSortedValues(small);
+        checkAgainstSortedValues(spread);
+        checkAgainstSortedValues(new long[]{Long.MAX_VALUE, 1L << 62, 5, 0});
+    }
+
+    @Test
+    public void getValueAtPercentile_isExactForSmallValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 100; value++) histogram.record(value);
+        assertEquals(1, histogram.getValueAtPercentile(0));
+        assertEquals(50, histogram.getValueAtPercentile(50));
+        assertEquals(99, histogram.getValueAtPercentile(99));
+        assertEquals(100, histogram.getValueAtPercentile(100));
+        assertEquals(50.5, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void record_treatsNegativeValuesAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void add_givesTheSameAsRecordingEverything() {
+        Random random = new Random(2);
+        LatencyHistogram all = new LatencyHistogram();
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        for (int i = 0; i < 1000; i++) {
+            long value = random.nextInt(1 << 20);
+            all.record(value);
+            (i % 3 == 0 ? first : second).record(value);
+        }
+        first.add(second);
+        assertEquals(all.getCount(), first.getCount());
+        assertEquals(all.getMax(), first.getMax());
+        assertEquals(all.getMean(), first.getMean(), 0);
+        for (double percentile : PERCENTILES) {
+            assertEquals(all.getValueAtPercentile(percentile), first.getValueAtPercentile(percentile));
+        }
+    }
+
+    @Test
+    public void copyAndReset_emptiesTheHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        histogram.record(3);
+        LatencyHistogram copy = histogram.copyAndReset();
+        assertEquals(2, copy.getCount());
+        assertEquals(1000, copy.getMax());
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(100));
+        histogram.record(7);
+        assertEquals(7, histogram.getMax());
+        assertEquals(2, copy.getCount());
+    }
+
+    // Records the values and checks each percentile against the value found directly from the sorted values. The
+    // histogram may give a higher value in the same bucket, but never by more than 1/64 of the value.
+    private static void checkAgainstSortedValues(long[] values) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value : values) histogram.record(value);
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        assertEquals(sorted.length, histogram.getCount());
+        assertEquals(sorted[sorted.length - 1], histogram.getMax());
+        for (double percentile : PERCENTILES) {
+            int rank = (int) Math.max(1, Math.ceil(percentile / 100 * sorted.length));
+            long expected = sorted[rank - 1];
+            long actual = histogram.getValueAtPercentile(percentile);
+            assertTrue(percentile + ": " + actual + " < " + expected, actual >= expected);
+            assertTrue(percentile + ": " + actual + " > " + expected, actual - expected <= expected / 64);
+        }
+    }
+}
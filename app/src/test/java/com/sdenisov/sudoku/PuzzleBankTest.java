@@ -0,0 +1,93 @@
+package com.sdenisov.sudoku;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PuzzleBankTest {
+    // Long enough for any sudoku the tests ask for to be generated
+    private static final long TIMEOUT_MILLIS = 20000;
+
+    @Test
+    public void take_waitsForTheRefillItStarts() {
+        // The bank isn't started, so the only refills are the ones started by take
+        PuzzleBank bank = new PuzzleBank(1, 1);
+        try {
+            assertEquals(0, bank.available());
+            assertNull(bank.take(1, 3, 2, 0));
+            checkPuzzle(bank.take(1, 3, 2, TIMEOUT_MILLIS), 1, 3, 2);
+        } finally {
+            bank.close();
+        }
+    }
+
+    @Test
+    public void take_refillsTheQueue() {
+        PuzzleBank bank = new PuzzleBank(2, 1);
+        try {
+            checkPuzzle(bank.take(2, 3, 3, TIMEOUT_MILLIS), 2, 3, 3);
+            waitForAvailable(bank, 2);
+            // Both are taken without waiting, and the queue is filled again afterwards
+            checkPuzzle(bank.take(2, 3, 3, 0), 2, 3, 3);
+            checkPuzzle(bank.take(2, 3, 3, 0), 2, 3, 3);
+            waitForAvailable(bank, 2);
+        } finally {
+            bank.close();
+        }
+    }
+
+    @Test
+    public void take_givesUpStraightAwayOnceClosed() {
+        PuzzleBank bank = new PuzzleBank(1, 1);
+        bank.close();
+        long start = System.nanoTime();
+        assertNull(bank.take(1, 3, 3, TIMEOUT_MILLIS));
+        assertTrue(System.nanoTime() - start < TIMEOUT_MILLIS * 1_000_000L / 10);
+        assertEquals(0, bank.available());
+    }
+
+    @Test
+    public void isSupported_onlyAcceptsTheAppsSizes() {
+        assertTrue(PuzzleBank.isSupported(3, 2));
+        assertTrue(PuzzleBank.isSupported(3, 3));
+        assertTrue(PuzzleBank.isSupported(4, 3));
+        assertFalse(PuzzleBank.isSupported(2, 3));
+        assertFalse(PuzzleBank.isSupported(4, 4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void take_rejectsOtherDifficulties() {
+        PuzzleBank bank = new PuzzleBank(1, 1);
+        try {
+            bank.take(5, 3, 3, 0);
+        } finally {
+            bank.close();
+        }
+    }
+
+    // Checks that the puzzle is what was asked for: a sudoku with one solution, which is the solution given, and
+    // which the solver rates as the difficulty given
+    private static void checkPuzzle(PuzzleBank.Puzzle puzzle, int difficulty, int boxRows, int boxColumns) {
+        assertNotNull(puzzle);
+        assertEquals(difficulty, puzzle.getDifficulty());
+        assertEquals(boxRows, puzzle.getBoxRows());
+        assertEquals(boxColumns, puzzle.getBoxColumns());
+        SudokuData sudoku = new SudokuData(boxRows, boxColumns);
+        for (int index = 0; index < puzzle.getValues().length; index++) {
+            if (puzzle.getValues()[index] == 0) continue;
+            sudoku.getValue(index).setValue(puzzle.getValues()[index]);
+            sudoku.getValue(index).setInitialValue(true);
+        }
+        assertEquals(1, new SolutionCounter(sudoku).countSolutions(2));
+        assertEquals(difficulty, SudokuSolver.solve(sudoku, 1));
+        assertArrayEquals(puzzle.getSolution(), SolutionCache.getValues(sudoku));
+    }
+
+    private static void waitForAvailable(PuzzleBank bank, int available) {
+        long deadline = System.nanoTime() + TIMEOUT_MILLIS * 1_000_000L;
+        while (bank.available() != available) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.yield();
+        }
+    }
+}
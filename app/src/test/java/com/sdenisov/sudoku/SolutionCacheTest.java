@@ -0,0 +1,108 @@
+package com.sdenisov.sudoku;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SolutionCacheTest {
+    @Test
+    public void put_removesTheLeastRecentlyUsedEntry() {
+        SolutionCache cache = new SolutionCache(2);
+        SudokuData easy = TestSudokus.parse(TestSudokus.EASY_9, 3, 3);
+        SudokuData medium = TestSudokus.parse(TestSudokus.MEDIUM_9, 3, 3);
+        SudokuData hard = TestSudokus.parse(TestSudokus.HARD_9, 3, 3);
+        cache.put(easy, null, null, 1);
+        cache.put(medium, null, null, 2);
+        // Looking easy up makes medium the least recently used, so it is the one removed
+        assertEquals(1, cache.get(easy).getDifficulty());
+        cache.put(hard, null, null, 3);
+        assertNull(cache.get(medium));
+        assertEquals(1, cache.get(easy).getDifficulty());
+        assertEquals(3, cache.get(hard).getDifficulty());
+        cache.clear();
+        assertNull(cache.get(easy));
+    }
+
+    @Test
+    public void get_checksTheValuesOfEntriesWithTheSameHash() {
+        SudokuData[] colliding = findCollidingGrids();
+        assertEquals(colliding[0].getZobristHash(), colliding[1].getZobristHash());
+        SolutionCache cache = new SolutionCache(10);
+        cache.put(colliding[0], null, null, -1);
+        assertNotNull(cache.get(colliding[0]));
+        assertNull(cache.get(colliding[1]));
+        // The other grid replaces the entry, as they have the same hash
+        cache.put(colliding[1], null, null, -1);
+        assertNull(cache.get(colliding[0]));
+        assertNotNull(cache.get(colliding[1]));
+    }
+
+    @Test
+    public void solveCached_givesTheSameResultAsSolve() {
+        for (String sudoku : new String[]{TestSudokus.EASY_9, TestSudokus.MEDIUM_9, TestSudokus.HARD_9,
+                TestSudokus.UNLIMITED_9}) {
+            SudokuData expected = TestSudokus.parse(sudoku, 3, 3);
+            int difficulty = SudokuSolver.solve(expected, 1);
+            SudokuData sudokuData = TestSudokus.parse(sudoku, 3, 3);
+            // The second time round the result comes from the cache
+            for (int repeat = 0; repeat < 2; repeat++) {
+                assertEquals(sudoku, difficulty, SudokuSolver.solveCached(sudokuData));
+                assertEquals(sudoku, TestSudokus.format(expected), TestSudokus.format(sudokuData));
+                assertFalse(sudokuData.containsEmptyCells());
+                SudokuSolver.unsolve(sudokuData);
+                assertEquals(sudoku, TestSudokus.format(sudokuData));
+            }
+        }
+    }
+
+    @Test
+    public void solveCached_leavesSudokusWithoutSolutionsUnchanged() {
+        // Two 1s in the first row
+        String sudoku = "1.1" + TestSudokus.MEDIUM_9.substring(3);
+        SudokuData sudokuData = TestSudokus.parse(sudoku, 3, 3);
+        for (int repeat = 0; repeat < 2; repeat++) {
+            assertEquals(-1, SudokuSolver.solveCached(sudokuData));
+            assertEquals(sudoku, TestSudokus.format(sudokuData));
+        }
+    }
+
+    // Returns two 9x9 grids with different values but the same Zobrist hash. Setting cell i to 1 rather than 2 changes
+    // the hash by some d_i, so any set of cells whose d_i XOR to 0 gives such a pair: the set filled with 1s and the
+    // set filled with 2s. There are 81 cells and only 64 bits, so Gaussian elimination always finds one.
+    private static SudokuData[] findCollidingGrids() {
+        // basis[bit] is a combined difference whose highest bit is `bit`, then the set of cells (as a bit mask) it is
+        // the XOR of
+        long[][] basis = new long[64][];
+        for (int index = 0; index < 81; index++) {
+            long difference = hashWith(index, 1) ^ hashWith(index, 2);
+            long[] cells = new long[2];
+            cells[index / 64] |= 1L << (index % 64);
+            for (int bit = 63; bit >= 0 && difference != 0; bit--) {
+                if ((difference >>> bit & 1) == 0) continue;
+                if (basis[bit] == null) {
+                    basis[bit] = new long[]{difference, cells[0], cells[1]};
+                    break;
+                }
+                difference ^= basis[bit][0];
+                cells[0] ^= basis[bit][1];
+                cells[1] ^= basis[bit][2];
+            }
+            if (difference != 0) continue;
+            SudokuData ones = new SudokuData(3, 3);
+            SudokuData twos = new SudokuData(3, 3);
+            for (int cell = 0; cell < 81; cell++) {
+                if ((cells[cell / 64] & 1L << (cell % 64)) == 0) continue;
+                ones.getValue(cell).setValue(1);
+                twos.getValue(cell).setValue(2);
+            }
+            return new SudokuData[]{ones, twos};
+        }
+        throw new AssertionError("No colliding grids found");
+    }
+
+    private static long hashWith(int index, int value) {
+        SudokuData sudokuData = new SudokuData(3, 3);
+        sudokuData.getValue(index).setValue(value);
+        return sudokuData.getZobristHash();
+    }
+}
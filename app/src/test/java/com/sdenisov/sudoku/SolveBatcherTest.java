@@ -0,0 +1,116 @@
+package com.sdenisov.sudoku;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SolveBatcherTest {
+    private static final long TIMEOUT_SECONDS = 20;
+
+    @Test
+    public void submit_gradesIdenticalSudokusInABatchOnce() throws Exception {
+        SolveBatcher batcher = new SolveBatcher(1, 16, 16);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            holdWorker(batcher, release);
+            long gradedBefore = batcher.getGraded();
+            // These all wait while the worker is held, so they make up its next batch
+            List<CompletableFuture<SolutionCache.Entry>> hard = new ArrayList<>();
+            for (int i = 0; i < 5; i++) hard.add(batcher.submit(3, 3, toValues(TestSudokus.HARD_9)));
+            CompletableFuture<SolutionCache.Entry> medium = batcher.submit(3, 3, toValues(TestSudokus.MEDIUM_9));
+            // The same number of cells as a 6x6 sudoku with 3x2 boxes, so only boxRows tells them apart
+            CompletableFuture<SolutionCache.Entry> twoByThree = batcher.submit(2, 3, new int[36]);
+            CompletableFuture<SolutionCache.Entry> threeByTwo = batcher.submit(3, 2, new int[36]);
+            release.countDown();
+
+            int hardDifficulty = SudokuSolver.solve(TestSudokus.parse(TestSudokus.HARD_9, 3, 3), 1);
+            for (CompletableFuture<SolutionCache.Entry> future : hard) {
+                SolutionCache.Entry entry = future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                assertEquals(1, entry.getSolutionCount());
+                assertEquals(hardDifficulty, entry.getDifficulty());
+            }
+            assertEquals(1, medium.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getSolutionCount());
+            assertEquals(2, twoByThree.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getSolutionCount());
+            assertEquals(2, threeByTwo.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getSolutionCount());
+            assertEquals(gradedBefore + 4, batcher.getGraded());
+        } finally {
+            release.countDown();
+            batcher.close();
+        }
+    }
+
+    @Test
+    public void submit_rejectsSudokusWhenTheQueueIsFull() throws Exception {
+        SolveBatcher batcher = new SolveBatcher(1, 2, 16);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            holdWorker(batcher, release);
+            CompletableFuture<SolutionCache.Entry> first = batcher.submit(3, 3, toValues(TestSudokus.EASY_9));
+            CompletableFuture<SolutionCache.Entry> second = batcher.submit(3, 3, toValues(TestSudokus.MEDIUM_9));
+            try {
+                batcher.submit(3, 3, toValues(TestSudokus.HARD_9));
+                fail("The queue should be full");
+            } catch (RejectedExecutionException e) {
+                // Expected
+            }
+            release.countDown();
+            assertEquals(1, first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getDifficulty());
+            assertEquals(2, second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getDifficulty());
+            // Once the worker has taken them, there is room again
+            assertEquals(3, batcher.submit(3, 3, toValues(TestSudokus.HARD_9))
+                    .get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getDifficulty());
+        } finally {
+            release.countDown();
+            batcher.close();
+        }
+    }
+
+    @Test
+    public void close_failsTheSudokusStillWaiting() throws Exception {
+        SolveBatcher batcher = new SolveBatcher(1, 16, 16);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            holdWorker(batcher, release);
+            CompletableFuture<SolutionCache.Entry> waiting = batcher.submit(3, 3, toValues(TestSudokus.EASY_9));
+            batcher.close();
+            assertTrue(waiting.isCompletedExceptionally());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    // Keeps the batcher's only worker busy until release is counted down, by having it wait in a callback on a
+    // sudoku's result. The callback only runs on the worker if it is added before the sudoku has been graded, so this
+    // tries again until it is.
+    private static void holdWorker(SolveBatcher batcher, CountDownLatch release) throws InterruptedException {
+        CountDownLatch held = new CountDownLatch(1);
+        while (held.getCount() > 0) {
+            batcher.submit(3, 3, toValues(TestSudokus.EASY_9)).thenRun(() -> {
+                if (!Thread.currentThread().getName().startsWith("solve-batcher")) return;
+                held.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt(); // close interrupted the worker, which must still stop
+                }
+            });
+            held.await(100, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static int[] toValues(String sudoku) {
+        int[] values = new int[sudoku.length()];
+        for (int index = 0; index < values.length; index++) {
+            char character = sudoku.charAt(index);
+            values[index] = character == '.' ? 0 : Character.digit(character, Character.MAX_RADIX);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,89 @@
+package com.sdenisov.sudoku;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SudokuCanonicaliserTest {
+    @Test
+    public void canonicalise_givesTheSmallestVariant() {
+        // A 4x4 sudoku has only a few thousand variants, so random ones soon include the smallest
+        SudokuData sudoku = TestSudokus.parse("1.....2..3.....4", 2, 2);
+        SudokuTransformer transformer = new SudokuTransformer(2, 2, new Random(1));
+        int[] smallest = null;
+        for (int i = 0; i < 50000; i++) {
+            int[] variant = SolutionCache.getValues(transformer.randomVariant(sudoku));
+            if (smallest == null || compare(variant, smallest) < 0) smallest = variant;
+        }
+        assertArrayEquals(smallest, new SudokuCanonicaliser(2, 2).canonicalise(sudoku));
+    }
+
+    @Test
+    public void canonicalise_isTheSameForVariants() {
+        checkVariants(TestSudokus.parse(TestSudokus.HARD_9, 3, 3));
+        checkVariants(TestSudokus.parse("...2.3....6.3.........1225.6..4.....", 3, 2));
+        checkVariants(TestSudokus.parse(".96.31.8B.2.2.B...9.14..78..B2.A..6.5.368.7C.1.4..A9651.3.7....89....." +
+                "5..A...3.7.6..359..6.1...2.6.1.4B.C73561...C2...9.....19.B.38C97..4..562..", 4, 3));
+    }
+
+    @Test
+    public void canonicalise_tellsDifferentSudokusApart() {
+        SudokuCanonicaliser canonicaliser = new SudokuCanonicaliser(3, 3);
+        SudokuData easy = TestSudokus.parse(TestSudokus.EASY_9, 3, 3);
+        SudokuData medium = TestSudokus.parse(TestSudokus.MEDIUM_9, 3, 3);
+        assertFalse(compare(canonicaliser.canonicalise(easy), canonicaliser.canonicalise(medium)) == 0);
+        assertNotEquals(canonicaliser.fingerprint(easy), canonicaliser.fingerprint(medium));
+    }
+
+    @Test
+    public void canonicalise_onlyUsesInitialValues() {
+        SudokuCanonicaliser canonicaliser = new SudokuCanonicaliser(3, 3);
+        SudokuData sudoku = TestSudokus.parse(TestSudokus.MEDIUM_9, 3, 3);
+        int[] canonical = canonicaliser.canonicalise(sudoku);
+        sudoku.getValue(0).setValue(2);
+        assertArrayEquals(canonical, canonicaliser.canonicalise(sudoku));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void canonicalise_rejectsOtherSizes() {
+        new SudokuCanonicaliser(3, 3).canonicalise(new SudokuData(4, 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsSizesWithTooManyColumnOrders() {
+        new SudokuCanonicaliser(4, 4);
+    }
+
+    // Checks that random variants of the sudoku all have its canonical form and fingerprint, and that the canonical
+    // form is itself a variant of the sudoku which is no larger than any of the others
+    private static void checkVariants(SudokuData sudoku) {
+        int boxRows = sudoku.getBoxRows();
+        int boxColumns = sudoku.getBoxColumns();
+        SudokuCanonicaliser canonicaliser = new SudokuCanonicaliser(boxRows, boxColumns);
+        SudokuTransformer transformer = new SudokuTransformer(boxRows, boxColumns, new Random(boxColumns));
+        int[] canonical = canonicaliser.canonicalise(sudoku);
+        long fingerprint = canonicaliser.fingerprint(sudoku);
+        for (int i = 0; i < 5; i++) {
+            SudokuData variant = transformer.randomVariant(sudoku);
+            assertArrayEquals(canonical, canonicaliser.canonicalise(variant));
+            assertEquals(fingerprint, canonicaliser.fingerprint(variant));
+            assertTrue(compare(canonical, SolutionCache.getValues(variant)) <= 0);
+        }
+        SudokuData canonicalSudoku = new SudokuData(boxRows, boxColumns);
+        for (int index = 0; index < canonical.length; index++) {
+            if (canonical[index] == 0) continue;
+            canonicalSudoku.getValue(index).setValue(canonical[index]);
+            canonicalSudoku.getValue(index).setInitialValue(true);
+        }
+        assertArrayEquals(canonical, canonicaliser.canonicalise(canonicalSudoku));
+    }
+
+    private static int compare(int[] a, int[] b) {
+        for (int index = 0; index < a.length; index++) {
+            if (a[index] != b[index]) return Integer.compare(a[index], b[index]);
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,82 @@
+package com.sdenisov.sudoku;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SudokuConstraintsTest {
+    @Test
+    public void classic_hasRowsColumnsAndBoxes() {
+        SudokuConstraints constraints = SudokuConstraints.classic(3, 2);
+        assertTrue(constraints.isClassic());
+        assertEquals(18, constraints.getUnitCount());
+        // Each box has 2 rows and 3 columns, so cell 0's box is cells 0-2 and 6-8
+        assertArrayEquals(new int[]{0, 1, 2, 6, 7, 8}, constraints.getUnitCells(12));
+        for (int index = 0; index < 36; index++) assertEquals(5 + 5 + 2, constraints.getPeers(index).length);
+        assertSame(constraints, SudokuConstraints.classic(3, 2));
+    }
+
+    @Test
+    public void withDiagonals_addsPeersOnTheDiagonals() {
+        SudokuConstraints constraints = SudokuConstraints.classic(3, 3).withDiagonals();
+        assertFalse(constraints.isClassic());
+        assertEquals(29, constraints.getUnitCount());
+        // The centre is on both diagonals, which add 6 cells each outside its row, column and box
+        assertEquals(20 + 12, constraints.getPeers(40).length);
+        // Cell 1 isn't on either diagonal
+        assertEquals(20, constraints.getPeers(1).length);
+    }
+
+    @Test
+    public void solve_followsTheExtraUnits() {
+        SudokuConstraints constraints = SudokuConstraints.classic(3, 3).withDiagonals();
+        SudokuData sudokuData = new SudokuData(constraints);
+        assertNotEquals(-1, SudokuSolver.solve(sudokuData, 1));
+        assertTrue(sudokuData.findErrors().isEmpty());
+        for (int i = 1; i < 9; i++) {
+            assertNotEquals(sudokuData.getValue(0).getValue(), sudokuData.getValue(i * 10).getValue());
+            assertNotEquals(sudokuData.getValue(8).getValue(), sudokuData.getValue(8 + i * 8).getValue());
+        }
+    }
+
+    @Test
+    public void generate_keepsTheConstraints() {
+        SudokuConstraints constraints = SudokuConstraints.classic(3, 3).withDiagonals();
+        SudokuData sudoku = SudokuGenerator.generate(2, new SudokuGenerator.Workspace(constraints));
+        assertEquals(constraints, sudoku.getConstraints());
+        assertEquals(1, new SolutionCounter(sudoku).countSolutions(2));
+        assertEquals(2, SudokuSolver.solve(sudoku, 1));
+    }
+
+    @Test
+    public void generateVariant_keepsTheSeedsConstraints() {
+        SudokuConstraints constraints = SudokuConstraints.classic(3, 3).withDiagonals();
+        SudokuData seed = SudokuGenerator.generate(2, new SudokuGenerator.Workspace(constraints));
+        SudokuData variant = SudokuGenerator.generateVariant(seed, 3, new SudokuTransformer(3, 3));
+        assertEquals(constraints, variant.getConstraints());
+        assertEquals(1, new SolutionCounter(variant).countSolutions(2));
+        assertEquals(3, SudokuSolver.solve(variant, 1));
+    }
+
+    @Test
+    public void generateVariant_transformsClassicSeeds() {
+        SudokuData seed = TestSudokus.parse(TestSudokus.MEDIUM_9, 3, 3);
+        SudokuData variant = SudokuGenerator.generateVariant(seed, 2, new SudokuTransformer(3, 3, new Random(1)));
+        assertTrue(variant.getConstraints().isClassic());
+        assertEquals(2, SudokuSolver.solve(variant, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void transform_rejectsVariants() {
+        SudokuData sudoku = new SudokuData(SudokuConstraints.classic(3, 3).withWindows());
+        new SudokuTransformer(3, 3).randomVariant(sudoku);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void canonicalise_rejectsVariants() {
+        SudokuData sudoku = new SudokuData(SudokuConstraints.classic(3, 3).withAntiKnight());
+        new SudokuCanonicaliser(3, 3).canonicalise(sudoku);
+    }
+}
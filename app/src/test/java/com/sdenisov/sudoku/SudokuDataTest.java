@@ -0,0 +1,163 @@
+package com.sdenisov.sudoku;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class SudokuDataTest {
+    @Test
+    public void getZobristHash_dependsOnlyOnTheCells() {
+        // After random changes, the hash must be the same as that of a new grid with the same cells, whatever order
+        // the cells were changed in
+        Random random = new Random(1);
+        SudokuData sudoku = new SudokuData(3, 3);
+        for (int step = 0; step < 2000; step++) {
+            SudokuData.SudokuCell cell = sudoku.getValue(random.nextInt(81));
+            if (random.nextBoolean()) {
+                cell.setValue(random.nextInt(4) == 0 ? null : 1 + random.nextInt(9));
+            } else {
+                cell.setInitialValue(random.nextBoolean());
+            }
+            if (step % 100 == 0) assertEquals(rebuild(sudoku).getZobristHash(), sudoku.getZobristHash());
+        }
+        for (int index = 0; index < 81; index++) {
+            sudoku.getValue(index).setValue(null);
+            sudoku.getValue(index).setInitialValue(false);
+        }
+        assertEquals(0, sudoku.getZobristHash());
+    }
+
+    @Test
+    public void getZobristHash_ignoresNotes() {
+        SudokuData sudoku = TestSudokus.parse(TestSudokus.MEDIUM_9, 3, 3);
+        long hash = sudoku.getZobristHash();
+        SudokuSolver.updateNotes(sudoku, 0);
+        assertEquals(hash, sudoku.getZobristHash());
+    }
+
+    @Test
+    public void getZobristHash_tellsGridsApart() {
+        SudokuData sudoku = TestSudokus.parse(TestSudokus.HARD_9, 3, 3);
+        SudokuData notInitial = TestSudokus.parse(TestSudokus.HARD_9, 3, 3);
+        notInitial.getValue(0).setInitialValue(false);
+        assertNotEquals(sudoku.getZobristHash(), notInitial.getZobristHash());
+        assertNotEquals(sudoku, notInitial);
+        // Every grid one value away from a filled grid has a different hash
+        SudokuData filled = new SudokuData(3, 3);
+        SudokuSolver.solve(filled, 0);
+        Set<Long> hashes = new HashSet<>();
+        hashes.add(filled.getZobristHash());
+        for (int index = 0; index < 81; index++) {
+            SudokuData.SudokuCell cell = filled.getValue(index);
+            Integer value = cell.getValue();
+            for (int other = 0; other <= 9; other++) {
+                if (value == other) continue;
+                cell.setValue(other == 0 ? null : other);
+                assertTrue(hashes.add(filled.getZobristHash()));
+            }
+            cell.setValue(value);
+        }
+    }
+
+    @Test
+    public void copy_keepsItsOwnHash() {
+        SudokuData sudoku = TestSudokus.parse(TestSudokus.EASY_9, 3, 3);
+        long hash = sudoku.getZobristHash();
+        SudokuData copy = sudoku.copy();
+        assertEquals(sudoku, copy);
+        assertEquals(sudoku.hashCode(), copy.hashCode());
+        copy.getValue(1).setValue(2);
+        assertEquals(hash, sudoku.getZobristHash());
+        assertNotEquals(hash, copy.getZobristHash());
+        assertNotEquals(sudoku, copy);
+        copy.getValue(1).setValue(null);
+        assertEquals(sudoku, copy);
+    }
+
+    @Test
+    public void takeChanges_reportsErrorsGainedAndLostByPeers() {
+        SudokuData sudoku = new SudokuData(3, 3);
+        assertEquals(new BitSet(), sudoku.takeChanges());
+        sudoku.getValue(80).setValue(1);
+        assertEquals(bits(80), sudoku.takeChanges());
+        // Cell 8 is in the same row as cell 0, and cell 20 is in the same box
+        sudoku.getValue(0).setValue(5);
+        sudoku.getValue(8).setValue(5);
+        assertEquals(bits(0, 8), sudoku.findErrorIndexes());
+        assertEquals(bits(0, 8), sudoku.takeChanges());
+        sudoku.getValue(20).setValue(5);
+        assertEquals(bits(0, 8, 20), sudoku.findErrorIndexes());
+        assertEquals(bits(20), sudoku.takeChanges());
+        // Only cell 20 changes, but cell 8 loses its error, while cell 0 still has one from cell 20
+        sudoku.getValue(8).setValue(6);
+        assertEquals(bits(0, 20), sudoku.findErrorIndexes());
+        assertEquals(bits(8), sudoku.takeChanges());
+        sudoku.getValue(20).setValue(null);
+        assertEquals(new BitSet(), sudoku.findErrorIndexes());
+        assertEquals(bits(0, 20), sudoku.takeChanges());
+        assertFalse(sudoku.hasError(0));
+    }
+
+    @Test
+    public void takeChanges_reportsNotesAndInitialValues() {
+        SudokuData sudoku = TestSudokus.parse(TestSudokus.EASY_9, 3, 3);
+        sudoku.takeChanges();
+        sudoku.getValue(1).setNote(3, true);
+        assertEquals(bits(1), sudoku.takeChanges());
+        // Setting a note which is already there isn't a change
+        sudoku.getValue(1).setNote(3, true);
+        assertEquals(new BitSet(), sudoku.takeChanges());
+        sudoku.getValue(1).clearNotes();
+        sudoku.getValue(2).clearNotes();
+        assertEquals(bits(1), sudoku.takeChanges());
+        sudoku.getValue(0).setInitialValue(false);
+        sudoku.getValue(3).setInitialValue(true);
+        assertEquals(bits(0), sudoku.takeChanges());
+        sudoku.getValue(0).setValue(8);
+        assertEquals(new BitSet(), sudoku.takeChanges());
+    }
+
+    @Test
+    public void findErrorIndexes_checksFullCages() {
+        SudokuConstraints constraints = SudokuConstraints.classic(3, 3).withCage(new int[]{0, 1, 10}, 10);
+        SudokuData sudoku = new SudokuData(constraints);
+        sudoku.getValue(0).setValue(1);
+        sudoku.getValue(1).setValue(8);
+        // A cage which isn't full yet has no error, even though its values are already too large
+        assertEquals(new BitSet(), sudoku.findErrorIndexes());
+        sudoku.takeChanges();
+        sudoku.getValue(10).setValue(2);
+        assertEquals(bits(0, 1, 10), sudoku.findErrorIndexes());
+        assertEquals(bits(0, 1, 10), sudoku.takeChanges());
+        sudoku.getValue(1).setValue(7);
+        assertEquals(new BitSet(), sudoku.findErrorIndexes());
+        assertEquals(bits(0, 1, 10), sudoku.takeChanges());
+        // A value repeated in the cage is an error even if the sum is right
+        sudoku.getValue(0).setValue(4);
+        sudoku.getValue(1).setValue(4);
+        assertEquals(bits(0, 1), sudoku.findErrorIndexes());
+    }
+
+    private static BitSet bits(int... indexes) {
+        BitSet result = new BitSet();
+        for (int index : indexes) result.set(index);
+        return result;
+    }
+
+    // A new grid with the same values and initial values as sudoku, set directly rather than by the changes that gave
+    // sudoku its cells
+    private static SudokuData rebuild(SudokuData sudoku) {
+        SudokuData result = new SudokuData(sudoku.getBoxRows(), sudoku.getBoxColumns());
+        for (int index = 0; index < sudoku.getRows() * sudoku.getRows(); index++) {
+            result.getValue(index).setValue(sudoku.getValue(index).getValue());
+            result.getValue(index).setInitialValue(sudoku.getValue(index).isInitialValue());
+        }
+        assertEquals(sudoku, result);
+        return result;
+    }
+}
@@ -0,0 +1,48 @@
+package com.sdenisov.sudoku;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SudokuGeneratorTest {
+    @Test
+    public void generate_givesTheRequiredDifficulty() {
+        checkGenerate(3, 2);
+        checkGenerate(3, 3);
+    }
+
+    @Test
+    public void generate_keepsReturnedSudokus() {
+        // The workspace's grid (and its scores) are reused by the next call, which mustn't change the sudoku returned
+        SudokuGenerator.Workspace workspace = new SudokuGenerator.Workspace(3, 3);
+        SudokuData first = SudokuGenerator.generate(2, workspace);
+        String values = TestSudokus.format(first);
+        for (int difficulty = 1; difficulty <= 4; difficulty++) {
+            assertNotSame(first, SudokuGenerator.generate(difficulty, workspace));
+        }
+        assertEquals(values, TestSudokus.format(first));
+    }
+
+    // Generates a few sudokus of each difficulty with one workspace, checking that each has one solution, needs the
+    // required difficulty and has at most half the cells filled. The hardest ones are usually minimal as well, but
+    // not always (see minimiseKeepingDifficulty), so that isn't checked.
+    private static void checkGenerate(int boxRows, int boxColumns) {
+        SudokuGenerator.Workspace workspace = new SudokuGenerator.Workspace(boxRows, boxColumns);
+        for (int i = 0; i < 20; i++) {
+            int difficulty = 1 + i % 4;
+            SudokuData sudoku = SudokuGenerator.generate(difficulty, workspace);
+            String name = boxRows + "x" + boxColumns + " " + TestSudokus.format(sudoku);
+            assertEquals(name, 1, new SolutionCounter(sudoku).countSolutions(2));
+            assertEquals(name, difficulty, SudokuSolver.solve(sudoku.copy(), 1));
+            int cells = sudoku.getRows() * sudoku.getRows();
+            int clues = 0;
+            for (int index = 0; index < cells; index++) {
+                SudokuData.SudokuCell cell = sudoku.getValue(index);
+                if (cell.getValue() == null) continue;
+                assertTrue(name, cell.isInitialValue());
+                clues++;
+            }
+            assertTrue(name, clues <= cells / 2);
+        }
+    }
+}
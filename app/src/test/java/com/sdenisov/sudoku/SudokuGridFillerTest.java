@@ -0,0 +1,83 @@
+package com.sdenisov.sudoku;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class SudokuGridFillerTest {
+    @Test
+    public void nextGrid_givesValidGrids() {
+        // More than one searched grid's worth, so that both searched and transformed grids are checked
+        checkGrids(SudokuConstraints.classic(3, 2), 2500);
+        checkGrids(SudokuConstraints.classic(3, 3), 1200);
+        checkGrids(SudokuConstraints.classic(4, 3), 100);
+    }
+
+    @Test
+    public void nextGrid_followsVariantUnits() {
+        checkGrids(SudokuConstraints.classic(3, 3).withDiagonals(), 20);
+        checkGrids(SudokuConstraints.classic(3, 3).withWindows().withAntiKnight(), 20);
+        checkGrids(SudokuConstraints.classic(3, 3).withCage(new int[]{0, 1, 9}, 6).withCage(new int[]{40, 41}, 17), 20);
+    }
+
+    @Test
+    public void nextGrid_isRepeatableWithTheSameRandom() {
+        SudokuGridFiller first = new SudokuGridFiller(3, 3, new Random(7));
+        SudokuGridFiller second = new SudokuGridFiller(3, 3, new Random(7));
+        int[] firstGrid = new int[81];
+        int[] secondGrid = new int[81];
+        for (int i = 0; i < 10; i++) {
+            first.nextGrid(firstGrid);
+            second.nextGrid(secondGrid);
+            assertArrayEquals(firstGrid, secondGrid);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void nextGrid_throwsWithoutAnyGrid() {
+        // Each cage is possible on its own, but both need a 1 and a 2 in the first row
+        SudokuConstraints constraints =
+                SudokuConstraints.classic(3, 3).withCage(new int[]{0, 1}, 3).withCage(new int[]{2, 3}, 3);
+        new SudokuGridFiller(constraints).nextGrid(new int[81]);
+    }
+
+    @Test
+    public void nextSudoku_overwritesEveryCell() {
+        SudokuGridFiller filler = new SudokuGridFiller(3, 3);
+        SudokuData sudoku = TestSudokus.parse(TestSudokus.HARD_9, 3, 3);
+        sudoku.getValue(1).notes[0] = true;
+        int[] grid = new int[81];
+        filler.nextSudoku(sudoku, grid);
+        for (int index = 0; index < 81; index++) {
+            SudokuData.SudokuCell cell = sudoku.getValue(index);
+            assertEquals(Integer.valueOf(grid[index]), cell.getValue());
+            assertTrue(cell.isInitialValue());
+            assertFalse(cell.hasNotes());
+        }
+        assertTrue(sudoku.findErrors().isEmpty());
+    }
+
+    // Checks that count grids from one filler all meet the constraints, and that they aren't all the same
+    private static void checkGrids(SudokuConstraints constraints, int count) {
+        SudokuGridFiller filler = new SudokuGridFiller(constraints, new Random(count));
+        int cells = constraints.getRows() * constraints.getRows();
+        int[] grid = new int[cells];
+        Set<String> distinct = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            filler.nextGrid(grid);
+            SudokuData sudoku = new SudokuData(constraints);
+            for (int index = 0; index < cells; index++) {
+                assertTrue(grid[index] >= 1 && grid[index] <= constraints.getRows());
+                sudoku.getValue(index).setValue(grid[index]);
+            }
+            assertTrue(constraints + " grid " + i, sudoku.findErrors().isEmpty());
+            distinct.add(Arrays.toString(grid));
+        }
+        assertTrue(distinct.size() > count / 2);
+    }
+}
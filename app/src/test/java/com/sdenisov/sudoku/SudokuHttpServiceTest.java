@@ -0,0 +1,212 @@
+package com.sdenisov.sudoku;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class SudokuHttpServiceTest {
+    // A status code and body received from the service
+    private static class Reply {
+        private final int status;
+        private final String body;
+
+        private Reply(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    @Test
+    public void solve_acceptsBothFormatsOfValues() throws IOException {
+        String expected = expectedSolve(TestSudokus.HARD_9);
+        // HARD_9 ends with an empty cell, which is an empty string after the last comma in the comma format
+        StringBuilder commas = new StringBuilder();
+        for (int index = 0; index < TestSudokus.HARD_9.length(); index++) {
+            if (index > 0) commas.append(',');
+            char character = TestSudokus.HARD_9.charAt(index);
+            if (character != '.') commas.append(character);
+        }
+        assertTrue(commas.toString().endsWith(","));
+        SudokuHttpService service = startService(4);
+        try {
+            checkReply(request(service, "GET /solve?values=" + TestSudokus.HARD_9 + " HTTP/1.1"), 200, expected);
+            checkReply(request(service, "GET /solve?values=" + commas + " HTTP/1.1"), 200, expected);
+            // The same as a form body, with 0 for empty cells
+            String body = "values=" + TestSudokus.HARD_9.replace('.', '0');
+            checkReply(post(service, "/solve", body), 200, expected);
+        } finally {
+            service.stop();
+        }
+    }
+
+    @Test
+    public void handle_answersBadRequestsWithErrors() throws IOException {
+        SudokuHttpService service = startService(4);
+        try {
+            String shortValues = TestSudokus.HARD_9.substring(1);
+            checkReply(request(service, "GET /solve?values=" + shortValues + " HTTP/1.1"), 400,
+                    "{\"error\":\"values must have 81 cells, not 80\"}");
+            // A comma format with the last cell missing rather than empty
+            String commas = TestSudokus.HARD_9.substring(0, 80).replace("", ",");
+            commas = commas.substring(1, commas.length() - 1);
+            checkReply(request(service, "GET /solve?values=" + commas + " HTTP/1.1"), 400,
+                    "{\"error\":\"values must have 81 cells, not 80\"}");
+            checkReply(request(service, "GET /grade?values=A" + shortValues + " HTTP/1.1"), 400,
+                    "{\"error\":\"Invalid value in cell 0\"}");
+            checkReply(request(service, "GET /grade?values=" + TestSudokus.HARD_9 + "&boxRows=x HTTP/1.1"), 400,
+                    null);
+            checkReply(request(service, "GET /grade?values=1&boxRows=5&boxColumns=4 HTTP/1.1"), 400,
+                    "{\"error\":\"Sudokus can have at most 16 rows\"}");
+            checkReply(request(service, "GET /grade HTTP/1.1"), 400, "{\"error\":\"values is missing\"}");
+            checkReply(request(service, "GET /generate?difficulty=7 HTTP/1.1"), 400,
+                    "{\"error\":\"difficulty must be from 1 to 4\"}");
+            checkReply(request(service, "GET /count?limit=0&values=" + TestSudokus.HARD_9 + " HTTP/1.1"), 400,
+                    "{\"error\":\"limit must be from 1 to 1000\"}");
+            checkReply(request(service, "GET / HTTP/1.1 extra"), 400, "{\"error\":\"Malformed request\"}");
+            checkReply(request(service, "GET /unknown HTTP/1.1"), 404, "{\"error\":\"Unknown path\"}");
+            checkReply(request(service, "DELETE /solve HTTP/1.1"), 405,
+                    "{\"error\":\"Only GET and POST are supported\"}");
+        } finally {
+            service.stop();
+        }
+    }
+
+    @Test
+    public void solve_reportsSudokusWithoutSolutions() throws IOException {
+        // Two 1s in the first row
+        String values = "1.1" + TestSudokus.MEDIUM_9.substring(3);
+        SudokuHttpService service = startService(4);
+        try {
+            checkReply(request(service, "GET /solve?values=" + values + " HTTP/1.1"), 422,
+                    "{\"error\":\"The sudoku has no solution\"}");
+            checkReply(request(service, "GET /grade?values=" + values + " HTTP/1.1"), 200, "{\"solutions\":0}");
+            checkReply(request(service, "GET /count?values=" + values + " HTTP/1.1"), 200, "{\"solutions\":0}");
+        } finally {
+            service.stop();
+        }
+    }
+
+    @Test
+    public void handle_answersGoodRequests() throws IOException {
+        SudokuHttpService service = startService(4);
+        try {
+            checkReply(request(service, "GET /count?values=" + TestSudokus.EASY_9 + " HTTP/1.1"), 200,
+                    "{\"solutions\":1}");
+            // Without the first row there are several solutions: counting stops at the limit, and grade stops at 2 and
+            // rates the sudoku as unlimited
+            String fewer = "........." + TestSudokus.EASY_9.substring(9);
+            checkReply(request(service, "GET /count?limit=3&values=" + fewer + " HTTP/1.1"), 200,
+                    "{\"solutions\":3}");
+            checkReply(request(service, "GET /grade?values=" + fewer + " HTTP/1.1"), 200,
+                    "{\"solutions\":2,\"difficulty\":4}");
+            Reply reply = request(service, "GET /generate?difficulty=1&boxRows=3&boxColumns=2 HTTP/1.1");
+            assertEquals(200, reply.status);
+            assertTrue(reply.body,
+                    reply.body.startsWith("{\"boxRows\":3,\"boxColumns\":2,\"difficulty\":1,\"values\":["));
+        } finally {
+            service.stop();
+        }
+    }
+
+    @Test
+    public void acceptConnections_turnsAwayConnectionsWhenEveryThreadIsBusy() throws IOException {
+        SudokuHttpService service = startService(1);
+        try (Socket kept = new Socket("localhost", service.getPort())) {
+            // Once the first connection has been answered, its thread is certainly waiting for its next request
+            send(kept, "GET /count?values=" + TestSudokus.EASY_9 + " HTTP/1.1\r\n\r\n");
+            checkReply(readReply(kept.getInputStream()), 200, "{\"solutions\":1}");
+            checkReply(request(service, "GET /count?values=" + TestSudokus.EASY_9 + " HTTP/1.1"), 503,
+                    "{\"error\":\"Too many connections\"}");
+            // The first connection is still served
+            send(kept, "GET /count?values=" + TestSudokus.EASY_9 + " HTTP/1.1\r\n\r\n");
+            checkReply(readReply(kept.getInputStream()), 200, "{\"solutions\":1}");
+        } finally {
+            service.stop();
+        }
+    }
+
+    private static SudokuHttpService startService(int connectionThreads) throws IOException {
+        SudokuHttpService service = new SudokuHttpService(0, connectionThreads, 1, 1, 1);
+        service.start();
+        return service;
+    }
+
+    // The body /solve should give for this sudoku, with the difficulty and solution from SudokuSolver.solve
+    private static String expectedSolve(String values) {
+        SudokuData sudoku = TestSudokus.parse(values, 3, 3);
+        int difficulty = SudokuSolver.solve(sudoku, 1);
+        StringBuilder expected = new StringBuilder("{\"solutions\":1,\"difficulty\":" + difficulty + ",\"solution\":[");
+        for (int index = 0; index < 81; index++) {
+            if (index > 0) expected.append(',');
+            expected.append(sudoku.getValue(index).getValue());
+        }
+        return expected.append("]}").toString();
+    }
+
+    // Checks the status and, unless expectedBody is null, the body
+    private static void checkReply(Reply reply, int expectedStatus, String expectedBody) {
+        assertEquals(reply.body, expectedStatus, reply.status);
+        if (expectedBody != null) assertEquals(expectedBody, reply.body);
+    }
+
+    // Sends a request with no body on a new connection, which the service closes afterwards
+    private static Reply request(SudokuHttpService service, String requestLine) throws IOException {
+        try (Socket socket = new Socket("localhost", service.getPort())) {
+            send(socket, requestLine + "\r\nConnection: close\r\n\r\n");
+            return readReply(socket.getInputStream());
+        }
+    }
+
+    private static Reply post(SudokuHttpService service, String path, String body) throws IOException {
+        try (Socket socket = new Socket("localhost", service.getPort())) {
+            send(socket, "POST " + path + " HTTP/1.1\r\nConnection: close\r\nContent-Type: "
+                    + "application/x-www-form-urlencoded\r\nContent-Length: " + body.length() + "\r\n\r\n" + body);
+            return readReply(socket.getInputStream());
+        }
+    }
+
+    private static void send(Socket socket, String text) throws IOException {
+        OutputStream output = socket.getOutputStream();
+        output.write(text.getBytes(StandardCharsets.ISO_8859_1));
+        output.flush();
+    }
+
+    // Reads one response, using its Content-Length so that connections which are kept open can be read too
+    private static Reply readReply(InputStream input) throws IOException {
+        String statusLine = readLine(input);
+        assertNotNull(statusLine);
+        int status = Integer.parseInt(statusLine.split(" ")[1]);
+        int contentLength = -1;
+        String header;
+        while (!(header = readLine(input)).isEmpty()) {
+            if (header.toLowerCase().startsWith("content-length:")) {
+                contentLength = Integer.parseInt(header.substring("content-length:".length()).trim());
+            }
+        }
+        assertTrue(contentLength >= 0);
+        byte[] body = new byte[contentLength];
+        for (int read = 0; read < contentLength; ) {
+            int count = input.read(body, read, contentLength - read);
+            assertTrue(count != -1);
+            read += count;
+        }
+        return new Reply(status, new String(body, StandardCharsets.UTF_8));
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int next;
+        while ((next = input.read()) != '\n') {
+            assertTrue(next != -1);
+            if (next != '\r') line.write(next);
+        }
+        return line.toString("ISO-8859-1");
+    }
+}
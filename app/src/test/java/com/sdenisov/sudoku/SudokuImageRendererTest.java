@@ -0,0 +1,286 @@
+package com.sdenisov.sudoku;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.*;
+
+public class SudokuImageRendererTest {
+    private static final int CELL_SIZE = 30;
+    private static final int WHITE = 255;
+    private static final int GREY = 128;
+    private static final int BLACK = 0;
+
+    @Test
+    public void renderPng_writesAValidPng() throws IOException {
+        SudokuImageRenderer renderer = new SudokuImageRenderer(CELL_SIZE);
+        SudokuData sudoku = TestSudokus.parse(TestSudokus.MEDIUM_9, 3, 3);
+        int[] pixels = decodePng(renderPng(renderer, sudoku, false), renderer.getImageSize(9));
+        assertEquals(renderer.getImageSize(9) * renderer.getImageSize(9), pixels.length);
+        // Rendering again (with the grid and glyphs cached) gives exactly the same image
+        assertArrayEquals(renderPng(renderer, sudoku, false), renderPng(renderer, sudoku, false));
+    }
+
+    @Test
+    public void renderPng_drawsTheGridLines() throws IOException {
+        checkGridLines(3, 2);
+        checkGridLines(3, 3);
+        checkGridLines(4, 3);
+    }
+
+    @Test
+    public void renderPng_centresValuesInTheirCells() throws IOException {
+        checkValues(3, 2);
+        checkValues(3, 3);
+        checkValues(4, 3);
+    }
+
+    @Test
+    public void renderPng_drawsNotesOnlyWhenAsked() throws IOException {
+        SudokuImageRenderer renderer = new SudokuImageRenderer(CELL_SIZE);
+        SudokuData sudoku = new SudokuData(3, 3);
+        sudoku.getValue(0).setNote(1, true);
+        int size = renderer.getImageSize(9);
+        int[] withNotes = decodePng(renderPng(renderer, sudoku, true), size);
+        int[] withoutNotes = decodePng(renderPng(renderer, sudoku, false), size);
+        assertArrayEquals(decodePng(renderPng(renderer, new SudokuData(3, 3), false), size), withoutNotes);
+        // Note 1 goes in the top left third of the cell, in grey
+        int[] box = findBoundingBox(withNotes, size, 3, 3, GREY, GREY);
+        assertNotNull(box);
+        assertTrue(box[2] < 3 + CELL_SIZE / 3 && box[3] < 3 + CELL_SIZE / 3);
+    }
+
+    @Test
+    public void renderSvg_writesWellFormedSvg() throws Exception {
+        SudokuImageRenderer renderer = new SudokuImageRenderer(CELL_SIZE);
+        SudokuData sudoku = TestSudokus.parse(TestSudokus.EASY_9, 3, 3);
+        sudoku.getValue(1).setValue(2); // Not an initial value
+        sudoku.getValue(2).setNote(5, true);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        renderer.render(sudoku, true, SudokuImageRenderer.Format.SVG, output);
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(output.toByteArray()));
+        Element svg = document.getDocumentElement();
+        assertEquals("svg", svg.getTagName());
+        assertEquals(String.valueOf(renderer.getImageSize(9)), svg.getAttribute("width"));
+        // One text element for each value and one for the note
+        int values = 0;
+        for (int index = 0; index < 81; index++) {
+            if (sudoku.getValue(index).getValue() != null) values++;
+        }
+        assertEquals(values + 1, svg.getElementsByTagName("text").getLength());
+        // 10 horizontal and 10 vertical lines, as well as the background
+        assertEquals(21, svg.getElementsByTagName("rect").getLength());
+    }
+
+    @Test
+    public void renderAll_writesEveryFile() throws Exception {
+        File directory = Files.createTempDirectory("images").toFile();
+        try {
+            List<SudokuData> sudokus = new ArrayList<>();
+            for (String sudoku : new String[]{TestSudokus.EASY_9, TestSudokus.MEDIUM_9, TestSudokus.HARD_9}) {
+                sudokus.add(TestSudokus.parse(sudoku, 3, 3));
+            }
+            SudokuImageRenderer renderer = new SudokuImageRenderer(CELL_SIZE);
+            renderer.renderAll(sudokus.iterator(), false, SudokuImageRenderer.Format.PNG, directory, 2);
+            String[] names = directory.list();
+            Arrays.sort(names);
+            assertArrayEquals(new String[]{"sudoku_1.png", "sudoku_2.png", "sudoku_3.png"}, names);
+            for (int i = 0; i < sudokus.size(); i++) {
+                byte[] file = Files.readAllBytes(new File(directory, names[i]).toPath());
+                assertArrayEquals(renderPng(renderer, sudokus.get(i), false), file);
+            }
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test
+    public void renderAll_throwsTheFirstFailure() throws Exception {
+        // A file where the directory should be, so that none of the images can be written
+        File notADirectory = File.createTempFile("images", null);
+        try {
+            Iterator<SudokuData> sudokus = new Iterator<SudokuData>() {
+                private int left = 100;
+
+                @Override
+                public boolean hasNext() {
+                    return left > 0;
+                }
+
+                @Override
+                public SudokuData next() {
+                    left--;
+                    return TestSudokus.parse(TestSudokus.EASY_9, 3, 3);
+                }
+            };
+            try {
+                new SudokuImageRenderer(CELL_SIZE).renderAll(sudokus, false, SudokuImageRenderer.Format.SVG,
+                        notADirectory, 2);
+                fail();
+            } catch (FileNotFoundException expected) {
+                // Taking sudokus stops soon after the first failure rather than going through all of them
+                assertTrue(sudokus.hasNext());
+            }
+        } finally {
+            assertTrue(notADirectory.delete());
+        }
+    }
+
+    // Checks that an empty grid is white, apart from the lines: 3 pixels wide between boxes and the middle pixel of
+    // the 3 between cells
+    private static void checkGridLines(int boxRows, int boxColumns) throws IOException {
+        SudokuImageRenderer renderer = new SudokuImageRenderer(CELL_SIZE);
+        int rows = boxRows * boxColumns;
+        int size = renderer.getImageSize(rows);
+        int[] pixels = decodePng(renderPng(renderer, new SudokuData(boxRows, boxColumns), false), size);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                // Each box is boxRows cells wide and boxColumns cells tall
+                boolean black = isOnLine(x, boxRows) || isOnLine(y, boxColumns);
+                assertEquals(rows + " rows, (" + x + ", " + y + ")", black ? BLACK : WHITE, pixels[y * size + x]);
+            }
+        }
+    }
+
+    private static boolean isOnLine(int position, int cellsPerBox) {
+        int line = position / (CELL_SIZE + 3);
+        int offset = position % (CELL_SIZE + 3);
+        if (offset >= 3) return false;
+        return line % cellsPerBox == 0 || offset == 1;
+    }
+
+    // Checks that each value is drawn inside its own cell, centred to within a pixel, in black for initial values and
+    // grey for others, and that the rest of the grid is left empty
+    private static void checkValues(int boxRows, int boxColumns) throws IOException {
+        SudokuImageRenderer renderer = new SudokuImageRenderer(CELL_SIZE);
+        int rows = boxRows * boxColumns;
+        int size = renderer.getImageSize(rows);
+        SudokuData sudoku = new SudokuData(boxRows, boxColumns);
+        // 6 reaches every edge of the font's 5x7 box, so its bounding box is the glyph's
+        int[] cells = {0, rows + 1, rows * rows - 1};
+        for (int cell : cells) sudoku.getValue(cell).setValue(6);
+        sudoku.getValue(0).setInitialValue(true);
+        int[] pixels = decodePng(renderPng(renderer, sudoku, false), size);
+        int[] empty = decodePng(renderPng(renderer, new SudokuData(boxRows, boxColumns), false), size);
+        List<int[]> boxes = new ArrayList<>();
+        for (int cell : cells) {
+            int colour = sudoku.getValue(cell).isInitialValue() ? BLACK : GREY;
+            int left = cell % rows * (CELL_SIZE + 3) + 3;
+            int top = cell / rows * (CELL_SIZE + 3) + 3;
+            int[] box = findBoundingBox(pixels, size, left, top, colour, colour);
+            assertNotNull(box);
+            int width = box[2] - box[0] + 1;
+            int height = box[3] - box[1] + 1;
+            assertEquals(0, width % 5);
+            assertEquals(width / 5 * 7, height);
+            assertTrue(Math.abs((box[0] + box[2]) / 2.0 - (left + CELL_SIZE / 2.0)) <= 1);
+            assertTrue(Math.abs((box[1] + box[3]) / 2.0 - (top + CELL_SIZE / 2.0)) <= 1);
+            boxes.add(box);
+        }
+        for (int i = 0; i < pixels.length; i++) {
+            if (pixels[i] == empty[i]) continue;
+            boolean inBox = false;
+            for (int[] box : boxes) {
+                int x = i % size;
+                int y = i / size;
+                inBox |= x >= box[0] && x <= box[2] && y >= box[1] && y <= box[3];
+            }
+            assertTrue(inBox);
+        }
+    }
+
+    // Returns {left, top, right, bottom} of the pixels between minimumColour and maximumColour in the cell whose top
+    // left pixel is (left, top), or null if there are none
+    private static int[] findBoundingBox(int[] pixels, int size, int left, int top, int minimumColour,
+                                         int maximumColour) {
+        int[] result = null;
+        for (int y = top; y < top + CELL_SIZE; y++) {
+            for (int x = left; x < left + CELL_SIZE; x++) {
+                int pixel = pixels[y * size + x];
+                if (pixel < minimumColour || pixel > maximumColour) continue;
+                if (result == null) result = new int[]{x, y, x, y};
+                result[0] = Math.min(result[0], x);
+                result[1] = Math.min(result[1], y);
+                result[2] = Math.max(result[2], x);
+                result[3] = Math.max(result[3], y);
+            }
+        }
+        return result;
+    }
+
+    private static byte[] renderPng(SudokuImageRenderer renderer, SudokuData sudoku, boolean includeNotes)
+            throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        renderer.render(sudoku, includeNotes, SudokuImageRenderer.Format.PNG, output);
+        return output.toByteArray();
+    }
+
+    // Reads a PNG, checking its signature, the CRC of every chunk and that IHDR describes a size x size 8-bit
+    // greyscale image, then returns its pixels (from 0 for black to 255 for white) row by row
+    private static int[] decodePng(byte[] png, int size) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(png));
+        byte[] signature = new byte[8];
+        input.readFully(signature);
+        assertArrayEquals(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'}, signature);
+        List<String> types = new ArrayList<>();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        while (input.available() > 0) {
+            byte[] content = new byte[input.readInt()];
+            byte[] type = new byte[4];
+            input.readFully(type);
+            input.readFully(content);
+            CRC32 crc = new CRC32();
+            crc.update(type);
+            crc.update(content);
+            assertEquals((int) crc.getValue(), input.readInt());
+            String typeName = new String(type, StandardCharsets.US_ASCII);
+            types.add(typeName);
+            if (typeName.equals("IHDR")) {
+                DataInputStream header = new DataInputStream(new ByteArrayInputStream(content));
+                assertEquals(size, header.readInt());
+                assertEquals(size, header.readInt());
+                assertEquals(8, header.readByte()); // Bit depth
+                assertEquals(0, header.readByte()); // Greyscale
+                assertEquals(0, header.readByte()); // Compression method
+                assertEquals(0, header.readByte()); // Filter method
+                assertEquals(0, header.readByte()); // No interlacing
+            } else if (typeName.equals("IDAT")) {
+                compressed.write(content);
+            }
+        }
+        assertEquals("IHDR", types.get(0));
+        assertEquals("IEND", types.get(types.size() - 1));
+        DataInputStream data = new DataInputStream(new InflaterInputStream(
+                new ByteArrayInputStream(compressed.toByteArray())));
+        int[] pixels = new int[size * size];
+        byte[] row = new byte[size];
+        for (int y = 0; y < size; y++) {
+            assertEquals(0, data.readByte()); // No filter
+            data.readFully(row);
+            for (int x = 0; x < size; x++) pixels[y * size + x] = row[x] & 0xff;
+        }
+        assertEquals(-1, data.read());
+        return pixels;
+    }
+
+    private static void deleteAll(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) assertTrue(file.delete());
+        }
+        assertTrue(directory.delete());
+    }
+}
@@ -0,0 +1,56 @@
+package com.sdenisov.sudoku;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SudokuMinimiserTest {
+    @Test
+    public void minimise_leavesOnlyNeededClues() {
+        checkMinimise(TestSudokus.parse(TestSudokus.EASY_9, 3, 3));
+        checkMinimise(TestSudokus.parse("..5..3..16....2...64..21....5..5.16.", 3, 2));
+    }
+
+    @Test
+    public void minimise_worksFromAFilledGrid() {
+        SudokuData filled = new SudokuData(3, 3);
+        SudokuSolver.solve(filled, 0);
+        for (int index = 0; index < 81; index++) filled.getValue(index).setInitialValue(true);
+        checkMinimise(filled);
+    }
+
+    @Test
+    public void minimise_followsVariantUnits() {
+        SudokuData filled = new SudokuData(SudokuConstraints.classic(3, 3).withDiagonals());
+        SudokuSolver.solve(filled, 0);
+        for (int index = 0; index < 81; index++) filled.getValue(index).setInitialValue(true);
+        checkMinimise(filled);
+    }
+
+    // Minimises the sudoku, which must have exactly one solution, and checks that this only removed clues, kept the
+    // same solution, and left none that could be removed as well
+    private static void checkMinimise(SudokuData sudoku) {
+        String before = TestSudokus.format(sudoku);
+        String solution = solve(sudoku);
+        SudokuMinimiser.minimise(sudoku);
+        String after = TestSudokus.format(sudoku);
+        assertEquals(solution, solve(sudoku));
+        int cells = sudoku.getRows() * sudoku.getRows();
+        for (int index = 0; index < cells; index++) {
+            if (after.charAt(index) == '.') continue;
+            assertEquals(before.charAt(index), after.charAt(index));
+            assertTrue(sudoku.getValue(index).isInitialValue());
+            SudokuData withoutClue = sudoku.copy();
+            withoutClue.getValue(index).setInitialValue(false);
+            withoutClue.getValue(index).setValue(null);
+            assertEquals(after + " clue " + index, 2, new SolutionCounter(withoutClue).countSolutions(2));
+        }
+    }
+
+    private static String solve(SudokuData sudoku) {
+        SudokuData solved = sudoku.copy();
+        assertEquals(1, new SolutionCounter(solved).countSolutions(2));
+        SudokuSolver.solve(solved, 1);
+        return TestSudokus.format(solved);
+    }
+}
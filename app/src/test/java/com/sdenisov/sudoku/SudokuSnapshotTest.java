@@ -0,0 +1,100 @@
+package com.sdenisov.sudoku;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SudokuSnapshotTest {
+    @Test
+    public void withValue_onlyCopiesTheChangedRow() {
+        SudokuSnapshot before = SudokuSnapshot.of(TestSudokus.parse(TestSudokus.MEDIUM_9, 3, 3));
+        SudokuSnapshot after = before.withValue(40, 2);
+        int[][] beforeRows = rows(before);
+        int[][] afterRows = rows(after);
+        assertNotSame(beforeRows, afterRows);
+        for (int row = 0; row < 9; row++) {
+            if (row == 4) {
+                assertNotSame(beforeRows[row], afterRows[row]);
+            } else {
+                assertSame(beforeRows[row], afterRows[row]);
+            }
+        }
+        // The snapshot it was made from is unchanged
+        assertEquals(0, before.getValue(40));
+        assertEquals(2, after.getValue(40));
+        assertSame(after, after.withValue(40, 2));
+    }
+
+    @Test
+    public void empty_sharesOneRow() {
+        SudokuSnapshot empty = SudokuSnapshot.empty(4, 3);
+        int[][] emptyRows = rows(empty);
+        for (int row = 1; row < 12; row++) assertSame(emptyRows[0], emptyRows[row]);
+        SudokuSnapshot changed = empty.withNote(0, 12, true);
+        int[][] changedRows = rows(changed);
+        assertNotSame(emptyRows[0], changedRows[0]);
+        for (int row = 1; row < 12; row++) assertSame(emptyRows[0], changedRows[row]);
+        assertFalse(empty.hasNote(0, 12));
+        assertTrue(changed.hasNote(0, 12));
+    }
+
+    @Test
+    public void withoutNonInitialValues_sharesUnchangedRows() {
+        SudokuData sudokuData = TestSudokus.parse(TestSudokus.HARD_9, 3, 3);
+        SudokuSnapshot given = SudokuSnapshot.of(sudokuData);
+        SudokuSnapshot played = given.withValue(1, 4).withNote(2, 3, true);
+        SudokuSnapshot cleared = played.withoutNonInitialValues();
+        assertEquals(given, cleared);
+        assertArrayEquals(given.getValues(), cleared.getValues());
+        assertFalse(cleared.hasNote(2, 3));
+        for (int row = 1; row < 9; row++) assertSame(rows(played)[row], rows(cleared)[row]);
+        assertSame(given, given.withoutNonInitialValues());
+    }
+
+    @Test
+    public void changes_keepTheZobristHashOfSudokuData() {
+        Random random = new Random(4);
+        SudokuSnapshot snapshot = SudokuSnapshot.of(TestSudokus.parse(TestSudokus.EASY_9, 3, 3));
+        for (int step = 0; step < 500; step++) {
+            int index = random.nextInt(81);
+            int choice = random.nextInt(3);
+            if (choice == 0) {
+                snapshot = snapshot.withValue(index, random.nextInt(10));
+            } else if (choice == 1) {
+                snapshot = snapshot.withInitialValue(index, random.nextBoolean());
+            } else {
+                snapshot = snapshot.withNote(index, 1 + random.nextInt(9), random.nextBoolean());
+            }
+            SudokuData sudokuData = snapshot.toSudokuData();
+            assertEquals(sudokuData.getZobristHash(), snapshot.getZobristHash());
+            // Going back from the SudokuData gives an equal snapshot, with the same notes
+            SudokuSnapshot copy = SudokuSnapshot.of(sudokuData);
+            assertEquals(snapshot, copy);
+            for (int value = 1; value <= 9; value++) {
+                assertEquals(snapshot.hasNote(index, value), copy.hasNote(index, value));
+            }
+        }
+    }
+
+    @Test
+    public void equals_ignoresNotes() {
+        SudokuSnapshot snapshot = SudokuSnapshot.of(TestSudokus.parse(TestSudokus.EASY_9, 3, 3));
+        assertEquals(snapshot, snapshot.withNote(1, 2, true));
+        assertNotEquals(snapshot, snapshot.withValue(1, 2));
+        assertNotEquals(snapshot, snapshot.withInitialValue(0, false));
+    }
+
+    // The snapshot's rows of packed cells, which are private as they must never be changed
+    private static int[][] rows(SudokuSnapshot snapshot) {
+        try {
+            Field cells = SudokuSnapshot.class.getDeclaredField("cells");
+            cells.setAccessible(true);
+            return (int[][]) cells.get(snapshot);
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.sdenisov.sudoku;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SudokuSolverTest {
+    // Sudokus with the difficulty SudokuSolver gives them, checking every unit for single positions before each single
+    // candidate. Most of these were rated easier by a search which found every single position first, which left
+    // hardly any medium sudokus.
+    private static final Object[][] RATINGS = {
+            {3, 3, 1, TestSudokus.EASY_9},
+            {3, 3, 1, "7.4...65.56..3.2.41....637..95..3...81.49...264.1.59384...79.1.9..6..7...7125..9."},
+            {3, 3, 2, TestSudokus.MEDIUM_9},
+            {3, 3, 2, "...7.....27..1..5..613.5.8.956.......4..613..........43....2.7....134...5.48..6.1"},
+            {3, 3, 2, ".3......5..92.68..1.2....37..53....64.8...37.....4...9.......9..8...74.3.7...5.6."},
+            {3, 3, 3, TestSudokus.HARD_9},
+            {3, 3, 3, "2.......9....36..8.65..8.3.1.....47..48.....6..............394...25....3.7.....65"},
+            {3, 3, 4, TestSudokus.UNLIMITED_9},
+            {3, 3, 4, "6.....1....3..2....12..64.8..6...9.7.2....3.....43..2....9.52.4.........7493..8.."},
+            {3, 2, 1, "........4.516132...42....3.52......3"},
+            {3, 2, 1, "..5..3..16....2...64..21....5..5.16."},
+            {3, 2, 2, ".54.3..3...54...2........6...3.42.5."},
+            {3, 2, 2, ".634..........16...34..5..21......4."},
+            {3, 2, 2, "......361......26...2.4.15......46.."},
+            {3, 2, 3, "...2.3....6.3.........1225.6..4....."},
+            {4, 3, 1, ".96.31.8B.2.2.B...9.14..78..B2.A..6.5.368.7C.1.4..A9651.3.7....89.....5." +
+                    ".A...3.7.6..359..6.1...2.6.1.4B.C73561...C2...9.....19.B.38C97..4..562.."},
+            {4, 3, 2, "..8..C...5A....3..9...2.9...4A.7B1..C.7...52.9..2...B7A.6..58B56.41...72" +
+                    ".61.8.742.....2...6A5C..7495..3........8..49A..B.1B.A.C83.5..C..2..58.14"},
+            {4, 3, 3, "4.2..3...9.C.C...4..2.3..9....2.B46..1..C7...2.....C1..3..94A.....5....." +
+                    "..13.CB...8.C..9781...2.B.7.26.51..9...461..83.2.3.29.CA.14.17.B.2..9A56"},
+            {4, 3, 4, "A..1.....B2C7..42C...83A......8.....B...9.1...6..8....3B95C1.21.6...8AB." +
+                    "4..6..23.9...1.3C..9A.4..B9.4..A.1....C..6A..3....BA8.C4.7..2..8....5CA."},
+    };
+    // A sudoku which the search often gives up on for a while (Arto Inkala's "world's hardest sudoku")
+    private static final String NEEDS_RESTARTS =
+            "8..........36......7..9.2...5...7.......457.....1...3...1....68..85...1..9....4..";
+
+    @Test
+    public void solve_keepsRatings() {
+        for (Object[] rating : RATINGS) {
+            SudokuData sudokuData = TestSudokus.parse((String) rating[3], (Integer) rating[0], (Integer) rating[1]);
+            assertEquals((String) rating[3], rating[2], SudokuSolver.solve(sudokuData, 1));
+            assertFalse(sudokuData.containsEmptyCells());
+            assertTrue(sudokuData.findErrors().isEmpty());
+        }
+    }
+
+    @Test
+    public void solve_ratingDoesNotDependOnNoteOrder() {
+        // Every sudoku here has one solution, so the guesses on the way to it are the same whichever note is tried
+        // first
+        for (Object[] rating : RATINGS) {
+            SudokuData sudokuData = TestSudokus.parse((String) rating[3], (Integer) rating[0], (Integer) rating[1]);
+            assertEquals((String) rating[3], rating[2], SudokuSolver.solve(sudokuData, -1));
+        }
+    }
+
+    @Test
+    public void solve_agreesWithSolutionCounter() {
+        checkAgainstSolutionCounter(SudokuConstraints.classic(3, 2));
+        checkAgainstSolutionCounter(SudokuConstraints.classic(3, 3));
+        checkAgainstSolutionCounter(SudokuConstraints.classic(3, 3).withDiagonals());
+        checkAgainstSolutionCounter(SudokuConstraints.classic(3, 3).withCage(new int[]{0, 1, 9}, 6));
+    }
+
+    @Test
+    public void solve_fitsInASmallStack() {
+        // The search used to call itself for every guess, which could overflow the small stacks of Android's threads
+        // on large grids. An empty 16x16 grid needs a guess for many of its cells.
+        SudokuData sudokuData = new SudokuData(4, 4);
+        int[] difficulty = new int[1];
+        Thread thread = new Thread(null, () -> difficulty[0] = SudokuSolver.solve(sudokuData, 1), "solver", 64 * 1024);
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        assertNotEquals(0, difficulty[0]);
+        assertNotEquals(-1, difficulty[0]);
+        assertFalse(sudokuData.containsEmptyCells());
+        assertTrue(sudokuData.findErrors().isEmpty());
+    }
+
+    @Test
+    public void solveForScore_givesTheSameScoresWithAReusedWorkspace() {
+        // Runs which stop part of the way through (no solution, or a solution found in the middle of a pass) mustn't
+        // leave anything behind for the next run
+        String[] sudokus = {TestSudokus.HARD_9, "55" + TestSudokus.EASY_9.substring(2).replace('5', '.'),
+                TestSudokus.UNLIMITED_9, TestSudokus.EASY_9, NEEDS_RESTARTS, TestSudokus.MEDIUM_9, TestSudokus.HARD_9};
+        SudokuSolver.Workspace workspace = new SudokuSolver.Workspace(3, 3);
+        for (String sudoku : sudokus) {
+            double expected = SudokuSolver.solveForScore(TestSudokus.parse(sudoku, 3, 3));
+            assertEquals(sudoku, expected, SudokuSolver.solveForScore(TestSudokus.parse(sudoku, 3, 3), workspace),
+                    0);
+        }
+    }
+
+    @Test
+    public void luby_followsTheSequence() {
+        long[] expected = {1, 1, 2, 1, 1, 2, 4, 1, 1, 2, 1, 1, 2, 4, 8, 1, 1, 2};
+        for (int i = 1; i <= expected.length; i++) assertEquals(expected[i - 1], SudokuSolver.luby(i));
+    }
+
+    @Test
+    public void solveWithRestarts_findsTheSolution() {
+        SudokuData solved = TestSudokus.parse(NEEDS_RESTARTS, 3, 3);
+        SudokuSolver.solve(solved, 1);
+        String solution = TestSudokus.format(solved);
+        SolverStatistics statistics = new SolverStatistics();
+        for (long seed = 0; seed < 5; seed++) {
+            SudokuData sudokuData = TestSudokus.parse(NEEDS_RESTARTS, 3, 3);
+            assertNotEquals(-1, SudokuSolver.solveWithRestarts(sudokuData, seed, null, statistics));
+            assertEquals(solution, TestSudokus.format(sudokuData));
+            // Later attempts skip the grids earlier ones found to be dead ends
+            sudokuData = TestSudokus.parse(NEEDS_RESTARTS, 3, 3);
+            SudokuSolver.solveWithRestarts(sudokuData, seed, new TranspositionTable(1 << 20), statistics);
+            assertEquals(solution, TestSudokus.format(sudokuData));
+        }
+        assertTrue(statistics.getRestarts() > 0);
+        assertTrue(statistics.getTranspositionHits() > 0);
+    }
+
+    @Test
+    public void solveWithRestarts_isRepeatable() {
+        for (long seed = 0; seed < 3; seed++) {
+            SolverStatistics first = new SolverStatistics();
+            SolverStatistics second = new SolverStatistics();
+            int firstDifficulty = SudokuSolver.solveWithRestarts(TestSudokus.parse(NEEDS_RESTARTS, 3, 3), seed, null,
+                    first);
+            int secondDifficulty = SudokuSolver.solveWithRestarts(TestSudokus.parse(NEEDS_RESTARTS, 3, 3), seed,
+                    null, second);
+            assertEquals(firstDifficulty, secondDifficulty);
+            assertEquals(first.toString(), second.toString());
+        }
+    }
+
+    @Test
+    public void solveWithRestarts_leavesSudokusWithoutSolutionsUnchanged() {
+        String sudoku = "55" + TestSudokus.EASY_9.substring(2).replace('5', '.');
+        SudokuData sudokuData = TestSudokus.parse(sudoku, 3, 3);
+        assertEquals(-1, SudokuSolver.solveWithRestarts(sudokuData, 1, null, null));
+        assertEquals(sudoku, TestSudokus.format(sudokuData));
+    }
+
+    @Test
+    public void solve_returnsMinusOneWithoutSolutions() {
+        // Two 5s in the first row
+        SudokuData sudokuData = TestSudokus.parse("55" + TestSudokus.EASY_9.substring(2).replace('5', '.'), 3, 3);
+        assertEquals(-1, SudokuSolver.solve(sudokuData, 1));
+    }
+
+    // Solves random partial grids with these constraints, some of which have no solutions, checking that the solver
+    // finds a solution exactly when SolutionCounter does, that it keeps every value given, and that it is the
+    // counter's solution when there is only one
+    private static void checkAgainstSolutionCounter(SudokuConstraints constraints) {
+        Random random = new Random(constraints.getUnitCount());
+        int cells = constraints.getRows() * constraints.getRows();
+        for (int i = 0; i < 50; i++) {
+            SudokuData filled = new SudokuData(constraints);
+            SudokuSolver.solve(filled, 0);
+            SudokuData sudokuData = new SudokuData(constraints);
+            for (int index = 0; index < cells; index++) {
+                if (random.nextInt(5) >= 2) continue;
+                // Now and then a value is changed, which usually means there are no solutions
+                int value = random.nextInt(50) == 0 ? 1 + random.nextInt(constraints.getRows())
+                        : filled.getValue(index).getValue();
+                sudokuData.getValue(index).setValue(value);
+                sudokuData.getValue(index).setInitialValue(true);
+            }
+            String sudoku = TestSudokus.format(sudokuData);
+            int solutions = new SolutionCounter(sudokuData).countSolutions(2);
+            int difficulty = SudokuSolver.solve(sudokuData, 1);
+            assertEquals(sudoku, solutions == 0, difficulty == -1);
+            if (solutions == 0) {
+                assertEquals(sudoku, TestSudokus.format(sudokuData));
+                continue;
+            }
+            assertFalse(sudokuData.containsEmptyCells());
+            assertTrue(sudoku, sudokuData.findErrors().isEmpty());
+            String solution = TestSudokus.format(sudokuData);
+            for (int index = 0; index < cells; index++) {
+                if (sudoku.charAt(index) != '.') assertEquals(sudoku.charAt(index), solution.charAt(index));
+            }
+            if (solutions == 1) {
+                SolutionCounter counter = new SolutionCounter(TestSudokus.parse(sudoku, new SudokuData(constraints)));
+                assertTrue(counter.fillRandomly(random));
+                for (int index = 0; index < cells; index++) {
+                    assertEquals(sudoku, (int) sudokuData.getValue(index).getValue(), counter.getValue(index));
+                }
+            }
+        }
+    }
+}
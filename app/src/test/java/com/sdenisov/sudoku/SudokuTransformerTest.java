@@ -0,0 +1,104 @@
+package com.sdenisov.sudoku;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class SudokuTransformerTest {
+    @Test
+    public void transform_keepsTheSolution() {
+        checkVariants(TestSudokus.parse(TestSudokus.MEDIUM_9, 3, 3));
+        checkVariants(TestSudokus.parse(TestSudokus.UNLIMITED_9, 3, 3));
+        checkVariants(TestSudokus.parse(".54.3..3...54...2........6...3.42.5.", 3, 2));
+    }
+
+    @Test
+    public void transform_movesNotesWithTheirCells() {
+        SudokuTransformer transformer = new SudokuTransformer(3, 3, new Random(3));
+        SudokuData sudoku = TestSudokus.parse(TestSudokus.HARD_9, 3, 3);
+        SudokuSolver.updateNotes(sudoku, 0);
+        sudoku.getValue(1).setValue(4); // Not an initial value
+        for (int i = 0; i < 10; i++) {
+            transformer.randomise();
+            SudokuData result = transformer.transform(sudoku);
+            // Empty cells with only notes are reported as changed too, so that they are shown
+            BitSet changes = result.takeChanges();
+            for (int index = 0; index < 81; index++) {
+                if (result.getValue(index).hasNotes()) assertTrue(changes.get(index));
+            }
+            for (int index = 0; index < 81; index++) {
+                SudokuData.SudokuCell cell = sudoku.getValue(index);
+                // Where transform(int[], int[]) moves the cell to, and what it relabels each value as
+                int[] grid = new int[81];
+                int[] transformed = new int[81];
+                for (int value = 1; value <= 9; value++) {
+                    grid[index] = value;
+                    transformer.transform(grid, transformed);
+                    int resultIndex = findNonZero(transformed);
+                    SudokuData.SudokuCell resultCell = result.getValue(resultIndex);
+                    int resultValue = transformed[resultIndex];
+                    assertEquals(cell.notes[value - 1], resultCell.notes[resultValue - 1]);
+                    assertEquals(cell.isInitialValue(), resultCell.isInitialValue());
+                    if (cell.getValue() != null && cell.getValue() == value) {
+                        assertEquals(Integer.valueOf(resultValue), resultCell.getValue());
+                    }
+                }
+                if (cell.getValue() == null) {
+                    transformer.transform(grid, transformed);
+                    assertNull(result.getValue(findNonZero(transformed)).getValue());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void randomise_changesTheTransformation() {
+        SudokuTransformer transformer = new SudokuTransformer(3, 3, new Random(5));
+        SudokuData sudoku = TestSudokus.parse(TestSudokus.EASY_9, 3, 3);
+        Set<String> variants = new HashSet<>();
+        for (int i = 0; i < 20; i++) variants.add(TestSudokus.format(transformer.randomVariant(sudoku)));
+        assertTrue(variants.size() > 15);
+        assertEquals(TestSudokus.EASY_9, TestSudokus.format(sudoku));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void transform_rejectsOtherSizes() {
+        new SudokuTransformer(3, 2).transform(new SudokuData(3, 3));
+    }
+
+    // Checks that random variants of the sudoku, which must have exactly one solution, still have one, which is the
+    // variant of the sudoku's solution. Their difficulty isn't checked, as the solver's rating depends on the order it
+    // guesses in (see SudokuGenerator.generateVariant).
+    private static void checkVariants(SudokuData sudoku) {
+        int rows = sudoku.getRows();
+        SudokuTransformer transformer = new SudokuTransformer(sudoku.getBoxRows(), sudoku.getBoxColumns(),
+                new Random(rows));
+        SudokuData solved = sudoku.copy();
+        assertNotEquals(-1, SudokuSolver.solve(solved, 1));
+        int[] solution = SolutionCache.getValues(solved);
+        int[] clues = SolutionCache.getValues(sudoku);
+        int[] transformedSolution = new int[rows * rows];
+        int[] transformedClues = new int[rows * rows];
+        for (int i = 0; i < 20; i++) {
+            SudokuData variant = transformer.randomVariant(sudoku);
+            transformer.transform(solution, transformedSolution);
+            transformer.transform(clues, transformedClues);
+            assertArrayEquals(transformedClues, SolutionCache.getValues(variant));
+            assertEquals(1, new SolutionCounter(variant).countSolutions(2));
+            assertNotEquals(-1, SudokuSolver.solve(variant, 1));
+            assertArrayEquals(transformedSolution, SolutionCache.getValues(variant));
+        }
+    }
+
+    private static int findNonZero(int[] grid) {
+        for (int index = 0; index < grid.length; index++) {
+            if (grid[index] != 0) return index;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,42 @@
+package com.sdenisov.sudoku;
+
+// Sudokus shared by the tests, written one row after another with '.' for empty cells and 1-9 then A-Z for values
+final class TestSudokus {
+    // Examples of each difficulty, as rated by SudokuSolver
+    static final String EASY_9 = "8..67.4.......315..3.12...6.623..94...9..4....14..9.8.......5.41..7523699.74.6...";
+    static final String MEDIUM_9 = ".....68..1..3..4...65.9..73..361..4.81....5...5.....6...9.7....6..53.92.5..96...1";
+    static final String HARD_9 = "6......32....3.5...21.4.....6....1.5..7...9..1...2.3...98412...5.39...4.2.6..8.9.";
+    static final String UNLIMITED_9 =
+            "8..1.9...371...5..6....2........538....8....5...23...1234......7.......6.....79.3";
+
+    private TestSudokus() {
+    }
+
+    static SudokuData parse(String sudoku, int boxRows, int boxColumns) {
+        return parse(sudoku, new SudokuData(boxRows, boxColumns));
+    }
+
+    // Fills in the values of sudoku as initial values of result, which must have no values yet
+    static SudokuData parse(String sudoku, SudokuData result) {
+        int rows = result.getRows();
+        if (sudoku.length() != rows * rows) throw new IllegalArgumentException("Wrong length: " + sudoku.length());
+        for (int index = 0; index < sudoku.length(); index++) {
+            char character = sudoku.charAt(index);
+            if (character == '.') continue;
+            SudokuData.SudokuCell cell = result.getValue(index);
+            cell.setValue(Character.digit(character, Character.MAX_RADIX));
+            cell.setInitialValue(true);
+        }
+        return result;
+    }
+
+    // The opposite of parse, giving every value (initial or not)
+    static String format(SudokuData sudokuData) {
+        StringBuilder result = new StringBuilder();
+        for (int index = 0; index < sudokuData.getRows() * sudokuData.getRows(); index++) {
+            Integer value = sudokuData.getValue(index).getValue();
+            result.append(value == null ? '.' : Character.toUpperCase(Character.forDigit(value, Character.MAX_RADIX)));
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,79 @@
+package com.sdenisov.sudoku;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TranspositionTableTest {
+    // 8 entries, so hashes 8 apart need the same index
+    private static final long SMALL_TABLE_BYTES = 8 * 12;
+
+    @Test
+    public void isDead_findsMarkedGrids() {
+        TranspositionTable table = new TranspositionTable(SMALL_TABLE_BYTES,
+                TranspositionTable.ReplacementPolicy.ALWAYS_REPLACE, 10);
+        table.markDead(5, 40);
+        table.markDead(0, 40);
+        assertTrue(table.isDead(5, 40));
+        assertTrue(table.isDead(0, 40));
+        assertFalse(table.isDead(6, 40));
+        assertEquals(2, table.getHits());
+        table.clear();
+        assertFalse(table.isDead(5, 40));
+        assertEquals(0, table.getHits());
+    }
+
+    @Test
+    public void markDead_skipsGridsWithFewEmptyCells() {
+        TranspositionTable table = new TranspositionTable(SMALL_TABLE_BYTES,
+                TranspositionTable.ReplacementPolicy.ALWAYS_REPLACE, 10);
+        table.markDead(5, 9);
+        assertFalse(table.isDead(5, 10));
+        table.markDead(5, 10);
+        assertFalse(table.isDead(5, 9));
+    }
+
+    @Test
+    public void markDead_followsThePolicy() {
+        TranspositionTable always = new TranspositionTable(SMALL_TABLE_BYTES,
+                TranspositionTable.ReplacementPolicy.ALWAYS_REPLACE, 10);
+        always.markDead(3, 50);
+        always.markDead(3 + 8, 20);
+        assertFalse(always.isDead(3, 50));
+        assertTrue(always.isDead(3 + 8, 20));
+
+        TranspositionTable keepMore = new TranspositionTable(SMALL_TABLE_BYTES,
+                TranspositionTable.ReplacementPolicy.KEEP_MORE_EMPTY_CELLS, 10);
+        keepMore.markDead(3, 50);
+        keepMore.markDead(3 + 8, 20);
+        assertTrue(keepMore.isDead(3, 50));
+        assertFalse(keepMore.isDead(3 + 8, 20));
+        keepMore.markDead(3 + 16, 60);
+        assertFalse(keepMore.isDead(3, 50));
+        assertTrue(keepMore.isDead(3 + 16, 60));
+    }
+
+    @Test
+    public void countSolutions_isTheSameWithATable() {
+        // The same table is shared by several searches, including ones with many solutions, which mustn't leave
+        // grids with solutions marked as dead. Every grid is stored, so that the second time round each search finds
+        // the dead ends of the first. These sudokus are two of the best known hard ones, which need many guesses
+        // even with single positions filled in first, then the first half of one of them, which has many solutions.
+        String[] sudokus = {
+                "1....7.9..3..2...8..96..5....53..9...1..8...26....4...3......1..4......7..7...3..",
+                "8..........36......7..9.2...5...7.......457.....1...3...1....68..85...1..9....4..",
+                "1....7.9..3..2...8..96..5....53..9...1..8...2" + "....................................",
+        };
+        TranspositionTable table = new TranspositionTable(1 << 16, TranspositionTable.ReplacementPolicy.ALWAYS_REPLACE,
+                0);
+        for (int repeat = 0; repeat < 2; repeat++) {
+            for (String sudoku : sudokus) {
+                SolutionCounter withTable = new SolutionCounter(TestSudokus.parse(sudoku, 3, 3));
+                withTable.setTranspositionTable(table);
+                int expected = new SolutionCounter(TestSudokus.parse(sudoku, 3, 3)).countSolutions(50);
+                assertEquals(sudoku, expected, withTable.countSolutions(50));
+            }
+        }
+        assertTrue(table.getHits() > 0);
+    }
+}